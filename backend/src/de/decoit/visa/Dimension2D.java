@@ -19,49 +19,68 @@
 
 package de.decoit.visa;
 
+import java.io.IOException;
 import java.util.Comparator;
-import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.interfaces.IJSON;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
  * This class is used to represent the size of a two dimensional object.
  * Dimensions are limited to values of 0 or greater since objects cannot have
  * negative dimensions. It provides member Comparator classes for comparison of
- * horizontal and vertical dimensions.
+ * horizontal and vertical dimensions.<br>
+ * <br>
+ * Objects of this class are immutable. Small dimensions are shared between all
+ * users, new objects should be obtained by calling
+ * {@link #valueOf(int, int)}.
  *
  * @author Thomas Rix
  */
 public class Dimension2D implements IJSON {
-	private int x;
-	private int y;
+	private static final int CACHE_SIZE = 256;
+	private static final Dimension2D[] cache = new Dimension2D[CACHE_SIZE * CACHE_SIZE];
+
+	private final int x;
+	private final int y;
 
 
 	/**
-	 * Construct a new Dimension2D object with the provided size
+	 * Return a Dimension2D object with the provided size. Objects with both
+	 * dimensions less than 256 are cached and shared.
 	 *
 	 * @param pX Horizontal dimension, must be 0 or greater
 	 * @param pY Vertical dimension, must be 0 or greater
+	 * @return Dimension2D object with the provided size
 	 */
-	public Dimension2D(int pX, int pY) {
-		if(pX >= 0 && pY >= 0) {
-			x = pX;
-			y = pY;
+	public static Dimension2D valueOf(int pX, int pY) {
+		if(pX >= 0 && pX < CACHE_SIZE && pY >= 0 && pY < CACHE_SIZE) {
+			int idx = pX * CACHE_SIZE + pY;
+
+			// Concurrent calls may create duplicate objects for the same
+			// size, this is harmless since the objects are immutable
+			Dimension2D rv = cache[idx];
+			if(rv == null) {
+				rv = new Dimension2D(pX, pY);
+				cache[idx] = rv;
+			}
+
+			return rv;
 		}
 		else {
-			throw new IllegalArgumentException("Negative values are not allowed for dimensions");
+			return new Dimension2D(pX, pY);
 		}
 	}
 
 
 	/**
-	 * Set the dimensions to new values
+	 * Construct a new Dimension2D object with the provided size. Use
+	 * {@link #valueOf(int, int)} to obtain shared objects.
 	 *
 	 * @param pX Horizontal dimension, must be 0 or greater
 	 * @param pY Vertical dimension, must be 0 or greater
 	 */
-	public void set(int pX, int pY) {
+	public Dimension2D(int pX, int pY) {
 		if(pX >= 0 && pY >= 0) {
 			x = pX;
 			y = pY;
@@ -93,13 +112,11 @@ public class Dimension2D implements IJSON {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("x", x);
-		rv.put("y", y);
-
-		return rv;
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+		pWriter.beginObject();
+		pWriter.key("x").value(x);
+		pWriter.key("y").value(y);
+		pWriter.endObject();
 	}
 
 
@@ -19,17 +19,21 @@
 
 package de.decoit.visa;
 
+import java.io.IOException;
 import java.util.Comparator;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.concurrent.ConcurrentHashMap;
 import de.decoit.visa.interfaces.IJSON;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
  * This class represents a position on a two dimensional coordinate grid. By
  * using the member class CoordinateRange it can be limited to accept only
  * coordinates inside the set ranges. It provides member Comparator classes for
- * comparison of X and Y coordinates.
+ * comparison of X and Y coordinates.<br>
+ * <br>
+ * Coordinate ranges are immutable and shared between all positions using the
+ * same limits, so limited positions do not carry their own range objects.
  *
  * @author Thomas Rix
  */
@@ -65,7 +69,7 @@ public class Position2D implements IJSON {
 	public Position2D(int pX, int pY, Dimension2D pGridDim) {
 		// Grid dimension - 1 is necessary since pGridDim contains numbers of
 		// rows/cols but we start counting at 0
-		this(pX, pY, new CoordinateRange(0, pGridDim.getX() - 1), new CoordinateRange(0, pGridDim.getY() - 1));
+		this(pX, pY, CoordinateRange.valueOf(0, pGridDim.getX() - 1), CoordinateRange.valueOf(0, pGridDim.getY() - 1));
 	}
 
 
@@ -149,19 +153,19 @@ public class Position2D implements IJSON {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("x", x);
-		rv.put("y", y);
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+		pWriter.beginObject();
+		pWriter.key("x").value(x);
+		pWriter.key("y").value(y);
 		if(rangeX != null) {
-			rv.put("rangeX", rangeX.toJSON());
+			pWriter.key("rangeX");
+			rangeX.writeJSON(pWriter);
 		}
 		if(rangeY != null) {
-			rv.put("rangeY", rangeY.toJSON());
+			pWriter.key("rangeY");
+			rangeY.writeJSON(pWriter);
 		}
-
-		return rv;
+		pWriter.endObject();
 	}
 
 
@@ -201,8 +205,35 @@ public class Position2D implements IJSON {
 	 * @author Thomas Rix
 	 */
 	private static class CoordinateRange implements IJSON {
-		private int minValue;
-		private int maxValue;
+		private static final ConcurrentHashMap<Long, CoordinateRange> cache = new ConcurrentHashMap<>();
+
+		private final int minValue;
+		private final int maxValue;
+
+
+		/**
+		 * Return a shared object with the provided limits. The same rules as
+		 * for the constructor apply.
+		 *
+		 * @param pMin Minimum allowed value
+		 * @param pMax Maximum allowed value
+		 * @return Coordinate range with the provided limits
+		 */
+		private static CoordinateRange valueOf(int pMin, int pMax) {
+			Long key = ((long) pMin << 32) | (pMax & 0xFFFFFFFFL);
+
+			CoordinateRange rv = cache.get(key);
+			if(rv == null) {
+				rv = new CoordinateRange(pMin, pMax);
+
+				CoordinateRange existing = cache.putIfAbsent(key, rv);
+				if(existing != null) {
+					rv = existing;
+				}
+			}
+
+			return rv;
+		}
 
 
 		/**
@@ -238,13 +269,11 @@ public class Position2D implements IJSON {
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
-
-			rv.put("min", minValue);
-			rv.put("max", maxValue);
-
-			return rv;
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+			pWriter.beginObject();
+			pWriter.key("min").value(minValue);
+			pWriter.key("max").value(maxValue);
+			pWriter.endObject();
 		}
 
 
@@ -21,19 +21,30 @@ package de.decoit.visa;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.Set;
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
+import de.decoit.visa.gridlayout.Graphviz;
+import de.decoit.visa.gridlayout.GridLayout;
 import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.http.ajax.EventBroadcaster;
+import de.decoit.visa.http.ajax.MetricsFilter;
 import de.decoit.visa.http.ajax.ModificationQueue;
 import de.decoit.visa.ioconnector.IOConnector;
 import de.decoit.visa.ioconnector.IOToolException;
+import de.decoit.visa.metrics.MetricsRegistry;
 import de.decoit.visa.rdf.RDFManager;
 import de.decoit.visa.rdf.RDFSourceException;
+import de.decoit.visa.session.SessionRegistry;
 import de.decoit.visa.topology.TopologyStorage;
 import de.decoit.visa.topology.VLAN;
 
@@ -47,18 +58,25 @@ import de.decoit.visa.topology.VLAN;
  */
 public class TEBackend {
 	/**
-	 * Global instance of the TopologyStorage
+	 * Global registry of topology sessions
 	 */
-	public static TopologyStorage TOPOLOGY_STORAGE;
+	public static SessionRegistry SESSION_REGISTRY;
 
 	/**
-	 * Global instance of the RDFManager
+	 * Global broadcaster for server-sent events
 	 */
-	public static RDFManager RDF_MANAGER;
+	public static EventBroadcaster EVENT_BROADCASTER;
+
+	/**
+	 * Global registry of metrics
+	 */
+	public static final MetricsRegistry METRICS = new MetricsRegistry();
 
 	private static final int MB = 1024 * 1024;
 
 	private static AJAXServer ajaxServer;
+	private static TopologyStorage topologyStorage;
+	private static RDFManager rdfManager;
 	private static Logger log;
 	private static Path exportPath;
 	private static Path importPath;
@@ -67,7 +85,14 @@ public class TEBackend {
 	private static int componentMargin;
 	private static String version = "GitHub Release 1";
 	private static String tdbStorage = "tdb";
-	private static IOConnector ioConn;
+	private static String sessionStorage = "sessions";
+	private static Path metricsFile;
+	private static String layoutEngine = GridLayout.ENGINE_GRAPHVIZ;
+	private static int layoutTimeout = 30;
+	private static int fdpNodes = 100;
+	private static int sfdpNodes = 1000;
+	private static int sfdpEdges = 3000;
+	private static volatile IOConnector ioConn;
 
 
 	/**
@@ -89,6 +114,18 @@ public class TEBackend {
 			// Default port for AJAX server is 8080
 			int serverPort = 8080;
 
+			// By default 8 sessions are kept in memory, idle sessions are
+			// evicted after 30 minutes, at most 256 sessions are stored
+			int maxSessions = 8;
+			int sessionLimit = 256;
+			int sessionTimeout = 30;
+
+			// Number of threads processing short AJAX requests
+			int requestThreads = 8;
+
+			// Number of log events buffered for asynchronous logging
+			int logBuffer = 1024;
+
 			String sslKeyStore = null;
 			String sslKeyStorePWD = null;
 			String sslTrustStore = null;
@@ -126,6 +163,51 @@ public class TEBackend {
 					case "--port":
 						serverPort = Integer.valueOf(args[++i]);
 						break;
+					// Session limit switches
+					case "--maxsessions":
+						maxSessions = Integer.valueOf(args[++i]);
+						break;
+					case "--sessiontimeout":
+						sessionTimeout = Integer.valueOf(args[++i]);
+						break;
+					case "--sessionlimit":
+						sessionLimit = Integer.valueOf(args[++i]);
+						break;
+					// Request thread pool size switch
+					case "--threads":
+						requestThreads = Integer.valueOf(args[++i]);
+						break;
+					// Asynchronous logging buffer switch
+					case "--logbuffer":
+						logBuffer = Integer.valueOf(args[++i]);
+						break;
+					// Metrics snapshot file switch
+					case "--metricsfile":
+						metricsFile = Paths.get(args[++i]);
+						break;
+					// Layout engine switch
+					case "--layout":
+						layoutEngine = args[++i];
+						if(!layoutEngine.equals(GridLayout.ENGINE_GRAPHVIZ) && !layoutEngine.equals(GridLayout.ENGINE_JAVA)) {
+							System.out.println("Unknown layout engine: " + layoutEngine);
+							System.out.println();
+							printHelp = true;
+						}
+						break;
+					// Layout time budget switch
+					case "--layouttimeout":
+						layoutTimeout = Integer.valueOf(args[++i]);
+						break;
+					// Layout engine selection thresholds
+					case "--fdpnodes":
+						fdpNodes = Integer.valueOf(args[++i]);
+						break;
+					case "--sfdpnodes":
+						sfdpNodes = Integer.valueOf(args[++i]);
+						break;
+					case "--sfdpedges":
+						sfdpEdges = Integer.valueOf(args[++i]);
+						break;
 					// Print version switch
 					case "-v":
 					case "--version":
@@ -143,6 +225,16 @@ public class TEBackend {
 				missingSSL = true;
 			}
 
+			if(fdpNodes < 0 || sfdpNodes < fdpNodes || sfdpEdges < 0) {
+				System.out.println("Invalid layout engine thresholds: fdp " + fdpNodes + " nodes, sfdp " + sfdpNodes + " nodes or " + sfdpEdges + " edges");
+				System.out.println();
+				printHelp = true;
+			}
+
+			if(logBuffer > 0) {
+				enableAsyncLogging(logBuffer);
+			}
+
 			if(printHelp) {
 				System.out.println("Usage information");
 				System.out.println("Command line switches:");
@@ -151,6 +243,17 @@ public class TEBackend {
 				System.out.println("--ssltrust [path]\tSpecify [path] to SSL truststore file");
 				System.out.println("--ssltrustp [pwd]\tUse password [pwd] to access SSL truststore");
 				System.out.println("-p [port],--port [port]\tAJAX server will listen on [port]");
+				System.out.println("--threads [n]\t\tProcess AJAX requests with [n] threads (default: 8)");
+				System.out.println("--maxsessions [n]\tKeep at most [n] topology sessions in memory (default: 8)");
+				System.out.println("--sessiontimeout [min]\tEvict sessions idle for [min] minutes, 0 to disable (default: 30)");
+				System.out.println("--sessionlimit [n]\tStore at most [n] topology sessions, the least recently used evicted sessions are deleted (default: 256)");
+				System.out.println("--metricsfile [path]\tWrite metrics snapshots to [path], a snapshot is written on shutdown");
+				System.out.println("--logbuffer [n]\t\tBuffer up to [n] log events for asynchronous logging, 0 to log synchronously (default: 1024)");
+				System.out.println("--layout [engine]\tLayout topologies with [engine]: graphviz or java (default: graphviz)");
+				System.out.println("--layouttimeout [s]\tAbort graphviz or java layouts after [s] seconds and use a fallback layout, 0 to disable (default: 30)");
+				System.out.println("--fdpnodes [n]\t\tUse fdp instead of neato for graphs with more than [n] nodes (default: 100)");
+				System.out.println("--sfdpnodes [n]\t\tUse sfdp for unpinned graphs with more than [n] nodes (default: 1000)");
+				System.out.println("--sfdpedges [n]\t\tUse sfdp for unpinned graphs with more than [n] edges (default: 3000)");
 				System.out.println();
 				System.out.println("-v,--version\t\tPrint version information");
 				System.out.println("-h,--help\t\tPrint this message");
@@ -183,16 +286,26 @@ public class TEBackend {
 
 				ioConn = null;
 
-				TEBackend.TOPOLOGY_STORAGE = TopologyStorage.getInstance();
-				TEBackend.RDF_MANAGER = new RDFManager(tdbStorage);
+				TEBackend.topologyStorage = TopologyStorage.getInstance();
+				TEBackend.rdfManager = new RDFManager(tdbStorage);
 
-				TEBackend.RDF_MANAGER.createEmptyModel("VISA Default Model");
+				TEBackend.rdfManager.createEmptyModel("VISA Default Model");
 
 				if(log.isInfoEnabled()) {
 					log.info("Created empty RDF model");
 				}
 
-				TEBackend.ajaxServer = new AJAXServer(serverPort);
+				TEBackend.SESSION_REGISTRY = new SessionRegistry(TEBackend.topologyStorage, TEBackend.rdfManager, tdbStorage, Paths.get(sessionStorage), maxSessions, sessionLimit, sessionTimeout * 60000L);
+
+				TEBackend.EVENT_BROADCASTER = new EventBroadcaster();
+
+				// Locate graphviz once and check that it works, problems are
+				// reported in the log file
+				if(layoutEngine.equals(GridLayout.ENGINE_GRAPHVIZ)) {
+					Graphviz.healthCheck();
+				}
+
+				TEBackend.ajaxServer = new AJAXServer(serverPort, requestThreads);
 				ajaxServer.run();
 			}
 		}
@@ -225,6 +338,60 @@ public class TEBackend {
 	}
 
 
+	/**
+	 * Move the appenders of the backend logger and the access log to
+	 * asynchronous appenders. Log events are stored in a bounded buffer and
+	 * written by a separate thread, so request threads do not wait for log
+	 * I/O. If the buffer is full, further events are discarded and a summary
+	 * of the discarded events is logged instead. The buffer is flushed when
+	 * the JVM terminates.
+	 *
+	 * @param pBufferSize Maximum number of buffered events per logger
+	 */
+	private static void enableAsyncLogging(int pBufferSize) {
+		for(String name : new String[] { "de.decoit", MetricsFilter.ACCESS_LOGGER }) {
+			Logger logger = Logger.getLogger(name);
+
+			ArrayList<Appender> appenders = new ArrayList<>();
+			Enumeration<?> it = logger.getAllAppenders();
+			while(it.hasMoreElements()) {
+				appenders.add((Appender) it.nextElement());
+			}
+
+			if(!appenders.isEmpty()) {
+				AsyncAppender async = new AsyncAppender();
+				async.setName(name + ".async");
+				async.setBufferSize(pBufferSize);
+
+				// Discard events instead of blocking the request threads
+				async.setBlocking(false);
+
+				for(Appender a : appenders) {
+					// removeAllAppenders() would close the appenders
+					logger.removeAppender(a);
+					async.addAppender(a);
+				}
+
+				logger.addAppender(async);
+			}
+		}
+
+		// Write the buffered events before the JVM terminates
+		Runtime.getRuntime().addShutdownHook(new Thread("log-shutdown") {
+			@Override
+			public void run() {
+				LogManager.shutdown();
+			}
+		});
+
+		if(log.isInfoEnabled()) {
+			StringBuilder sb = new StringBuilder("Asynchronous logging enabled, buffer size: ");
+			sb.append(pBufferSize);
+			log.info(sb.toString());
+		}
+	}
+
+
 	/**
 	 * Remove all information stored in the backend. After completion of this
 	 * method the backend will be in a state as if it was just started.
@@ -236,10 +403,10 @@ public class TEBackend {
 			log.info("Backend reset (clear) requested");
 		}
 
-		TEBackend.TOPOLOGY_STORAGE.clear();
+		TEBackend.getTopologyStorage().clear();
 		VLAN.resetColorChooser();
 
-		TEBackend.RDF_MANAGER.createEmptyModel("VISA Default Model");
+		TEBackend.getRDFManager().createEmptyModel("VISA Default Model");
 
 		if(log.isInfoEnabled()) {
 			log.info("Backend reset (clear) successful");
@@ -259,10 +426,10 @@ public class TEBackend {
 			log.info("Backend reset (restore) requested");
 		}
 
-		TEBackend.TOPOLOGY_STORAGE.clear();
+		TEBackend.getTopologyStorage().clear();
 		VLAN.resetColorChooser();
 
-		TEBackend.RDF_MANAGER.restore(pState);
+		TEBackend.getRDFManager().restore(pState);
 
 		if(log.isInfoEnabled()) {
 			log.info("Backend reset (restore) successful");
@@ -288,7 +455,27 @@ public class TEBackend {
 			TEBackend.ajaxServer.shutdown();
 		}
 
-		RDF_MANAGER.close();
+		// Close the connections of all event subscribers
+		if(EVENT_BROADCASTER != null) {
+			EVENT_BROADCASTER.close();
+		}
+
+		if(metricsFile != null) {
+			try {
+				METRICS.writeSnapshot(metricsFile);
+			}
+			catch(IOException ex) {
+				TEBackend.logException(ex, log);
+			}
+		}
+
+		// Close all topology sessions, this includes the default session
+		if(SESSION_REGISTRY != null) {
+			SESSION_REGISTRY.close();
+		}
+		else {
+			rdfManager.close();
+		}
 
 		if(log.isInfoEnabled()) {
 			log.info("Backend terminated by stopBackend call");
@@ -334,6 +521,71 @@ public class TEBackend {
 	}
 
 
+	/**
+	 * Return the path of the metrics snapshot file
+	 *
+	 * @return Path of the snapshot file, null if no file was specified
+	 */
+	public static Path getMetricsFile() {
+		return metricsFile;
+	}
+
+
+	/**
+	 * Return the name of the layout engine used for topology layouts
+	 *
+	 * @return {@link GridLayout#ENGINE_GRAPHVIZ} or
+	 *         {@link GridLayout#ENGINE_JAVA}
+	 */
+	public static String getLayoutEngine() {
+		return layoutEngine;
+	}
+
+
+	/**
+	 * Return the time budget of a single graphviz run or java layout. If
+	 * graphviz exceeds it, the process is killed and a fallback layout is
+	 * used. The java engine aborts its calculation and uses the fallback
+	 * layout as well.
+	 *
+	 * @return Time budget in seconds, 0 if layouts are not limited
+	 */
+	public static int getLayoutTimeout() {
+		return layoutTimeout;
+	}
+
+
+	/**
+	 * Return the number of nodes above which graphviz layouts use fdp instead
+	 * of neato
+	 *
+	 * @return Number of nodes
+	 */
+	public static int getFdpNodeThreshold() {
+		return fdpNodes;
+	}
+
+
+	/**
+	 * Return the number of nodes above which graphviz layouts use sfdp
+	 *
+	 * @return Number of nodes
+	 */
+	public static int getSfdpNodeThreshold() {
+		return sfdpNodes;
+	}
+
+
+	/**
+	 * Return the number of edges above which graphviz layouts use sfdp
+	 *
+	 * @return Number of edges
+	 */
+	public static int getSfdpEdgeThreshold() {
+		return sfdpEdges;
+	}
+
+
 	/**
 	 * Set the import path for RDF/XML files
 	 *
@@ -379,7 +631,7 @@ public class TEBackend {
 	 * @param pY Vertical dimension (number of grid cells)
 	 */
 	public static void setGridDimensions(int pX, int pY) {
-		gridDimensions = new Dimension2D(pX, pY);
+		gridDimensions = Dimension2D.valueOf(pX, pY);
 
 		if(log.isDebugEnabled()) {
 			StringBuilder sb = new StringBuilder("Grid dimensions set: x=");
@@ -519,14 +771,49 @@ public class TEBackend {
 
 
 	/**
-	 * Wrapper to get a ModificationQueue from the AJAXServer. Prevents direct
-	 * access to the AJAXServer from the outside.
+	 * Return the TopologyStorage of the topology session bound to the calling
+	 * thread, see {@link SessionRegistry#bind(String)}. If the thread has not
+	 * bound a session, the storage of the default session is returned.
+	 *
+	 * @return The TopologyStorage of the bound session
+	 */
+	public static TopologyStorage getTopologyStorage() {
+		if(SESSION_REGISTRY != null) {
+			return SESSION_REGISTRY.getActiveSession().getStorage();
+		}
+		else {
+			return topologyStorage;
+		}
+	}
+
+
+	/**
+	 * Return the RDFManager of the topology session bound to the calling
+	 * thread, see {@link SessionRegistry#bind(String)}. If the thread has not
+	 * bound a session, the RDF manager of the default session is returned.
+	 *
+	 * @return The RDFManager of the bound session
+	 */
+	public static RDFManager getRDFManager() {
+		if(SESSION_REGISTRY != null) {
+			return SESSION_REGISTRY.getActiveSession().getRDFManager();
+		}
+		else {
+			return rdfManager;
+		}
+	}
+
+
+	/**
+	 * Wrapper to get a ModificationQueue of the currently bound topology
+	 * session. Queues are stored per session, so identical queue IDs of
+	 * different sessions do not interfere.
 	 *
 	 * @param pQueueID ID for this queue
 	 * @return A modification queue using the provided values as target
 	 */
 	public static ModificationQueue getModificationQueue(String pQueueID) {
-		return ajaxServer.getModificationQueue(pQueueID);
+		return SESSION_REGISTRY.getActiveSession().getModificationQueue(pQueueID);
 	}
 
 
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.enums;
+
+/**
+ * This enumeration classifies the AJAX endpoints by the way their requests are
+ * executed. It defines whether a request runs on the request thread pool or on
+ * the thread for long running requests, and whether the topology session of
+ * the request is bound while it runs.<br>
+ * <br>
+ * Long running requests are subject to admission control: each long running
+ * class has its own threads, limited by the maximum number of concurrently
+ * running requests, and a queue limited by the maximum number of waiting
+ * requests. Requests exceeding both limits are rejected immediately, see
+ * {@link de.decoit.visa.http.ajax.DispatchFilter DispatchFilter}.<br>
+ * <br>
+ * The topology session is bound after a request was dispatched, so waiting
+ * requests do not hold any lock. A running request only locks its own
+ * session, short requests of other sessions are not delayed by it.
+ *
+ * @author Thomas Rix
+ * @see de.decoit.visa.http.ajax.AJAXServer AJAXServer
+ */
+public enum RequestClass {
+	/**
+	 * Short request working on the topology session
+	 */
+	STANDARD(false, true, 0, 0),
+
+	/**
+	 * Short request which does not access the topology session, for example
+	 * changes of global settings
+	 */
+	GLOBAL(false, false, 0, 0),
+
+	/**
+	 * Long running request working on the topology session, for example RDF
+	 * imports. While it runs, other requests of the same session wait for it.
+	 */
+	LONG_RUNNING(true, true, 1, 4),
+
+	/**
+	 * Long running request which only communicates with the IO-Tool and does
+	 * not access the topology session
+	 */
+	IOTOOL(true, false, 1, 8);
+
+	private boolean longRunning;
+	private boolean sessionBound;
+	private int maxActive;
+	private int maxQueued;
+
+
+	/**
+	 * Construct a new request class
+	 *
+	 * @param pLongRunning Run on the thread for long running requests
+	 * @param pSessionBound Bind the topology session while the request runs
+	 * @param pMaxActive Maximum number of concurrently running requests, only
+	 *            used for long running requests
+	 * @param pMaxQueued Maximum number of requests waiting for execution, only
+	 *            used for long running requests
+	 */
+	private RequestClass(boolean pLongRunning, boolean pSessionBound, int pMaxActive, int pMaxQueued) {
+		longRunning = pLongRunning;
+		sessionBound = pSessionBound;
+		maxActive = pMaxActive;
+		maxQueued = pMaxQueued;
+	}
+
+
+	/**
+	 * Return whether requests of this class run on the thread for long
+	 * running requests
+	 *
+	 * @return true for long running requests, false otherwise
+	 */
+	public boolean isLongRunning() {
+		return longRunning;
+	}
+
+
+	/**
+	 * Return whether the topology session is bound while requests of this
+	 * class run
+	 *
+	 * @return true if the session is bound, false otherwise
+	 */
+	public boolean isSessionBound() {
+		return sessionBound;
+	}
+
+
+	/**
+	 * Return the maximum number of concurrently running requests of this
+	 * class. Only used for long running requests.
+	 *
+	 * @return Maximum number of running requests
+	 */
+	public int getMaxActive() {
+		return maxActive;
+	}
+
+
+	/**
+	 * Return the maximum number of requests of this class waiting for
+	 * execution. Only used for long running requests.
+	 *
+	 * @return Maximum number of waiting requests
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+}
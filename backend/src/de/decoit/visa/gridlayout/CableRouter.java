@@ -0,0 +1,266 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
+import de.decoit.visa.enums.PortOrientation;
+
+
+/**
+ * This class routes the cables of one editor grid. It uses the same
+ * Mikami-Tabuchi line search as the path finder of the frontend, so the
+ * frontend can draw the calculated paths instead of searching them itself.<br>
+ * <br>
+ * Obstacles and cables are registered on the thread which owns the topology.
+ * {@link #route()} does not access the topology, so the cables of independent
+ * grids can be routed concurrently on other threads. Cables are routed one
+ * after another in the order of their IDs because every routed cable restricts
+ * the cells usable by the following cables.<br>
+ * <br>
+ * If the current path of a cable is provided and it is still valid (it starts
+ * and ends at the ports of the cable and does not cross any obstacle), the
+ * path is kept. Only cables whose ends or surroundings have changed are routed
+ * again.
+ *
+ * @author Thomas Rix
+ */
+public class CableRouter {
+	private Dimension2D gridDimensions;
+	private RoutingGrid grid;
+	private TreeMap<String, Cable> cables;
+	private HashMap<String, LinkedList<Position2D>> paths;
+	private int keptCount;
+	private int routedCount;
+	private int failedCount;
+
+
+	/**
+	 * Construct a new router for a grid without obstacles and cables
+	 *
+	 * @param pGridDimensions Dimensions of the grid
+	 */
+	public CableRouter(Dimension2D pGridDimensions) {
+		if(pGridDimensions == null) {
+			throw new NullPointerException("NULL pointer for grid dimensions provided");
+		}
+
+		gridDimensions = pGridDimensions;
+		grid = new RoutingGrid(pGridDimensions);
+		cables = new TreeMap<>();
+		paths = new HashMap<>();
+	}
+
+
+	/**
+	 * Add an object of the grid as obstacle. Cables will not be routed through
+	 * the object and its margin, except for the ports of the cable itself.
+	 *
+	 * @param pLocation Location of the upper left corner of the object
+	 * @param pDimensions Dimensions of the object
+	 * @param pMargin Margin around the object, in cells
+	 */
+	public void addObstacle(Position2D pLocation, Dimension2D pDimensions, int pMargin) {
+		if(pMargin < 0) {
+			throw new IllegalArgumentException("Negative margin provided");
+		}
+
+		grid.addObstacle(pLocation.getX() - pMargin, pLocation.getY() - pMargin, pLocation.getX() + pDimensions.getX() + pMargin, pLocation.getY() + pDimensions.getY() + pMargin);
+	}
+
+
+	/**
+	 * Add a cable which will be routed by {@link #route()}
+	 *
+	 * @param pID ID of the cable
+	 * @param pStart Location of the port at the start of the cable
+	 * @param pStartOrientation Orientation of the port at the start
+	 * @param pEnd Location of the port at the end of the cable
+	 * @param pEndOrientation Orientation of the port at the end
+	 * @param pCurrentPath Current path of the cable, may be null
+	 */
+	public void addCable(String pID, Position2D pStart, PortOrientation pStartOrientation, Position2D pEnd, PortOrientation pEndOrientation, List<Position2D> pCurrentPath) {
+		if(pID == null || pStart == null || pStartOrientation == null || pEnd == null || pEndOrientation == null) {
+			throw new NullPointerException("NULL pointer for cable information provided");
+		}
+
+		Cable c = new Cable();
+		c.start = grid.index(pStart.getX(), pStart.getY());
+		c.end = grid.index(pEnd.getX(), pEnd.getY());
+
+		if(c.start == -1 || c.end == -1) {
+			throw new IllegalArgumentException("Port of cable '" + pID + "' is located outside the grid");
+		}
+
+		// The port cells and the cells in front of the ports are located in
+		// the margins of the components, release them for this cable
+		c.freeCells = new int[] { c.start, outerCell(pStart, pStartOrientation), c.end, outerCell(pEnd, pEndOrientation) };
+
+		if(pCurrentPath != null) {
+			c.currentPath = new ArrayList<>(pCurrentPath);
+		}
+
+		cables.put(pID, c);
+	}
+
+
+	/**
+	 * Route all cables added to this router. Valid current paths are kept,
+	 * all other cables are routed afterwards.
+	 */
+	public synchronized void route() {
+		keptCount = 0;
+		routedCount = 0;
+		failedCount = 0;
+		paths.clear();
+
+		// Keep valid paths first, they must be known as restrictions before
+		// new paths are searched
+		ArrayList<Map.Entry<String, Cable>> unrouted = new ArrayList<>();
+		for(Map.Entry<String, Cable> entry : cables.entrySet()) {
+			Cable c = entry.getValue();
+			grid.setFreeCells(c.freeCells);
+
+			if(grid.isValidPath(c.currentPath, c.start, c.end)) {
+				grid.addPath(c.currentPath);
+				keptCount++;
+			}
+			else {
+				unrouted.add(entry);
+			}
+		}
+
+		MikamiTabuchi finder = new MikamiTabuchi(grid);
+		for(Map.Entry<String, Cable> entry : unrouted) {
+			Cable c = entry.getValue();
+			grid.setFreeCells(c.freeCells);
+
+			LinkedList<Position2D> path = null;
+			if(c.start != c.end) {
+				path = finder.findPath(c.start, c.end, gridDimensions);
+			}
+
+			if(path != null) {
+				grid.addPath(path);
+				paths.put(entry.getKey(), path);
+				routedCount++;
+			}
+			else {
+				failedCount++;
+			}
+		}
+
+		grid.setFreeCells(new int[0]);
+	}
+
+
+	/**
+	 * Return the path calculated for a cable by the last call of
+	 * {@link #route()}
+	 *
+	 * @param pID ID of the cable
+	 * @return Corners of the new path including both ports, null if the
+	 *         current path was kept or no path was found
+	 */
+	public synchronized LinkedList<Position2D> getPath(String pID) {
+		return paths.get(pID);
+	}
+
+
+	/**
+	 * Return the IDs of all cables which received a new path by the last
+	 * call of {@link #route()}
+	 *
+	 * @return List of cable IDs
+	 */
+	public synchronized List<String> getRoutedCables() {
+		return new ArrayList<>(paths.keySet());
+	}
+
+
+	/**
+	 * Return the number of cables whose current path was kept
+	 *
+	 * @return Number of cables
+	 */
+	public synchronized int getKeptCount() {
+		return keptCount;
+	}
+
+
+	/**
+	 * Return the number of cables which received a new path
+	 *
+	 * @return Number of cables
+	 */
+	public synchronized int getRoutedCount() {
+		return routedCount;
+	}
+
+
+	/**
+	 * Return the number of cables for which no path was found
+	 *
+	 * @return Number of cables
+	 */
+	public synchronized int getFailedCount() {
+		return failedCount;
+	}
+
+
+	/**
+	 * Return the index of the cell in front of a port
+	 *
+	 * @param pPort Location of the port
+	 * @param pOrientation Orientation of the port
+	 * @return Index of the cell, -1 if it is located outside the grid
+	 */
+	private int outerCell(Position2D pPort, PortOrientation pOrientation) {
+		switch(pOrientation) {
+			case TOP:
+				return grid.index(pPort.getX(), pPort.getY() - 1);
+			case BOTTOM:
+				return grid.index(pPort.getX(), pPort.getY() + 1);
+			case LEFT:
+				return grid.index(pPort.getX() - 1, pPort.getY());
+			case RIGHT:
+				return grid.index(pPort.getX() + 1, pPort.getY());
+			default:
+				throw new IllegalArgumentException("Unknown port orientation provided");
+		}
+	}
+
+
+	/**
+	 * Information about a cable which is required for routing
+	 */
+	private static class Cable {
+		private int start;
+		private int end;
+		private int[] freeCells;
+		private List<Position2D> currentPath;
+	}
+}
@@ -0,0 +1,504 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.apache.log4j.Logger;
+import de.decoit.visa.Dimension2D;
+
+
+/**
+ * This class calculates the positions of the nodes of a {@link LayoutGraph}
+ * without calling an external program. It uses a force-directed algorithm in
+ * the style of Fruchterman and Reingold: connected nodes attract each other,
+ * all nodes repel each other and the maximum movement per iteration decreases
+ * until the layout is stable. Pinned nodes are never moved, equivalent to the
+ * pin="true" attribute of graphviz.<br>
+ * <br>
+ * After the simulation, the centers of all nodes are snapped to the grid and
+ * remaining overlaps are removed by pushing overlapping nodes apart along the
+ * axis with the smaller overlap. All nodes are kept inside the grid.<br>
+ * <br>
+ * The layout is deterministic: the same graph always results in the same
+ * positions.<br>
+ * <br>
+ * The simulation and the overlap removal take quadratic time per iteration.
+ * If a time budget is provided, the layout is aborted when it is exceeded,
+ * the caller then has to place the nodes by another engine.
+ *
+ * @author Thomas Rix
+ */
+class ForceDirectedLayout {
+	private static Logger log = Logger.getLogger(ForceDirectedLayout.class.getName());
+
+	// Preferred free space between connected nodes, equivalent to the edge
+	// length used for graphviz
+	private static final double EDGE_LENGTH = 5.0;
+
+	// Minimum free space between nodes after overlap removal
+	private static final int NODE_SPACING = 1;
+
+	private static final int ITERATIONS = 300;
+	private static final int MAX_OVERLAP_PASSES = 100;
+	private static final double MIN_DISTANCE = 0.01;
+	private static final long SEED = 0x56495341L;
+
+	private LayoutGraph graph;
+	private Dimension2D gridDimensions;
+	private LayoutGraph.Node[] nodes;
+	private int[][] adjacency;
+	private double[] radius;
+	private long timeout;
+	private long deadline;
+
+
+	/**
+	 * Construct a new layout for the provided graph
+	 *
+	 * @param pGraph The graph to layout, cannot be null
+	 * @param pTimeout Time budget in milliseconds, 0 if the layout is not
+	 *            limited
+	 */
+	ForceDirectedLayout(LayoutGraph pGraph, long pTimeout) {
+		if(pGraph == null) {
+			throw new NullPointerException("NULL pointer for graph provided");
+		}
+
+		if(pTimeout < 0) {
+			throw new IllegalArgumentException("Negative time budget provided");
+		}
+
+		graph = pGraph;
+		gridDimensions = pGraph.getGridDimensions();
+		timeout = pTimeout;
+	}
+
+
+	/**
+	 * Calculate the positions of all unpinned nodes and store them in the
+	 * nodes of the graph. If the time budget is exceeded, the calculation is
+	 * aborted and the positions of the unpinned nodes are undefined.
+	 *
+	 * @return true if the layout was completed, false if the time budget was
+	 *         exceeded
+	 */
+	boolean run() {
+		deadline = System.nanoTime() + timeout * 1000000L;
+
+		// Sort the nodes by name, the topology does not provide them in a
+		// stable order
+		nodes = graph.getNodes().toArray(new LayoutGraph.Node[0]);
+		Arrays.sort(nodes, new Comparator<LayoutGraph.Node>() {
+			@Override
+			public int compare(LayoutGraph.Node pFirst, LayoutGraph.Node pSecond) {
+				return pFirst.getName().compareTo(pSecond.getName());
+			}
+		});
+
+		radius = new double[nodes.length];
+
+		boolean free = false;
+		for(int i = 0; i < nodes.length; i++) {
+			radius[i] = Math.max(nodes[i].getWidth(), nodes[i].getHeight()) / 2.0;
+			free = free || !nodes[i].isPinned();
+		}
+
+		// Nothing to do if all nodes have fixed positions
+		if(!free) {
+			return true;
+		}
+
+		createAdjacency();
+
+		Random random = new Random(SEED);
+
+		placeInitial(random);
+		if(!simulate(random)) {
+			return false;
+		}
+		snapToGrid();
+		if(!removeOverlaps()) {
+			return false;
+		}
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Force-directed layout finished: ");
+			sb.append(nodes.length);
+			sb.append(" nodes");
+			log.debug(sb.toString());
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Check if the time budget of the layout is exceeded
+	 *
+	 * @return true if the budget is exceeded, false if there is time left or
+	 *         the layout is not limited
+	 */
+	private boolean isExpired() {
+		return timeout > 0 && System.nanoTime() - deadline > 0;
+	}
+
+
+	/**
+	 * Create the adjacency lists of the nodes from the edges of the graph.
+	 * Edges to unknown nodes are ignored.
+	 */
+	private void createAdjacency() {
+		HashMap<String, Integer> index = new HashMap<>();
+		for(int i = 0; i < nodes.length; i++) {
+			index.put(nodes[i].getName(), i);
+		}
+
+		List<List<Integer>> lists = new ArrayList<>(nodes.length);
+		for(int i = 0; i < nodes.length; i++) {
+			lists.add(new ArrayList<Integer>());
+		}
+
+		for(LayoutGraph.Edge e : graph.getEdges()) {
+			Integer from = index.get(e.getFrom());
+			Integer to = index.get(e.getTo());
+
+			if(from != null && to != null && !from.equals(to)) {
+				lists.get(from).add(to);
+				lists.get(to).add(from);
+			}
+		}
+
+		adjacency = new int[nodes.length][];
+		for(int i = 0; i < nodes.length; i++) {
+			List<Integer> l = lists.get(i);
+
+			adjacency[i] = new int[l.size()];
+			for(int j = 0; j < l.size(); j++) {
+				adjacency[i][j] = l.get(j);
+			}
+			Arrays.sort(adjacency[i]);
+		}
+	}
+
+
+	/**
+	 * Set the start positions of the unpinned nodes. Nodes connected to pinned
+	 * nodes start near the center of their pinned neighbors, all other nodes
+	 * are distributed on a circle around the center of the grid.
+	 *
+	 * @param pRandom Random number generator for small displacements
+	 */
+	private void placeInitial(Random pRandom) {
+		double centerX = gridDimensions.getX() / 2.0;
+		double centerY = gridDimensions.getY() / 2.0;
+		double circle = Math.min(centerX, centerY) / 2.0;
+
+		int freeCount = 0;
+		for(LayoutGraph.Node n : nodes) {
+			if(!n.isPinned()) {
+				freeCount++;
+			}
+		}
+
+		int k = 0;
+		for(int i = 0; i < nodes.length; i++) {
+			if(!nodes[i].isPinned()) {
+				double sumX = 0.0;
+				double sumY = 0.0;
+				int pinnedNeighbors = 0;
+
+				for(int j : adjacency[i]) {
+					if(nodes[j].isPinned()) {
+						sumX += nodes[j].getX();
+						sumY += nodes[j].getY();
+						pinnedNeighbors++;
+					}
+				}
+
+				double x;
+				double y;
+				if(pinnedNeighbors > 0) {
+					x = sumX / pinnedNeighbors + (pRandom.nextDouble() - 0.5) * EDGE_LENGTH;
+					y = sumY / pinnedNeighbors + (pRandom.nextDouble() - 0.5) * EDGE_LENGTH;
+				}
+				else {
+					double angle = 2.0 * Math.PI * k / freeCount;
+					x = centerX + circle * Math.cos(angle);
+					y = centerY + circle * Math.sin(angle);
+				}
+
+				nodes[i].setPosition(clampX(i, x), clampY(i, y));
+				k++;
+			}
+		}
+	}
+
+
+	/**
+	 * Run the force simulation. The maximum movement of a node per iteration
+	 * (temperature) decreases linearly to zero.
+	 *
+	 * @param pRandom Random number generator to separate nodes at the same
+	 *            position
+	 * @return true if the simulation finished, false if the time budget was
+	 *         exceeded
+	 */
+	private boolean simulate(Random pRandom) {
+		int count = nodes.length;
+		double[] dispX = new double[count];
+		double[] dispY = new double[count];
+		double startTemperature = Math.max(gridDimensions.getX(), gridDimensions.getY()) / 10.0;
+
+		for(int iteration = 0; iteration < ITERATIONS; iteration++) {
+			if(isExpired()) {
+				return false;
+			}
+
+			double temperature = startTemperature * (1.0 - (double) iteration / ITERATIONS);
+
+			for(int i = 0; i < count; i++) {
+				dispX[i] = 0.0;
+				dispY[i] = 0.0;
+			}
+
+			// Repulsion between all pairs of nodes, based on the free space
+			// between their bounding circles
+			for(int i = 0; i < count; i++) {
+				for(int j = i + 1; j < count; j++) {
+					if(nodes[i].isPinned() && nodes[j].isPinned()) {
+						continue;
+					}
+
+					double dx = nodes[i].getX() - nodes[j].getX();
+					double dy = nodes[i].getY() - nodes[j].getY();
+					double distance = Math.sqrt(dx * dx + dy * dy);
+
+					if(distance < MIN_DISTANCE) {
+						// Nodes at the same position, separate them in a
+						// random direction
+						double angle = pRandom.nextDouble() * 2.0 * Math.PI;
+						dx = Math.cos(angle) * MIN_DISTANCE;
+						dy = Math.sin(angle) * MIN_DISTANCE;
+						distance = MIN_DISTANCE;
+					}
+
+					double gap = Math.max(MIN_DISTANCE, distance - radius[i] - radius[j]);
+					double force = EDGE_LENGTH * EDGE_LENGTH / gap;
+
+					dispX[i] += dx / distance * force;
+					dispY[i] += dy / distance * force;
+					dispX[j] -= dx / distance * force;
+					dispY[j] -= dy / distance * force;
+				}
+			}
+
+			// Attraction between connected nodes
+			for(int i = 0; i < count; i++) {
+				for(int j : adjacency[i]) {
+					// Every edge is contained twice, process it once
+					if(j < i) {
+						continue;
+					}
+
+					double dx = nodes[i].getX() - nodes[j].getX();
+					double dy = nodes[i].getY() - nodes[j].getY();
+					double distance = Math.sqrt(dx * dx + dy * dy);
+
+					if(distance < MIN_DISTANCE) {
+						continue;
+					}
+
+					double gap = Math.max(0.0, distance - radius[i] - radius[j]);
+					double force = gap * gap / EDGE_LENGTH;
+
+					dispX[i] -= dx / distance * force;
+					dispY[i] -= dy / distance * force;
+					dispX[j] += dx / distance * force;
+					dispY[j] += dy / distance * force;
+				}
+			}
+
+			// Move the unpinned nodes, limited by the temperature
+			for(int i = 0; i < count; i++) {
+				if(!nodes[i].isPinned()) {
+					double length = Math.sqrt(dispX[i] * dispX[i] + dispY[i] * dispY[i]);
+
+					if(length > MIN_DISTANCE) {
+						double step = Math.min(length, temperature);
+
+						double x = nodes[i].getX() + dispX[i] / length * step;
+						double y = nodes[i].getY() + dispY[i] / length * step;
+
+						nodes[i].setPosition(clampX(i, x), clampY(i, y));
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Round the centers of all unpinned nodes to whole grid cells
+	 */
+	private void snapToGrid() {
+		for(int i = 0; i < nodes.length; i++) {
+			if(!nodes[i].isPinned()) {
+				nodes[i].setPosition(clampX(i, Math.round(nodes[i].getX())), clampY(i, Math.round(nodes[i].getY())));
+			}
+		}
+	}
+
+
+	/**
+	 * Push overlapping nodes apart until no overlaps remain or the maximum
+	 * number of passes is reached. Nodes are moved by whole grid cells along
+	 * the axis with the smaller overlap. If one of the nodes is pinned, only
+	 * the other one is moved.
+	 *
+	 * @return true if the overlap removal finished, false if the time budget
+	 *         was exceeded
+	 */
+	private boolean removeOverlaps() {
+		boolean moved = true;
+
+		for(int pass = 0; pass < MAX_OVERLAP_PASSES && moved; pass++) {
+			if(isExpired()) {
+				return false;
+			}
+
+			moved = false;
+
+			for(int i = 0; i < nodes.length; i++) {
+				for(int j = i + 1; j < nodes.length; j++) {
+					if(nodes[i].isPinned() && nodes[j].isPinned()) {
+						continue;
+					}
+
+					double dx = nodes[j].getX() - nodes[i].getX();
+					double dy = nodes[j].getY() - nodes[i].getY();
+
+					double overlapX = (nodes[i].getWidth() + nodes[j].getWidth()) / 2.0 + NODE_SPACING - Math.abs(dx);
+					double overlapY = (nodes[i].getHeight() + nodes[j].getHeight()) / 2.0 + NODE_SPACING - Math.abs(dy);
+
+					if(overlapX > 0 && overlapY > 0) {
+						if(overlapX <= overlapY) {
+							separate(i, j, Math.ceil(overlapX), dx >= 0 ? 1 : -1, true);
+						}
+						else {
+							separate(i, j, Math.ceil(overlapY), dy >= 0 ? 1 : -1, false);
+						}
+
+						moved = true;
+					}
+				}
+			}
+		}
+
+		if(moved && log.isDebugEnabled()) {
+			log.debug("Overlap removal stopped with remaining overlaps");
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Move two nodes apart along one axis. The distance is split between both
+	 * nodes unless one of them is pinned.
+	 *
+	 * @param pFirst Index of the first node
+	 * @param pSecond Index of the second node
+	 * @param pDistance Distance to move the nodes apart
+	 * @param pDirection 1 if the second node is located after the first node
+	 *            on the axis, -1 otherwise
+	 * @param pHorizontal true to move along the horizontal axis, false for the
+	 *            vertical axis
+	 */
+	private void separate(int pFirst, int pSecond, double pDistance, int pDirection, boolean pHorizontal) {
+		double firstShare;
+		if(nodes[pFirst].isPinned()) {
+			firstShare = 0.0;
+		}
+		else if(nodes[pSecond].isPinned()) {
+			firstShare = pDistance;
+		}
+		else {
+			firstShare = Math.floor(pDistance / 2.0);
+		}
+		double secondShare = pDistance - firstShare;
+
+		LayoutGraph.Node first = nodes[pFirst];
+		LayoutGraph.Node second = nodes[pSecond];
+
+		if(pHorizontal) {
+			if(!first.isPinned()) {
+				first.setPosition(clampX(pFirst, first.getX() - pDirection * firstShare), first.getY());
+			}
+			if(!second.isPinned()) {
+				second.setPosition(clampX(pSecond, second.getX() + pDirection * secondShare), second.getY());
+			}
+		}
+		else {
+			if(!first.isPinned()) {
+				first.setPosition(first.getX(), clampY(pFirst, first.getY() - pDirection * firstShare));
+			}
+			if(!second.isPinned()) {
+				second.setPosition(second.getX(), clampY(pSecond, second.getY() + pDirection * secondShare));
+			}
+		}
+	}
+
+
+	/**
+	 * Limit the horizontal center coordinate of a node so the node is located
+	 * inside the grid
+	 *
+	 * @param pIndex Index of the node
+	 * @param pX Horizontal coordinate of the center
+	 * @return The limited coordinate
+	 */
+	private double clampX(int pIndex, double pX) {
+		double half = nodes[pIndex].getWidth() / 2.0;
+
+		return Math.max(half, Math.min(gridDimensions.getX() - 1 - half, pX));
+	}
+
+
+	/**
+	 * Limit the vertical center coordinate of a node so the node is located
+	 * inside the grid
+	 *
+	 * @param pIndex Index of the node
+	 * @param pY Vertical coordinate of the center
+	 * @return The limited coordinate
+	 */
+	private double clampY(int pIndex, double pY) {
+		double half = nodes[pIndex].getHeight() / 2.0;
+
+		return Math.max(half, Math.min(gridDimensions.getY() - 1 - half, pY));
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.log4j.Logger;
+
+
+/**
+ * This class locates the graphviz executables. The directories of the PATH
+ * environment variable are searched inside the backend, no external program
+ * like which is started. Found executables are cached, so each executable is
+ * only searched once.<br>
+ * <br>
+ * The {@link #healthCheck()} should be called when the backend starts. It
+ * runs the layouters used by the backend once to check that they work and
+ * that graphviz is recent enough.
+ *
+ * @author Thomas Rix
+ */
+public class Graphviz {
+	private static Logger log = Logger.getLogger(Graphviz.class.getName());
+
+	/**
+	 * Names of the executables included in the graphviz distribution
+	 */
+	static final List<String> EXECUTABLES = Arrays.asList("dot", "neato", "fdp", "sfdp", "twopi", "circo");
+
+	// Minimum graphviz version supporting all attributes used in the DOT input
+	private static final int MIN_MAJOR = 2;
+	private static final int MIN_MINOR = 28;
+
+	private static final ConcurrentHashMap<String, Path> executables = new ConcurrentHashMap<>();
+
+
+	/**
+	 * This class only provides static methods
+	 */
+	private Graphviz() {
+		/* Prevent instantiation */
+	}
+
+
+	/**
+	 * Return the absolute path of the provided graphviz executable. The path
+	 * is searched on first use and cached afterwards.
+	 *
+	 * @param pCmd Name of the executable, must be part of the graphviz
+	 *            distribution
+	 * @return Absolute path of the executable
+	 * @throws IllegalArgumentException if the executable is not part of the
+	 *             graphviz distribution or was not found on the system
+	 */
+	static Path resolve(String pCmd) {
+		if(!EXECUTABLES.contains(pCmd)) {
+			throw new IllegalArgumentException("Provided executable is not part of the graphviz distribution");
+		}
+
+		Path rv = executables.get(pCmd);
+
+		if(rv == null) {
+			rv = search(pCmd);
+
+			if(rv != null) {
+				executables.put(pCmd, rv);
+
+				if(log.isDebugEnabled()) {
+					StringBuilder sb = new StringBuilder("Graphviz executable found: ");
+					sb.append(rv);
+					log.debug(sb.toString());
+				}
+			}
+			else {
+				// Missing executables are not cached, graphviz may be
+				// installed while the backend is running
+				throw new IllegalArgumentException("Provided executable not found on the system");
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Check if the layouters used by the backend (neato, fdp and sfdp) are
+	 * available and working. Each of them is run once with the option -V and
+	 * its version is checked. The result is written to the log file.
+	 *
+	 * @return true if all layouters are working, false otherwise
+	 */
+	public static boolean healthCheck() {
+		boolean rv = true;
+
+		for(String cmd : Arrays.asList("neato", "fdp", "sfdp")) {
+			try {
+				Path exec = resolve(cmd);
+				String version = readVersion(exec);
+
+				StringBuilder sb = new StringBuilder("Graphviz (");
+				sb.append(cmd);
+				sb.append(") found at ");
+				sb.append(exec);
+				sb.append(": ");
+				sb.append(version);
+
+				if(version != null && isSupported(version)) {
+					if(log.isInfoEnabled()) {
+						log.info(sb.toString());
+					}
+				}
+				else {
+					sb.append(", version ");
+					sb.append(MIN_MAJOR);
+					sb.append(".");
+					sb.append(MIN_MINOR);
+					sb.append(" or newer is required");
+					log.warn(sb.toString());
+
+					rv = false;
+				}
+			}
+			catch(IllegalArgumentException | IOException ex) {
+				StringBuilder sb = new StringBuilder("Graphviz (");
+				sb.append(cmd);
+				sb.append(") is not usable: ");
+				sb.append(ex.getMessage());
+				sb.append(", use the java layout engine if graphviz cannot be installed");
+				log.warn(sb.toString());
+
+				rv = false;
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Search the directories of the PATH environment variable for an
+	 * executable file with the provided name
+	 *
+	 * @param pCmd Name of the executable
+	 * @return Absolute path of the executable, null if it was not found
+	 */
+	private static Path search(String pCmd) {
+		String path = System.getenv("PATH");
+
+		if(path != null) {
+			for(String dir : path.split(File.pathSeparator)) {
+				if(!dir.isEmpty()) {
+					Path candidate = Paths.get(dir, pCmd).toAbsolutePath();
+
+					if(Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+						return candidate;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Run the provided executable with the option -V and return the version
+	 * line it prints
+	 *
+	 * @param pExec Path of the graphviz executable
+	 * @return The version line, null if the executable did not print one
+	 * @throws IOException if the executable cannot be run or fails
+	 */
+	private static String readVersion(Path pExec) throws IOException {
+		ProcessBuilder pb = new ProcessBuilder(pExec.toString(), "-V");
+		pb.redirectErrorStream(true);
+		Process proc = pb.start();
+		proc.getOutputStream().close();
+
+		String rv = null;
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
+			String line = br.readLine();
+			while(line != null) {
+				if(rv == null && line.contains("version")) {
+					rv = line.trim();
+				}
+
+				line = br.readLine();
+			}
+		}
+
+		try {
+			if(proc.waitFor() != 0) {
+				throw new IOException("Version check failed");
+			}
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Check if a version line of graphviz reports a supported version
+	 *
+	 * @param pVersion Version line, for example
+	 *            "neato - graphviz version 2.38.0 (20140413.2041)"
+	 * @return true if the version is supported or cannot be determined, false
+	 *         if it is too old
+	 */
+	private static boolean isSupported(String pVersion) {
+		Matcher m = Pattern.compile("version (\\d+)\\.(\\d+)").matcher(pVersion);
+
+		if(m.find()) {
+			int major = Integer.parseInt(m.group(1));
+			int minor = Integer.parseInt(m.group(2));
+
+			return major > MIN_MAJOR || (major == MIN_MAJOR && minor >= MIN_MINOR);
+		}
+		else {
+			return true;
+		}
+	}
+}
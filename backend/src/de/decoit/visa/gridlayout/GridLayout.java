@@ -19,22 +19,26 @@
 
 package de.decoit.visa.gridlayout;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.PosixFilePermission;
-import java.nio.file.attribute.PosixFilePermissions;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.topology.NCSwitch;
 import de.decoit.visa.topology.NCSwitch.GroupSwitch;
@@ -45,119 +49,222 @@ import de.decoit.visa.topology.TopologyStorage.ComponentGroup;
 
 
 /**
- * This class allows layout of the components in a topology by using one of the
- * graphviz command line tools. It is optimized for using fdp or neato but all
- * graphviz executables are supported.
+ * This class allows layout of the components in a topology. The layout can be
+ * calculated by one of the graphviz command line tools or by a layout engine
+ * running inside the backend, see {@link #ENGINE_JAVA}. For graphviz it is
+ * optimized for using neato, fdp or sfdp but all graphviz executables are
+ * supported. {@link #selectGraphvizEngine()} chooses between them by the size
+ * of the graph.<br>
+ * <br>
+ * The layout is done in two steps: {@link #calculate(String)} runs the layout
+ * engine and does not access the topology, so independent layouts can be
+ * calculated concurrently on other threads. {@link #apply()} stores the
+ * calculated locations in the topology objects and must be called on the
+ * thread which owns the current RDF transaction.<br>
+ * <br>
+ * The calculated positions can be taken out of a layout by
+ * {@link #getCalculatedPositions()} and reused for another layout of a graph
+ * with the same fingerprint (see {@link #getFingerprint()}) by
+ * {@link #setCalculatedPositions(Map)} instead of calling the layout engine
+ * again.<br>
+ * <br>
+ * Every graphviz or java layout has a time budget, see
+ * {@link de.decoit.visa.TEBackend#getLayoutTimeout()
+ * TEBackend.getLayoutTimeout()}. If graphviz exceeds it, the process is killed,
+ * the java engine aborts its calculation. If the engine timed out or graphviz
+ * failed, the nodes are placed by the fallback engine {@link #ENGINE_GRID},
+ * so a layout always completes in bounded time. The
+ * engine which produced the positions is available by
+ * {@link #getResultEngine()}.
  *
  * @author Thomas Rix
  */
 public class GridLayout {
 	private static Logger log = Logger.getLogger(GridLayout.class.getName());
 
-	private Path layoutInput;		// graphviz input file
-	private Path layoutOutput;		// graphviz output file
+	/**
+	 * Name of the force-directed layout engine running inside the backend. It
+	 * does not require graphviz and does not create any files.
+	 */
+	public static final String ENGINE_JAVA = "java";
+
+	/**
+	 * Name of the graphviz layout engine. The executable (neato, fdp or sfdp)
+	 * is selected by {@link #selectGraphvizEngine()}.
+	 */
+	public static final String ENGINE_GRAPHVIZ = "graphviz";
+
+	/**
+	 * Name of the fallback layout engine which places the nodes in rows, see
+	 * {@link GridPackingLayout}. It is used if graphviz failed or exceeded its
+	 * time budget.
+	 */
+	public static final String ENGINE_GRID = "grid";
+
+	// Kills graphviz processes which exceeded their time budget
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable pRunnable) {
+			Thread t = new Thread(pRunnable, "graphviz-watchdog");
+			t.setDaemon(true);
+
+			return t;
+		}
+	});
+
 	private Charset encoding;
-	private DOTFile inputFile;
-	private PlainFile outputFile;
+	private String graphName;
+	private String layoutName;
+	private LayoutGraph graph;
 	private HashSet<String> localNames;
+	private HashSet<String> positionedNames;
 	private Dimension2D gridDimensions;
 	private boolean groupSwitchAdded;
+	private boolean fixedNodeAdded;
 	private HashMap<String, String> groupSwitches;
+	private String resultEngine;
 
 
 	/**
-	 * Construct a new GridLayout object. Creates Path objects for graphviz
-	 * input and output files. Files have the local name of the RDF root node as
-	 * name and the extensions ".dot" (input file) or ".gv" (output file). They
-	 * are located in the subfolder "layout". The input file will be created and
-	 * filled with header information.
+	 * Construct a new GridLayout object for a grid with the provided
+	 * dimensions. Nodes and edges are collected in memory until the layout is
+	 * run.
 	 *
 	 * @param pGridDimensions Dimensions of the grid
-	 * @throws IOException if graphviz input file cannot be opened or written to
 	 */
-	public GridLayout(Dimension2D pGridDimensions) throws IOException {
+	public GridLayout(Dimension2D pGridDimensions) {
+		this(pGridDimensions, null);
+	}
+
+
+	/**
+	 * Construct a new GridLayout object for a grid with the provided
+	 * dimensions. Nodes and edges are collected in memory until the layout is
+	 * run. The provided name identifies the layout in log messages.
+	 *
+	 * @param pGridDimensions Dimensions of the grid
+	 * @param pName Name of the layout, for example the identifier of a
+	 *            component group, may be null
+	 */
+	public GridLayout(Dimension2D pGridDimensions, String pName) {
+		graphName = TEBackend.getRDFManager().getRootNodeLocalName();
+
+		if(pName != null) {
+			StringBuilder sb = new StringBuilder(graphName);
+			sb.append("_");
+			sb.append(pName);
+			layoutName = sb.toString();
+		}
+		else {
+			layoutName = graphName;
+		}
+
 		localNames = new HashSet<>();
+		positionedNames = new HashSet<>();
 
 		gridDimensions = pGridDimensions;
 		groupSwitchAdded = false;
+		fixedNodeAdded = false;
 		groupSwitches = new HashMap<>();
 
-		// Check if the layout directory exists and if not, create it
-		Path layoutPath = Paths.get("layout");
-		if(!Files.exists(layoutPath)) {
-			Files.createDirectory(layoutPath);
-		}
-		Set<PosixFilePermission> attrSet = PosixFilePermissions.fromString("rwxrwxrwx");
-		Files.setPosixFilePermissions(layoutPath, attrSet);
+		// Get charset
+		encoding = StandardCharsets.UTF_8;
 
-		// Create Path object for input file
-		StringBuffer sbIn = new StringBuffer(TEBackend.RDF_MANAGER.getRootNodeLocalName());
-		sbIn.append(".dot");
-		layoutInput = layoutPath.resolve(sbIn.toString());
+		graph = new LayoutGraph(gridDimensions);
+	}
 
-		// Create Path object for output file
-		StringBuffer sbOut = new StringBuffer(TEBackend.RDF_MANAGER.getRootNodeLocalName());
-		sbOut.append(".gv");
-		layoutOutput = layoutPath.resolve(sbOut.toString());
 
-		// Get charset
+	/**
+	 * Construct a new GridLayout object for an already filled graph which was
+	 * not created from the topology, for example by {@link LayoutBenchmark}.
+	 * The positions of all unpinned nodes except anchors will be calculated.
+	 * Such a layout must not be applied to the topology.
+	 *
+	 * @param pGraph Graph containing all nodes and edges
+	 * @param pName Name of the layout
+	 */
+	GridLayout(LayoutGraph pGraph, String pName) {
+		graphName = pName;
+		layoutName = pName;
+
+		localNames = new HashSet<>();
+		positionedNames = new HashSet<>();
+
+		gridDimensions = pGraph.getGridDimensions();
+		groupSwitchAdded = false;
+		fixedNodeAdded = false;
+		groupSwitches = new HashMap<>();
+
 		encoding = StandardCharsets.UTF_8;
 
-		// Create the input file
-		inputFile = new DOTFile(layoutInput, encoding, gridDimensions);
+		graph = pGraph;
+
+		for(LayoutGraph.Node node : graph.getNodes()) {
+			if(!node.isPinned()) {
+				localNames.add(node.getName());
+			}
+			else if(!node.isAnchor()) {
+				fixedNodeAdded = true;
+			}
+		}
 	}
 
 
 	/**
-	 * Use the provided NetworkComponent object to add a node to the DOT file
+	 * Use the provided NetworkComponent object to add a node to the layout
 	 *
 	 * @param pNC NetworkComponent providing the node information
-	 * @return true if adding the component was successful, false otherwise
-	 * @throws IOException if writing to the DOT file failed
+	 * @return true if the position of the component will be calculated, false
+	 *         if it was already defined
 	 */
-	public boolean addComponent(NetworkComponent pNC) throws IOException {
-		boolean rv = inputFile.addNode(pNC);
+	public boolean addComponent(NetworkComponent pNC) {
+		boolean rv = graph.addNode(pNC);
 
 		// If the position will be calculated, add the local name to the list of
 		// positioned nodes
 		if(rv) {
 			localNames.add(pNC.getRDFLocalName());
 		}
+		else {
+			fixedNodeAdded = true;
+		}
 
 		return rv;
 	}
 
 
 	/**
-	 * Use the provided NetworkGroup object to add a node to the DOT file
+	 * Use the provided NetworkGroup object to add a node to the layout
 	 *
 	 * @param pCG NetworkGroup providing the node information
-	 * @return true if adding the component group was successful, false
-	 *         otherwise
-	 * @throws IOException if writing to the DOT file failed
+	 * @return true if the position of the component group will be calculated,
+	 *         false if it was already defined
 	 */
-	public boolean addComponentGroup(TopologyStorage.ComponentGroup pCG) throws IOException {
-		boolean rv = inputFile.addNode(pCG);
+	public boolean addComponentGroup(TopologyStorage.ComponentGroup pCG) {
+		boolean rv = graph.addNode(pCG);
 
 		// If the position will be calculated, add the local name to the list of
 		// positioned nodes
 		if(rv) {
 			localNames.add(pCG.getIdentifier());
 		}
+		else {
+			fixedNodeAdded = true;
+		}
 
 		return rv;
 	}
 
 
 	/**
-	 * Use the provided GroupSwitch object to add a node to the DOT file
+	 * Use the provided GroupSwitch object to add a node to the layout
 	 *
 	 * @param pGS GroupSwitch providing the node information
-	 * @return true if adding the group switch was successful, false otherwise
-	 * @throws IOException if writing to the DOT file failed
+	 * @return true if the position of the group switch will be calculated,
+	 *         false if it was already defined
 	 */
-	public boolean addGroupSwitch(GroupSwitch pGS) throws IOException {
-		boolean rv = inputFile.addNode(pGS);
+	public boolean addGroupSwitch(GroupSwitch pGS) {
+		boolean rv = graph.addNode(pGS);
 
 		// If the position will be calculated, add the local name to the list of
 		// positioned nodes
@@ -168,221 +275,556 @@ public class GridLayout {
 
 			groupSwitchAdded = true;
 		}
+		else {
+			fixedNodeAdded = true;
+		}
 
 		return rv;
 	}
 
 
 	/**
-	 * Use the provided NetworkCable object to add an edge to the DOT file
+	 * Use the provided NetworkCable object to add an edge to the layout
 	 *
 	 * @param pNC NetworkCable providing the edge information, must have both
 	 *            ends connected
-	 * @throws IOException if writing to the DOT file failed
 	 */
-	public void addCable(NetworkCable pNC) throws IOException {
-		inputFile.addEdge(pNC);
+	public void addCable(NetworkCable pNC) {
+		graph.addEdge(pNC);
+	}
+
+
+	/**
+	 * Check if any node with an undefined position was added to the layout. If
+	 * not, running the layout engine would not change anything.
+	 *
+	 * @return true if at least one position will be calculated, false
+	 *         otherwise
+	 */
+	public boolean hasFreeNodes() {
+		return !localNames.isEmpty();
 	}
 
 
 	/**
-	 * Run the grid location calculation. This will close the graphviz input
-	 * file, run the specified executable and reconfigure the grid locations of
-	 * all NetworkComponents which were added before.
+	 * Check if any node with an already defined position was added to the
+	 * layout. Anchors of group switches are not counted.
 	 *
-	 * @param pCmd Name of the graphviz executable to use
+	 * @return true if at least one node is pinned to its position, false
+	 *         otherwise
+	 */
+	public boolean hasFixedNodes() {
+		return fixedNodeAdded;
+	}
+
+
+	/**
+	 * Select the graphviz executable for the graph of this layout, see
+	 * {@link #selectGraphvizEngine(int, int, boolean)}. The thresholds are
+	 * configured by command line switches, see
+	 * {@link de.decoit.visa.TEBackend#getFdpNodeThreshold()
+	 * TEBackend.getFdpNodeThreshold()}.
+	 *
+	 * @return Name of the graphviz executable
+	 */
+	public String selectGraphvizEngine() {
+		String rv = selectGraphvizEngine(graph.getNodeCount(), graph.getEdgeCount(), fixedNodeAdded);
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Selected ");
+			sb.append(rv);
+			sb.append(" for layout ");
+			sb.append(layoutName);
+			sb.append(" (");
+			sb.append(graph.getNodeCount());
+			sb.append(" nodes, ");
+			sb.append(graph.getEdgeCount());
+			sb.append(" edges)");
+			log.debug(sb.toString());
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Select the graphviz executable for a graph of the provided size. neato
+	 * is used for small graphs, its stress majorization scales quadratically
+	 * with the number of nodes. fdp is used for graphs with more nodes than
+	 * the fdp threshold and for graphs with pinned nodes, since neato only
+	 * respects pinned positions in some modes. sfdp is used for graphs
+	 * without pinned nodes with more nodes or edges than the sfdp thresholds.
+	 * It uses a multilevel approach which scales to thousands of nodes, but
+	 * ignores pinned positions. New nodes of a large positioned graph would be
+	 * placed without regard to the existing components, so fdp is used for
+	 * all graphs with pinned nodes.
+	 *
+	 * @param pNodes Number of nodes
+	 * @param pEdges Number of edges
+	 * @param pFixed true if the graph contains pinned nodes
+	 * @return Name of the graphviz executable
+	 */
+	static String selectGraphvizEngine(int pNodes, int pEdges, boolean pFixed) {
+		if(pFixed) {
+			return "fdp";
+		}
+		else if(pNodes > TEBackend.getSfdpNodeThreshold() || pEdges > TEBackend.getSfdpEdgeThreshold()) {
+			return "sfdp";
+		}
+		else if(pNodes > TEBackend.getFdpNodeThreshold()) {
+			return "fdp";
+		}
+		else {
+			return "neato";
+		}
+	}
+
+
+	/**
+	 * Return the fingerprint of the graph added to this layout, see
+	 * {@link LayoutGraph#fingerprint()}. It must be read before the layout is
+	 * calculated, since the calculation stores positions in the graph.
+	 *
+	 * @return Hex encoded hash of the graph structure
+	 */
+	public String getFingerprint() {
+		return graph.fingerprint();
+	}
+
+
+	/**
+	 * Return the center positions calculated by {@link #calculate(String)},
+	 * mapped by the names of the nodes
+	 *
+	 * @return New map containing the calculated positions
+	 */
+	public HashMap<String, Position2D> getCalculatedPositions() {
+		HashMap<String, Position2D> rv = new HashMap<>();
+
+		for(String localName : positionedNames) {
+			LayoutGraph.Node node = graph.getNode(localName);
+			rv.put(localName, new Position2D((int) Math.round(node.getX()), (int) Math.round(node.getY())));
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Use previously calculated center positions instead of calculating the
+	 * layout. The positions must have been calculated for a graph with the
+	 * same fingerprint as the graph of this layout. Positions of nodes which
+	 * are not part of this layout or already defined are ignored. Call
+	 * {@link #apply()} afterwards to store them in the topology.
+	 *
+	 * @param pPositions Center positions mapped by the names of the nodes
+	 */
+	public void setCalculatedPositions(Map<String, Position2D> pPositions) {
+		for(Map.Entry<String, Position2D> posEntry : pPositions.entrySet()) {
+			if(localNames.contains(posEntry.getKey())) {
+				graph.getNode(posEntry.getKey()).setPosition(posEntry.getValue().getX(), posEntry.getValue().getY());
+				positionedNames.add(posEntry.getKey());
+			}
+		}
+	}
+
+
+	/**
+	 * Run the grid location calculation with the specified engine and
+	 * reconfigure the grid locations of all NetworkComponents which were added
+	 * before. The engine is either {@link #ENGINE_JAVA} or the name of a
+	 * graphviz executable.
+	 *
+	 * @param pCmd Name of the layout engine to use
 	 * @throws IOException if file operations or execution of graphviz failed or
 	 *             the DOT file contained syntax errors
 	 */
 	public void run(String pCmd) throws IOException {
-		// Close the input file
-		inputFile.close();
+		calculate(pCmd);
+		apply();
+	}
 
-		// Run the graphviz executable
-		runGraphviz(pCmd);
 
-		// Open output file and parse the properties returned by graphviz
-		outputFile = new PlainFile(layoutOutput, encoding, gridDimensions);
+	/**
+	 * Run the grid location calculation with the specified engine. The
+	 * calculated locations are kept until {@link #apply()} is called. This
+	 * method does not access the topology or the RDF model and may be called
+	 * on any thread.
+	 *
+	 * @param pCmd Name of the layout engine to use
+	 * @throws IOException if file operations or execution of graphviz failed or
+	 *             the DOT file contained syntax errors
+	 */
+	public void calculate(String pCmd) throws IOException {
+		long start = System.nanoTime();
 
-		// Iterate over all nodes and reconfigure the components
-		PlainFile.Node node = outputFile.getNextNode();
-		while(node != null) {
-			if(node.getLocalname().startsWith("cgroup")) {
-				// If the current node is in our list of processed objects,
-				// relocate it
-				if(localNames.contains(node.getLocalname())) {
-					ComponentGroup ng = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByID(node.getLocalname());
+		if(ENGINE_JAVA.equals(pCmd)) {
+			if(new ForceDirectedLayout(graph, TEBackend.getLayoutTimeout() * 1000L).run()) {
+				positionedNames.addAll(localNames);
+				resultEngine = ENGINE_JAVA;
+			}
+			else {
+				StringBuilder sb = new StringBuilder("Java layout exceeded the time budget of ");
+				sb.append(TEBackend.getLayoutTimeout());
+				sb.append(" s in layout ");
+				sb.append(layoutName);
+				sb.append(", using fallback layout");
+				log.warn(sb.toString());
+
+				TEBackend.METRICS.observeLayoutFallback(pCmd, "timeout");
+				runFallback();
+			}
+		}
+		else if(ENGINE_GRID.equals(pCmd)) {
+			runFallback();
+		}
+		else {
+			try {
+				runGraphviz(pCmd);
+				resultEngine = pCmd;
+			}
+			catch(GraphvizTimeoutException ex) {
+				TEBackend.METRICS.observeLayoutFallback(pCmd, "timeout");
+				runFallback();
+			}
+			catch(IOException | IllegalArgumentException ex) {
+				StringBuilder sb = new StringBuilder("Graphviz (");
+				sb.append(pCmd);
+				sb.append(") failed in layout ");
+				sb.append(layoutName);
+				sb.append(", using fallback layout: ");
+				sb.append(ex.getMessage());
+				log.warn(sb.toString());
+
+				TEBackend.METRICS.observeLayoutFallback(pCmd, "failure");
+				runFallback();
+			}
+		}
 
-					int x = node.getGridLocation().getX() - (ng.getDragboxDimensions().getX() / 2);
-					int y = node.getGridLocation().getY() - (ng.getDragboxDimensions().getY() / 2);
+		TEBackend.METRICS.observeLayout(resultEngine, System.nanoTime() - start);
+	}
 
-					// Prevent positions outside the editor grid
-					if(x < 0) {
-						x = 0;
-					}
-					else if(x >= (gridDimensions.getX() - ng.getDragboxDimensions().getX())) {
-						x = gridDimensions.getX() - ng.getDragboxDimensions().getX() - 1;
-					}
 
-					if(y < 0) {
-						y = 0;
-					}
-					else if(y >= (gridDimensions.getY() - ng.getDragboxDimensions().getY())) {
-						y = gridDimensions.getY() - ng.getDragboxDimensions().getY() - 1;
-					}
+	/**
+	 * Return the engine which produced the positions of the last call of
+	 * {@link #calculate(String)}. This is the requested engine unless
+	 * graphviz failed or timed out, then it is {@link #ENGINE_GRID}.
+	 *
+	 * @return Name of the engine, null if no layout was calculated
+	 */
+	public String getResultEngine() {
+		return resultEngine;
+	}
 
-					ng.setGridLocation(x, y);
-				}
+
+	/**
+	 * Place all nodes by the fallback engine {@link #ENGINE_GRID}. Positions
+	 * calculated before are discarded.
+	 */
+	private void runFallback() {
+		positionedNames.clear();
+
+		new GridPackingLayout(graph).run();
+
+		positionedNames.addAll(localNames);
+		resultEngine = ENGINE_GRID;
+	}
+
+
+	/**
+	 * Reconfigure the grid locations of all NetworkComponents, group switches
+	 * and component groups whose location was calculated by
+	 * {@link #calculate(String)}
+	 */
+	public void apply() {
+		// Iterate over all calculated nodes and reconfigure the components
+		for(String localName : positionedNames) {
+			LayoutGraph.Node node = graph.getNode(localName);
+			int centerX = (int) Math.round(node.getX());
+			int centerY = (int) Math.round(node.getY());
+
+			if(localName.startsWith("cgroup")) {
+				ComponentGroup ng = TEBackend.getTopologyStorage().getComponentGroupByID(localName);
+
+				// Prevent positions outside the editor grid
+				int x = limit(centerX - (ng.getDragboxDimensions().getX() / 2), ng.getDragboxDimensions().getX(), gridDimensions.getX());
+				int y = limit(centerY - (ng.getDragboxDimensions().getY() / 2), ng.getDragboxDimensions().getY(), gridDimensions.getY());
+
+				ng.setGridLocation(x, y);
 			}
 			else {
-				// If the current node is in our list of processed objects,
-				// relocate it
-				if(localNames.contains(node.getLocalname())) {
-					NetworkComponent nc = TEBackend.TOPOLOGY_STORAGE.getComponent(node.getLocalname());
-
-					String group = groupSwitches.get(nc.getRDFLocalName());
-					if(groupSwitchAdded && group != null) {
-						NCSwitch ncs = (NCSwitch) nc;
-						GroupSwitch gs = ncs.getGroupSwitch(group);
-
-						int x = node.getGridLocation().getX() - (gs.getDragboxDimensions().getX() / 2);
-						int y = node.getGridLocation().getY() - (gs.getDragboxDimensions().getY() / 2);
-
-						// Prevent positions outside the editor grid
-						if(x < 0) {
-							x = 0;
-						}
-						else if(x >= (gridDimensions.getX() - gs.getDragboxDimensions().getX())) {
-							x = gridDimensions.getX() - gs.getDragboxDimensions().getX() - 1;
-						}
-
-						if(y < 0) {
-							y = 0;
-						}
-						else if(y >= (gridDimensions.getY() - gs.getDragboxDimensions().getY())) {
-							y = gridDimensions.getY() - gs.getDragboxDimensions().getY() - 1;
-						}
+				NetworkComponent nc = TEBackend.getTopologyStorage().getComponent(localName);
 
-						gs.setGridLocation(x, y);
-					}
-					else {
-						int x = node.getGridLocation().getX() - (nc.getConfig().getDragboxDimensions().getX() / 2);
-						int y = node.getGridLocation().getY() - (nc.getConfig().getDragboxDimensions().getY() / 2);
+				String group = groupSwitches.get(nc.getRDFLocalName());
+				if(groupSwitchAdded && group != null) {
+					NCSwitch ncs = (NCSwitch) nc;
+					GroupSwitch gs = ncs.getGroupSwitch(group);
 
-						// Prevent positions outside the editor grid
-						if(x < 0) {
-							x = 0;
-						}
-						else if(x >= (gridDimensions.getX() - nc.getConfig().getDragboxDimensions().getX())) {
-							x = gridDimensions.getX() - nc.getConfig().getDragboxDimensions().getX() - 1;
-						}
+					// Prevent positions outside the editor grid
+					int x = limit(centerX - (gs.getDragboxDimensions().getX() / 2), gs.getDragboxDimensions().getX(), gridDimensions.getX());
+					int y = limit(centerY - (gs.getDragboxDimensions().getY() / 2), gs.getDragboxDimensions().getY(), gridDimensions.getY());
 
-						if(y < 0) {
-							y = 0;
-						}
-						else if(y >= (gridDimensions.getY() - nc.getConfig().getDragboxDimensions().getY())) {
-							y = gridDimensions.getY() - nc.getConfig().getDragboxDimensions().getY() - 1;
-						}
+					gs.setGridLocation(x, y);
+				}
+				else {
+					// Prevent positions outside the editor grid
+					int x = limit(centerX - (nc.getConfig().getDragboxDimensions().getX() / 2), nc.getConfig().getDragboxDimensions().getX(), gridDimensions.getX());
+					int y = limit(centerY - (nc.getConfig().getDragboxDimensions().getY() / 2), nc.getConfig().getDragboxDimensions().getY(), gridDimensions.getY());
 
-						nc.getConfig().setGridLocation(x, y);
-					}
+					nc.getConfig().setGridLocation(x, y);
 				}
 			}
+		}
+	}
+
 
-			node = outputFile.getNextNode();
+	/**
+	 * Limit a coordinate of the upper left corner of an object so that the
+	 * object is located inside the editor grid
+	 *
+	 * @param pValue Coordinate of the upper left corner
+	 * @param pSize Size of the object along the same axis
+	 * @param pGridSize Size of the grid along the same axis
+	 * @return The limited coordinate
+	 */
+	private int limit(int pValue, int pSize, int pGridSize) {
+		if(pValue < 0) {
+			return 0;
+		}
+		else if(pValue >= (pGridSize - pSize)) {
+			return pGridSize - pSize - 1;
+		}
+		else {
+			return pValue;
 		}
 	}
 
 
 	/**
-	 * Lookup the absolute path of the provided graphviz executable using which
-	 * and then execute the program with options -s72.0 -y -Tplain. Input and
-	 * output files are read from class attributes. The name of the executable
-	 * must match one of the following (executables included in graphviz
-	 * distribution):
+	 * Lookup the absolute path of the provided graphviz executable, see
+	 * {@link Graphviz}, and then execute the program with options -s72.0 -y
+	 * -Tplain. The graph
+	 * is written in DOT format to the standard input of the process, the
+	 * output in plain format is parsed from its standard output while it
+	 * arrives. No files are created. The calculated positions are stored in
+	 * the graph as soon as their lines are parsed, they are discarded if
+	 * graphviz reports an error. If graphviz does not finish within the time
+	 * budget, the process is destroyed. The name of the executable must match
+	 * one of the following (executables included in graphviz distribution):
 	 * dot, neato, fdp, sfdp, twopi, circo
 	 *
 	 * @param pCmd Name of the graphviz executable, must be available on the
 	 *            system
-	 * @throws IOException if execution of which or the executable failed or the
-	 *             DOT file contained syntax errors
+	 * @throws GraphvizTimeoutException if graphviz exceeded the time budget
+	 * @throws IOException if execution of the executable failed or the DOT
+	 *             input contained syntax errors
 	 */
 	private void runGraphviz(String pCmd) throws IOException {
-		// Check if the provided executable is part of the graphviz distribution
-		if(pCmd.equals("dot") || pCmd.equals("neato") || pCmd.equals("fdp") || pCmd.equals("sfdp") || pCmd.equals("twopi") || pCmd.equals("circo")) {
-			// Construct the command string for "which"
-			StringBuilder whichCmd = new StringBuilder("which ");
-			whichCmd.append(pCmd);
+		// Lookup the path of the executable, fails if it is not part of the
+		// graphviz distribution or not installed
+		Path gvLocation = Graphviz.resolve(pCmd);
+
+		// Run graphviz executable, error messages are merged into the
+		// output and collected by the parser
+		long gvStart = System.nanoTime();
+		ProcessBuilder gvBuilder = new ProcessBuilder(gvLocation.toString(), "-s72.0", "-y", "-Tplain");
+		gvBuilder.redirectErrorStream(true);
+		Process gvProc = gvBuilder.start();
+
+		// Kill graphviz if it exceeds the time budget, this closes its
+		// output and ends the parsing below
+		Killer killer = new Killer(gvProc);
+		ScheduledFuture<?> deadline = null;
+		if(TEBackend.getLayoutTimeout() > 0) {
+			deadline = watchdog.schedule(killer, TEBackend.getLayoutTimeout(), TimeUnit.SECONDS);
+		}
 
-			// Run "which" to find the absolute path to the executable
-			Runtime run = Runtime.getRuntime();
-			Process whichProc = run.exec(whichCmd.toString());
+		// Write the DOT input on a separate thread, so graphviz cannot
+		// block on a full output pipe while the input is written
+		InputWriter writer = new InputWriter(gvProc);
+		writer.start();
+
+		// Parse the output while graphviz produces it and store the
+		// positions of the calculated nodes in the graph
+		PlainFile outputFile;
+		int exitCode = -1;
+		try {
+			try(Reader gvReader = new InputStreamReader(gvProc.getInputStream(), encoding)) {
+				outputFile = new PlainFile(gvReader);
+				outputFile.parse(new PlainFile.NodeHandler() {
+					@Override
+					public void node(String pName, int pX, int pY) {
+						if(localNames.contains(pName)) {
+							graph.getNode(pName).setPosition(pX, pY);
+							positionedNames.add(pName);
+						}
+					}
+				});
+			}
 
 			try {
-				// Wait for "which" to finish
-				whichProc.waitFor();
+				// Wait for graphviz to finish
+				writer.join();
+				exitCode = gvProc.waitFor();
 			}
-			catch(InterruptedException ex) { /* Ignore InterruptedException */
+			catch(InterruptedException ex) {
+				/* Ignore InterruptedException */
 			}
+		}
+		catch(IOException ex) {
+			// Do not leave a running process behind
+			gvProc.destroy();
 
-			// Read the output of "which"
-			BufferedReader whichReader = new BufferedReader(new InputStreamReader(whichProc.getInputStream()));
-			String gvLocation = whichReader.readLine();
-			whichReader.close();
-
-			// Output is an absolute path, if it starts with "which" the
-			// command failed
-			if(gvLocation != null && !gvLocation.startsWith("which")) {
-				// Construct the command string for the provided graphviz
-				// executable
-				StringBuilder gvCmd = new StringBuilder(gvLocation);
-				gvCmd.append(" -s72.0 -y -Tplain -o");
-				gvCmd.append(layoutOutput.toString());
-				gvCmd.append(" ");
-				gvCmd.append(layoutInput.toString());
-
-				// Run graphviz executable
-				Process gvProc = run.exec(gvCmd.toString());
-
-				try {
-					// Wait for graphviz to finish
-					gvProc.waitFor();
-				}
-				catch(InterruptedException ex) {
-					/* Ignore InterruptedException */
-				}
+			if(!killer.fired) {
+				throw ex;
+			}
 
-				// Read the output of graphviz into an ArrayList
-				BufferedReader gvReader = new BufferedReader(new InputStreamReader(gvProc.getInputStream()));
-				ArrayList<String> gvOutput = new ArrayList<>();
-				String line = gvReader.readLine();
-				while(line != null) {
-					gvOutput.add(line);
-					line = gvReader.readLine();
-				}
-				gvReader.close();
-
-				// If graphviz produced any output, check if an error
-				// occurred and output that error to the log file
-				if(gvOutput.size() > 0 && gvOutput.get(0).startsWith("Error:")) {
-					StringBuilder sb = new StringBuilder("Graphviz (");
-					sb.append(pCmd);
-					sb.append(") error:");
-					log.error(sb.toString());
-
-					for(String msg : gvOutput) {
-						log.error(msg);
-					}
+			outputFile = null;
+		}
+		finally {
+			if(deadline != null) {
+				deadline.cancel(false);
+			}
+		}
 
-					throw new IOException("Error during graphviz call");
-				}
+		long gvTime = System.nanoTime() - gvStart;
+
+		if(killer.fired) {
+			positionedNames.clear();
+			TEBackend.METRICS.observeGraphviz(pCmd, gvTime, false);
+
+			StringBuilder sb = new StringBuilder("Graphviz (");
+			sb.append(pCmd);
+			sb.append(") exceeded the time budget of ");
+			sb.append(TEBackend.getLayoutTimeout());
+			sb.append(" s in layout ");
+			sb.append(layoutName);
+			sb.append(", process killed");
+			log.error(sb.toString());
+
+			throw new GraphvizTimeoutException(sb.toString());
+		}
+
+		// Check if an error occurred and output that error to the log
+		// file
+		List<String> gvOutput = outputFile.getMessages();
+		boolean gvFailed = (exitCode != 0 || writer.failure != null || (gvOutput.size() > 0 && gvOutput.get(0).startsWith("Error:")));
+		TEBackend.METRICS.observeGraphviz(pCmd, gvTime, !gvFailed);
+
+		if(gvFailed) {
+			// Do not apply positions of an incomplete output
+			positionedNames.clear();
+
+			StringBuilder sb = new StringBuilder("Graphviz (");
+			sb.append(pCmd);
+			sb.append(") error in layout ");
+			sb.append(layoutName);
+			sb.append(", exit code ");
+			sb.append(exitCode);
+			sb.append(":");
+			log.error(sb.toString());
+
+			for(String msg : gvOutput) {
+				log.error(msg);
 			}
-			else {
-				throw new IllegalArgumentException("Provided executable not found on the system");
+
+			if(writer.failure != null) {
+				TEBackend.logException(writer.failure, log);
 			}
+
+			throw new IOException("Error during graphviz call");
 		}
-		else {
-			throw new IllegalArgumentException("Provided executable is not part of the graphviz distribution");
+		else if(!gvOutput.isEmpty() && log.isDebugEnabled()) {
+			for(String msg : gvOutput) {
+				log.debug(msg);
+			}
+		}
+	}
+
+
+	/**
+	 * This task destroys a graphviz process which exceeded its time budget
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class Killer implements Runnable {
+		private Process process;
+		private volatile boolean fired;
+
+
+		/**
+		 * Construct a new task for the provided process
+		 *
+		 * @param pProcess The graphviz process
+		 */
+		private Killer(Process pProcess) {
+			process = pProcess;
+			fired = false;
+		}
+
+
+		@Override
+		public void run() {
+			fired = true;
+			process.destroy();
+		}
+	}
+
+
+	/**
+	 * This exception is thrown if graphviz exceeded its time budget
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class GraphvizTimeoutException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+
+		/**
+		 * Construct a new exception with the provided message
+		 *
+		 * @param pMessage Description of the timeout
+		 */
+		private GraphvizTimeoutException(String pMessage) {
+			super(pMessage);
+		}
+	}
+
+
+	/**
+	 * This thread writes the graph in DOT format to the standard input of a
+	 * graphviz process and closes it afterwards
+	 *
+	 * @author Thomas Rix
+	 */
+	private class InputWriter extends Thread {
+		private Process process;
+		private IOException failure;
+
+
+		/**
+		 * Construct a new thread writing to the provided process
+		 *
+		 * @param pProcess The graphviz process
+		 */
+		private InputWriter(Process pProcess) {
+			super("graphviz-input");
+
+			process = pProcess;
+			failure = null;
+
+			setDaemon(true);
+		}
+
+
+		@Override
+		public void run() {
+			try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), encoding))) {
+				new DOTFile(graphName, graph).write(bw);
+			}
+			catch(IOException ex) {
+				failure = ex;
+			}
 		}
 	}
 }
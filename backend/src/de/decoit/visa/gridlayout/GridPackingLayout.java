@@ -0,0 +1,229 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.apache.log4j.Logger;
+import de.decoit.visa.Dimension2D;
+
+
+/**
+ * This class places the nodes of a {@link LayoutGraph} in rows on the grid. It
+ * is used as fallback if a layout engine failed or exceeded its time budget,
+ * so it must be cheap: the nodes are placed in a single pass and every node is
+ * only checked against the pinned nodes.<br>
+ * <br>
+ * The unpinned nodes are ordered by a breadth-first traversal of the edges,
+ * starting at the node with the smallest name, so connected nodes are placed
+ * next to each other. Each node is placed at the next free position of the
+ * current row, a new row is started if the row is full. Pinned nodes are never
+ * moved and are skipped by the rows. If the grid is full, the remaining nodes
+ * are placed at the lower right corner.<br>
+ * <br>
+ * The layout is deterministic: the same graph always results in the same
+ * positions.
+ *
+ * @author Thomas Rix
+ */
+class GridPackingLayout {
+	private static Logger log = Logger.getLogger(GridPackingLayout.class.getName());
+
+	// Free space between nodes and to the grid border
+	private static final int NODE_SPACING = 1;
+
+	private LayoutGraph graph;
+	private Dimension2D gridDimensions;
+
+
+	/**
+	 * Construct a new layout for the provided graph
+	 *
+	 * @param pGraph The graph to layout, cannot be null
+	 */
+	GridPackingLayout(LayoutGraph pGraph) {
+		if(pGraph == null) {
+			throw new NullPointerException("NULL pointer for graph provided");
+		}
+
+		graph = pGraph;
+		gridDimensions = pGraph.getGridDimensions();
+	}
+
+
+	/**
+	 * Calculate the positions of all unpinned nodes and store them in the
+	 * nodes of the graph
+	 */
+	void run() {
+		ArrayList<LayoutGraph.Node> pinned = new ArrayList<>();
+		int x = NODE_SPACING;
+		int y = NODE_SPACING;
+		int rowHeight = 0;
+		int overflow = 0;
+
+		for(LayoutGraph.Node n : graph.getNodes()) {
+			if(n.isPinned()) {
+				pinned.add(n);
+			}
+		}
+
+		for(LayoutGraph.Node n : orderNodes()) {
+			int width = n.getWidth();
+			int height = n.getHeight();
+			boolean placed = false;
+
+			while(!placed && y + height <= gridDimensions.getY()) {
+				if(x > NODE_SPACING && x + width + NODE_SPACING > gridDimensions.getX()) {
+					// Row is full, start a new row
+					x = NODE_SPACING;
+					y += rowHeight + NODE_SPACING;
+					rowHeight = 0;
+				}
+				else {
+					LayoutGraph.Node blocker = findPinnedOverlap(pinned, x, y, width, height);
+
+					if(blocker != null) {
+						// Skip the pinned node
+						x = (int) Math.ceil(blocker.getX() + blocker.getWidth() / 2.0) + NODE_SPACING;
+					}
+					else {
+						n.setPosition(x + width / 2, y + height / 2);
+						x += width + NODE_SPACING;
+						rowHeight = Math.max(rowHeight, height);
+						placed = true;
+					}
+				}
+			}
+
+			if(!placed) {
+				n.setPosition(gridDimensions.getX() - (width + 1) / 2, gridDimensions.getY() - (height + 1) / 2);
+				overflow++;
+			}
+		}
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Grid packing layout finished: ");
+			sb.append(graph.getNodes().size());
+			sb.append(" nodes, ");
+			sb.append(overflow);
+			sb.append(" did not fit");
+			log.debug(sb.toString());
+		}
+	}
+
+
+	/**
+	 * Return the unpinned nodes in breadth-first order of the edges. The
+	 * traversal starts at the unvisited node with the smallest name and
+	 * visits the neighbors of a node in order of their names.
+	 *
+	 * @return The unpinned nodes in placement order
+	 */
+	private ArrayList<LayoutGraph.Node> orderNodes() {
+		LayoutGraph.Node[] nodes = graph.getNodes().toArray(new LayoutGraph.Node[0]);
+		Arrays.sort(nodes, new Comparator<LayoutGraph.Node>() {
+			@Override
+			public int compare(LayoutGraph.Node pFirst, LayoutGraph.Node pSecond) {
+				return pFirst.getName().compareTo(pSecond.getName());
+			}
+		});
+
+		HashMap<String, Integer> index = new HashMap<>();
+		for(int i = 0; i < nodes.length; i++) {
+			index.put(nodes[i].getName(), i);
+		}
+
+		ArrayList<ArrayList<Integer>> neighbors = new ArrayList<>(nodes.length);
+		for(int i = 0; i < nodes.length; i++) {
+			neighbors.add(new ArrayList<Integer>());
+		}
+
+		for(LayoutGraph.Edge e : graph.getEdges()) {
+			Integer from = index.get(e.getFrom());
+			Integer to = index.get(e.getTo());
+
+			if(from != null && to != null && !from.equals(to)) {
+				neighbors.get(from).add(to);
+				neighbors.get(to).add(from);
+			}
+		}
+
+		ArrayList<LayoutGraph.Node> rv = new ArrayList<>();
+		HashSet<Integer> visited = new HashSet<>();
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+		for(int start = 0; start < nodes.length; start++) {
+			if(visited.add(start)) {
+				queue.add(start);
+
+				while(!queue.isEmpty()) {
+					int current = queue.poll();
+
+					if(!nodes[current].isPinned()) {
+						rv.add(nodes[current]);
+					}
+
+					ArrayList<Integer> next = neighbors.get(current);
+					Collections.sort(next);
+					for(int n : next) {
+						if(visited.add(n)) {
+							queue.add(n);
+						}
+					}
+				}
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Find a pinned node overlapping the provided rectangle, including the
+	 * spacing around the pinned node
+	 *
+	 * @param pPinned The pinned nodes
+	 * @param pX Horizontal coordinate of the left edge
+	 * @param pY Vertical coordinate of the upper edge
+	 * @param pWidth Width of the rectangle
+	 * @param pHeight Height of the rectangle
+	 * @return The first overlapping node, null if the rectangle is free
+	 */
+	private LayoutGraph.Node findPinnedOverlap(ArrayList<LayoutGraph.Node> pPinned, int pX, int pY, int pWidth, int pHeight) {
+		for(LayoutGraph.Node p : pPinned) {
+			double left = p.getX() - p.getWidth() / 2.0 - NODE_SPACING;
+			double right = p.getX() + p.getWidth() / 2.0 + NODE_SPACING;
+			double top = p.getY() - p.getHeight() / 2.0 - NODE_SPACING;
+			double bottom = p.getY() + p.getHeight() / 2.0 + NODE_SPACING;
+
+			if(pX < right && pX + pWidth > left && pY < bottom && pY + pHeight > top) {
+				return p;
+			}
+		}
+
+		return null;
+	}
+}
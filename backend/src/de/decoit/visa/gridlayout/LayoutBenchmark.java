@@ -0,0 +1,216 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.TEBackend;
+
+
+/**
+ * This class measures the layout engines on synthetic graphs of increasing
+ * size and density. It is used to validate the thresholds of the graphviz
+ * engine selection (see {@link GridLayout#selectGraphvizEngine()}) on the
+ * machine the backend runs on. It does not need a running backend or a
+ * topology.<br>
+ * <br>
+ * For every graph one line is printed: number of nodes and edges, the
+ * graphviz executable selected with the default thresholds, and for every
+ * engine the run time in milliseconds and the number of overlapping node
+ * pairs in the result. An engine which is not installed is marked with "n/a",
+ * a layout which failed or timed out is marked with the fallback engine that
+ * placed the nodes. An engine which needed longer than the layout time budget
+ * or fell back is skipped for all larger graphs.<br>
+ * <br>
+ * Usage: LayoutBenchmark [engines] [sizes]<br>
+ * engines: Comma separated list of engines (default: java,grid,neato,fdp,sfdp)<br>
+ * sizes: Comma separated list of node counts (default:
+ * 50,100,200,500,1000,2000,5000)
+ *
+ * @author Thomas Rix
+ */
+public class LayoutBenchmark {
+	private static final long SEED = 0x56495341L;
+
+	// Average number of edges per node of the generated graphs
+	private static final double[] DENSITIES = { 1.5, 4.0 };
+
+	private static final String DEFAULT_ENGINES = "java,grid,neato,fdp,sfdp";
+	private static final String DEFAULT_SIZES = "50,100,200,500,1000,2000,5000";
+
+
+	/**
+	 * Run the benchmark
+	 *
+	 * @param args Command line arguments, see class description
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.ERROR);
+
+		List<String> engines = Arrays.asList((args.length > 0 ? args[0] : DEFAULT_ENGINES).split(","));
+		String[] sizes = (args.length > 1 ? args[1] : DEFAULT_SIZES).split(",");
+
+		HashSet<String> skipped = new HashSet<>();
+		long budget = TEBackend.getLayoutTimeout() * 1000L;
+
+		StringBuilder sb = new StringBuilder("nodes\tedges\tselected");
+		for(String engine : engines) {
+			sb.append("\t");
+			sb.append(engine);
+		}
+		System.out.println(sb.toString());
+
+		for(String size : sizes) {
+			for(double density : DENSITIES) {
+				int nodeCount = Integer.parseInt(size.trim());
+				LayoutGraph sizeGraph = createGraph(nodeCount, density);
+
+				sb = new StringBuilder();
+				sb.append(sizeGraph.getNodeCount());
+				sb.append("\t");
+				sb.append(sizeGraph.getEdgeCount());
+				sb.append("\t");
+				sb.append(GridLayout.selectGraphvizEngine(sizeGraph.getNodeCount(), sizeGraph.getEdgeCount(), false));
+
+				for(String engine : engines) {
+					sb.append("\t");
+
+					if(skipped.contains(engine)) {
+						sb.append("-");
+						continue;
+					}
+
+					// Every engine gets a new graph, the layout stores the
+					// positions in it
+					LayoutGraph graph = createGraph(nodeCount, density);
+					GridLayout layout = new GridLayout(graph, "benchmark");
+
+					try {
+						if(!GridLayout.ENGINE_JAVA.equals(engine) && !GridLayout.ENGINE_GRID.equals(engine)) {
+							Graphviz.resolve(engine);
+						}
+
+						long start = System.nanoTime();
+						layout.calculate(engine);
+						long millis = (System.nanoTime() - start) / 1000000L;
+
+						sb.append(millis);
+						sb.append("ms/");
+						sb.append(countOverlaps(graph));
+
+						if(!engine.equals(layout.getResultEngine())) {
+							sb.append("(");
+							sb.append(layout.getResultEngine());
+							sb.append(")");
+						}
+
+						if((budget > 0 && millis > budget) || !engine.equals(layout.getResultEngine())) {
+							skipped.add(engine);
+						}
+					}
+					catch(IllegalArgumentException ex) {
+						sb.append("n/a");
+						skipped.add(engine);
+					}
+					catch(IOException ex) {
+						sb.append("error");
+					}
+				}
+
+				System.out.println(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Create a connected random graph with the provided number of nodes and
+	 * average number of edges per node. The graph is a random tree with
+	 * additional random edges. The grid provides about four times the area of
+	 * all nodes. The same arguments always result in the same graph.
+	 *
+	 * @param pNodes Number of nodes
+	 * @param pDensity Average number of edges per node, at least 1
+	 * @return The new graph
+	 */
+	private static LayoutGraph createGraph(int pNodes, double pDensity) {
+		Random rnd = new Random(SEED + pNodes);
+
+		int side = (int) Math.ceil(Math.sqrt(pNodes * 4.0 * 10 * 8));
+		LayoutGraph rv = new LayoutGraph(new Dimension2D(side, side));
+
+		ArrayList<String> names = new ArrayList<>(pNodes);
+		for(int i = 0; i < pNodes; i++) {
+			String name = "node" + i;
+			rv.addNode(name, 8 + rnd.nextInt(5), 6 + rnd.nextInt(4));
+			names.add(name);
+
+			if(i > 0) {
+				rv.addEdge(names.get(rnd.nextInt(i)), name);
+			}
+		}
+
+		int edgeCount = (int) Math.round(pNodes * pDensity);
+		for(int i = pNodes - 1; i < edgeCount && pNodes > 1; i++) {
+			int from = rnd.nextInt(pNodes);
+			int to = rnd.nextInt(pNodes);
+
+			if(from != to) {
+				rv.addEdge(names.get(from), names.get(to));
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Count the pairs of nodes whose rectangles overlap
+	 *
+	 * @param pGraph The laid out graph
+	 * @return Number of overlapping pairs
+	 */
+	private static int countOverlaps(LayoutGraph pGraph) {
+		LayoutGraph.Node[] nodes = pGraph.getNodes().toArray(new LayoutGraph.Node[0]);
+		int rv = 0;
+
+		for(int i = 0; i < nodes.length; i++) {
+			for(int j = i + 1; j < nodes.length; j++) {
+				double dx = Math.abs(nodes[i].getX() - nodes[j].getX());
+				double dy = Math.abs(nodes[i].getY() - nodes[j].getY());
+
+				if(dx < (nodes[i].getWidth() + nodes[j].getWidth()) / 2.0 && dy < (nodes[i].getHeight() + nodes[j].getHeight()) / 2.0) {
+					rv++;
+				}
+			}
+		}
+
+		return rv;
+	}
+}
@@ -0,0 +1,606 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.apache.log4j.Logger;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
+import de.decoit.visa.interfaces.INetworkInterface;
+import de.decoit.visa.topology.NCSwitch.GroupSwitch;
+import de.decoit.visa.topology.NCSwitch.VirtualInterface;
+import de.decoit.visa.topology.NetworkCable;
+import de.decoit.visa.topology.NetworkComponent;
+import de.decoit.visa.topology.NetworkComponent.Interface;
+import de.decoit.visa.topology.TopologyStorage;
+import de.decoit.visa.topology.TopologyStorage.ComponentGroup.GroupInterface;
+
+
+/**
+ * This class stores the graph which is passed to a layout engine. Nodes are
+ * rectangles identified by the local name of the topology object they were
+ * created from, nodes with an already defined position are pinned and will not
+ * be moved by the layout engine. Edges are undirected and connect two nodes by
+ * their names. Group switches are connected to fixed anchor nodes in the
+ * middle of the grid border their virtual interface is oriented to.
+ *
+ * @author Thomas Rix
+ */
+class LayoutGraph {
+	private static Logger log = Logger.getLogger(LayoutGraph.class.getName());
+
+	private static final int ANCHOR_SIZE = 5;
+
+	private Dimension2D gridDimensions;
+	private LinkedHashMap<String, Node> nodes;
+	private LinkedHashSet<Edge> edges;
+
+
+	/**
+	 * Construct a new, empty graph for the provided grid
+	 *
+	 * @param pGridDimensions Dimensions of the grid the components are placed on
+	 */
+	LayoutGraph(Dimension2D pGridDimensions) {
+		gridDimensions = pGridDimensions;
+		nodes = new LinkedHashMap<>();
+		edges = new LinkedHashSet<>();
+	}
+
+
+	/**
+	 * Add a node for the provided {@link de.decoit.visa.topology.NetworkComponent NetworkComponent}.
+	 * Identifier and dimensions are taken from the component. If the component
+	 * already has a grid location, the node is pinned to its center.
+	 *
+	 * @param pNC NetworkComponent object providing the node information
+	 * @return true: Object position will be calculated, false: Object position
+	 *         was already defined
+	 */
+	boolean addNode(NetworkComponent pNC) {
+		Dimension2D dim = pNC.getConfig().getDragboxDimensions();
+		Node node = new Node(pNC.getRDFLocalName(), dim.getX(), dim.getY());
+
+		Position2D nodePos = pNC.getConfig().getGridLocation();
+		if(nodePos != null) {
+			node.pin(nodePos.getX() + dim.getX() / 2, nodePos.getY() + dim.getY() / 2);
+		}
+
+		putNode(node);
+
+		return !node.isPinned();
+	}
+
+
+	/**
+	 * Add a node for the provided
+	 * {@link de.decoit.visa.topology.TopologyStorage.ComponentGroup ComponentGroup}
+	 * and edges to the components connected to its group interfaces.
+	 *
+	 * @param pCG ComponentGroup object providing the node information
+	 * @return true: Object position will be calculated, false: Object position
+	 *         was already defined
+	 */
+	boolean addNode(TopologyStorage.ComponentGroup pCG) {
+		Dimension2D dim = pCG.getDragboxDimensions();
+		Node node = new Node(pCG.getIdentifier(), dim.getX(), dim.getY());
+
+		Position2D nodePos = pCG.getGridLocation();
+		if(nodePos != null) {
+			node.pin(nodePos.getX(), nodePos.getY());
+		}
+
+		putNode(node);
+
+		for(GroupInterface gi : pCG.getGroupInterfaces()) {
+			INetworkInterface ni = gi.getOuterConnection();
+
+			if(ni instanceof Interface) {
+				Interface iface = (Interface) ni;
+
+				putEdge(new Edge(iface.getComponent().getRDFLocalName(), pCG.getIdentifier()));
+			}
+			else if(ni instanceof VirtualInterface) {
+				VirtualInterface vi = (VirtualInterface) ni;
+
+				putEdge(new Edge(vi.getSwitchRDFLocalName(), pCG.getIdentifier()));
+			}
+		}
+
+		return !node.isPinned();
+	}
+
+
+	/**
+	 * Add a node for the provided
+	 * {@link de.decoit.visa.topology.NCSwitch.GroupSwitch GroupSwitch} and an
+	 * edge to the anchor of the grid border its virtual interface is oriented
+	 * to.
+	 *
+	 * @param pGS GroupSwitch object providing the node information
+	 * @return true: Object position will be calculated, false: Object position
+	 *         was already defined
+	 */
+	boolean addNode(GroupSwitch pGS) {
+		Dimension2D dim = pGS.getDragboxDimensions();
+		Node node = new Node(pGS.getSwitchRDFLocalName(), dim.getX(), dim.getY());
+
+		Position2D nodePos = pGS.getGridLocation();
+		if(nodePos != null) {
+			node.pin(nodePos.getX(), nodePos.getY());
+		}
+
+		putNode(node);
+
+		// Connect the group switches to anchors located in the middle of
+		// each grid border. The used anchor is selected by the orientation
+		// of the virtual interface of the switch
+		Node anchor;
+		switch(pGS.getVirtualInterface().getOrientation()) {
+			case TOP:
+				anchor = createAnchor("topAnchor", gridDimensions.getX() / 2, ANCHOR_SIZE);
+				break;
+			case BOTTOM:
+				anchor = createAnchor("bottomAnchor", gridDimensions.getX() / 2, gridDimensions.getY() - ANCHOR_SIZE);
+				break;
+			case LEFT:
+				anchor = createAnchor("leftAnchor", ANCHOR_SIZE, gridDimensions.getY() / 2);
+				break;
+			default:
+				anchor = createAnchor("rightAnchor", gridDimensions.getX() - ANCHOR_SIZE, gridDimensions.getY() / 2);
+		}
+
+		if(!nodes.containsKey(anchor.getName())) {
+			putNode(anchor);
+		}
+
+		putEdge(new Edge(node.getName(), anchor.getName()));
+
+		return !node.isPinned();
+	}
+
+
+	/**
+	 * Add an edge for the provided {@link de.decoit.visa.topology.NetworkCable NetworkCable}
+	 *
+	 * @param pNC NetworkCable object providing the two connected nodes, must
+	 *            have both ends connected
+	 */
+	void addEdge(NetworkCable pNC) {
+		putEdge(new Edge(pNC.getLeft().getComponent().getRDFLocalName(), pNC.getRight().getComponent().getRDFLocalName()));
+	}
+
+
+	/**
+	 * Add a node which is not created from a topology object, for example
+	 * for synthetic graphs of {@link LayoutBenchmark}. An existing node with
+	 * the same name is replaced.
+	 *
+	 * @param pName Name of the node
+	 * @param pWidth Width of the node
+	 * @param pHeight Height of the node
+	 */
+	void addNode(String pName, int pWidth, int pHeight) {
+		putNode(new Node(pName, pWidth, pHeight));
+	}
+
+
+	/**
+	 * Add an edge between two nodes identified by their names
+	 *
+	 * @param pFrom Name of the first node
+	 * @param pTo Name of the second node
+	 */
+	void addEdge(String pFrom, String pTo) {
+		putEdge(new Edge(pFrom, pTo));
+	}
+
+
+	/**
+	 * Return the number of nodes in this graph, including anchors
+	 *
+	 * @return Number of nodes
+	 */
+	int getNodeCount() {
+		return nodes.size();
+	}
+
+
+	/**
+	 * Return the number of edges in this graph
+	 *
+	 * @return Number of edges
+	 */
+	int getEdgeCount() {
+		return edges.size();
+	}
+
+
+	/**
+	 * Return the dimensions of the grid the nodes are placed on
+	 *
+	 * @return Dimensions of the grid
+	 */
+	Dimension2D getGridDimensions() {
+		return gridDimensions;
+	}
+
+
+	/**
+	 * Return the node with the provided name
+	 *
+	 * @param pName Name of the node
+	 * @return The node, null if no node with that name exists
+	 */
+	Node getNode(String pName) {
+		return nodes.get(pName);
+	}
+
+
+	/**
+	 * Return all nodes of the graph in the order they were added
+	 *
+	 * @return Unmodifiable view of the nodes
+	 */
+	Collection<Node> getNodes() {
+		return Collections.unmodifiableCollection(nodes.values());
+	}
+
+
+	/**
+	 * Return all edges of the graph in the order they were added
+	 *
+	 * @return List of the edges
+	 */
+	List<Edge> getEdges() {
+		return new ArrayList<>(edges);
+	}
+
+
+	/**
+	 * Return a fingerprint of the structure of this graph. It covers the grid
+	 * dimensions, the names and dimensions of all nodes, the positions of the
+	 * pinned nodes and all edges. It does not depend on the order the nodes and
+	 * edges were added in, so two graphs with the same fingerprint produce the
+	 * same layout with a deterministic layout engine.
+	 *
+	 * @return Hex encoded SHA-1 hash of the graph structure
+	 */
+	String fingerprint() {
+		ArrayList<String> nodeList = new ArrayList<>(nodes.size());
+		for(Node n : nodes.values()) {
+			StringBuilder sb = new StringBuilder(n.name);
+			sb.append(' ');
+			sb.append(n.width);
+			sb.append('x');
+			sb.append(n.height);
+			if(n.pinned) {
+				sb.append('@');
+				sb.append(Math.round(n.x));
+				sb.append(',');
+				sb.append(Math.round(n.y));
+			}
+			nodeList.add(sb.toString());
+		}
+		Collections.sort(nodeList);
+
+		// Edges are undirected, order the names of the connected nodes
+		ArrayList<String> edgeList = new ArrayList<>(edges.size());
+		for(Edge e : edges) {
+			boolean ordered = e.from.compareTo(e.to) <= 0;
+			StringBuilder sb = new StringBuilder(ordered ? e.from : e.to);
+			sb.append(" -- ");
+			sb.append(ordered ? e.to : e.from);
+			edgeList.add(sb.toString());
+		}
+		Collections.sort(edgeList);
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+
+			StringBuilder sbGrid = new StringBuilder("grid ");
+			sbGrid.append(gridDimensions.getX());
+			sbGrid.append('x');
+			sbGrid.append(gridDimensions.getY());
+			sbGrid.append('\n');
+			md.update(sbGrid.toString().getBytes(StandardCharsets.UTF_8));
+
+			for(String n : nodeList) {
+				md.update(n.getBytes(StandardCharsets.UTF_8));
+				md.update((byte) '\n');
+			}
+
+			for(String e : edgeList) {
+				md.update(e.getBytes(StandardCharsets.UTF_8));
+				md.update((byte) '\n');
+			}
+
+			byte[] hash = md.digest();
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for(byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return sb.toString();
+		}
+		catch(NoSuchAlgorithmException ex) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException("SHA-1 is not supported", ex);
+		}
+	}
+
+
+	/**
+	 * Add a node to the graph, an existing node with the same name is replaced
+	 *
+	 * @param pNode The node to add
+	 */
+	private void putNode(Node pNode) {
+		nodes.put(pNode.getName(), pNode);
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Node added to layout graph: ");
+			sb.append(pNode.getName());
+			log.debug(sb.toString());
+		}
+	}
+
+
+	/**
+	 * Add an edge to the graph, duplicate edges are ignored
+	 *
+	 * @param pEdge The edge to add
+	 */
+	private void putEdge(Edge pEdge) {
+		edges.add(pEdge);
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Edge added to layout graph: ");
+			sb.append(pEdge.getFrom());
+			sb.append(" -- ");
+			sb.append(pEdge.getTo());
+			log.debug(sb.toString());
+		}
+	}
+
+
+	/**
+	 * Create a pinned anchor node for group switches
+	 *
+	 * @param pName Name of the anchor
+	 * @param pX Horizontal coordinate of the center
+	 * @param pY Vertical coordinate of the center
+	 * @return The anchor node
+	 */
+	private Node createAnchor(String pName, int pX, int pY) {
+		Node rv = new Node(pName, ANCHOR_SIZE, ANCHOR_SIZE);
+		rv.pin(pX, pY);
+		rv.anchor = true;
+
+		return rv;
+	}
+
+
+	/**
+	 * This class contains a rectangular node of the layout graph. The
+	 * coordinates of a node describe its center.
+	 *
+	 * @author Thomas Rix
+	 */
+	static class Node {
+		private String name;
+		private int width;
+		private int height;
+		private double x;
+		private double y;
+		private boolean pinned;
+		private boolean anchor;
+
+
+		/**
+		 * Construct a new unpinned node
+		 *
+		 * @param pName Name of the node
+		 * @param pWidth Width of the node
+		 * @param pHeight Height of the node
+		 */
+		private Node(String pName, int pWidth, int pHeight) {
+			name = pName;
+			width = pWidth;
+			height = pHeight;
+			pinned = false;
+			anchor = false;
+		}
+
+
+		/**
+		 * Pin the node to the provided center position
+		 *
+		 * @param pX Horizontal coordinate of the center
+		 * @param pY Vertical coordinate of the center
+		 */
+		private void pin(int pX, int pY) {
+			x = pX;
+			y = pY;
+			pinned = true;
+		}
+
+
+		/**
+		 * Return the name of this node
+		 *
+		 * @return The name of this node
+		 */
+		String getName() {
+			return name;
+		}
+
+
+		/**
+		 * Return the width of this node
+		 *
+		 * @return The width of this node
+		 */
+		int getWidth() {
+			return width;
+		}
+
+
+		/**
+		 * Return the height of this node
+		 *
+		 * @return The height of this node
+		 */
+		int getHeight() {
+			return height;
+		}
+
+
+		/**
+		 * Return the horizontal coordinate of the center of this node
+		 *
+		 * @return Horizontal coordinate of the center
+		 */
+		double getX() {
+			return x;
+		}
+
+
+		/**
+		 * Return the vertical coordinate of the center of this node
+		 *
+		 * @return Vertical coordinate of the center
+		 */
+		double getY() {
+			return y;
+		}
+
+
+		/**
+		 * Set the center position of this node
+		 *
+		 * @param pX Horizontal coordinate of the center
+		 * @param pY Vertical coordinate of the center
+		 */
+		void setPosition(double pX, double pY) {
+			x = pX;
+			y = pY;
+		}
+
+
+		/**
+		 * Return whether the position of this node is fixed
+		 *
+		 * @return true if the node is pinned, false otherwise
+		 */
+		boolean isPinned() {
+			return pinned;
+		}
+
+
+		/**
+		 * Return whether this node is an anchor for group switches. Anchors
+		 * are not part of the topology.
+		 *
+		 * @return true if the node is an anchor, false otherwise
+		 */
+		boolean isAnchor() {
+			return anchor;
+		}
+	}
+
+
+	/**
+	 * This class contains an undirected edge of the layout graph
+	 *
+	 * @author Thomas Rix
+	 */
+	static class Edge {
+		private String from;
+		private String to;
+
+
+		/**
+		 * Construct a new edge between two nodes
+		 *
+		 * @param pFrom Name of the first node
+		 * @param pTo Name of the second node
+		 */
+		private Edge(String pFrom, String pTo) {
+			from = pFrom;
+			to = pTo;
+		}
+
+
+		/**
+		 * Return the name of the first node
+		 *
+		 * @return Name of the first node
+		 */
+		String getFrom() {
+			return from;
+		}
+
+
+		/**
+		 * Return the name of the second node
+		 *
+		 * @return Name of the second node
+		 */
+		String getTo() {
+			return to;
+		}
+
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + from.hashCode();
+			result = prime * result + to.hashCode();
+			return result;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			else if(obj instanceof Edge) {
+				Edge e = (Edge) obj;
+
+				return (e.from.equals(from) && e.to.equals(to));
+			}
+			else {
+				return false;
+			}
+		}
+	}
+}
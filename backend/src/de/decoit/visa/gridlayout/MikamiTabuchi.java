@@ -0,0 +1,318 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
+
+
+/**
+ * Implementation of the Mikami-Tabuchi line search algorithm, ported from the
+ * path finder of the frontend (PathFinder.line.MikamiTabuchi). Lines are drawn
+ * from the source and the target cell in all four directions until they hit
+ * an obstacle or the grid border. Every cell touched by a line is the origin
+ * of the lines of the next iteration level. The search stops as soon as a line
+ * of the source hits a line of the target, the path is tracked back from that
+ * intersection.<br>
+ * <br>
+ * Instead of attributes of table cells, the marks of the lines are stored in
+ * arrays which are reused for all searches on the same grid. One instance must
+ * only be used by one thread at a time.
+ *
+ * @author Thomas Rix
+ */
+class MikamiTabuchi {
+	private static final int SOURCE = 1;
+	private static final int TARGET = -1;
+
+	private RoutingGrid grid;
+	private int[] marks;
+	private int[] markStamps;
+	private int stamp;
+	private int[] lineOrigins;
+	private int lineCount;
+	private int source;
+	private int target;
+	private int intersectCell;
+	private int intersectLine;
+
+
+	/**
+	 * Construct a new path finder working on the provided grid
+	 *
+	 * @param pGrid The grid containing obstacles and routed cables
+	 */
+	MikamiTabuchi(RoutingGrid pGrid) {
+		grid = pGrid;
+
+		marks = new int[grid.getWidth() * grid.getHeight()];
+		markStamps = new int[marks.length];
+		stamp = 0;
+		lineOrigins = new int[64];
+	}
+
+
+	/**
+	 * Do the path finding from the source to the target cell
+	 *
+	 * @param pSource Index of the source cell
+	 * @param pTarget Index of the target cell
+	 * @param pGridDimensions Dimensions used for the limits of the returned
+	 *            positions
+	 * @return Corners of the path including source and target, null if no path
+	 *         was found
+	 */
+	LinkedList<Position2D> findPath(int pSource, int pTarget, Dimension2D pGridDimensions) {
+		source = pSource;
+		target = pTarget;
+		lineCount = 0;
+		intersectCell = -1;
+
+		// A new stamp invalidates the marks of the previous search
+		stamp++;
+		if(stamp == Integer.MAX_VALUE) {
+			Arrays.fill(markStamps, 0);
+			stamp = 1;
+		}
+
+		ArrayList<Integer> sourceNodes = new ArrayList<>();
+		ArrayList<Integer> targetNodes = new ArrayList<>();
+		sourceNodes.add(source);
+		targetNodes.add(target);
+
+		boolean found = false;
+
+		// Do iterations until an intersection was found or both node lists
+		// are empty
+		while((!sourceNodes.isEmpty() || !targetNodes.isEmpty()) && !found) {
+			ArrayList<Integer> nextSourceNodes = new ArrayList<>();
+			ArrayList<Integer> nextTargetNodes = new ArrayList<>();
+
+			for(int i = 0; i < sourceNodes.size() && !found; i++) {
+				found = drawLines(SOURCE, sourceNodes.get(i), nextSourceNodes);
+			}
+
+			for(int i = 0; i < targetNodes.size() && !found; i++) {
+				found = drawLines(TARGET, targetNodes.get(i), nextTargetNodes);
+			}
+
+			sourceNodes = nextSourceNodes;
+			targetNodes = nextTargetNodes;
+		}
+
+		if(!found) {
+			return null;
+		}
+
+		// Track back the path to source and target
+		LinkedList<Integer> cells = new LinkedList<>();
+
+		if(intersectCell == target) {
+			// A line of the source reached the target directly
+			trackBack(intersectLine, source, cells, true);
+		}
+		else if(intersectCell == source) {
+			// A line of the target reached the source directly
+			trackBack(intersectLine, target, cells, false);
+		}
+		else if(Integer.signum(marks[intersectCell]) == SOURCE) {
+			int hitLine = Math.abs(marks[intersectCell]) - 1;
+			cells.add(intersectCell);
+			trackBack(hitLine, source, cells, true);
+			trackBack(intersectLine, target, cells, false);
+		}
+		else {
+			int hitLine = Math.abs(marks[intersectCell]) - 1;
+			cells.add(intersectCell);
+			trackBack(intersectLine, source, cells, true);
+			trackBack(hitLine, target, cells, false);
+		}
+
+		cells.addFirst(source);
+		cells.addLast(target);
+
+		return toCorners(cells, pGridDimensions);
+	}
+
+
+	/**
+	 * Draw the vertical and horizontal lines through an origin cell. The
+	 * direction towards the other end is tried first.
+	 *
+	 * @param pSide SOURCE or TARGET
+	 * @param pOrigin Index of the origin cell
+	 * @param pNextNodes List of the origins of the next iteration level
+	 * @return true if an intersection was found, false otherwise
+	 */
+	private boolean drawLines(int pSide, int pOrigin, ArrayList<Integer> pNextNodes) {
+		int width = grid.getWidth();
+		int sourceX = source % width;
+		int sourceY = source / width;
+		int targetX = target % width;
+		int targetY = target / width;
+
+		// Draw vertical line
+		int line = newLine(pOrigin);
+		int dy = (sourceY > targetY) ? -1 : 1;
+		if(drawLine(pSide, line, pOrigin, 0, dy, pNextNodes) || drawLine(pSide, line, pOrigin, 0, -dy, pNextNodes)) {
+			return true;
+		}
+
+		// Draw horizontal line
+		line = newLine(pOrigin);
+		int dx = (sourceX > targetX) ? -1 : 1;
+		return (drawLine(pSide, line, pOrigin, dx, 0, pNextNodes) || drawLine(pSide, line, pOrigin, -dx, 0, pNextNodes));
+	}
+
+
+	/**
+	 * Draw a line in one direction until an obstacle, the grid border or a
+	 * line of the same side is hit, or an intersection is found
+	 *
+	 * @param pSide SOURCE or TARGET
+	 * @param pLine Identifier of the line
+	 * @param pOrigin Index of the origin cell
+	 * @param pDX Horizontal step
+	 * @param pDY Vertical step
+	 * @param pNextNodes List of the origins of the next iteration level
+	 * @return true if an intersection was found, false otherwise
+	 */
+	private boolean drawLine(int pSide, int pLine, int pOrigin, int pDX, int pDY, ArrayList<Integer> pNextNodes) {
+		int x = pOrigin % grid.getWidth() + pDX;
+		int y = pOrigin / grid.getWidth() + pDY;
+		boolean horizontal = (pDX != 0);
+
+		int cell = grid.index(x, y);
+		while(cell != -1 && grid.isPassable(cell, horizontal)) {
+			if((pSide == SOURCE && cell == target) || (pSide == TARGET && cell == source)) {
+				// The other end was reached directly
+				intersectCell = cell;
+				intersectLine = pLine;
+				return true;
+			}
+
+			if(markStamps[cell] == stamp) {
+				if(Integer.signum(marks[cell]) != pSide) {
+					// Line of the other side hit, path found
+					intersectCell = cell;
+					intersectLine = pLine;
+					return true;
+				}
+				else {
+					// Line of the same side hit, this line is done
+					return false;
+				}
+			}
+
+			if(cell != source && cell != target) {
+				marks[cell] = pSide * (pLine + 1);
+				markStamps[cell] = stamp;
+				pNextNodes.add(cell);
+			}
+
+			x += pDX;
+			y += pDY;
+			cell = grid.index(x, y);
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Register a new line starting at the provided origin
+	 *
+	 * @param pOrigin Index of the origin cell
+	 * @return Identifier of the line
+	 */
+	private int newLine(int pOrigin) {
+		if(lineCount == lineOrigins.length) {
+			lineOrigins = Arrays.copyOf(lineOrigins, lineCount * 2);
+		}
+
+		lineOrigins[lineCount] = pOrigin;
+
+		return lineCount++;
+	}
+
+
+	/**
+	 * Follow the origins of the lines back to the source or target cell and
+	 * add them to the path
+	 *
+	 * @param pLine Line to start at
+	 * @param pEnd Index of the source or target cell
+	 * @param pCells Cells of the path
+	 * @param pPrepend true to add the cells to the beginning of the path,
+	 *            false to add them to the end
+	 */
+	private void trackBack(int pLine, int pEnd, LinkedList<Integer> pCells, boolean pPrepend) {
+		int origin = lineOrigins[pLine];
+
+		while(origin != pEnd) {
+			if(pPrepend) {
+				pCells.addFirst(origin);
+			}
+			else {
+				pCells.addLast(origin);
+			}
+
+			origin = lineOrigins[Math.abs(marks[origin]) - 1];
+		}
+	}
+
+
+	/**
+	 * Convert the cells of a path into positions. Cells located on a straight
+	 * line between their neighbours are not corners and are removed.
+	 *
+	 * @param pCells Cells of the path
+	 * @param pGridDimensions Dimensions used for the limits of the positions
+	 * @return Corners of the path
+	 */
+	private LinkedList<Position2D> toCorners(LinkedList<Integer> pCells, Dimension2D pGridDimensions) {
+		int width = grid.getWidth();
+		Integer[] cells = pCells.toArray(new Integer[pCells.size()]);
+		LinkedList<Position2D> rv = new LinkedList<>();
+
+		for(int i = 0; i < cells.length; i++) {
+			int x = cells[i] % width;
+			int y = cells[i] / width;
+
+			if(i > 0 && i < cells.length - 1) {
+				int prevX = cells[i - 1] % width;
+				int prevY = cells[i - 1] / width;
+				int nextX = cells[i + 1] % width;
+				int nextY = cells[i + 1] / width;
+
+				if((prevX == x && x == nextX) || (prevY == y && y == nextY)) {
+					continue;
+				}
+			}
+
+			rv.add(new Position2D(x, y, pGridDimensions));
+		}
+
+		return rv;
+	}
+}
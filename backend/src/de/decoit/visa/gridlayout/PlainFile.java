@@ -19,216 +19,349 @@
 
 package de.decoit.visa.gridlayout;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.log4j.Logger;
-import de.decoit.visa.Dimension2D;
-import de.decoit.visa.Position2D;
 
 
 /**
- * This class reads an output file from graphviz which is in plain format,
- * parses its contents and provides the information as Node objects.
+ * This class parses the output of graphviz in plain format. The output is
+ * tokenized while it is read, so it can be read directly from the output
+ * stream of the graphviz process. The location of every node is passed to a
+ * {@link NodeHandler} as soon as its line was read, nodes are not collected.
+ * Lines which are not part of the plain format, for example error messages of
+ * graphviz, are collected as messages.<br>
+ * <br>
+ * The tokenizer works on a reused line buffer and does not use regular
+ * expressions or split the lines into strings. Only the names of the nodes
+ * and the messages are created as strings. Quoted node names may contain
+ * spaces and escaped quotes.
  *
  * @author Thomas Rix
  */
 class PlainFile {
 	private static Logger log = Logger.getLogger(PlainFile.class.getName());
 
-	private BufferedReader br;
-	private HashSet<Node> nodes;
-	private Iterator<Node> nodeIterator;
+	private Reader reader;
+	private char[] buffer;
+	private int bufferPos;
+	private int bufferLimit;
+	private StringBuilder line;
+	private int cursor;
+	private StringBuilder token;
+	private ArrayList<String> messages;
 	private double scaleFactor;
+	private int nodeCount;
 
 
 	/**
-	 * Construct a new PlainFile object using the provided input file and
-	 * encoding as source.
+	 * Construct a new PlainFile object using the provided reader as source.
+	 * Nothing is read until {@link #parse(NodeHandler)} is called.
 	 *
-	 * @param pInfile The text file to parse, must be a plain text file in
-	 *            graphviz's plain output format
-	 * @param pEncoding The encoding of the input file
-	 * @param pGridDimensions Dimensions of the grid the components are placed on
-	 * @throws IOException if the file cannot be opened or read
+	 * @param pReader Reader providing text in graphviz's plain output format
 	 */
-	PlainFile(Path pInfile, Charset pEncoding, Dimension2D pGridDimensions) throws IOException {
-		nodes = new HashSet<>();
-
-		if(log.isDebugEnabled()) {
-			StringBuilder sb = new StringBuilder("Opening plain file '");
-			sb.append(pInfile);
-			sb.append("' for reading");
-			log.debug(sb.toString());
+	PlainFile(Reader pReader) {
+		if(pReader == null) {
+			throw new NullPointerException("NULL pointer for reader provided");
 		}
 
-		// Open an input stream on the target file
-		br = Files.newBufferedReader(pInfile, pEncoding);
+		reader = pReader;
+		buffer = new char[8192];
+		bufferPos = 0;
+		bufferLimit = 0;
+		line = new StringBuilder(256);
+		token = new StringBuilder(64);
+		messages = new ArrayList<>();
+		scaleFactor = 1.0;
+		nodeCount = 0;
+	}
 
-		// Read the first line of the file
-		String line = br.readLine();
+
+	/**
+	 * Read the input until EOF and pass the location of every node to the
+	 * handler. Coordinates are multiplied by the scale factor of the graph
+	 * line to reverse the automatic graph scaling done by graphviz. The reader
+	 * is not closed.
+	 *
+	 * @param pHandler Handler receiving the node locations
+	 * @throws IOException if reading fails or a node line is malformed
+	 */
+	void parse(NodeHandler pHandler) throws IOException {
+		while(readLine()) {
+			if(isKeyword("node")) {
+				parseNodeLine(pHandler);
+			}
+			else if(isKeyword("graph")) {
+				parseGraphLine();
+			}
+			// Keep anything else except edges and the end of the output
+			else if(!isKeyword("edge") && !isKeyword("stop")) {
+				messages.add(line.toString());
+			}
+		}
 
 		if(log.isDebugEnabled()) {
-			StringBuilder sb = new StringBuilder("Read line: ");
-			sb.append(line);
+			StringBuilder sb = new StringBuilder("Parsed plain output: ");
+			sb.append(nodeCount);
+			sb.append(" nodes, ");
+			sb.append(messages.size());
+			sb.append(" messages");
 			log.debug(sb.toString());
 		}
+	}
 
-		// Read lines until we reach EOF
-		while(line != null) {
-			// If it is the graph line, parse the scale factor
-			if(line.startsWith("graph")) {
-				parseGraphLine(line);
-			}
-			// If it is a node line, create a new Node object
-			else if(line.startsWith("node")) {
-				nodes.add(new Node(line, scaleFactor, pGridDimensions));
-			}
 
-			// Read next line
-			line = br.readLine();
+	/**
+	 * Return the lines of the input which are not part of the plain format,
+	 * for example warnings and error messages of graphviz
+	 *
+	 * @return List of the lines in the order they were read
+	 */
+	public List<String> getMessages() {
+		return messages;
+	}
+
 
-			if(log.isDebugEnabled()) {
-				StringBuilder sb = new StringBuilder("Read line: ");
-				sb.append(line);
-				log.debug(sb.toString());
-			}
+	/**
+	 * Parse the graph line of a plain format file and extract the coordinate
+	 * scale factor from it.
+	 *
+	 * @throws IOException if the scale factor is malformed
+	 */
+	private void parseGraphLine() throws IOException {
+		cursor = 5;
+		scaleFactor = nextNumber();
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Parsed graph line, scale factor: ");
+			sb.append(scaleFactor);
+			log.debug(sb.toString());
 		}
+	}
 
-		// Close the input stream
-		br.close();
 
-		// Get an iterator for the nodes
-		nodeIterator = nodes.iterator();
+	/**
+	 * Parse a node line of a plain format file and pass the name and location
+	 * of the node to the handler. Size, label and style of the node are
+	 * ignored.
+	 *
+	 * @param pHandler Handler receiving the node location
+	 * @throws IOException if the name or the coordinates are malformed
+	 */
+	private void parseNodeLine(NodeHandler pHandler) throws IOException {
+		cursor = 4;
+		String name = nextName();
+		double posX = nextNumber();
+		double posY = nextNumber();
+
+		nodeCount++;
+		pHandler.node(name, (int) Math.round(posX * scaleFactor), (int) Math.round(posY * scaleFactor));
 	}
 
 
 	/**
-	 * Return the next node in the iterator
+	 * Read the next line of the input into the line buffer. Line terminators
+	 * are not included.
 	 *
-	 * @return The next node in the iterator, null if Iterator.hasNext()==false
+	 * @return true if a line was read, false if EOF was reached
+	 * @throws IOException if reading fails
 	 */
-	public Node getNextNode() {
-		if(nodeIterator.hasNext()) {
-			return nodeIterator.next();
-		}
-		else {
-			return null;
+	private boolean readLine() throws IOException {
+		line.setLength(0);
+		boolean read = false;
+
+		while(true) {
+			if(bufferPos == bufferLimit) {
+				bufferLimit = reader.read(buffer, 0, buffer.length);
+				bufferPos = 0;
+
+				if(bufferLimit <= 0) {
+					bufferLimit = 0;
+					return read;
+				}
+			}
+
+			char c = buffer[bufferPos++];
+			read = true;
+
+			if(c == '\n') {
+				return true;
+			}
+			else if(c != '\r') {
+				line.append(c);
+			}
 		}
 	}
 
 
 	/**
-	 * Parse the graph line of a plain format file and extract the coordinate
-	 * scale factor from it.
+	 * Check if the line buffer starts with the provided keyword, followed by
+	 * a space or the end of the line
 	 *
-	 * @param pLine The graph line in the graphviz plain output format, must
-	 *            start with "graph"
+	 * @param pKeyword The keyword
+	 * @return true if the line starts with the keyword, false otherwise
 	 */
-	private void parseGraphLine(String pLine) {
-		if(pLine.startsWith("graph")) {
-			String[] fragments = pLine.split(" ");
+	private boolean isKeyword(String pKeyword) {
+		int length = pKeyword.length();
 
-			scaleFactor = Double.parseDouble(fragments[1]);
+		if(line.length() < length || (line.length() > length && line.charAt(length) != ' ')) {
+			return false;
+		}
 
-			if(log.isDebugEnabled()) {
-				StringBuilder sb = new StringBuilder("Parsed graph line, scale factor: ");
-				sb.append(scaleFactor);
-				log.debug(sb.toString());
+		for(int i = 0; i < length; i++) {
+			if(line.charAt(i) != pKeyword.charAt(i)) {
+				return false;
 			}
 		}
-		else {
-			throw new IllegalArgumentException("Provided line was no graph line");
+
+		return true;
+	}
+
+
+	/**
+	 * Skip the spaces in front of the next token
+	 */
+	private void skipSpaces() {
+		while(cursor < line.length() && line.charAt(cursor) == ' ') {
+			cursor++;
 		}
 	}
 
 
 	/**
-	 * This class contains information about a graph node as returned by
-	 * graphviz
-	 *
-	 * @author Thomas Rix
+	 * Read the next token as name. Names enclosed in quotes may contain
+	 * spaces, a quote inside of them is escaped by a backslash.
 	 *
+	 * @return The name without enclosing quotes
+	 * @throws IOException if no name is left in the line
 	 */
-	static class Node {
-		private String localName;
-		private Position2D gridLocation;
+	private String nextName() throws IOException {
+		skipSpaces();
 
+		if(cursor >= line.length()) {
+			throw new IOException("Missing name in graphviz output: " + line);
+		}
 
-		/**
-		 * Construct a new Node object by parsing a node line from the graphviz
-		 * plain output format. Coordinates are multiplied by the scale factor
-		 * to reverse the automatic graph scaling done by graphviz.
-		 *
-		 * @param pLine A node line in the graphviz plain output format, must
-		 *            start with "node"
-		 * @param pScale Scale factor of the coordinates
-		 * @param pGridDimensions Dimensions of the grid the components are placed on
-		 */
-		private Node(String pLine, double pScale, Dimension2D pGridDimensions) {
-			if(pLine.startsWith("node")) {
-				String[] fragments = pLine.split(" ");
+		token.setLength(0);
 
-				localName = fragments[1].replaceAll("\"", "");
+		if(line.charAt(cursor) == '"') {
+			cursor++;
 
-				double posX = Math.round(Double.parseDouble(fragments[2]) * pScale);
-				double posY = Math.round(Double.parseDouble(fragments[3]) * pScale);
+			while(cursor < line.length()) {
+				char c = line.charAt(cursor++);
 
-				gridLocation = new Position2D((int) posX, (int) posY, pGridDimensions);
+				if(c == '"') {
+					return token.toString();
+				}
+				else if(c == '\\' && cursor < line.length() && line.charAt(cursor) == '"') {
+					token.append('"');
+					cursor++;
+				}
+				else {
+					token.append(c);
+				}
 			}
-			else {
-				throw new IllegalArgumentException("Provided line was no node line");
+
+			throw new IOException("Unterminated name in graphviz output: " + line);
+		}
+		else {
+			while(cursor < line.length() && line.charAt(cursor) != ' ') {
+				token.append(line.charAt(cursor++));
 			}
+
+			return token.toString();
 		}
+	}
 
 
-		/**
-		 * Return the local name of this node
-		 *
-		 * @return The local name of this node
-		 */
-		public String getLocalname() {
-			return localName;
-		}
+	/**
+	 * Read the next token as decimal number, with optional sign, fraction
+	 * and exponent
+	 *
+	 * @return The number
+	 * @throws IOException if the token is no number
+	 */
+	private double nextNumber() throws IOException {
+		skipSpaces();
 
+		boolean negative = false;
+		boolean digits = false;
+		double value = 0.0;
 
-		/**
-		 * Return the grid location of this node
-		 *
-		 * @return The grid location of this node
-		 */
-		public Position2D getGridLocation() {
-			return gridLocation;
+		if(cursor < line.length() && (line.charAt(cursor) == '-' || line.charAt(cursor) == '+')) {
+			negative = (line.charAt(cursor) == '-');
+			cursor++;
 		}
 
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((gridLocation == null) ? 0 : gridLocation.hashCode());
-			result = prime * result + ((localName == null) ? 0 : localName.hashCode());
-			return result;
+		while(cursor < line.length() && isDigit(line.charAt(cursor))) {
+			value = value * 10 + (line.charAt(cursor++) - '0');
+			digits = true;
 		}
 
+		if(cursor < line.length() && line.charAt(cursor) == '.') {
+			cursor++;
+			double scale = 0.1;
 
-		@Override
-		public boolean equals(Object obj) {
-			if(this == obj) {
-				return true;
+			while(cursor < line.length() && isDigit(line.charAt(cursor))) {
+				value += (line.charAt(cursor++) - '0') * scale;
+				scale /= 10;
+				digits = true;
 			}
-			else if(obj instanceof Node) {
-				Node n = (Node) obj;
+		}
+
+		if(digits && cursor < line.length() && (line.charAt(cursor) == 'e' || line.charAt(cursor) == 'E')) {
+			cursor++;
+			boolean negativeExp = false;
+			int exponent = 0;
 
-				return (n.gridLocation.equals(gridLocation) && n.localName.equals(localName));
+			if(cursor < line.length() && (line.charAt(cursor) == '-' || line.charAt(cursor) == '+')) {
+				negativeExp = (line.charAt(cursor) == '-');
+				cursor++;
 			}
-			else {
-				return false;
+
+			while(cursor < line.length() && isDigit(line.charAt(cursor))) {
+				exponent = exponent * 10 + (line.charAt(cursor++) - '0');
 			}
+
+			value *= Math.pow(10, negativeExp ? -exponent : exponent);
+		}
+
+		if(!digits || (cursor < line.length() && line.charAt(cursor) != ' ')) {
+			throw new IOException("Malformed number in graphviz output: " + line);
 		}
+
+		return (negative ? -value : value);
+	}
+
+
+	/**
+	 * Check if a character is a decimal digit
+	 *
+	 * @param pChar The character
+	 * @return true if the character is a digit from 0 to 9, false otherwise
+	 */
+	private static boolean isDigit(char pChar) {
+		return (pChar >= '0' && pChar <= '9');
+	}
+
+
+	/**
+	 * Receiver of the node locations found by {@link PlainFile#parse(NodeHandler)}
+	 *
+	 * @author Thomas Rix
+	 */
+	interface NodeHandler {
+		/**
+		 * Called for every node line of the plain output
+		 *
+		 * @param pName Name of the node
+		 * @param pX Horizontal coordinate of the node center, scaled to grid
+		 *            cells
+		 * @param pY Vertical coordinate of the node center, scaled to grid
+		 *            cells
+		 */
+		void node(String pName, int pX, int pY);
 	}
 }
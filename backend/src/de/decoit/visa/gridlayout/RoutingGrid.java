@@ -0,0 +1,245 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.gridlayout;
+
+import java.util.List;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
+
+
+/**
+ * This class stores the cells of an editor grid which cannot be used by cable
+ * paths. Cells covered by a component or its margin are obstacles. Cells used
+ * by an already routed cable may be crossed by other cables, but a cable may
+ * not run along another cable in the same direction. This matches the rules of
+ * the path finder used by the frontend.<br>
+ * <br>
+ * The port connector of a component and the cell in front of it are located
+ * in the margin of the component. They can be released for the cable which is
+ * currently routed, see {@link #setFreeCells(int[])}.
+ *
+ * @author Thomas Rix
+ */
+class RoutingGrid {
+	private int width;
+	private int height;
+	private int[] obstacles;
+	private boolean[] horizontalCables;
+	private boolean[] verticalCables;
+	private int[] freeCells;
+
+
+	/**
+	 * Construct a new grid without obstacles and cables
+	 *
+	 * @param pGridDimensions Dimensions of the grid
+	 */
+	RoutingGrid(Dimension2D pGridDimensions) {
+		width = pGridDimensions.getX();
+		height = pGridDimensions.getY();
+
+		obstacles = new int[width * height];
+		horizontalCables = new boolean[width * height];
+		verticalCables = new boolean[width * height];
+		freeCells = new int[0];
+	}
+
+
+	/**
+	 * Return the width of the grid
+	 *
+	 * @return Number of columns
+	 */
+	int getWidth() {
+		return width;
+	}
+
+
+	/**
+	 * Return the height of the grid
+	 *
+	 * @return Number of rows
+	 */
+	int getHeight() {
+		return height;
+	}
+
+
+	/**
+	 * Return the index of a cell
+	 *
+	 * @param pX Horizontal coordinate
+	 * @param pY Vertical coordinate
+	 * @return Index of the cell, -1 if the cell is located outside the grid
+	 */
+	int index(int pX, int pY) {
+		if(pX < 0 || pX >= width || pY < 0 || pY >= height) {
+			return -1;
+		}
+
+		return pY * width + pX;
+	}
+
+
+	/**
+	 * Mark all cells of a rectangle as obstacles, cells outside the grid are
+	 * ignored
+	 *
+	 * @param pX1 Horizontal coordinate of the upper left corner
+	 * @param pY1 Vertical coordinate of the upper left corner
+	 * @param pX2 Horizontal coordinate of the lower right corner, exclusive
+	 * @param pY2 Vertical coordinate of the lower right corner, exclusive
+	 */
+	void addObstacle(int pX1, int pY1, int pX2, int pY2) {
+		for(int y = Math.max(0, pY1); y < Math.min(height, pY2); y++) {
+			for(int x = Math.max(0, pX1); x < Math.min(width, pX2); x++) {
+				obstacles[y * width + x]++;
+			}
+		}
+	}
+
+
+	/**
+	 * Set the cells which are not treated as obstacles while the next cable is
+	 * routed. Cells used by other cables stay restricted.
+	 *
+	 * @param pCells Indices of the released cells
+	 */
+	void setFreeCells(int[] pCells) {
+		freeCells = pCells;
+	}
+
+
+	/**
+	 * Check if a cable may enter a cell
+	 *
+	 * @param pCell Index of the cell
+	 * @param pHorizontal true if the cable runs horizontally through the cell,
+	 *            false if it runs vertically
+	 * @return true if the cable may use the cell, false otherwise
+	 */
+	boolean isPassable(int pCell, boolean pHorizontal) {
+		if(pHorizontal ? horizontalCables[pCell] : verticalCables[pCell]) {
+			return false;
+		}
+
+		if(obstacles[pCell] > 0) {
+			for(int free : freeCells) {
+				if(free == pCell) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Check if a path is usable on the current grid: it must start and end at
+	 * the provided cells, consist of horizontal and vertical segments only and
+	 * every cell except the starting cell must be passable.
+	 *
+	 * @param pPath Corners of the path
+	 * @param pStart Index of the starting cell
+	 * @param pEnd Index of the ending cell
+	 * @return true if the path can be used, false otherwise
+	 */
+	boolean isValidPath(List<Position2D> pPath, int pStart, int pEnd) {
+		if(pPath == null || pPath.size() < 2) {
+			return false;
+		}
+
+		Position2D first = pPath.get(0);
+		Position2D last = pPath.get(pPath.size() - 1);
+		if(index(first.getX(), first.getY()) != pStart || index(last.getX(), last.getY()) != pEnd) {
+			return false;
+		}
+
+		for(int i = 1; i < pPath.size(); i++) {
+			Position2D from = pPath.get(i - 1);
+			Position2D to = pPath.get(i);
+
+			if(from.getX() != to.getX() && from.getY() != to.getY()) {
+				return false;
+			}
+
+			boolean horizontal = (from.getY() == to.getY());
+			int dx = Integer.signum(to.getX() - from.getX());
+			int dy = Integer.signum(to.getY() - from.getY());
+
+			int x = from.getX();
+			int y = from.getY();
+			while(x != to.getX() || y != to.getY()) {
+				x += dx;
+				y += dy;
+
+				int cell = index(x, y);
+				if(cell == -1 || !isPassable(cell, horizontal)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Mark the cells of a routed path as used by a cable. Other cables may
+	 * cross these cells but not run along them.
+	 *
+	 * @param pPath Corners of the path, consisting of horizontal and vertical
+	 *            segments
+	 */
+	void addPath(List<Position2D> pPath) {
+		for(int i = 1; i < pPath.size(); i++) {
+			Position2D from = pPath.get(i - 1);
+			Position2D to = pPath.get(i);
+
+			boolean horizontal = (from.getY() == to.getY());
+			int dx = Integer.signum(to.getX() - from.getX());
+			int dy = Integer.signum(to.getY() - from.getY());
+
+			int x = from.getX();
+			int y = from.getY();
+			while(true) {
+				int cell = index(x, y);
+				if(cell != -1) {
+					if(horizontal) {
+						horizontalCables[cell] = true;
+					}
+					else {
+						verticalCables[cell] = true;
+					}
+				}
+
+				if(x == to.getX() && y == to.getY()) {
+					break;
+				}
+
+				x += dx;
+				y += dy;
+			}
+		}
+	}
+}
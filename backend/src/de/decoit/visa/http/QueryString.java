@@ -19,30 +19,54 @@
 
 package de.decoit.visa.http;
 
-import java.io.UnsupportedEncodingException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Iterator;
 import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import com.sun.net.httpserver.HttpExchange;
 import de.decoit.visa.TEBackend;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
  * This class represents a query string and allows access to all the parameters
  * stored in the query string. Parameter values are stored as QueryStringValue
  * objects. The containsKey() and get() methods just wrap the corresponding
- * HashMap methods since a HashMap is used for storage.
+ * HashMap methods since a HashMap is used for storage.<br>
+ * <br>
+ * Parameters are decoded in a single pass over the raw query string. POST
+ * requests may additionally provide parameters in the request body, either
+ * URL encoded (application/x-www-form-urlencoded) or as a JSON object
+ * (application/json). The body is parsed while it is read from the request.
  *
  * @author Thomas Rix
  */
 public class QueryString {
 	private static Logger log = Logger.getLogger(QueryString.class.getName());
 
+	private static final String CONTENT_TYPE_FORM = "application/x-www-form-urlencoded";
+	private static final String CONTENT_TYPE_JSON = "application/json";
+
 	private HashMap<String, QueryStringValue> queryParams;
 
+	// Buffer for the decoded bytes of the current parameter, it is reused for
+	// all parameters of a query string
+	private byte[] paramBuffer;
+	private int paramLength;
+	private int keyLength;
+	private boolean malformed;
+
 
 	/**
 	 * Construct a new object using a URI object. The query string will be
@@ -52,7 +76,56 @@ public class QueryString {
 	 */
 	public QueryString(URI pURI) {
 		queryParams = new HashMap<>();
-		this.evalQueryString(pURI.getQuery());
+
+		String query = pURI.getRawQuery();
+		if(query != null && !query.isEmpty()) {
+			try {
+				this.evalQueryString(new ByteArrayInputStream(query.getBytes(JSONStreamWriter.UTF8)));
+			}
+			catch(IOException ex) {
+				// Cannot happen when reading from a byte array
+				TEBackend.logException(ex, log);
+			}
+		}
+	}
+
+
+	/**
+	 * Construct a new object using the request of a HTTP exchange. The query
+	 * string will be extracted from the request URI. If the request is a POST
+	 * request with a URL encoded or JSON body, the parameters of the body are
+	 * added to the parameters of the query string. The request body is
+	 * consumed by this constructor.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @throws IOException if reading the request body failed
+	 */
+	public QueryString(HttpExchange pHE) throws IOException {
+		this(pHE.getRequestURI());
+
+		if("POST".equalsIgnoreCase(pHE.getRequestMethod())) {
+			String contentType = pHE.getRequestHeaders().getFirst("Content-type");
+
+			if(contentType != null) {
+				// Strip parameters like the charset from the media type
+				int paramStart = contentType.indexOf(';');
+				if(paramStart >= 0) {
+					contentType = contentType.substring(0, paramStart);
+				}
+				contentType = contentType.trim();
+
+				if(contentType.equalsIgnoreCase(CONTENT_TYPE_FORM)) {
+					try(InputStream in = new BufferedInputStream(pHE.getRequestBody())) {
+						this.evalQueryString(in);
+					}
+				}
+				else if(contentType.equalsIgnoreCase(CONTENT_TYPE_JSON)) {
+					try(InputStream in = pHE.getRequestBody()) {
+						this.evalJSONBody(in);
+					}
+				}
+			}
+		}
 	}
 
 
@@ -82,22 +155,110 @@ public class QueryString {
 
 
 	/**
-	 * Evaluate a given query string and store the parameters in this object. It
-	 * will split the query string at all occurrences of the "&" sign and add
-	 * each parameter to the parameter map
+	 * Evaluate a URL encoded query string and store the parameters in this
+	 * object. The input is read once, parameters are separated by the "&" sign
+	 * and percent encoded bytes and "+" signs are decoded while reading.
+	 * Malformed parameters are ignored.
 	 *
-	 * @param pQuery A string containing the query string of a URI/URL without
-	 *            leading "?"
+	 * @param pIn Stream providing the query string without leading "?"
+	 * @throws IOException if reading from the stream failed
 	 */
-	private void evalQueryString(String pQuery) {
-		// Query parameters are separated by "&", so do a split with "&"
-		// delimiter
-		String[] queryElements = pQuery.split("&");
+	private void evalQueryString(InputStream pIn) throws IOException {
+		if(paramBuffer == null) {
+			paramBuffer = new byte[64];
+		}
+		this.resetParameter();
+
+		int b;
+		while((b = pIn.read()) != -1) {
+			switch(b) {
+				case '&':
+					this.finishParameter();
+					break;
+				case '=':
+					if(keyLength < 0) {
+						keyLength = paramLength;
+					}
+					else {
+						this.appendByte(b);
+					}
+					break;
+				case '+':
+					this.appendByte(' ');
+					break;
+				case '%':
+					int high = Character.digit(pIn.read(), 16);
+					int low = Character.digit(pIn.read(), 16);
+
+					if(high >= 0 && low >= 0) {
+						this.appendByte((high << 4) | low);
+					}
+					else {
+						// Invalid escape sequence, the parameter is dropped.
+						// A "&" consumed here is lost, which is acceptable for
+						// malformed input.
+						malformed = true;
+					}
+					break;
+				default:
+					this.appendByte(b);
+			}
+		}
+
+		this.finishParameter();
+	}
+
 
-		// Iterate through all query parameters
-		for(String qe : queryElements) {
+	/**
+	 * Evaluate a JSON object provided as request body and store its members as
+	 * parameters. Arrays are stored as multiple values for the same key, all
+	 * other values are stored in their string representation. Null values and
+	 * members with invalid keys are ignored.
+	 *
+	 * @param pIn Stream providing the JSON object
+	 */
+	private void evalJSONBody(InputStream pIn) {
+		try {
+			JSONObject body = new JSONObject(new JSONTokener(new InputStreamReader(pIn, JSONStreamWriter.UTF8)));
+
+			Iterator<?> it = body.keys();
+			while(it.hasNext()) {
+				String member = (String) it.next();
+				String key = QueryString.parseKey(member);
+
+				if(key != null) {
+					Object value = body.get(member);
+
+					if(value instanceof JSONArray) {
+						JSONArray values = (JSONArray) value;
+						for(int i = 0; i < values.length(); i++) {
+							this.addJSONValue(key, values.get(i));
+						}
+					}
+					else {
+						this.addJSONValue(key, value);
+					}
+				}
+			}
+		}
+		catch(JSONException ex) {
+			// A malformed body is treated like a missing one, the handler
+			// will report the missing parameters
+			TEBackend.logException(ex, log);
+		}
+	}
+
+
+	/**
+	 * Add a value from a JSON request body to the parameter map
+	 *
+	 * @param pKey Key of the parameter
+	 * @param pValue JSON value, JSONObject.NULL will be ignored
+	 */
+	private void addJSONValue(String pKey, Object pValue) {
+		if(pValue != JSONObject.NULL) {
 			try {
-				this.add(qe);
+				this.add(pKey, pValue.toString());
 			}
 			catch(IllegalArgumentException ex) {
 
@@ -107,36 +268,117 @@ public class QueryString {
 
 
 	/**
-	 * Add a parameter to the parameter map. The parameter must be of the form
-	 * key=value. The 'key' must begin with a letter followed by any number of
-	 * alphanumeric characters (a-z, A-Z, 0-9) or an underscore. The last two
-	 * characters of the 'key' may be "[]" to mark arrays but are optional since
-	 * identical keys on two or more parameters will be treated as array values.
-	 * The 'value' can be made of any number of characters.
+	 * Append a decoded byte to the buffer of the current parameter
 	 *
-	 * @param pParam String containing the parameter in key=value form
+	 * @param pByte The byte to append
 	 */
-	private void add(String pParam) {
-		// Check if the parameter has a valid form
-		Pattern p = Pattern.compile("^([a-zA-Z][_\\w]+)(\\[?\\]?)=(.*)$");
-		Matcher m = p.matcher(pParam);
+	private void appendByte(int pByte) {
+		if(paramLength == paramBuffer.length) {
+			paramBuffer = Arrays.copyOf(paramBuffer, paramBuffer.length * 2);
+		}
 
-		if(m.matches()) {
-			try {
-				// Check if it is a duplicate parameter => array!
-				if(queryParams.containsKey(m.group(1))) {
-					queryParams.get(m.group(1)).add(URLDecoder.decode(m.group(3), "UTF-8"));
+		paramBuffer[paramLength++] = (byte) pByte;
+	}
+
+
+	/**
+	 * Add the parameter stored in the buffer to the parameter map and reset
+	 * the buffer. Parameters without "=", with an invalid key or invalid
+	 * encoding are ignored.
+	 */
+	private void finishParameter() {
+		if(!malformed && keyLength > 0) {
+			String key = QueryString.parseKey(new String(paramBuffer, 0, keyLength, JSONStreamWriter.UTF8));
+
+			if(key != null) {
+				try {
+					this.add(key, new String(paramBuffer, keyLength, paramLength - keyLength, JSONStreamWriter.UTF8));
 				}
-				else {
-					queryParams.put(m.group(1), new QueryStringValue(URLDecoder.decode(m.group(3), "UTF-8")));
+				catch(IllegalArgumentException ex) {
+
 				}
 			}
-			catch(UnsupportedEncodingException ex) {
-				TEBackend.logException(ex, log);
+		}
+
+		this.resetParameter();
+	}
+
+
+	/**
+	 * Reset the buffer of the current parameter
+	 */
+	private void resetParameter() {
+		paramLength = 0;
+		keyLength = -1;
+		malformed = false;
+	}
+
+
+	/**
+	 * Check if a parameter key has a valid form and return its name. The 'key'
+	 * must begin with a letter followed by any number of alphanumeric
+	 * characters (a-z, A-Z, 0-9) or an underscore. The last two characters of
+	 * the 'key' may be "[]" to mark arrays but are optional since identical
+	 * keys on two or more parameters will be treated as array values.
+	 *
+	 * @param pKey The key to check
+	 * @return The name of the key without trailing brackets, null if the key
+	 *         is malformed
+	 */
+	private static String parseKey(String pKey) {
+		int nameLength = pKey.length();
+
+		// Strip the optional array brackets
+		if(nameLength > 0 && pKey.charAt(nameLength - 1) == ']') {
+			nameLength--;
+		}
+		if(nameLength > 0 && pKey.charAt(nameLength - 1) == '[') {
+			nameLength--;
+		}
+
+		if(nameLength < 2 || !QueryString.isLetter(pKey.charAt(0))) {
+			return null;
+		}
+
+		for(int i = 1; i < nameLength; i++) {
+			char c = pKey.charAt(i);
+
+			if(!QueryString.isLetter(c) && !(c >= '0' && c <= '9') && c != '_') {
+				return null;
 			}
 		}
+
+		return (nameLength == pKey.length()) ? pKey : pKey.substring(0, nameLength);
+	}
+
+
+	/**
+	 * Check if a character is an ASCII letter
+	 *
+	 * @param pChar The character to check
+	 * @return true: Character is a letter, false otherwise
+	 */
+	private static boolean isLetter(char pChar) {
+		return (pChar >= 'a' && pChar <= 'z') || (pChar >= 'A' && pChar <= 'Z');
+	}
+
+
+	/**
+	 * Add a parameter to the parameter map. Identical keys on two or more
+	 * parameters will be treated as array values.
+	 *
+	 * @param pKey Name of the parameter
+	 * @param pValue Value of the parameter, cannot be empty
+	 */
+	private void add(String pKey, String pValue) {
+		// Check if it is a duplicate parameter => array!
+		QueryStringValue value = queryParams.get(pKey);
+
+		if(value != null) {
+			value.add(pValue);
+		}
 		else {
-			throw new IllegalArgumentException("Malformed query string parameter");
+			queryParams.put(pKey, new QueryStringValue(pValue));
 		}
 	}
 
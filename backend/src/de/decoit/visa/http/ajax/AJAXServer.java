@@ -21,9 +21,19 @@ package de.decoit.visa.http.ajax;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import de.decoit.visa.enums.RequestClass;
 import de.decoit.visa.http.ajax.handlers.*;
 
 
@@ -40,6 +50,7 @@ import de.decoit.visa.http.ajax.handlers.*;
  * /ajax/ioLoadTopo (load a specific topology from the IO-Tool)<br>
  * /ajax/ioWriteTopo (save a specific topology from the IO-Tool)<br>
  * /ajax/requestTopology (request JSON object of the current topology)<br>
+ * /ajax/vsaTemplates (request JSON object of the available VSA templates)<br>
  * /ajax/createComponent (create a new NetworkComponent)<br>
  * /ajax/relocateComponent (relocate existing NetworkComponent)<br>
  * /ajax/removeComponent (remove existing NetworkComponent)<br>
@@ -51,6 +62,10 @@ import de.decoit.visa.http.ajax.handlers.*;
  * /ajax/createVLAN (create a new VLAN)<br>
  * /ajax/modifyVLAN (modify an existing VLAN)<br>
  * /ajax/removeVLAN (remove an existing VLAN)<br>
+ * /ajax/bulkModify (apply a batch of topology modifications)<br>
+ * /ajax/batch (execute a list of single requests in one transaction)<br>
+ * /ajax/events (server-sent events stream of topology changes and IO-Tool jobs)<br>
+ * /ajax/metrics (metrics of the backend in Prometheus text format)<br>
  * /ajax/exportRDFXML (export the topology as RDF/XML file)<br>
  * /ajax/importRDFXML (import a RDF/XML file into the topology)<br>
  * /ajax/resetBackend (reset the backend a saved state)<br>
@@ -70,6 +85,7 @@ import de.decoit.visa.http.ajax.handlers.*;
  * - ajaxExceptionUnresolved (exception caught and recovery not possible)<br>
  * - ajaxMissing (missing arguments)<br>
  * - ajaxUnknown (unknown request type)<br>
+ * - ajaxOverloaded (too many long running requests, retry later)<br>
  * <br>
  * The requests are always answered with a JSON object containing one of the
  * above return messages (key: status). Successful requests can contain
@@ -78,7 +94,11 @@ import de.decoit.visa.http.ajax.handlers.*;
  * error message is sent using the key 'message'. The 'ajaxException' reply also
  * includes the type of exception using the key 'type'.<br>
  * Any handler that alters the topology structure returns a JSON object of the
- * current topology using the key 'topology'.
+ * current topology using the key 'topology'.<br>
+ * <br>
+ * Each request is executed on the topology session specified by the HTTP header
+ * 'X-VISA-Session' or the query string parameter 'session'. Requests without
+ * session ID use the default session, see {@link SessionFilter}.
  *
  * @author Thomas Rix
  */
@@ -136,58 +156,102 @@ public class AJAXServer {
 	 */
 	public static final String AJAX_ERROR_IOTOOL_BUSY = "ajaxIOBusy";
 
+	/**
+	 * Error: Too many long running requests are queued, retry later
+	 */
+	public static final String AJAX_ERROR_OVERLOADED = "ajaxOverloaded";
+
+	/**
+	 * Response message: The target area of a relocation is occupied by other
+	 * objects
+	 */
+	public static final String AJAX_ERROR_OCCUPIED = "ajaxOccupied";
+
 	private HttpServer ajaxServer;
 	private int serverPort;
-	private HashMap<String, ModificationQueue> modQueues;
+	private ThreadPoolExecutor requestExecutor;
+	private ThreadPoolExecutor longRunningExecutor;
+	private ThreadPoolExecutor ioToolExecutor;
+	private MetricsFilter metricsFilter;
+	private SessionFilter sessionFilter;
+	private DispatchFilter longRunningFilter;
+	private DispatchFilter ioToolFilter;
 
 
 	/**
 	 * Construct a new AJAXServer object which creates a HttpServer instance
-	 * that listens on port pPort.
+	 * that listens on port pPort. Requests are processed by a pool of
+	 * pThreads threads. Long running requests, see {@link RequestClass}, are
+	 * processed by separate threads for each request class, so they cannot
+	 * block the request threads. The number of running and waiting long
+	 * running requests is limited by their request class, excess requests are
+	 * rejected by the {@link DispatchFilter}.
 	 *
 	 * @param pPort The port on which the HttpServer will listen
+	 * @param pThreads Number of threads for short requests, must be 1 or
+	 *            greater
 	 * @throws IOException
 	 */
-	public AJAXServer(int pPort) throws IOException {
+	public AJAXServer(int pPort, int pThreads) throws IOException {
+		if(pThreads < 1) {
+			throw new IllegalArgumentException("At least one request thread is required");
+		}
+
 		serverPort = pPort;
-		modQueues = new HashMap<>();
+
+		requestExecutor = new ThreadPoolExecutor(pThreads, pThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("ajax-request-"));
+		requestExecutor.allowCoreThreadTimeOut(true);
+		longRunningExecutor = createExecutor(RequestClass.LONG_RUNNING, "ajax-longrunning-");
+		ioToolExecutor = createExecutor(RequestClass.IOTOOL, "ajax-iotool-");
+
+		metricsFilter = new MetricsFilter();
+		sessionFilter = new SessionFilter();
+		longRunningFilter = new DispatchFilter(longRunningExecutor);
+		ioToolFilter = new DispatchFilter(ioToolExecutor);
 
 		ajaxServer = HttpServer.create(new InetSocketAddress(serverPort), 0);
-		ajaxServer.createContext("/", new DefaultHandler());
-		ajaxServer.createContext("/ajax/configure", new ConfigureHandler());
-		ajaxServer.createContext("/ajax/updateTopology", new UpdateTopologyHandler());
-		ajaxServer.createContext("/ajax/ioConnect", new IOToolConnectHandler());
-		ajaxServer.createContext("/ajax/ioDisconnect", new IOToolDisconnectHandler());
-		ajaxServer.createContext("/ajax/ioTopoList", new IOToolTopoListHandler());
-		ajaxServer.createContext("/ajax/ioLoadTopo", new IOToolLoadTopoHandler());
-		ajaxServer.createContext("/ajax/ioWriteTopo", new IOToolWriteTopoHandler());
-		ajaxServer.createContext("/ajax/ioDropTopo", new IOToolDropTopologyHandler());
-		ajaxServer.createContext("/ajax/ioCollectTopo", new IOToolCollectHandler());
-		ajaxServer.createContext("/ajax/ioReplicateTopo", new IOToolReplicateHandler());
-		ajaxServer.createContext("/ajax/ioCleanup", new IOToolCleanupHandler());
-		ajaxServer.createContext("/ajax/ioReset", new IOToolResetHandler());
-		ajaxServer.createContext("/ajax/requestTopology", new RequestTopologyHandler());
-		ajaxServer.createContext("/ajax/createComponent", new CreateComponentHandler());
-		ajaxServer.createContext("/ajax/relocateComponent", new RelocateComponentHandler());
-		ajaxServer.createContext("/ajax/addInterfaceToComp", new AddInterfaceToComponentHandler());
-		ajaxServer.createContext("/ajax/modifyVLANAssignment", new ModifyVLANAssignmentHandler());
-		ajaxServer.createContext("/ajax/removeComponent", new RemoveComponentHandler());
-		ajaxServer.createContext("/ajax/queuedModifyInterfaceIP", new QueuedModifyInterfaceIPHandler());
-		ajaxServer.createContext("/ajax/queuedModifyInterfaceOri", new QueuedModifyInterfaceOrientationHandler());
-		ajaxServer.createContext("/ajax/queuedModifyComponentName", new QueuedModifyComponentNameHandler());
-		ajaxServer.createContext("/ajax/createVSA", new CreateVSAHandler());
-		ajaxServer.createContext("/ajax/createCable", new CreateCableHandler());
-		ajaxServer.createContext("/ajax/removeCable", new RemoveCableHandler());
-		ajaxServer.createContext("/ajax/createSubnet", new CreateNetworkHandler());
-		ajaxServer.createContext("/ajax/createVLAN", new CreateVLANHandler());
-		ajaxServer.createContext("/ajax/modifyVLAN", new ModifyVLANHandler());
-		ajaxServer.createContext("/ajax/removeVLAN", new RemoveVLANHandler());
-		ajaxServer.createContext("/ajax/exportRDFXML", new ExportRDFHandler());
-		ajaxServer.createContext("/ajax/importRDFXML", new ImportRDFHandler());
-		ajaxServer.createContext("/ajax/resetBackend", new ResetBackendHandler());
-		ajaxServer.createContext("/ajax/shutdownBackend", new ShutdownHandler());
-		ajaxServer.createContext("/ajax/executeModificationQueue", new ExecuteModificationsHandler());
-		ajaxServer.createContext("/ajax/discardModificationQueue", new DiscardModificationsHandler());
+		ajaxServer.setExecutor(requestExecutor);
+
+		createContext("/", new DefaultHandler(), RequestClass.GLOBAL);
+		createContext("/ajax/configure", new ConfigureHandler(), RequestClass.STANDARD);
+		createContext("/ajax/updateTopology", new UpdateTopologyHandler(), RequestClass.STANDARD);
+		createContext("/ajax/ioConnect", new IOToolConnectHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioDisconnect", new IOToolDisconnectHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioTopoList", new IOToolTopoListHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioLoadTopo", new IOToolLoadTopoHandler(), RequestClass.LONG_RUNNING);
+		createContext("/ajax/ioWriteTopo", new IOToolWriteTopoHandler(), RequestClass.LONG_RUNNING);
+		createContext("/ajax/ioDropTopo", new IOToolDropTopologyHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioCollectTopo", new IOToolCollectHandler(), RequestClass.LONG_RUNNING);
+		createContext("/ajax/ioReplicateTopo", new IOToolReplicateHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioCleanup", new IOToolCleanupHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/ioReset", new IOToolResetHandler(), RequestClass.IOTOOL);
+		createContext("/ajax/requestTopology", new RequestTopologyHandler(), RequestClass.STANDARD);
+		createContext("/ajax/vsaTemplates", new VSATemplatesHandler(), RequestClass.STANDARD);
+		createContext("/ajax/createComponent", new CreateComponentHandler(), RequestClass.STANDARD);
+		createContext("/ajax/relocateComponent", new RelocateComponentHandler(), RequestClass.STANDARD);
+		createContext("/ajax/addInterfaceToComp", new AddInterfaceToComponentHandler(), RequestClass.STANDARD);
+		createContext("/ajax/modifyVLANAssignment", new ModifyVLANAssignmentHandler(), RequestClass.STANDARD);
+		createContext("/ajax/removeComponent", new RemoveComponentHandler(), RequestClass.STANDARD);
+		createContext("/ajax/queuedModifyInterfaceIP", new QueuedModifyInterfaceIPHandler(), RequestClass.STANDARD);
+		createContext("/ajax/queuedModifyInterfaceOri", new QueuedModifyInterfaceOrientationHandler(), RequestClass.STANDARD);
+		createContext("/ajax/queuedModifyComponentName", new QueuedModifyComponentNameHandler(), RequestClass.STANDARD);
+		createContext("/ajax/createVSA", new CreateVSAHandler(), RequestClass.LONG_RUNNING);
+		createContext("/ajax/createCable", new CreateCableHandler(), RequestClass.STANDARD);
+		createContext("/ajax/removeCable", new RemoveCableHandler(), RequestClass.STANDARD);
+		createContext("/ajax/createSubnet", new CreateNetworkHandler(), RequestClass.STANDARD);
+		createContext("/ajax/createVLAN", new CreateVLANHandler(), RequestClass.STANDARD);
+		createContext("/ajax/modifyVLAN", new ModifyVLANHandler(), RequestClass.STANDARD);
+		createContext("/ajax/removeVLAN", new RemoveVLANHandler(), RequestClass.STANDARD);
+		createContext("/ajax/bulkModify", new BulkModifyHandler(), RequestClass.STANDARD);
+		createContext("/ajax/batch", new BatchHandler(), RequestClass.STANDARD);
+		createContext("/ajax/events", new EventStreamHandler(), RequestClass.GLOBAL);
+		createContext("/ajax/metrics", new MetricsHandler(), RequestClass.GLOBAL);
+		createContext("/ajax/exportRDFXML", new ExportRDFHandler(), RequestClass.STANDARD);
+		createContext("/ajax/importRDFXML", new ImportRDFHandler(), RequestClass.LONG_RUNNING);
+		createContext("/ajax/resetBackend", new ResetBackendHandler(), RequestClass.STANDARD);
+		createContext("/ajax/shutdownBackend", new ShutdownHandler(), RequestClass.GLOBAL);
+		createContext("/ajax/executeModificationQueue", new ExecuteModificationsHandler(), RequestClass.STANDARD);
+		createContext("/ajax/discardModificationQueue", new DiscardModificationsHandler(), RequestClass.STANDARD);
 	}
 
 
@@ -209,26 +273,102 @@ public class AJAXServer {
 	 */
 	public void shutdown() {
 		ajaxServer.stop(0);
+
+		// The shutdown request itself runs on a request thread, so do not
+		// wait for the executors to terminate
+		requestExecutor.shutdown();
+		longRunningExecutor.shutdown();
+		ioToolExecutor.shutdown();
+		sessionFilter.close();
+
 		log.info("AJAX server terminated");
 	}
 
 
 	/**
-	 * Return the modification queue stored under the provided target local
-	 * name. If no such queue exists, a new one will be created and returned.
+	 * Create a context for the provided path on the HttpServer instance. All
+	 * requests are recorded by the {@link MetricsFilter}. The other filters of
+	 * the context are chosen by the request class: long running
+	 * requests are moved to the executor of their class by the
+	 * {@link DispatchFilter}, requests working on the topology session use the
+	 * {@link SessionFilter} to bind the session.
 	 *
-	 * @param pQueueID ID for this queue
-	 * @return A modification queue using the provided values as target
+	 * @param pPath Path of the context
+	 * @param pHandler Handler for requests on this path
+	 * @param pClass Request class of the endpoint
 	 */
-	public ModificationQueue getModificationQueue(String pQueueID) {
-		ModificationQueue rv = modQueues.get(pQueueID);
+	private void createContext(String pPath, HttpHandler pHandler, RequestClass pClass) {
+		HttpContext ctx = ajaxServer.createContext(pPath, pHandler);
+
+		// Must be the first filter to include the waiting time of long running
+		// requests
+		ctx.getFilters().add(metricsFilter);
+
+		if(pClass == RequestClass.IOTOOL) {
+			ctx.getFilters().add(ioToolFilter);
+		}
+		else if(pClass.isLongRunning()) {
+			ctx.getFilters().add(longRunningFilter);
+		}
+
+		if(pClass.isSessionBound()) {
+			ctx.getFilters().add(sessionFilter);
+		}
+	}
+
 
-		// Create new queue if no queue with the specified ID was found
-		if(rv == null) {
-			rv = new ModificationQueue(pQueueID);
-			modQueues.put(pQueueID, rv);
+	/**
+	 * Create the executor for a long running request class. The number of
+	 * threads and the capacity of the queue are limited by the request class.
+	 *
+	 * @param pClass Request class of the executor
+	 * @param pPrefix Prefix of the thread names
+	 * @return The created executor
+	 */
+	private ThreadPoolExecutor createExecutor(RequestClass pClass, String pPrefix) {
+		BlockingQueue<Runnable> queue;
+		if(pClass.getMaxQueued() > 0) {
+			queue = new ArrayBlockingQueue<>(pClass.getMaxQueued());
 		}
+		else {
+			queue = new SynchronousQueue<>();
+		}
+
+		ThreadPoolExecutor rv = new ThreadPoolExecutor(pClass.getMaxActive(), pClass.getMaxActive(), 60L, TimeUnit.SECONDS, queue, new NamedThreadFactory(pPrefix));
+		rv.allowCoreThreadTimeOut(true);
 
 		return rv;
 	}
+
+
+	/**
+	 * This ThreadFactory creates threads named by a prefix and a sequence
+	 * number, which makes the request threads identifiable in the log file.
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private String prefix;
+		private AtomicInteger nextID;
+
+
+		/**
+		 * Construct a new factory using the provided name prefix
+		 *
+		 * @param pPrefix Prefix of the thread names
+		 */
+		private NamedThreadFactory(String pPrefix) {
+			prefix = pPrefix;
+			nextID = new AtomicInteger(1);
+		}
+
+
+		@Override
+		public Thread newThread(Runnable pRunnable) {
+			Thread rv = new Thread(pRunnable, prefix + nextID.getAndIncrement());
+			rv.setDaemon(false);
+
+			return rv;
+		}
+	}
 }
@@ -0,0 +1,203 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.json.JSONStreamWriter;
+
+
+/**
+ * This filter moves the processing of a request from the request thread pool
+ * to another executor. The remaining filters and the handler run on a thread
+ * of that executor, the request thread is released immediately. It is used for
+ * long running requests, so they cannot occupy the threads used for short
+ * requests.<br>
+ * <br>
+ * The filter also performs the admission control of the request class: the
+ * executor must have a bounded number of threads and a bounded queue. If both
+ * are exhausted, the request is rejected immediately with HTTP status 503 and
+ * a 'Retry-After' header. The response contains the status 'ajaxOverloaded'
+ * and the suggested delay in seconds (key: retryAfter). The delay is estimated
+ * from the number of waiting requests and the average execution time of
+ * previous requests.
+ *
+ * @author Thomas Rix
+ * @see de.decoit.visa.enums.RequestClass RequestClass
+ */
+public class DispatchFilter extends Filter {
+	private static Logger log = Logger.getLogger(DispatchFilter.class.getName());
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final int MAX_RETRY_AFTER = 300;
+
+	private ThreadPoolExecutor executor;
+	private AtomicLong averageNanos;
+
+
+	/**
+	 * Construct a new filter which dispatches requests to the provided
+	 * executor. The executor should use a bounded queue, otherwise no requests
+	 * will be rejected.
+	 *
+	 * @param pExecutor Executor for the requests, cannot be null
+	 */
+	public DispatchFilter(ThreadPoolExecutor pExecutor) {
+		if(pExecutor != null) {
+			executor = pExecutor;
+			averageNanos = new AtomicLong(NANOS_PER_SECOND);
+		}
+		else {
+			throw new NullPointerException("NULL pointer for executor provided");
+		}
+	}
+
+
+	@Override
+	public void doFilter(final HttpExchange he, final Chain chain) throws IOException {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+
+					try {
+						chain.doFilter(he);
+					}
+					catch(Throwable ex) {
+						TEBackend.logException(ex, log);
+
+						MetricsFilter.fail(he);
+						he.close();
+					}
+					finally {
+						recordDuration(System.nanoTime() - start);
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException ex) {
+			if(executor.isShutdown()) {
+				// Executor was shut down, the backend is terminating
+				TEBackend.logException(ex, log);
+
+				MetricsFilter.fail(he);
+				he.close();
+			}
+			else {
+				sendOverloaded(he);
+			}
+		}
+	}
+
+
+	@Override
+	public String description() {
+		return "Dispatches long running requests to a separate executor";
+	}
+
+
+	/**
+	 * Update the moving average of the execution time with the duration of a
+	 * finished request
+	 *
+	 * @param pNanos Execution time of the request in nanoseconds
+	 */
+	private void recordDuration(long pNanos) {
+		long current;
+		long next;
+
+		do {
+			current = averageNanos.get();
+			next = current + (pNanos - current) / 8;
+		}
+		while(!averageNanos.compareAndSet(current, next));
+	}
+
+
+	/**
+	 * Estimate the number of seconds until the executor will be able to accept
+	 * a new request. All waiting requests and one running request per thread
+	 * must be finished before that.
+	 *
+	 * @return Estimated delay in seconds, at least 1
+	 */
+	private int estimateRetryAfter() {
+		int threads = Math.max(1, executor.getMaximumPoolSize());
+		long pending = executor.getQueue().size() + threads;
+		long nanos = averageNanos.get() * pending / threads;
+
+		long rv = (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+
+		return (int) Math.max(1, Math.min(MAX_RETRY_AFTER, rv));
+	}
+
+
+	/**
+	 * Reject a request because the executor is saturated. A response with HTTP
+	 * status 503 and the suggested delay until the next attempt is sent.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @throws IOException
+	 */
+	private void sendOverloaded(HttpExchange pHE) throws IOException {
+		int retryAfter = estimateRetryAfter();
+
+		if(log.isInfoEnabled()) {
+			StringBuilder sb = new StringBuilder("Request rejected, executor saturated: ");
+			sb.append(pHE.getRequestURI().getPath());
+			sb.append(", retry after ");
+			sb.append(retryAfter);
+			sb.append("s");
+
+			log.info(sb.toString());
+		}
+
+		JSONObject rv = new JSONObject();
+		try {
+			rv.put("status", AJAXServer.AJAX_ERROR_OVERLOADED);
+			rv.put("retryAfter", retryAfter);
+		}
+		catch(JSONException ex) {
+			/* Ignore */
+		}
+
+		byte[] response = rv.toString().getBytes(JSONStreamWriter.UTF8);
+
+		MetricsFilter.setStatus(pHE, AJAXServer.AJAX_ERROR_OVERLOADED);
+
+		pHE.getResponseHeaders().add("Content-type", "text/html; charset=UTF-8");
+		pHE.getResponseHeaders().add("Retry-After", String.valueOf(retryAfter));
+		pHE.sendResponseHeaders(503, response.length);
+
+		OutputStream os = pHE.getResponseBody();
+		os.write(response);
+		os.close();
+	}
+}
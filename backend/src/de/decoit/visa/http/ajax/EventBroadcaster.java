@@ -0,0 +1,376 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.json.JSONStreamWriter;
+
+
+/**
+ * This class distributes events to clients subscribed to the server-sent
+ * events stream (/ajax/events). Every subscriber has a bounded queue of
+ * frames which is written to its connection by a writer thread, so publishing
+ * an event never blocks the publishing request and a stalled client only
+ * delays its own events. A subscriber whose queue is full is considered too
+ * slow and is disconnected, it has to reconnect and request the complete
+ * topology. A keepalive comment line is queued for all subscribers every 15
+ * seconds to detect closed connections.<br>
+ * <br>
+ * Event IDs are assigned and the events are queued under the same lock, so
+ * every subscriber receives the events in the order of their IDs.<br>
+ * <br>
+ * Events are either sent to all subscribers (session ID null) or only to the
+ * subscribers of a specific topology session. Events are not stored, clients
+ * reconnecting to the stream must request the complete topology to catch up
+ * with changes missed in between.
+ *
+ * @author Thomas Rix
+ * @see de.decoit.visa.http.ajax.handlers.EventStreamHandler
+ */
+public class EventBroadcaster {
+	private static Logger log = Logger.getLogger(EventBroadcaster.class.getName());
+	private static final long KEEPALIVE_INTERVAL = 15;
+
+	// Number of frames queued for a subscriber before it is disconnected
+	private static final int QUEUE_CAPACITY = 256;
+
+	private static final byte[] KEEPALIVE_FRAME = ": keepalive\n\n".getBytes(JSONStreamWriter.UTF8);
+
+	/**
+	 * Event sent after a request changed the topology of a session. The data
+	 * contains the session ID (key: session) and the
+	 * {@link de.decoit.visa.rdf.TopologyDelta TopologyDelta} of the request.
+	 */
+	public static final String EVENT_TOPOLOGY = "topology";
+
+	/**
+	 * Event sent when a job of the IO-Tool changes its state. The data
+	 * contains the command (key: command), the state (key: state, values:
+	 * waiting, finished, failed) and, for finished jobs, the return code and
+	 * message of the IO-Tool (keys: returncode, message).
+	 */
+	public static final String EVENT_IOTOOL_JOB = "ioJob";
+
+	private CopyOnWriteArrayList<Subscriber> subscribers;
+	private ScheduledExecutorService keepalive;
+	private ExecutorService writers;
+	private long nextEventID;
+
+
+	/**
+	 * Construct a new broadcaster and start its keepalive thread
+	 */
+	public EventBroadcaster() {
+		subscribers = new CopyOnWriteArrayList<>();
+		nextEventID = 1;
+
+		keepalive = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable pRunnable) {
+				Thread rv = new Thread(pRunnable, "ajax-events-keepalive");
+				rv.setDaemon(true);
+
+				return rv;
+			}
+		});
+
+		// Writer threads are only alive while subscribers have queued frames
+		writers = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+
+			@Override
+			public Thread newThread(Runnable pRunnable) {
+				Thread rv = new Thread(pRunnable, "ajax-events-" + threadNumber.getAndIncrement());
+				rv.setDaemon(true);
+
+				return rv;
+			}
+		});
+
+		keepalive.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for(Subscriber s : subscribers) {
+					enqueue(s, KEEPALIVE_FRAME);
+				}
+			}
+		}, KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL, TimeUnit.SECONDS);
+	}
+
+
+	/**
+	 * Subscribe the client of the provided HTTP exchange to the events of a
+	 * session. The response headers are sent immediately, the exchange stays
+	 * open until the client disconnects or the broadcaster is closed.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pSessionID ID of the session whose events will be sent to the
+	 *            client, cannot be null
+	 * @throws IOException if the response headers cannot be sent
+	 */
+	public void subscribe(HttpExchange pHE, String pSessionID) throws IOException {
+		if(pSessionID == null) {
+			throw new NullPointerException("NULL pointer for session ID provided");
+		}
+
+		pHE.getResponseHeaders().add("Content-type", "text/event-stream; charset=UTF-8");
+		pHE.getResponseHeaders().add("Cache-Control", "no-cache");
+
+		// Response length 0 enables chunked transfer encoding
+		pHE.sendResponseHeaders(200, 0);
+
+		OutputStream os = pHE.getResponseBody();
+
+		// Tell the client to wait 5 seconds before reconnecting
+		os.write("retry: 5000\n\n".getBytes(JSONStreamWriter.UTF8));
+		os.flush();
+
+		subscribers.add(new Subscriber(pHE, pSessionID));
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Event subscriber added for session: ");
+			sb.append(pSessionID);
+			log.debug(sb.toString());
+		}
+	}
+
+
+	/**
+	 * Send an event to the subscribers of a session. The event is queued for
+	 * the writer threads of the subscribers, this method returns immediately.
+	 *
+	 * @param pSessionID ID of the session, null sends the event to all
+	 *            subscribers
+	 * @param pEvent Name of the event
+	 * @param pData Data of the event
+	 */
+	public void publish(String pSessionID, String pEvent, JSONObject pData) {
+		if(subscribers.isEmpty()) {
+			return;
+		}
+
+		// JSONObject.toString() does not produce line breaks, so the data
+		// always fits into a single data line
+		String data = pData.toString();
+
+		synchronized(this) {
+			StringBuilder sb = new StringBuilder("event: ");
+			sb.append(pEvent);
+			sb.append("\nid: ");
+			sb.append(nextEventID++);
+			sb.append("\ndata: ");
+			sb.append(data);
+			sb.append("\n\n");
+
+			byte[] frame = sb.toString().getBytes(JSONStreamWriter.UTF8);
+
+			// Queue the frame while holding the lock, so no frame with a
+			// higher ID can be queued before it
+			for(Subscriber s : subscribers) {
+				if(pSessionID == null || pSessionID.equals(s.sessionID)) {
+					enqueue(s, frame);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Return the number of subscribed clients
+	 *
+	 * @return The number of subscribed clients
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+
+	/**
+	 * Stop the keepalive and writer threads and close the connections of all
+	 * subscribers
+	 */
+	public void close() {
+		keepalive.shutdownNow();
+		writers.shutdownNow();
+
+		for(Subscriber s : subscribers) {
+			s.close();
+		}
+
+		subscribers.clear();
+	}
+
+
+	/**
+	 * Queue a frame for a subscriber. If the queue of the subscriber is full,
+	 * the subscriber is removed.
+	 *
+	 * @param pSubscriber The subscriber
+	 * @param pFrame The encoded frame
+	 */
+	private void enqueue(Subscriber pSubscriber, byte[] pFrame) {
+		if(!pSubscriber.queue.offer(pFrame)) {
+			if(log.isInfoEnabled()) {
+				StringBuilder sb = new StringBuilder("Event subscriber of session ");
+				sb.append(pSubscriber.sessionID);
+				sb.append(" is too slow, ");
+				sb.append(QUEUE_CAPACITY);
+				sb.append(" frames queued");
+				log.info(sb.toString());
+			}
+
+			remove(pSubscriber);
+		}
+		else if(pSubscriber.scheduled.compareAndSet(false, true)) {
+			try {
+				writers.execute(pSubscriber);
+			}
+			catch(RejectedExecutionException ex) {
+				// Broadcaster was closed, drop the frame
+				log.debug("Event dropped, broadcaster is closed");
+			}
+		}
+	}
+
+
+	/**
+	 * Remove a subscriber and close its connection. The connection is closed
+	 * by a writer thread, since closing a stalled connection may block.
+	 *
+	 * @param pSubscriber The subscriber
+	 */
+	private void remove(final Subscriber pSubscriber) {
+		if(subscribers.remove(pSubscriber)) {
+			try {
+				writers.execute(new Runnable() {
+					@Override
+					public void run() {
+						pSubscriber.close();
+					}
+				});
+			}
+			catch(RejectedExecutionException ex) {
+				// Broadcaster was closed, which closes all connections
+			}
+
+			if(log.isDebugEnabled()) {
+				StringBuilder sb = new StringBuilder("Event subscriber removed for session: ");
+				sb.append(pSubscriber.sessionID);
+				log.debug(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * This class stores the connection and the queued frames of a subscribed
+	 * client. Running it writes all queued frames to the connection, it is
+	 * scheduled on the writer threads when a frame is queued and it is not
+	 * already scheduled.
+	 *
+	 * @author Thomas Rix
+	 */
+	private class Subscriber implements Runnable {
+		private HttpExchange exchange;
+		private OutputStream os;
+		private String sessionID;
+		private ArrayBlockingQueue<byte[]> queue;
+		private AtomicBoolean scheduled;
+
+
+		/**
+		 * Construct a new subscriber
+		 *
+		 * @param pHE Object of the HTTP exchange
+		 * @param pSessionID ID of the subscribed session
+		 */
+		private Subscriber(HttpExchange pHE, String pSessionID) {
+			exchange = pHE;
+			os = pHE.getResponseBody();
+			sessionID = pSessionID;
+			queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+			scheduled = new AtomicBoolean(false);
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				byte[] frame;
+				while((frame = queue.poll()) != null) {
+					os.write(frame);
+				}
+				os.flush();
+			}
+			catch(IOException ex) {
+				queue.clear();
+				remove(this);
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+			}
+			finally {
+				scheduled.set(false);
+			}
+
+			// A frame queued after the queue was drained found this
+			// subscriber still scheduled, write it now
+			if(!queue.isEmpty() && subscribers.contains(this) && scheduled.compareAndSet(false, true)) {
+				try {
+					writers.execute(this);
+				}
+				catch(RejectedExecutionException ex) {
+					/* Broadcaster was closed */
+				}
+			}
+		}
+
+
+		/**
+		 * Close the connection to the client
+		 */
+		private void close() {
+			try {
+				os.close();
+			}
+			catch(IOException ex) {
+				/* Ignore */
+			}
+
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.log4j.Logger;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+
+
+/**
+ * This filter records the metrics of a request in the global
+ * {@link de.decoit.visa.metrics.MetricsRegistry MetricsRegistry}. It must be
+ * the first filter of a context, so the latency includes the time a request
+ * waits for the long running thread. The request and response streams of the
+ * exchange are replaced by counting streams. The request is recorded when the
+ * response stream is closed, which also happens if the exchange is closed.
+ * Responses without body do not close the stream, they must be recorded by
+ * calling {@link #complete(HttpExchange)}. Requests which throw an exception
+ * on the request thread are recorded as failed immediately.<br>
+ * <br>
+ * The status of a request is the AJAX status provided by
+ * {@link #setStatus(HttpExchange, String)}, or the HTTP status code if no AJAX
+ * status was provided.<br>
+ * <br>
+ * Every recorded request is also written to the access log (logger
+ * {@value #ACCESS_LOGGER}, level INFO) as a single line of key=value pairs:
+ * method, path, context, status, HTTP code, latency in milliseconds, request
+ * and response bytes and the client address.
+ *
+ * @author Thomas Rix
+ */
+public class MetricsFilter extends Filter {
+	/**
+	 * Name of the logger for the access log
+	 */
+	public static final String ACCESS_LOGGER = "de.decoit.visa.access";
+
+	private static Logger accessLog = Logger.getLogger(ACCESS_LOGGER);
+
+	@Override
+	public void doFilter(HttpExchange he, Chain chain) throws IOException {
+		RequestRecord record = new RequestRecord(he);
+		he.setStreams(new MeteredInputStream(he.getRequestBody(), record), new MeteredOutputStream(he.getResponseBody(), record));
+
+		try {
+			chain.doFilter(he);
+		}
+		catch(Throwable ex) {
+			record.failed = true;
+			record.finish();
+
+			throw ex;
+		}
+	}
+
+
+	@Override
+	public String description() {
+		return "Records metrics of requests and writes the access log";
+	}
+
+
+	/**
+	 * Set the AJAX status of the response for the provided exchange. It is
+	 * used as status of the recorded request. Exchanges which are not metered
+	 * by this filter are ignored.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pStatus AJAX status of the response
+	 */
+	public static void setStatus(HttpExchange pHE, String pStatus) {
+		OutputStream os = pHE.getResponseBody();
+
+		if(os instanceof MeteredOutputStream) {
+			((MeteredOutputStream) os).record.ajaxStatus = pStatus;
+		}
+	}
+
+
+	/**
+	 * Record the request of the provided exchange as complete. This must be
+	 * called for responses sent without body, since their response stream is
+	 * not closed. Exchanges which are
+	 * not metered by this filter or were already recorded are ignored.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 */
+	public static void complete(HttpExchange pHE) {
+		OutputStream os = pHE.getResponseBody();
+
+		if(os instanceof MeteredOutputStream) {
+			((MeteredOutputStream) os).record.finish();
+		}
+	}
+
+
+	/**
+	 * Record the request of the provided exchange as failed. This must be
+	 * called if processing of the request failed on a thread other than the
+	 * request thread. Exchanges which are not metered by this filter or were
+	 * already recorded are ignored.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 */
+	public static void fail(HttpExchange pHE) {
+		OutputStream os = pHE.getResponseBody();
+
+		if(os instanceof MeteredOutputStream) {
+			((MeteredOutputStream) os).record.failed = true;
+			((MeteredOutputStream) os).record.finish();
+		}
+	}
+
+
+	/**
+	 * Check if an AJAX status reports an error
+	 *
+	 * @param pStatus The AJAX status
+	 * @return true if the status is an error, false otherwise
+	 */
+	private static boolean isErrorStatus(String pStatus) {
+		return !pStatus.equals(AJAXServer.AJAX_SUCCESS) && !pStatus.equals(AJAXServer.AJAX_SHUTDOWN) && !pStatus.equals(AJAXServer.AJAX_IOTOOL_WAIT);
+	}
+
+
+	/**
+	 * This class collects the values recorded for a single request
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class RequestRecord {
+		private HttpExchange exchange;
+		private long startTime;
+		private volatile long requestBytes;
+		private volatile long responseBytes;
+		private volatile String ajaxStatus;
+		private volatile boolean failed;
+		private AtomicBoolean finished;
+
+
+		/**
+		 * Construct a new record for the provided exchange, the latency is
+		 * measured from now on
+		 *
+		 * @param pHE Object of the HTTP exchange
+		 */
+		private RequestRecord(HttpExchange pHE) {
+			exchange = pHE;
+			startTime = System.nanoTime();
+			requestBytes = 0;
+			responseBytes = 0;
+			ajaxStatus = null;
+			failed = false;
+			finished = new AtomicBoolean(false);
+		}
+
+
+		/**
+		 * Record the request in the global registry. Only the first call has
+		 * an effect.
+		 */
+		private void finish() {
+			if(finished.compareAndSet(false, true)) {
+				long latency = System.nanoTime() - startTime;
+				int code = exchange.getResponseCode();
+
+				String status;
+				boolean error = failed || code < 0 || code >= 400;
+				if(ajaxStatus != null) {
+					status = ajaxStatus;
+					error = error || isErrorStatus(ajaxStatus);
+				}
+				else if(code >= 0) {
+					status = String.valueOf(code);
+				}
+				else {
+					status = "none";
+				}
+
+				String context = exchange.getHttpContext().getPath();
+				TEBackend.METRICS.observeRequest(context, status, latency, requestBytes, responseBytes, error);
+
+				if(accessLog.isInfoEnabled()) {
+					StringBuilder sb = new StringBuilder(160);
+					sb.append("method=");
+					sb.append(exchange.getRequestMethod());
+					sb.append(" path=");
+					sb.append(exchange.getRequestURI().getRawPath());
+					sb.append(" context=");
+					sb.append(context);
+					sb.append(" status=");
+					sb.append(status);
+					sb.append(" code=");
+					sb.append(code);
+					sb.append(" error=");
+					sb.append(error);
+					sb.append(" latency_ms=");
+					sb.append(latency / 1000000.0);
+					sb.append(" request_bytes=");
+					sb.append(requestBytes);
+					sb.append(" response_bytes=");
+					sb.append(responseBytes);
+					sb.append(" client=");
+					sb.append(exchange.getRemoteAddress().getAddress().getHostAddress());
+					accessLog.info(sb.toString());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * This stream counts the bytes read from the request body
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class MeteredInputStream extends FilterInputStream {
+		private RequestRecord record;
+
+
+		/**
+		 * Construct a new stream which reads from the provided stream
+		 *
+		 * @param pIn The request body stream
+		 * @param pRecord Record of the request
+		 */
+		private MeteredInputStream(InputStream pIn, RequestRecord pRecord) {
+			super(pIn);
+			record = pRecord;
+		}
+
+
+		@Override
+		public int read() throws IOException {
+			int rv = super.read();
+			if(rv != -1) {
+				record.requestBytes++;
+			}
+
+			return rv;
+		}
+
+
+		@Override
+		public int read(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+			int rv = super.read(pBuffer, pOffset, pLength);
+			if(rv > 0) {
+				record.requestBytes += rv;
+			}
+
+			return rv;
+		}
+	}
+
+
+	/**
+	 * This stream counts the bytes written to the response body and records
+	 * the request when it is closed
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class MeteredOutputStream extends FilterOutputStream {
+		private RequestRecord record;
+
+
+		/**
+		 * Construct a new stream which writes to the provided stream
+		 *
+		 * @param pOut The response body stream
+		 * @param pRecord Record of the request
+		 */
+		private MeteredOutputStream(OutputStream pOut, RequestRecord pRecord) {
+			super(pOut);
+			record = pRecord;
+		}
+
+
+		@Override
+		public void write(int pByte) throws IOException {
+			out.write(pByte);
+			record.responseBytes++;
+		}
+
+
+		@Override
+		public void write(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+			// FilterOutputStream writes single bytes, pass the array instead
+			out.write(pBuffer, pOffset, pLength);
+			record.responseBytes += pLength;
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			}
+			finally {
+				record.finish();
+			}
+		}
+	}
+}
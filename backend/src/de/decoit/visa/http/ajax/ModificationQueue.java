@@ -42,7 +42,7 @@ public class ModificationQueue {
 	 *
 	 * @param pQueueID ID for this queue
 	 */
-	ModificationQueue(String pQueueID) {
+	public ModificationQueue(String pQueueID) {
 		if(pQueueID.isEmpty()) {
 			throw new IllegalArgumentException("Empty queue ID string provided");
 		}
@@ -0,0 +1,301 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.QueryString;
+import de.decoit.visa.http.ajax.handlers.RelocateComponentHandler;
+import de.decoit.visa.json.JSONStreamWriter;
+import de.decoit.visa.rdf.TopologyDelta;
+import de.decoit.visa.session.SessionRegistry;
+import de.decoit.visa.session.TopologySession;
+
+
+/**
+ * This filter binds the topology session of a request before the request is
+ * passed to its handler and releases it afterwards. The session ID is read
+ * from the HTTP header 'X-VISA-Session' or, if the header is missing, from
+ * the query string parameter 'session'. Requests without session ID use the
+ * default session.<br>
+ * <br>
+ * If the session cannot be bound, the request is answered with the return
+ * message 'ajaxGeneral' (malformed session ID) or 'ajaxException' (session
+ * could not be loaded) without calling the handler.<br>
+ * <br>
+ * Relocations of components are written to the RDF model deferred, see
+ * {@link RelocateComponentHandler}. Deferred updates of a session are written
+ * before any other request of the session is handled, or by a separate thread
+ * 250 ms after the request which deferred them. This way a stream of
+ * relocations caused by dragging a component is written once. Changes made
+ * by the separate thread are published like the changes of a request.
+ *
+ * @author Thomas Rix
+ * @see SessionRegistry
+ */
+public class SessionFilter extends Filter {
+	private static Logger log = Logger.getLogger(SessionFilter.class.getName());
+
+	// Delay in milliseconds before deferred updates are written
+	private static final long FLUSH_DELAY = 250;
+
+	/**
+	 * Name of the HTTP header containing the session ID
+	 */
+	public static final String SESSION_HEADER = "X-VISA-Session";
+
+	/**
+	 * Name of the query string parameter containing the session ID
+	 */
+	public static final String SESSION_PARAMETER = "session";
+
+
+	private ScheduledExecutorService flusher;
+	private Set<String> scheduledFlushes;
+
+
+	/**
+	 * Construct a new filter. A thread for writing deferred updates is
+	 * started.
+	 */
+	public SessionFilter() {
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable pRunnable) {
+				Thread rv = new Thread(pRunnable, "session-flush");
+				rv.setDaemon(true);
+
+				return rv;
+			}
+		});
+
+		scheduledFlushes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	}
+
+
+	/**
+	 * Stop the thread for writing deferred updates. Updates which were not
+	 * written yet are discarded.
+	 */
+	public void close() {
+		flusher.shutdownNow();
+	}
+
+
+	@Override
+	public void doFilter(HttpExchange he, Chain chain) throws IOException {
+		SessionRegistry registry = TEBackend.SESSION_REGISTRY;
+
+		if(registry != null) {
+			TopologySession session;
+			try {
+				session = registry.bind(getSessionID(he));
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+
+				JSONObject rv = new JSONObject();
+				try {
+					if(ex instanceof IllegalArgumentException) {
+						rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+					}
+					else {
+						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+						rv.put("type", ex.getClass().getSimpleName());
+					}
+					rv.put("message", ex.getMessage());
+				}
+				catch(JSONException exc) {
+					/* Ignore */
+				}
+
+				sendError(he, rv);
+				return;
+			}
+
+			try {
+				// The relocation handler coalesces its updates, all other
+				// handlers must see the deferred updates in the RDF model
+				if(!(he.getHttpContext().getHandler() instanceof RelocateComponentHandler)) {
+					flushDeferredUpdates(session);
+				}
+
+				chain.doFilter(he);
+			}
+			finally {
+				scheduleFlush(session);
+				publishChanges(session);
+
+				registry.unbind();
+			}
+		}
+		else {
+			chain.doFilter(he);
+		}
+	}
+
+
+	@Override
+	public String description() {
+		return "Binds the topology session of the request";
+	}
+
+
+	/**
+	 * Extract the session ID from the request
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @return The session ID, null if the request does not specify a session
+	 */
+	public static String getSessionID(HttpExchange pHE) {
+		String rv = pHE.getRequestHeaders().getFirst(SESSION_HEADER);
+
+		if(rv == null && pHE.getRequestURI().getRawQuery() != null) {
+			QueryString queryParameters = new QueryString(pHE.getRequestURI());
+
+			if(queryParameters.containsKey(SESSION_PARAMETER)) {
+				rv = queryParameters.get(SESSION_PARAMETER).get();
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Send the changes the request made to the topology of the bound session
+	 * to the subscribers of the session's events
+	 *
+	 * @param pSession The bound session
+	 */
+	private void publishChanges(TopologySession pSession) {
+		try {
+			// Take the changes even if nobody is subscribed, otherwise they
+			// would be reported with the next request
+			TopologyDelta delta = pSession.getRDFManager().takeChanges();
+
+			if(delta != null && TEBackend.EVENT_BROADCASTER != null) {
+				JSONObject data = delta.toJSON();
+				data.put("session", pSession.getSessionID());
+
+				TEBackend.EVENT_BROADCASTER.publish(pSession.getSessionID(), EventBroadcaster.EVENT_TOPOLOGY, data);
+			}
+		}
+		catch(Throwable ex) {
+			TEBackend.logException(ex, log);
+		}
+	}
+
+
+	/**
+	 * Write the deferred updates of the provided session to its RDF model.
+	 * Errors are logged only, the updates are discarded in that case.
+	 *
+	 * @param pSession The bound session
+	 */
+	private void flushDeferredUpdates(TopologySession pSession) {
+		try {
+			pSession.getRDFManager().flushDeferredUpdates();
+		}
+		catch(Throwable ex) {
+			TEBackend.logException(ex, log);
+		}
+	}
+
+
+	/**
+	 * Schedule writing the deferred updates of the provided session, if it has
+	 * any. Only one write is scheduled per session at a time.
+	 *
+	 * @param pSession The bound session
+	 */
+	private void scheduleFlush(TopologySession pSession) {
+		final String sessionID = pSession.getSessionID();
+
+		if(pSession.getRDFManager().hasDeferredUpdates() && scheduledFlushes.add(sessionID)) {
+			try {
+				flusher.schedule(new Runnable() {
+					@Override
+					public void run() {
+						scheduledFlushes.remove(sessionID);
+
+						SessionRegistry registry = TEBackend.SESSION_REGISTRY;
+						if(registry != null) {
+							try {
+								TopologySession session = registry.bind(sessionID);
+
+								try {
+									flushDeferredUpdates(session);
+								}
+								finally {
+									publishChanges(session);
+
+									registry.unbind();
+								}
+							}
+							catch(Throwable ex) {
+								TEBackend.logException(ex, log);
+							}
+						}
+					}
+				}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+			}
+			catch(RejectedExecutionException ex) {
+				// The filter was closed, the backend is terminating
+				scheduledFlushes.remove(sessionID);
+			}
+		}
+	}
+
+
+	/**
+	 * Send an error response without calling the handler of the request
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse JSON object of the response
+	 * @throws IOException
+	 */
+	private void sendError(HttpExchange pHE, JSONObject pResponse) throws IOException {
+		byte[] response = pResponse.toString().getBytes(JSONStreamWriter.UTF8);
+
+		MetricsFilter.setStatus(pHE, pResponse.optString("status"));
+
+		pHE.getResponseHeaders().add("Content-type", "text/html; charset=UTF-8");
+		pHE.sendResponseHeaders(200, response.length);
+
+		OutputStream os = pHE.getResponseBody();
+		os.write(response);
+		os.close();
+	}
+}
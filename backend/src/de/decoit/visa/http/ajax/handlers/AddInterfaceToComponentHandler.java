@@ -61,10 +61,10 @@ public class AddInterfaceToComponentHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -73,23 +73,23 @@ public class AddInterfaceToComponentHandler extends DefaultHandler {
 			try {
 				JSONObject rv = new JSONObject();
 
-				Interface iface = TEBackend.TOPOLOGY_STORAGE.getComponent(queryParameters.get("compID").get()).getConfig().createInterface(PortOrientation.valueOf(queryParameters.get("ori").get()));
+				Interface iface = TEBackend.getTopologyStorage().getComponent(queryParameters.get("compID").get()).getConfig().createInterface(PortOrientation.valueOf(queryParameters.get("ori").get()));
 
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
-				rv.put("iface", iface.toJSON());
-				rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+				rv.put("iface", iface);
+				putTopology(he, rv);
 
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
 
 				try {
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					response = rv.toString();
+					response = rv;
 				}
 				catch(JSONException e) {
 					/* Ignore */
@@ -100,13 +100,13 @@ public class AddInterfaceToComponentHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import de.decoit.visa.json.JSONStreamWriter;
+
+
+/**
+ * This HttpExchange implementation is used by the {@link BatchHandler} to run
+ * a single operation of a batch through an existing handler. It provides the
+ * request URI of the operation and an empty request body, the response written
+ * by the handler is captured in memory. Connection related information is
+ * taken from the exchange of the batch request.<br>
+ * <br>
+ * Handlers can detect that they run inside a batch by checking the attribute
+ * {@link DefaultHandler#BATCH_ATTRIBUTE}.
+ *
+ * @author Thomas Rix
+ */
+class BatchExchange extends HttpExchange {
+	private HttpExchange parent;
+	private URI requestURI;
+	private Headers requestHeaders;
+	private Headers responseHeaders;
+	private InputStream requestBody;
+	private ByteArrayOutputStream responseBody;
+	private HashMap<String, Object> attributes;
+	private int responseCode;
+
+
+	/**
+	 * Construct a new exchange for an operation of a batch
+	 *
+	 * @param pParent Exchange of the batch request
+	 * @param pRequestURI Request URI of the operation including the query
+	 *            string
+	 */
+	BatchExchange(HttpExchange pParent, URI pRequestURI) {
+		parent = pParent;
+		requestURI = pRequestURI;
+		requestHeaders = new Headers();
+		responseHeaders = new Headers();
+		requestBody = new ByteArrayInputStream(new byte[0]);
+		responseBody = new ByteArrayOutputStream();
+		attributes = new HashMap<>();
+		responseCode = -1;
+
+		attributes.put(DefaultHandler.BATCH_ATTRIBUTE, Boolean.TRUE);
+	}
+
+
+	/**
+	 * Return the response written by the handler
+	 *
+	 * @return The response body decoded as UTF-8
+	 */
+	String getResponseText() {
+		return new String(responseBody.toByteArray(), JSONStreamWriter.UTF8);
+	}
+
+
+	@Override
+	public Headers getRequestHeaders() {
+		return requestHeaders;
+	}
+
+
+	@Override
+	public Headers getResponseHeaders() {
+		return responseHeaders;
+	}
+
+
+	@Override
+	public URI getRequestURI() {
+		return requestURI;
+	}
+
+
+	@Override
+	public String getRequestMethod() {
+		return "GET";
+	}
+
+
+	@Override
+	public HttpContext getHttpContext() {
+		return parent.getHttpContext();
+	}
+
+
+	@Override
+	public void close() {
+		/* Nothing to close, the response stays in memory */
+	}
+
+
+	@Override
+	public InputStream getRequestBody() {
+		return requestBody;
+	}
+
+
+	@Override
+	public OutputStream getResponseBody() {
+		return responseBody;
+	}
+
+
+	@Override
+	public void sendResponseHeaders(int pCode, long pLength) {
+		responseCode = pCode;
+	}
+
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return parent.getRemoteAddress();
+	}
+
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return parent.getLocalAddress();
+	}
+
+
+	@Override
+	public String getProtocol() {
+		return parent.getProtocol();
+	}
+
+
+	@Override
+	public Object getAttribute(String pName) {
+		return attributes.get(pName);
+	}
+
+
+	@Override
+	public void setAttribute(String pName, Object pValue) {
+		attributes.put(pName, pValue);
+	}
+
+
+	@Override
+	public void setStreams(InputStream pIn, OutputStream pOut) {
+		throw new UnsupportedOperationException("Streams of batch operations cannot be replaced");
+	}
+
+
+	@Override
+	public HttpPrincipal getPrincipal() {
+		return parent.getPrincipal();
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.http.ajax.MetricsFilter;
+import de.decoit.visa.json.JSONStreamWriter;
+import de.decoit.visa.rdf.RDFSourceException;
+
+
+/**
+ * This HttpHandler implementation executes an ordered list of operations in a
+ * single request. Each operation is processed by the handler of the matching
+ * single request, so operations accept the same parameters and return the
+ * same information as the single requests. All operations are executed inside
+ * a single RDF transaction.<br>
+ * <br>
+ * The request body must contain a JSON object with the key 'operations', an
+ * array of objects with the keys 'action' (name of the single request, for
+ * example 'createCable') and 'params' (object containing the query parameters
+ * of the single request, array values are used for array parameters).
+ * Supported actions are: createComponent, relocateComponent,
+ * addInterfaceToComp, removeComponent, createCable, removeCable,
+ * modifyVLANAssignment, createSubnet, createVLAN, modifyVLAN, removeVLAN,
+ * queuedModifyInterfaceIP, queuedModifyInterfaceOri,
+ * queuedModifyComponentName, executeModificationQueue and
+ * discardModificationQueue.<br>
+ * <br>
+ * Execution stops at the first operation which does not return
+ * 'ajaxSuccess'. In that case the transaction is aborted, so either all or
+ * none of the operations are applied. The response contains the responses of
+ * all executed operations without their topology (key: results), the index of
+ * the failed operation if any (key: failed) and the JSON object of the
+ * current topology (key: topology). The status of the response is the status
+ * of the failed operation or 'ajaxSuccess'.<br>
+ * <br>
+ * Possible return messages of this handler are:<br>
+ * - ajaxSuccess (success)<br>
+ * - ajaxGeneral (unsupported action or too many operations, see message key
+ * for details)<br>
+ * - any return message of the failed operation<br>
+ * - ajaxException (exception caught but recovered)<br>
+ * - ajaxExceptionUnresolved (exception caught and recovery not possible)<br>
+ * - ajaxMissing (missing or malformed request body)
+ *
+ * @author Thomas Rix
+ * @see AJAXServer
+ * @see DefaultHandler
+ * @see BulkModifyHandler
+ */
+public class BatchHandler extends DefaultHandler {
+	private static Logger log = Logger.getLogger(BatchHandler.class.getName());
+
+	/**
+	 * Maximum number of operations in a single batch
+	 */
+	public static final int MAX_OPERATIONS = 1000;
+
+	private HashMap<String, DefaultHandler> handlers;
+
+
+	/**
+	 * Construct a new handler and the handlers for all supported actions
+	 */
+	public BatchHandler() {
+		handlers = new HashMap<>();
+		handlers.put("createComponent", new CreateComponentHandler());
+		handlers.put("relocateComponent", new RelocateComponentHandler());
+		handlers.put("addInterfaceToComp", new AddInterfaceToComponentHandler());
+		handlers.put("removeComponent", new RemoveComponentHandler());
+		handlers.put("createCable", new CreateCableHandler());
+		handlers.put("removeCable", new RemoveCableHandler());
+		handlers.put("modifyVLANAssignment", new ModifyVLANAssignmentHandler());
+		handlers.put("createSubnet", new CreateNetworkHandler());
+		handlers.put("createVLAN", new CreateVLANHandler());
+		handlers.put("modifyVLAN", new ModifyVLANHandler());
+		handlers.put("removeVLAN", new RemoveVLANHandler());
+		handlers.put("queuedModifyInterfaceIP", new QueuedModifyInterfaceIPHandler());
+		handlers.put("queuedModifyInterfaceOri", new QueuedModifyInterfaceOrientationHandler());
+		handlers.put("queuedModifyComponentName", new QueuedModifyComponentNameHandler());
+		handlers.put("executeModificationQueue", new ExecuteModificationsHandler());
+		handlers.put("discardModificationQueue", new DiscardModificationsHandler());
+	}
+
+
+	@Override
+	public void handle(HttpExchange he) throws IOException {
+		log.info(he.getRequestURI().toString());
+
+		// Create String for the response
+		JSONObject response = null;
+
+		JSONArray operations;
+		try {
+			operations = new JSONObject(readRequestBody(he)).getJSONArray("operations");
+		}
+		catch(JSONException ex) {
+			TEBackend.logException(ex, log);
+
+			operations = null;
+		}
+
+		// Build all operation exchanges before anything is executed, so
+		// malformed operations reject the whole batch
+		String[] actions = null;
+		BatchExchange[] exchanges = null;
+		String error = null;
+		if(operations != null && operations.length() > 0) {
+			try {
+				actions = new String[operations.length()];
+				exchanges = new BatchExchange[operations.length()];
+
+				if(operations.length() > MAX_OPERATIONS) {
+					error = "Batch exceeds the maximum of " + MAX_OPERATIONS + " operations";
+				}
+
+				for(int i = 0; i < operations.length() && error == null; i++) {
+					JSONObject op = operations.getJSONObject(i);
+					actions[i] = op.getString("action");
+
+					if(handlers.containsKey(actions[i])) {
+						exchanges[i] = new BatchExchange(he, createOperationURI(actions[i], op.optJSONObject("params")));
+					}
+					else {
+						error = "Unsupported action at index " + i + ": " + actions[i];
+					}
+				}
+			}
+			catch(JSONException | URISyntaxException | UnsupportedEncodingException ex) {
+				// Malformed operation
+				TEBackend.logException(ex, log);
+
+				exchanges = null;
+			}
+		}
+
+		if(exchanges != null && error == null) {
+			// Any exception thrown while executing the batch will cause
+			// failure of the AJAX request
+			try {
+				executeBatch(he, actions, exchanges);
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+
+				try {
+					// Synchronize the topology with the RDF model to resolve
+					// any errors caused by the caught exception, this aborts
+					// the batch transaction
+					TEBackend.getRDFManager().syncTopologyToRDF();
+
+					JSONObject rv = new JSONObject();
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
+					rv.put("type", ex.getClass().getSimpleName());
+					rv.put("message", ex.getMessage());
+					putTopology(he, rv);
+					response = rv;
+				}
+				catch(Throwable e) {
+					// Exception during synchronization, the model may have been
+					// corrupted so the whole backend was cleared
+					JSONObject rv = new JSONObject();
+
+					try {
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
+					}
+					catch(JSONException exc) {
+						/* Ignore */
+					}
+
+					response = rv;
+				}
+			}
+		}
+		else if(exchanges != null) {
+			JSONObject rv = new JSONObject();
+			try {
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
+				rv.put("message", error);
+			}
+			catch(JSONException exc) {
+				/* Ignore */
+			}
+
+			response = rv;
+		}
+		else {
+			JSONObject rv = new JSONObject();
+			try {
+				// Missing or malformed request body, set response to error code
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
+			}
+			catch(JSONException exc) {
+				/* Ignore */
+			}
+
+			response = rv;
+		}
+
+		// The response of an executed batch was already streamed
+		if(response != null) {
+			sendResponse(he, response);
+		}
+	}
+
+
+	/**
+	 * Execute the operations of a batch inside a single transaction and
+	 * stream the batch response. Execution stops at the first failed
+	 * operation, the transaction is aborted and the topology is synchronized
+	 * with the RDF model in that case.
+	 *
+	 * @param pHE Object of the HTTP exchange of the batch request
+	 * @param pActions Actions of the operations
+	 * @param pExchanges Exchanges of the operations
+	 * @throws IOException
+	 * @throws JSONException
+	 * @throws RDFSourceException
+	 */
+	private void executeBatch(HttpExchange pHE, String[] pActions, BatchExchange[] pExchanges) throws IOException, JSONException, RDFSourceException {
+		JSONArray results = new JSONArray();
+		String status = AJAXServer.AJAX_SUCCESS;
+		int failed = -1;
+
+		TEBackend.getRDFManager().beginTransaction();
+
+		try {
+			for(int i = 0; i < pExchanges.length && failed < 0; i++) {
+				handlers.get(pActions[i]).handle(pExchanges[i]);
+
+				JSONObject result = new JSONObject(pExchanges[i].getResponseText());
+
+				// Failed operations may include the topology, it is sent once
+				// at the end of the batch response
+				result.remove("topology");
+				results.put(result);
+
+				if(!AJAXServer.AJAX_SUCCESS.equals(result.optString("status"))) {
+					status = result.optString("status");
+					failed = i;
+				}
+			}
+		}
+		catch(Throwable ex) {
+			// Let the caller recover the topology
+			TEBackend.getRDFManager().abortTransaction();
+
+			throw ex;
+		}
+
+		if(failed < 0) {
+			TEBackend.getRDFManager().commitTransaction();
+		}
+		else if(TEBackend.getRDFManager().isTransactionActive()) {
+			// The failed operation did not recover the topology itself,
+			// discard all operations of the batch
+			TEBackend.getRDFManager().syncTopologyToRDF();
+		}
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Batch executed, operations: ");
+			sb.append(results.length());
+			sb.append(", failed: ");
+			sb.append(failed);
+			log.debug(sb.toString());
+		}
+
+		MetricsFilter.setStatus(pHE, status);
+
+		JSONStreamWriter writer = openResponseWriter(pHE);
+		try {
+			writer.beginObject();
+			writer.key("status").value(status);
+			writer.key("results").value(results);
+			if(failed >= 0) {
+				writer.key("failed").value(failed);
+			}
+			writer.key("topology");
+			TEBackend.getTopologyStorage().writeJSON(writer);
+			writer.endObject();
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+
+	/**
+	 * Create the request URI of an operation. The parameters are encoded the
+	 * same way the frontend encodes them for single requests.
+	 *
+	 * @param pAction Name of the action
+	 * @param pParams Parameters of the operation, may be null
+	 * @return The request URI including the query string
+	 * @throws JSONException
+	 * @throws URISyntaxException
+	 * @throws UnsupportedEncodingException
+	 */
+	private URI createOperationURI(String pAction, JSONObject pParams) throws JSONException, URISyntaxException, UnsupportedEncodingException {
+		StringBuilder query = new StringBuilder();
+
+		if(pParams != null) {
+			Iterator<?> itKeys = pParams.keys();
+			while(itKeys.hasNext()) {
+				String key = (String) itKeys.next();
+				JSONArray values = pParams.optJSONArray(key);
+
+				if(values != null) {
+					for(int i = 0; i < values.length(); i++) {
+						appendParameter(query, key, values.getString(i));
+					}
+				}
+				else {
+					appendParameter(query, key, pParams.getString(key));
+				}
+			}
+		}
+
+		// The QueryString class decodes the raw query of the URI, so the URL
+		// encoded query is used as it is
+		if(query.length() > 0) {
+			return new URI("/ajax/" + pAction + "?" + query.toString());
+		}
+		else {
+			return new URI("/ajax/" + pAction);
+		}
+	}
+
+
+	/**
+	 * Append a parameter in key=value form to a query string
+	 *
+	 * @param pQuery The query string
+	 * @param pKey Key of the parameter
+	 * @param pValue Value of the parameter
+	 * @throws UnsupportedEncodingException
+	 */
+	private void appendParameter(StringBuilder pQuery, String pKey, String pValue) throws UnsupportedEncodingException {
+		if(pQuery.length() > 0) {
+			pQuery.append('&');
+		}
+
+		pQuery.append(URLEncoder.encode(pKey, "UTF-8"));
+		pQuery.append('=');
+		pQuery.append(URLEncoder.encode(pValue, "UTF-8"));
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.QueryString;
+import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.topology.TopologyBatch;
+
+
+/**
+ * This handler applies a batch of topology modifications received as a JSON
+ * object in the request body. All modifications are validated together and
+ * applied in a single transaction followed by one layout pass, see
+ * {@link TopologyBatch} and
+ * {@link de.decoit.visa.topology.TopologyStorage#applyBatch(TopologyBatch)
+ * TopologyStorage.applyBatch()}. The request body may contain the following
+ * keys, all of them are optional:<br>
+ * <br>
+ * removeCables: array of cable identifiers<br>
+ * removeComponents: array of component local names<br>
+ * vlans: array of objects with the keys ref, name, color<br>
+ * components: array of objects with the keys ref, type (switch or vm), name,
+ * group (group name, default 0.0.0.0), dimX, dimY, ifori (array of interface
+ * orientations)<br>
+ * cables: array of objects with the keys left, right (interface
+ * references)<br>
+ * vlanAssignments: array of objects with the keys iface (interface reference),
+ * vlans (array of VLAN references)<br>
+ * <br>
+ * The optional query parameter 'layout' selects the layout engine for the
+ * modified topology (graphviz or java), the engine configured at the backend
+ * is used by default.<br>
+ * <br>
+ * On success, a JSON object will be returned containing a map of the batch
+ * references to the local names of the created objects (key: refs) and the
+ * JSON object of the current topology (key: topology).<br>
+ * <br>
+ * A batch that fails validation is rejected without any modification. Any
+ * exception thrown while the batch is applied will cause the request to fail.
+ * One attempt to recover the topology from the exception is made. If that
+ * fails, the topology and RDF model will be cleared.<br>
+ * <br>
+ * Possible return messages of this handler are:<br>
+ * - ajaxSuccess (success)<br>
+ * - ajaxGeneral (batch failed validation)<br>
+ * - ajaxException (exception caught but recovered)<br>
+ * - ajaxExceptionUnresolved (exception caught and recovery not possible)<br>
+ * - ajaxMissing (missing or malformed request body or unknown layout engine)
+ *
+ * @author Thomas Rix
+ * @see AJAXServer
+ * @see DefaultHandler
+ */
+public class BulkModifyHandler extends DefaultHandler {
+	private static Logger log = Logger.getLogger(BulkModifyHandler.class.getName());
+
+
+	@Override
+	public void handle(HttpExchange he) throws IOException {
+		log.info(he.getRequestURI().toString());
+
+		// Create String for the response
+		JSONObject response = null;
+
+		TopologyBatch batch;
+		try {
+			batch = parseBatch(new JSONObject(readRequestBody(he)));
+		}
+		catch(JSONException | IllegalArgumentException | NullPointerException ex) {
+			TEBackend.logException(ex, log);
+
+			batch = null;
+		}
+
+		String layoutEngine = getLayoutEngine(new QueryString(he.getRequestURI()));
+
+		if(batch != null && !batch.isEmpty() && layoutEngine != null) {
+			// Any exception thrown while applying the batch will cause
+			// failure of the AJAX request
+			try {
+				JSONObject rv = new JSONObject();
+
+				boolean valid;
+				try {
+					TEBackend.getTopologyStorage().validateBatch(batch);
+					valid = true;
+				}
+				catch(IllegalArgumentException exc) {
+					// Validation failed, nothing was modified
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
+					rv.put("message", exc.getMessage());
+					valid = false;
+				}
+
+				if(valid) {
+					HashMap<String, String> refs = TEBackend.getTopologyStorage().applyBatch(batch, layoutEngine);
+
+					JSONObject refJSON = new JSONObject();
+					for(Map.Entry<String, String> refEntry : refs.entrySet()) {
+						refJSON.put(refEntry.getKey(), refEntry.getValue());
+					}
+
+					putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+					rv.put("refs", refJSON);
+				}
+
+				putTopology(he, rv);
+
+				response = rv;
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+
+				try {
+					// Synchronize the topology with the RDF model to resolve
+					// any errors caused by the caught exception
+					TEBackend.getRDFManager().syncTopologyToRDF();
+
+					JSONObject rv = new JSONObject();
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
+					rv.put("type", ex.getClass().getSimpleName());
+					rv.put("message", ex.getMessage());
+					putTopology(he, rv);
+					response = rv;
+				}
+				catch(Throwable e) {
+					// Exception during synchronization, the model may have been
+					// corrupted so the whole backend was cleared
+					JSONObject rv = new JSONObject();
+					try {
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
+					}
+					catch(JSONException exc) {
+						/* Ignore */
+					}
+
+					response = rv;
+				}
+			}
+		}
+		else {
+			// Missing or malformed request body, set response to error code
+			JSONObject rv = new JSONObject();
+			try {
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
+			}
+			catch(JSONException exc) {
+				/* Ignore */
+			}
+
+			response = rv;
+		}
+
+		// Send the response
+		sendResponse(he, response);
+	}
+
+
+	/**
+	 * Build a TopologyBatch object from the JSON object received in the
+	 * request body
+	 *
+	 * @param pJSON JSON object of the request body
+	 * @return The batch containing all operations of the request
+	 * @throws JSONException if a required key is missing or has a wrong type
+	 */
+	private TopologyBatch parseBatch(JSONObject pJSON) throws JSONException {
+		TopologyBatch rv = new TopologyBatch();
+
+		JSONArray removeCables = pJSON.optJSONArray("removeCables");
+		if(removeCables != null) {
+			for(int i = 0; i < removeCables.length(); i++) {
+				rv.removeCable(removeCables.getString(i));
+			}
+		}
+
+		JSONArray removeComponents = pJSON.optJSONArray("removeComponents");
+		if(removeComponents != null) {
+			for(int i = 0; i < removeComponents.length(); i++) {
+				rv.removeComponent(removeComponents.getString(i));
+			}
+		}
+
+		JSONArray vlans = pJSON.optJSONArray("vlans");
+		if(vlans != null) {
+			for(int i = 0; i < vlans.length(); i++) {
+				JSONObject vlan = vlans.getJSONObject(i);
+
+				rv.addVLAN(vlan.getString("ref"), vlan.getString("name"), vlan.getString("color"));
+			}
+		}
+
+		JSONArray components = pJSON.optJSONArray("components");
+		if(components != null) {
+			for(int i = 0; i < components.length(); i++) {
+				JSONObject comp = components.getJSONObject(i);
+
+				Dimension2D dim = null;
+				if(comp.has("dimX") && comp.has("dimY")) {
+					dim = Dimension2D.valueOf(comp.getInt("dimX"), comp.getInt("dimY"));
+				}
+
+				rv.addComponent(comp.getString("ref"), comp.getString("type"), comp.getString("name"), comp.optString("group", "0.0.0.0"), dim, toStringList(comp.getJSONArray("ifori")));
+			}
+		}
+
+		JSONArray cables = pJSON.optJSONArray("cables");
+		if(cables != null) {
+			for(int i = 0; i < cables.length(); i++) {
+				JSONObject cable = cables.getJSONObject(i);
+
+				rv.addCable(cable.getString("left"), cable.getString("right"));
+			}
+		}
+
+		JSONArray assignments = pJSON.optJSONArray("vlanAssignments");
+		if(assignments != null) {
+			for(int i = 0; i < assignments.length(); i++) {
+				JSONObject assignment = assignments.getJSONObject(i);
+
+				rv.addVLANAssignment(assignment.getString("iface"), toStringList(assignment.getJSONArray("vlans")));
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Convert a JSONArray of strings into a list
+	 *
+	 * @param pArray The JSONArray
+	 * @return List containing the strings of the array
+	 * @throws JSONException if an element of the array is no string
+	 */
+	private ArrayList<String> toStringList(JSONArray pArray) throws JSONException {
+		ArrayList<String> rv = new ArrayList<>();
+
+		for(int i = 0; i < pArray.length(); i++) {
+			rv.add(pArray.getString(i));
+		}
+
+		return rv;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * This class stores the UTF-8 encoded body of a response together with its
+ * entity tag. The gzip encoded body is created on first use and kept, so a
+ * cached response is compressed at most once.
+ *
+ * @author Thomas Rix
+ * @see DefaultHandler#sendCachedResponse(com.sun.net.httpserver.HttpExchange,
+ *      CachedResponse)
+ */
+class CachedResponse {
+	private String etag;
+	private byte[] body;
+	private byte[] gzipBody;
+
+
+	/**
+	 * Construct a new cached response
+	 *
+	 * @param pETag Strong entity tag of the response including the quotes
+	 * @param pBody UTF-8 encoded response body
+	 */
+	CachedResponse(String pETag, byte[] pBody) {
+		if(pETag == null || pBody == null) {
+			throw new NullPointerException("NULL pointer for entity tag or body provided");
+		}
+
+		etag = pETag;
+		body = pBody;
+		gzipBody = null;
+	}
+
+
+	/**
+	 * Construct a new cached response whose entity tag is the SHA-1 hash of
+	 * the body
+	 *
+	 * @param pBody UTF-8 encoded response body
+	 */
+	CachedResponse(byte[] pBody) {
+		this(hashETag(pBody), pBody);
+	}
+
+
+	/**
+	 * Return the entity tag of the response
+	 *
+	 * @return The entity tag including the quotes
+	 */
+	String getETag() {
+		return etag;
+	}
+
+
+	/**
+	 * Return the UTF-8 encoded response body
+	 *
+	 * @return The response body
+	 */
+	byte[] getBody() {
+		return body;
+	}
+
+
+	/**
+	 * Return the gzip encoded response body. It is compressed on the first
+	 * call of this method.
+	 *
+	 * @return The compressed response body
+	 * @throws IOException
+	 */
+	synchronized byte[] getGzipBody() throws IOException {
+		if(gzipBody == null) {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(body.length / 4);
+			try(OutputStream gzos = new GZIPOutputStream(buf)) {
+				gzos.write(body);
+			}
+
+			gzipBody = buf.toByteArray();
+		}
+
+		return gzipBody;
+	}
+
+
+	/**
+	 * Create a strong entity tag from the SHA-1 hash of the provided data
+	 *
+	 * @param pData The data
+	 * @return The entity tag including the quotes
+	 */
+	static String hashETag(byte[] pData) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(pData);
+
+			StringBuilder sb = new StringBuilder("\"");
+			for(byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			sb.append('"');
+
+			return sb.toString();
+		}
+		catch(NoSuchAlgorithmException ex) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException("SHA-1 is not supported", ex);
+		}
+	}
+}
@@ -66,7 +66,7 @@ public class ConfigureHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
 		String response = null;
@@ -109,7 +109,10 @@ public class ConfigureHandler extends DefaultHandler {
 				int cols = Integer.parseInt(queryParameters.get("cols").get());
 
 				TEBackend.setGridDimensions(cols, rows);
-				TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName("0.0.0.0").setSubgridDimensions(cols, rows);
+				TEBackend.getTopologyStorage().getComponentGroupByName("0.0.0.0").setSubgridDimensions(cols, rows);
+
+				// The grid is part of the topology but not of the RDF model
+				TEBackend.getRDFManager().markReload();
 
 				// Process cell size parameter
 				int cSize = Integer.parseInt(queryParameters.get("csize").get());
@@ -123,8 +126,8 @@ public class ConfigureHandler extends DefaultHandler {
 
 				// Return success response
 				JSONObject rv = new JSONObject();
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
-				rv.put("vsatemplates", TEBackend.RDF_MANAGER.vsaTemplatesToJSON());
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+				rv.put("vsatemplates", TEBackend.getRDFManager().vsaTemplatesToJSON());
 				response = rv.toString();
 			}
 			catch(Throwable ex) {
@@ -134,7 +137,7 @@ public class ConfigureHandler extends DefaultHandler {
 				JSONObject rv = new JSONObject();
 
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 				}
@@ -150,7 +153,7 @@ public class ConfigureHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
@@ -69,18 +69,18 @@ public class CreateCableHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
 			// Any exception thrown during object creation will
 			// cause failure of the AJAX request
 			try {
-				NetworkComponent.Interface startPort = TEBackend.TOPOLOGY_STORAGE.getInterface(queryParameters.get("oids").get());
-				NetworkComponent.Interface endPort = TEBackend.TOPOLOGY_STORAGE.getInterface(queryParameters.get("oide").get());
+				NetworkComponent.Interface startPort = TEBackend.getTopologyStorage().getInterface(queryParameters.get("oids").get());
+				NetworkComponent.Interface endPort = TEBackend.getTopologyStorage().getInterface(queryParameters.get("oide").get());
 
 				// Check if both ports are present
 				if(startPort != null && endPort != null) {
@@ -88,14 +88,14 @@ public class CreateCableHandler extends DefaultHandler {
 						// Error: One of the ports is already connected to a
 						// cable!
 						JSONObject rv = new JSONObject();
-						rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 						rv.put("message", "One of the interfaces is already connected");
-						response = rv.toString();
+						response = rv;
 					}
 					else {
 						// Create the new NetworkCable
 						// TODO no GroupInterface information from frontend
-						NetworkCable newCable = TEBackend.TOPOLOGY_STORAGE.createCable(startPort, endPort, null);
+						NetworkCable newCable = TEBackend.getTopologyStorage().createCable(startPort, endPort, null);
 
 						LinkedList<Position2D> corners = this.createCableCorners(queryParameters.get("path"));
 						newCable.setPathCorners(corners);
@@ -108,16 +108,16 @@ public class CreateCableHandler extends DefaultHandler {
 
 						// Return the new cable and topology
 						JSONObject rv = new JSONObject();
-						rv.put("status", AJAXServer.AJAX_SUCCESS);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-						rv.put("newCable", newCable.toJSON());
-						response = rv.toString();
+						putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+						putTopology(he, rv);
+						rv.put("newCable", newCable);
+						response = rv;
 					}
 				}
 				else {
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_INVALID_OBJ);
-					response = rv.toString();
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_INVALID_OBJ);
+					response = rv;
 				}
 			}
 			catch(Throwable ex) {
@@ -126,14 +126,14 @@ public class CreateCableHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
@@ -141,14 +141,14 @@ public class CreateCableHandler extends DefaultHandler {
 					JSONObject rv = new JSONObject();
 
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 		}
@@ -156,13 +156,13 @@ public class CreateCableHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -27,6 +27,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
 import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.http.QueryString;
 import de.decoit.visa.http.ajax.AJAXServer;
@@ -45,6 +46,12 @@ import de.decoit.visa.topology.TopologyStorage.ComponentGroup;
  * new created component (key: newComponent), an indicator if the created
  * component was a switch (key: switch) and the current topology (key: topology)<br>
  * <br>
+ * If the request contains the parameter 'place' with value 'true', the new
+ * component is placed on the free location of the group grid nearest to the
+ * optional parameters 'glocX' and 'glocY'. Free locations are looked up in the
+ * occupancy index of the topology storage. If the grid is full, the component
+ * stays unplaced.<br>
+ * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail. One attempt to recover the topology from the exception is
  * made. If that fails, the topology and RDF model will be cleared.<br>
@@ -69,10 +76,10 @@ public class CreateComponentHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -88,9 +95,9 @@ public class CreateComponentHandler extends DefaultHandler {
 				// failure of the AJAX request
 				try {
 					String name = queryParameters.get("name").get();
-					Dimension2D dim = new Dimension2D(Integer.parseInt(queryParameters.get("dimX").get()), Integer.parseInt(queryParameters.get("dimY").get()));
+					Dimension2D dim = Dimension2D.valueOf(Integer.parseInt(queryParameters.get("dimX").get()), Integer.parseInt(queryParameters.get("dimY").get()));
 
-					ComponentGroup cg = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByID(queryParameters.get("group").get());
+					ComponentGroup cg = TEBackend.getTopologyStorage().getComponentGroupByID(queryParameters.get("group").get());
 
 					JSONObject responseJSON = new JSONObject();
 
@@ -98,33 +105,35 @@ public class CreateComponentHandler extends DefaultHandler {
 					// extracted above
 					switch(compType) {
 						case NCSwitch.TYPE:
-							newNC = TEBackend.TOPOLOGY_STORAGE.createSwitch(queryParameters.get("ifori").toList(), name, dim, null);
+							newNC = TEBackend.getTopologyStorage().createSwitch(queryParameters.get("ifori").toList(), name, dim, null);
 							newNC.getConfig().setComponentGroup(cg.getName());
 							((NCSwitch) newNC).createGroupSwitches();
+							placeComponent(newNC, cg, queryParameters);
 
-							responseJSON.put("newComponent", ((NCSwitch) newNC).toJSON());
+							responseJSON.put("newComponent", newNC);
 							responseJSON.put("switch", true);
-							responseJSON.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+							putTopology(he, responseJSON);
 
 							break;
 						case NCVM.TYPE:
-							newNC = TEBackend.TOPOLOGY_STORAGE.createVM(queryParameters.get("ifori").toList(), name, dim, null);
+							newNC = TEBackend.getTopologyStorage().createVM(queryParameters.get("ifori").toList(), name, dim, null);
 							newNC.getConfig().setComponentGroup(cg.getName());
+							placeComponent(newNC, cg, queryParameters);
 
-							responseJSON.put("newComponent", newNC.toJSON());
+							responseJSON.put("newComponent", newNC);
 							responseJSON.put("switch", false);
-							responseJSON.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+							putTopology(he, responseJSON);
 
 							break;
 						default:
 							responseJSON = null;
 					}
 
-					responseJSON.put("status", AJAXServer.AJAX_SUCCESS);
+					putStatus(he, responseJSON, AJAXServer.AJAX_SUCCESS);
 
 					// Set the HTTP response to the identifier string of the new
 					// component
-					response = responseJSON.toString();
+					response = responseJSON;
 				}
 				catch(Throwable ex) {
 					TEBackend.logException(ex, log);
@@ -133,14 +142,14 @@ public class CreateComponentHandler extends DefaultHandler {
 						// Synchronize the topology with the RDF model to
 						// resolve
 						// any errors caused by the caught exception
-						TEBackend.RDF_MANAGER.syncTopologyToRDF();
+						TEBackend.getRDFManager().syncTopologyToRDF();
 
 						JSONObject rv = new JSONObject();
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 						rv.put("type", ex.getClass().getSimpleName());
 						rv.put("message", ex.getMessage());
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-						response = rv.toString();
+						putTopology(he, rv);
+						response = rv;
 					}
 					catch(Throwable e) {
 						// Exception during synchronization, the model may have
@@ -148,14 +157,14 @@ public class CreateComponentHandler extends DefaultHandler {
 						// corrupted so the whole backend was cleared
 						JSONObject rv = new JSONObject();
 						try {
-							rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-							rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+							putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+							putTopology(he, rv);
 						}
 						catch(JSONException exc) {
 							/* Ignore */
 						}
 
-						response = rv.toString();
+						response = rv;
 					}
 				}
 			}
@@ -165,26 +174,26 @@ public class CreateComponentHandler extends DefaultHandler {
 				try {
 					// Missing or malformed query string, set response to error
 					// code
-					rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 				}
 				catch(JSONException exc) {
 					/* Ignore */
 				}
 
-				response = rv.toString();
+				response = rv;
 			}
 		}
 		else {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -192,6 +201,37 @@ public class CreateComponentHandler extends DefaultHandler {
 	}
 
 
+	/**
+	 * Place a new component on the free location of the group grid nearest to
+	 * the requested location, if the query parameter 'place' is set to 'true'
+	 *
+	 * @param pNC The new component
+	 * @param pCG The group the component was assigned to
+	 * @param pQueryString A QueryString object with all query parameters of the
+	 *            request
+	 */
+	private void placeComponent(NetworkComponent pNC, ComponentGroup pCG, QueryString pQueryString) {
+		if(pQueryString.containsKey("place") && pQueryString.get("place").get().equals("true")) {
+			Position2D near = null;
+			if(pQueryString.containsKey("glocX") && pQueryString.get("glocX").get().matches("\\d+") && pQueryString.containsKey("glocY") && pQueryString.get("glocY").get().matches("\\d+")) {
+				near = new Position2D(Integer.parseInt(pQueryString.get("glocX").get()), Integer.parseInt(pQueryString.get("glocY").get()));
+			}
+
+			Position2D loc = TEBackend.getTopologyStorage().findFreeLocation(pCG.getName(), pNC.getConfig().getDragboxDimensions(), near);
+			if(loc != null) {
+				pNC.getConfig().setGridLocation(loc.getX(), loc.getY());
+			}
+			else if(log.isDebugEnabled()) {
+				StringBuilder sb = new StringBuilder("No free location for component ");
+				sb.append(pNC.getRDFLocalName());
+				sb.append(" in group ");
+				sb.append(pCG.getName());
+				log.debug(sb.toString());
+			}
+		}
+	}
+
+
 	/**
 	 * Check if the provided QueryString object contains all keys required by
 	 * this handler and if their values are valid.
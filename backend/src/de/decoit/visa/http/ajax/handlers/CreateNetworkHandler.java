@@ -61,10 +61,10 @@ public class CreateNetworkHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -78,20 +78,20 @@ public class CreateNetworkHandler extends DefaultHandler {
 				JSONObject rv = new JSONObject();
 
 				try {
-					TEBackend.TOPOLOGY_STORAGE.createNetwork(address, subnetmask, version);
+					TEBackend.getTopologyStorage().createNetwork(address, subnetmask, version);
 
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					rv.put("status", AJAXServer.AJAX_SUCCESS);
+					putTopology(he, rv);
+					putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 				}
 				catch(IllegalArgumentException exc) {
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+					putTopology(he, rv);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 					rv.put("message", "Malformed address or subnet mask detected");
 				}
 
 				// Set the HTTP response to the identifier string of the new
 				// component
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
@@ -99,28 +99,28 @@ public class CreateNetworkHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 
@@ -129,13 +129,13 @@ public class CreateNetworkHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
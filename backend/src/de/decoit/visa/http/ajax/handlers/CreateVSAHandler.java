@@ -41,6 +41,10 @@ import de.decoit.visa.http.ajax.AJAXServer;
  * On success, a JSON object will be returned containing the JSON object of the
  * current topology (key: topology)<br>
  * <br>
+ * The optional parameter 'layout' selects the layout engine for the VSA
+ * components (graphviz or java), the engine configured at the backend is used
+ * by default.<br>
+ * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail. One attempt to recover the topology from the exception is
  * made. If that fails, the topology and RDF model will be cleared.<br>
@@ -64,10 +68,10 @@ public class CreateVSAHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -77,7 +81,7 @@ public class CreateVSAHandler extends DefaultHandler {
 
 				boolean connParamsPresent = true;
 
-				Document tpl = TEBackend.RDF_MANAGER.getVSATemplate(Integer.parseInt(queryParameters.get("tplid").get()));
+				Document tpl = TEBackend.getRDFManager().getVSATemplate(Integer.parseInt(queryParameters.get("tplid").get()));
 
 				// Verify that all connections are present in the query
 				// parameters
@@ -100,8 +104,8 @@ public class CreateVSAHandler extends DefaultHandler {
 							connParamsPresent = false;
 
 							JSONObject rv = new JSONObject();
-							rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
-							response = rv.toString();
+							putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
+							response = rv;
 
 							break;
 						}
@@ -119,13 +123,13 @@ public class CreateVSAHandler extends DefaultHandler {
 				}
 
 				if(connParamsPresent) {
-					TEBackend.RDF_MANAGER.importRDFTemplate(Integer.parseInt(queryParameters.get("tplid").get()), queryParameters.get("name").get(), connTargets, connVLANs);
+					TEBackend.getRDFManager().importRDFTemplate(Integer.parseInt(queryParameters.get("tplid").get()), queryParameters.get("name").get(), connTargets, connVLANs, getLayoutEngine(queryParameters));
 
 					// Return success response
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_SUCCESS);
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+					putTopology(he, rv);
+					response = rv;
 				}
 			}
 			catch(Throwable ex) {
@@ -135,14 +139,14 @@ public class CreateVSAHandler extends DefaultHandler {
 					// Synchronize the topology with the RDF model to
 					// resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have
@@ -150,14 +154,14 @@ public class CreateVSAHandler extends DefaultHandler {
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 		}
@@ -166,13 +170,13 @@ public class CreateVSAHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -200,6 +204,11 @@ public class CreateVSAHandler extends DefaultHandler {
 			rv = false;
 		}
 
+		// The layout key is optional but must name a known engine
+		if(rv && getLayoutEngine(pQueryString) == null) {
+			rv = false;
+		}
+
 		return rv;
 	}
 }
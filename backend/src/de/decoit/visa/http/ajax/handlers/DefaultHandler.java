@@ -19,14 +19,27 @@
 
 package de.decoit.visa.http.ajax.handlers;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.gridlayout.GridLayout;
+import de.decoit.visa.http.QueryString;
 import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.http.ajax.MetricsFilter;
+import de.decoit.visa.interfaces.IJSON;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
@@ -42,6 +55,28 @@ import de.decoit.visa.http.ajax.AJAXServer;
 public class DefaultHandler implements HttpHandler {
 	private static Logger log = Logger.getLogger(DefaultHandler.class.getName());
 
+	/**
+	 * Name of the exchange attribute which marks operations executed by the
+	 * {@link BatchHandler}
+	 */
+	public static final String BATCH_ATTRIBUTE = "visa.batch";
+
+	// Responses smaller than this are not worth compressing
+	private static final int GZIP_MIN_LENGTH = 1024;
+
+	// Compressed responses of at least this size are streamed using chunked
+	// transfer encoding instead of being compressed into a buffer first
+	private static final int STREAM_MIN_LENGTH = 64 * 1024;
+
+	// Content type of the JSON responses, the frontend expects "text/html"
+	private static final String CONTENT_TYPE_JSON = "text/html; charset=UTF-8";
+
+	// Responses are logged truncated to this number of characters, only
+	// every LOG_SAMPLE_RATE-th response is logged completely on level DEBUG
+	private static final int LOG_RESPONSE_LENGTH = 256;
+	private static final int LOG_SAMPLE_RATE = 64;
+	private static final AtomicLong LOG_SAMPLE_COUNTER = new AtomicLong(0);
+
 
 	@Override
 	public void handle(HttpExchange he) throws IOException {
@@ -50,7 +85,7 @@ public class DefaultHandler implements HttpHandler {
 		// Fill the response with the error code
 		JSONObject rv = new JSONObject();
 		try {
-			rv.put("status", AJAXServer.AJAX_ERROR_UNKNOWN_REQ);
+			putStatus(he, rv, AJAXServer.AJAX_ERROR_UNKNOWN_REQ);
 		}
 		catch(JSONException ex) {
 			/* Ignore */
@@ -65,26 +100,425 @@ public class DefaultHandler implements HttpHandler {
 
 	/**
 	 * Send a response for the provided HTTP exchange with the content provided
-	 * in pReponse. Content-Type header will be set to "text/html"
+	 * in pReponse. The content is encoded as UTF-8, Content-Type header will
+	 * be set to "text/html; charset=UTF-8". If the client accepts gzip
+	 * encoding, responses of 1 KiB or more are compressed. Compressed
+	 * responses of 64 KiB or more are streamed using chunked transfer
+	 * encoding.
 	 *
 	 * @param pHE Object of the HTTP exchange
 	 * @param pResponse Response content
 	 * @throws IOException
 	 */
 	protected void sendResponse(HttpExchange pHE, String pResponse) throws IOException {
-		StringBuilder sb = new StringBuilder("Sending response: ");
-		sb.append(pResponse);
-		log.info(sb.toString());
+		logResponse(pResponse);
+
+		sendResponse(pHE, pResponse, CONTENT_TYPE_JSON);
+	}
+
+
+	/**
+	 * Send the provided response object for the provided HTTP exchange.
+	 * Members implementing {@link IJSON}, like the topology added by
+	 * {@link #putTopology(HttpExchange, JSONObject)}, are written directly to
+	 * the response body using their writeJSON() method, the response is
+	 * streamed like in {@link #openResponseWriter(HttpExchange)} in that case.
+	 * Responses without such members are sent like in
+	 * {@link #sendResponse(HttpExchange, String)}.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse JSON object of the response
+	 * @throws IOException
+	 */
+	protected void sendResponse(HttpExchange pHE, JSONObject pResponse) throws IOException {
+		boolean stream = false;
+
+		Iterator<?> itKeys = pResponse.keys();
+		while(itKeys.hasNext() && !stream) {
+			stream = pResponse.opt((String) itKeys.next()) instanceof IJSON;
+		}
+
+		if(stream) {
+			JSONStreamWriter writer = openResponseWriter(pHE);
+			try {
+				writer.beginObject();
+
+				itKeys = pResponse.keys();
+				while(itKeys.hasNext()) {
+					String key = (String) itKeys.next();
+					writer.key(key).value(pResponse.opt(key));
+				}
+
+				writer.endObject();
+			}
+			catch(JSONException ex) {
+				// The response headers were already sent, the response
+				// cannot be replaced by an error message anymore
+				throw new IOException(ex);
+			}
+			finally {
+				writer.close();
+			}
+		}
+		else {
+			sendResponse(pHE, pResponse.toString());
+		}
+	}
+
+
+	/**
+	 * Write a response to the log file. Responses longer than 256 characters
+	 * are truncated, since writing complete topologies to the log would take
+	 * a considerable part of the request time. A sample of the responses is
+	 * logged completely on level DEBUG.
+	 *
+	 * @param pResponse Response content
+	 */
+	private void logResponse(String pResponse) {
+		if(log.isInfoEnabled()) {
+			StringBuilder sb = new StringBuilder("Sending response: ");
+
+			if(pResponse.length() <= LOG_RESPONSE_LENGTH) {
+				sb.append(pResponse);
+				log.info(sb.toString());
+			}
+			else if(log.isDebugEnabled() && LOG_SAMPLE_COUNTER.incrementAndGet() % LOG_SAMPLE_RATE == 0) {
+				sb.append(pResponse);
+				log.debug(sb.toString());
+			}
+			else {
+				sb.append(pResponse, 0, LOG_RESPONSE_LENGTH);
+				sb.append("... (");
+				sb.append(pResponse.length());
+				sb.append(" characters)");
+				log.info(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Send a response for the provided HTTP exchange with the content provided
+	 * in pReponse and the provided content type. The content is encoded as
+	 * UTF-8 and compressed like in {@link #sendResponse(HttpExchange, String)}.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse Response content
+	 * @param pContentType Value of the Content-Type header, must specify the
+	 *            UTF-8 charset for text types
+	 * @throws IOException
+	 */
+	protected void sendResponse(HttpExchange pHE, String pResponse, String pContentType) throws IOException {
+		byte[] response = pResponse.getBytes(JSONStreamWriter.UTF8);
 
 		// Set the content type of the request
-		pHE.getResponseHeaders().add("Content-type", "text/html");
+		pHE.getResponseHeaders().add("Content-type", pContentType);
+		pHE.getResponseHeaders().add("Vary", "Accept-Encoding");
+
+		if(response.length >= GZIP_MIN_LENGTH && acceptsGzip(pHE)) {
+			pHE.getResponseHeaders().add("Content-Encoding", "gzip");
+
+			if(response.length >= STREAM_MIN_LENGTH) {
+				// Send the response headers, length 0 enables chunked encoding
+				pHE.sendResponseHeaders(200, 0);
+
+				try(OutputStream os = new GZIPOutputStream(pHE.getResponseBody(), 8192)) {
+					os.write(response);
+				}
+			}
+			else {
+				// Compress into a buffer to send the compressed length
+				ByteArrayOutputStream buf = new ByteArrayOutputStream(response.length / 4);
+				try(OutputStream gzos = new GZIPOutputStream(buf)) {
+					gzos.write(response);
+				}
+
+				writeResponseBody(pHE, buf.toByteArray());
+			}
+		}
+		else {
+			writeResponseBody(pHE, response);
+		}
+	}
+
+
+	/**
+	 * Add the AJAX status to the response object (key: status) and provide it
+	 * to the {@link MetricsFilter} as status of the request. The status of the
+	 * response which is sent last is recorded.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse JSON object of the response
+	 * @param pStatus AJAX status of the response
+	 * @throws JSONException
+	 */
+	protected void putStatus(HttpExchange pHE, JSONObject pResponse, String pStatus) throws JSONException {
+		pResponse.put("status", pStatus);
+		MetricsFilter.setStatus(pHE, pStatus);
+	}
+
+
+	/**
+	 * Add the current topology to the response object (key: topology). The
+	 * topology is not converted into a JSONObject, it is written to the
+	 * response body by {@link #sendResponse(HttpExchange, JSONObject)}.
+	 * Nothing is added if the request is an operation of a batch, the batch
+	 * response contains the topology once after all operations were executed.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse JSON object of the response
+	 * @throws JSONException
+	 */
+	protected void putTopology(HttpExchange pHE, JSONObject pResponse) throws JSONException {
+		if(pHE.getAttribute(BATCH_ATTRIBUTE) == null) {
+			pResponse.put("topology", TEBackend.getTopologyStorage());
+		}
+	}
+
+
+	/**
+	 * Return the layout engine requested by the optional query parameter
+	 * 'layout'. Valid values are 'graphviz' and 'java'. If the parameter is
+	 * missing, the engine configured at the backend is returned.
+	 *
+	 * @param pQueryString A QueryString object with all query parameters of the
+	 *            request
+	 * @return Name of the layout engine, null if the parameter contains an
+	 *         unknown engine
+	 */
+	protected String getLayoutEngine(QueryString pQueryString) {
+		if(!pQueryString.containsKey("layout")) {
+			return TEBackend.getLayoutEngine();
+		}
+
+		String engine = pQueryString.get("layout").get();
+		if(GridLayout.ENGINE_GRAPHVIZ.equals(engine) || GridLayout.ENGINE_JAVA.equals(engine)) {
+			return engine;
+		}
+		else {
+			return null;
+		}
+	}
 
-		// Send the response headers
-		pHE.sendResponseHeaders(200, pResponse.length());
 
-		// Write the actual response to the HttpExchange object
-		OutputStream os = pHE.getResponseBody();
-		os.write(pResponse.getBytes());
-		os.close();
+	/**
+	 * Read the complete body of the request as an UTF-8 encoded string. The
+	 * request body stream will be closed afterwards.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @return The request body, empty string if the request had no body
+	 * @throws IOException
+	 */
+	protected String readRequestBody(HttpExchange pHE) throws IOException {
+		StringBuilder sb = new StringBuilder();
+
+		try(Reader in = new InputStreamReader(pHE.getRequestBody(), JSONStreamWriter.UTF8)) {
+			char[] buf = new char[4096];
+			int read;
+			while((read = in.read(buf)) != -1) {
+				sb.append(buf, 0, read);
+			}
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Send the response headers for the provided HTTP exchange and return a
+	 * writer which writes UTF-8 encoded JSON data directly to the response
+	 * body. The response is sent using chunked transfer encoding since its
+	 * length is not known in advance. Content-Type header will be set to
+	 * "text/html". The returned writer must be closed to finish the response.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @return Writer for the response body
+	 * @throws IOException
+	 */
+	protected JSONStreamWriter openResponseWriter(HttpExchange pHE) throws IOException {
+		log.info("Sending streamed response");
+
+		boolean gzip = acceptsGzip(pHE);
+
+		// Set the content type of the request
+		pHE.getResponseHeaders().add("Content-type", CONTENT_TYPE_JSON);
+		pHE.getResponseHeaders().add("Vary", "Accept-Encoding");
+		if(gzip) {
+			pHE.getResponseHeaders().add("Content-Encoding", "gzip");
+		}
+
+		// Send the response headers, length 0 enables chunked encoding
+		pHE.sendResponseHeaders(200, 0);
+
+		if(gzip) {
+			return new JSONStreamWriter(new GZIPOutputStream(pHE.getResponseBody(), 8192));
+		}
+		else {
+			return new JSONStreamWriter(pHE.getResponseBody());
+		}
+	}
+
+
+	/**
+	 * Send a cached response for the provided HTTP exchange. The entity tag
+	 * of the response is sent in the ETag header. If the request contains a
+	 * matching If-None-Match header, only the status 304 (Not Modified) is
+	 * sent. Otherwise the body is sent like in
+	 * {@link #sendResponse(HttpExchange, String)}, using the cached compressed
+	 * body if possible.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pResponse The cached response
+	 * @throws IOException
+	 */
+	protected void sendCachedResponse(HttpExchange pHE, CachedResponse pResponse) throws IOException {
+		if(isNotModified(pHE, pResponse.getETag())) {
+			sendNotModified(pHE, pResponse.getETag());
+		}
+		else {
+			log.info("Sending cached response");
+
+			// Only successful responses are cached
+			MetricsFilter.setStatus(pHE, AJAXServer.AJAX_SUCCESS);
+
+			byte[] body = pResponse.getBody();
+
+			// Set the content type of the request, clients must revalidate
+			// the response on every use
+			pHE.getResponseHeaders().add("Content-type", CONTENT_TYPE_JSON);
+			pHE.getResponseHeaders().add("ETag", pResponse.getETag());
+			pHE.getResponseHeaders().add("Cache-Control", "no-cache");
+			pHE.getResponseHeaders().add("Vary", "Accept-Encoding");
+
+			if(body.length >= GZIP_MIN_LENGTH && acceptsGzip(pHE)) {
+				pHE.getResponseHeaders().add("Content-Encoding", "gzip");
+
+				body = pResponse.getGzipBody();
+			}
+
+			writeResponseBody(pHE, body);
+		}
+	}
+
+
+	/**
+	 * Check the provided entity tag against the If-None-Match header of the
+	 * request
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pETag Entity tag of the current response including the quotes
+	 * @return true if the client has the current response, false otherwise
+	 */
+	protected boolean isNotModified(HttpExchange pHE, String pETag) {
+		List<String> headers = pHE.getRequestHeaders().get("If-None-Match");
+
+		if(headers != null) {
+			for(String header : headers) {
+				for(String tag : header.split(",")) {
+					tag = tag.trim();
+
+					// If-None-Match uses the weak comparison
+					if(tag.startsWith("W/")) {
+						tag = tag.substring(2);
+					}
+
+					if(tag.equals(pETag) || tag.equals("*")) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Send the status 304 (Not Modified) without body for the provided HTTP
+	 * exchange
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pETag Entity tag of the current response including the quotes
+	 * @throws IOException
+	 */
+	protected void sendNotModified(HttpExchange pHE, String pETag) throws IOException {
+		log.info("Sending response: not modified");
+
+		pHE.getResponseHeaders().add("ETag", pETag);
+		pHE.getResponseHeaders().add("Cache-Control", "no-cache");
+
+		pHE.sendResponseHeaders(304, -1);
+		MetricsFilter.complete(pHE);
+		pHE.close();
+	}
+
+
+	/**
+	 * Check if the client accepts gzip encoded responses. The Accept-Encoding
+	 * header is evaluated including quality values, "gzip;q=0" disables
+	 * compression.
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @return true if the response may be gzip encoded, false otherwise
+	 */
+	protected boolean acceptsGzip(HttpExchange pHE) {
+		List<String> headers = pHE.getRequestHeaders().get("Accept-Encoding");
+
+		if(headers != null) {
+			for(String header : headers) {
+				for(String coding : header.split(",")) {
+					String[] parts = coding.split(";");
+					String name = parts[0].trim();
+
+					if(name.equalsIgnoreCase("gzip") || name.equals("*")) {
+						float quality = 1.0f;
+
+						for(int i = 1; i < parts.length; i++) {
+							String param = parts[i].trim();
+
+							if(param.startsWith("q=")) {
+								try {
+									quality = Float.parseFloat(param.substring(2));
+								}
+								catch(NumberFormatException ex) {
+									quality = 0.0f;
+								}
+							}
+						}
+
+						return (quality > 0.0f);
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Send the response headers with the exact length of the provided body
+	 * and write the body
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pBody Encoded response body
+	 * @throws IOException
+	 */
+	private void writeResponseBody(HttpExchange pHE, byte[] pBody) throws IOException {
+		if(pBody.length > 0) {
+			pHE.sendResponseHeaders(200, pBody.length);
+
+			// Write the actual response to the HttpExchange object
+			OutputStream os = pHE.getResponseBody();
+			os.write(pBody);
+			os.close();
+		}
+		else {
+			// A length of -1 tells the HttpServer that no body is sent, the
+			// response stream is not used
+			pHE.sendResponseHeaders(200, -1);
+			MetricsFilter.complete(pHE);
+			pHE.close();
+		}
 	}
 }
@@ -57,7 +57,7 @@ public class DiscardModificationsHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
 		String response = null;
@@ -71,7 +71,7 @@ public class DiscardModificationsHandler extends DefaultHandler {
 
 				TEBackend.getModificationQueue(queryParameters.get("queueID").get()).discard();
 
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 
 				response = rv.toString();
 			}
@@ -80,7 +80,7 @@ public class DiscardModificationsHandler extends DefaultHandler {
 
 				try {
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 					response = rv.toString();
@@ -95,7 +95,7 @@ public class DiscardModificationsHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
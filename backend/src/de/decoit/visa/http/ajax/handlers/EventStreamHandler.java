@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.IOException;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.http.ajax.EventBroadcaster;
+import de.decoit.visa.http.ajax.SessionFilter;
+import de.decoit.visa.session.SessionRegistry;
+
+
+/**
+ * This HttpHandler implementation subscribes the client to the server-sent
+ * events stream of a topology session. The session is selected the same way
+ * as for all other requests, see {@link SessionFilter}. On success, the
+ * response is a 'text/event-stream' which stays open until the client
+ * disconnects. The handler does not bind the session, so an open stream does
+ * not block other requests.<br>
+ * <br>
+ * The following events are sent:<br>
+ * - topology (topology of the session was changed)<br>
+ * - ioJob (state of an IO-Tool job changed)<br>
+ * <br>
+ * If the subscription fails, a JSON object is returned instead. Possible
+ * return messages in that case are:<br>
+ * - ajaxGeneral (malformed session ID or events are not available)<br>
+ * - ajaxException (exception caught and no recovery attempt made)
+ *
+ * @author Thomas Rix
+ * @see AJAXServer
+ * @see EventBroadcaster
+ */
+public class EventStreamHandler extends DefaultHandler {
+	private static Logger log = Logger.getLogger(EventStreamHandler.class.getName());
+
+
+	@Override
+	public void handle(HttpExchange he) throws IOException {
+		log.info(he.getRequestURI().toString());
+
+		String sessionID = SessionFilter.getSessionID(he);
+		if(sessionID == null) {
+			sessionID = SessionRegistry.DEFAULT_SESSION;
+		}
+
+		EventBroadcaster broadcaster = TEBackend.EVENT_BROADCASTER;
+
+		if(broadcaster != null && SessionRegistry.isValidSessionID(sessionID)) {
+			try {
+				// The exchange is kept open by the broadcaster, no response
+				// is sent here
+				broadcaster.subscribe(he, sessionID);
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+
+				// Headers may already be sent, the connection cannot be
+				// used for an error response
+				he.close();
+			}
+		}
+		else {
+			JSONObject rv = new JSONObject();
+			try {
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
+				rv.put("message", (broadcaster == null) ? "Events are not available" : "Malformed session ID: " + sessionID);
+			}
+			catch(JSONException exc) {
+				/* Ignore */
+			}
+
+			sendResponse(he, rv.toString());
+		}
+	}
+}
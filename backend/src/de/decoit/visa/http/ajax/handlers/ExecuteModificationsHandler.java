@@ -72,10 +72,10 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -91,7 +91,7 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 					switch(mod.getTargetType()) {
 						case COMPONENT:
 							// Get the target object
-							NetworkComponent nc = TEBackend.TOPOLOGY_STORAGE.getComponent(mod.getTargetLocalName());
+							NetworkComponent nc = TEBackend.getTopologyStorage().getComponent(mod.getTargetLocalName());
 
 							if(mod.getTargetAttribute().equals(ModificationTargetAttribute.COMPONENT_NAME)) {
 								nc.setName(mod.getTargetAttributeValue());
@@ -102,7 +102,7 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 							break;
 						case INTERFACE:
 							// Get the target object
-							Interface iface = TEBackend.TOPOLOGY_STORAGE.getInterface(mod.getTargetLocalName());
+							Interface iface = TEBackend.getTopologyStorage().getInterface(mod.getTargetLocalName());
 
 							if(mod.getTargetAttribute().equals(ModificationTargetAttribute.INTERFACE_NETWORK)) {
 								List<IPConfig> ipList = iface.getNonLinkLocalIPConfig();
@@ -114,7 +114,7 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 								}
 
 								if(!mod.getTargetAttributeValue().equals("none")) {
-									IPNetwork network = TEBackend.TOPOLOGY_STORAGE.getNetwork(mod.getTargetAttributeValue());
+									IPNetwork network = TEBackend.getTopologyStorage().getNetwork(mod.getTargetAttributeValue());
 									IPAddress dummyAddr = network.getFreeIPAddress();
 
 									iface.configureIP(dummyAddr, network);
@@ -134,10 +134,10 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 					}
 				}
 
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
-				rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+				putTopology(he, rv);
 
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
@@ -145,28 +145,28 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 
@@ -175,13 +175,13 @@ public class ExecuteModificationsHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -59,22 +59,22 @@ public class ExportRDFHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
 			try {
 				Path outFile = TEBackend.getExportPath().resolve(queryParameters.get("file").get());
 
-				TEBackend.RDF_MANAGER.writeRDF(outFile);
+				TEBackend.getRDFManager().writeRDF(outFile);
 
 				JSONObject rv = new JSONObject();
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 				rv.put("file", outFile.toString());
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
@@ -82,29 +82,29 @@ public class ExportRDFHandler extends DefaultHandler {
 				// Exception was thrown during cable removal
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+					putTopology(he, rv);
 				}
 				catch(JSONException e) {
 					/* Ignore */
 				}
 
-				response = rv.toString();
+				response = rv;
 			}
 		}
 		else {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
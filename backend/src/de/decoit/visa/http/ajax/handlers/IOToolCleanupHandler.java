@@ -70,16 +70,16 @@ public class IOToolCleanupHandler extends DefaultHandler {
 
 			JSONObject rv = new JSONObject();
 			if(status == IOToolRequestStatus.SUCCESS) {
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 			}
 			else if(status == IOToolRequestStatus.WAIT) {
-				rv.put("status", AJAXServer.AJAX_IOTOOL_WAIT);
+				putStatus(he, rv, AJAXServer.AJAX_IOTOOL_WAIT);
 			}
 			else if(status == IOToolRequestStatus.IOTOOL_BUSY) {
-				rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 			}
 			else {
-				rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 			}
 
 			rv.put("returncode", TEBackend.getIOConnector().getLastReturnCode());
@@ -91,7 +91,7 @@ public class IOToolCleanupHandler extends DefaultHandler {
 
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 				rv.put("type", ex.getClass().getSimpleName());
 				rv.put("message", ex.getMessage());
 			}
@@ -55,7 +55,7 @@ public class IOToolConnectHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
 		String response = null;
@@ -68,13 +68,13 @@ public class IOToolConnectHandler extends DefaultHandler {
 				TEBackend.createIOConnector(queryParameters.get("host").get(), Integer.parseInt(queryParameters.get("port").get()));
 
 				JSONObject rv = new JSONObject();
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 				response = rv.toString();
 			}
 			catch(IOToolException iote) {
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 					response = rv.toString();
 				}
 				catch(JSONException exc) {
@@ -86,7 +86,7 @@ public class IOToolConnectHandler extends DefaultHandler {
 
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 				}
@@ -101,7 +101,7 @@ public class IOToolConnectHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
@@ -61,13 +61,13 @@ public class IOToolDisconnectHandler extends DefaultHandler {
 			TEBackend.closeIOConnector(false);
 
 			JSONObject rv = new JSONObject();
-			rv.put("status", AJAXServer.AJAX_SUCCESS);
+			putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 			response = rv.toString();
 		}
 		catch(IOToolException iote) {
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 				response = rv.toString();
 			}
 			catch(JSONException exc) {
@@ -79,7 +79,7 @@ public class IOToolDisconnectHandler extends DefaultHandler {
 
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 				rv.put("type", ex.getClass().getSimpleName());
 				rv.put("message", ex.getMessage());
 			}
@@ -61,7 +61,7 @@ public class IOToolDropTopologyHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
 		String response = null;
@@ -76,13 +76,13 @@ public class IOToolDropTopologyHandler extends DefaultHandler {
 
 				JSONObject rv = new JSONObject();
 				if(status == IOToolRequestStatus.SUCCESS) {
-					rv.put("status", AJAXServer.AJAX_SUCCESS);
+					putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 				}
 				else if(status == IOToolRequestStatus.IOTOOL_BUSY) {
-					rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 				}
 				else {
-					rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 				}
 
 				rv.put("returncode", TEBackend.getIOConnector().getLastReturnCode());
@@ -94,7 +94,7 @@ public class IOToolDropTopologyHandler extends DefaultHandler {
 
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 				}
@@ -109,7 +109,7 @@ public class IOToolDropTopologyHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
@@ -41,6 +41,10 @@ import de.decoit.visa.http.ajax.AJAXServer;
  * IO-Tool response (keys: returncode and message). The return code and message
  * keys will also be present in an 'ajaxGeneral' reply.<br>
  * <br>
+ * The optional parameter 'layout' selects the layout engine for the loaded
+ * topology (graphviz or java), the engine configured at the backend is used
+ * by default.<br>
+ * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail.<br>
  * <br>
@@ -63,10 +67,10 @@ public class IOToolLoadTopoHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -84,52 +88,52 @@ public class IOToolLoadTopoHandler extends DefaultHandler {
 					ByteArrayInputStream bais = new ByteArrayInputStream(data.get(queryParameters.get("id").get()).getBytes());
 
 					// Read that InputStream into the RDFManager
-					TEBackend.RDF_MANAGER.loadRDF(bais, true, queryParameters.get("id").get());
+					TEBackend.getRDFManager().loadRDF(bais, true, queryParameters.get("id").get(), getLayoutEngine(queryParameters));
 
-					TEBackend.TOPOLOGY_STORAGE.setTopologyID(queryParameters.get("id").get());
+					TEBackend.getTopologyStorage().setTopologyID(queryParameters.get("id").get());
 
-					rv.put("status", AJAXServer.AJAX_SUCCESS);
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+					putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+					putTopology(he, rv);
 				}
 				else if(status == IOToolRequestStatus.IOTOOL_BUSY) {
-					rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 				}
 				else {
-					rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 				}
 
 				rv.put("returncode", TEBackend.getIOConnector().getLastReturnCode());
 				rv.put("message", TEBackend.getIOConnector().getLastReturnMsg());
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
 
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+					putTopology(he, rv);
 				}
 				catch(JSONException exc) {
 					/* Ignore */
 				}
 
-				response = rv.toString();
+				response = rv;
 			}
 		}
 		else {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -154,6 +158,11 @@ public class IOToolLoadTopoHandler extends DefaultHandler {
 			rv = false;
 		}
 
+		// The layout key is optional but must name a known engine
+		if(rv && getLayoutEngine(pQueryString) == null) {
+			rv = false;
+		}
+
 		return rv;
 	}
 }
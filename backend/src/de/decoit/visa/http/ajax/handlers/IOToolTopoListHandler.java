@@ -28,6 +28,7 @@ import com.sun.net.httpserver.HttpExchange;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.enums.IOToolRequestStatus;
 import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
@@ -39,6 +40,10 @@ import de.decoit.visa.http.ajax.AJAXServer;
  * code and message of that response (keys: returncode and message). The return
  * code and message keys will also be present in an 'ajaxGeneral' reply.<br>
  * <br>
+ * Successful responses carry an entity tag calculated from the response. If
+ * the list did not change since the last request, requests with a matching
+ * If-None-Match header are answered with status 304 (Not Modified).<br>
+ * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail.<br>
  * <br>
@@ -61,6 +66,7 @@ public class IOToolTopoListHandler extends DefaultHandler {
 
 		// Create String for the response
 		String response = null;
+		boolean cacheable = false;
 
 		// Any exception thrown during object creation will
 		// cause failure of the AJAX request
@@ -70,7 +76,7 @@ public class IOToolTopoListHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 
 			if(status == IOToolRequestStatus.SUCCESS) {
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 
 				Map<String, String> data = TEBackend.getIOConnector().getLastReturnData();
 
@@ -81,12 +87,15 @@ public class IOToolTopoListHandler extends DefaultHandler {
 					}
 				}
 				rv.put("data", dataJSON);
+
+				// Unchanged topology lists are not sent again
+				cacheable = true;
 			}
 			else if(status == IOToolRequestStatus.IOTOOL_BUSY) {
-				rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 			}
 			else {
-				rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 			}
 
 			rv.put("returncode", TEBackend.getIOConnector().getLastReturnCode());
@@ -99,7 +108,7 @@ public class IOToolTopoListHandler extends DefaultHandler {
 
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 				rv.put("type", ex.getClass().getSimpleName());
 				rv.put("message", ex.getMessage());
 			}
@@ -111,6 +120,11 @@ public class IOToolTopoListHandler extends DefaultHandler {
 		}
 
 		// Send the response
-		sendResponse(he, response);
+		if(cacheable) {
+			sendCachedResponse(he, new CachedResponse(response.getBytes(JSONStreamWriter.UTF8)));
+		}
+		else {
+			sendResponse(he, response);
+		}
 	}
 }
@@ -64,10 +64,10 @@ public class IOToolWriteTopoHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -75,10 +75,10 @@ public class IOToolWriteTopoHandler extends DefaultHandler {
 			// cause failure of the AJAX request
 			try {
 				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				TEBackend.RDF_MANAGER.writeRDF(baos);
+				TEBackend.getRDFManager().writeRDF(baos);
 
 				// Execute the request to the IO-Tool
-				IOToolRequestStatus status = TEBackend.getIOConnector().writeTopology(queryParameters.get("id").get(), new String(baos.toByteArray()), TEBackend.RDF_MANAGER.getRootNodeName());
+				IOToolRequestStatus status = TEBackend.getIOConnector().writeTopology(queryParameters.get("id").get(), new String(baos.toByteArray()), TEBackend.getRDFManager().getRootNodeName());
 
 				JSONObject rv = new JSONObject();
 				if(status == IOToolRequestStatus.SUCCESS) {
@@ -97,34 +97,34 @@ public class IOToolWriteTopoHandler extends DefaultHandler {
 						ByteArrayInputStream bais = new ByteArrayInputStream(data.get(queryParameters.get("id").get()).getBytes());
 
 						// Read that InputStream into the RDFManager
-						TEBackend.RDF_MANAGER.loadRDF(bais, true, queryParameters.get("id").get());
+						TEBackend.getRDFManager().loadRDF(bais, true, queryParameters.get("id").get());
 
-						TEBackend.TOPOLOGY_STORAGE.setTopologyID(queryParameters.get("id").get());
+						TEBackend.getTopologyStorage().setTopologyID(queryParameters.get("id").get());
 
-						rv.put("status", AJAXServer.AJAX_SUCCESS);
+						putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 					}
 					else {
-						rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 					}
 				}
 				else if(status == IOToolRequestStatus.IOTOOL_BUSY) {
-					rv.put("status", AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_IOTOOL_BUSY);
 				}
 				else {
-					rv.put("status", AJAXServer.AJAX_ERROR_GENERAL);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_GENERAL);
 				}
 
-				rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+				putTopology(he, rv);
 				rv.put("returncode", TEBackend.getIOConnector().getLastReturnCode());
 				rv.put("message", TEBackend.getIOConnector().getLastReturnMsg());
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
 
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 				}
@@ -132,20 +132,20 @@ public class IOToolWriteTopoHandler extends DefaultHandler {
 					/* Ignore */
 				}
 
-				response = rv.toString();
+				response = rv;
 			}
 		}
 		else {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
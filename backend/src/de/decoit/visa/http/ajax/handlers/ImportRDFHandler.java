@@ -36,6 +36,10 @@ import de.decoit.visa.topology.VLAN;
  * RDF/XML file. The statements can either be integrated into the current model
  * or replace it.<br>
  * <br>
+ * The optional parameter 'layout' selects the layout engine for the imported
+ * components (graphviz or java), the engine configured at the backend is used
+ * by default.<br>
+ * <br>
  * On success, a JSON object will be returned containing the JSON object of the
  * current topology (key: topology).<br>
  * <br>
@@ -60,10 +64,10 @@ public class ImportRDFHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -74,10 +78,10 @@ public class ImportRDFHandler extends DefaultHandler {
 
 				if(replaceModel) {
 					VLAN.resetColorChooser();
-					TEBackend.TOPOLOGY_STORAGE.clear();
+					TEBackend.getTopologyStorage().clear();
 				}
 
-				TEBackend.RDF_MANAGER.loadRDF(inFile, replaceModel);
+				TEBackend.getRDFManager().loadRDF(inFile, replaceModel, getLayoutEngine(queryParameters));
 
 				if(log.isInfoEnabled()) {
 					StringBuilder sb = new StringBuilder("RDF/XML import of '");
@@ -87,9 +91,9 @@ public class ImportRDFHandler extends DefaultHandler {
 				}
 
 				JSONObject rv = new JSONObject();
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
-				rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-				response = rv.toString();
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+				putTopology(he, rv);
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
@@ -97,28 +101,28 @@ public class ImportRDFHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 		}
@@ -126,13 +130,13 @@ public class ImportRDFHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -162,6 +166,11 @@ public class ImportRDFHandler extends DefaultHandler {
 			rv = false;
 		}
 
+		// The layout key is optional but must name a known engine
+		if(rv && getLayoutEngine(pQueryString) == null) {
+			rv = false;
+		}
+
 		return rv;
 	}
 }
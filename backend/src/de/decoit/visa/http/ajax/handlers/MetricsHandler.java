@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.apache.log4j.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.QueryString;
+import de.decoit.visa.metrics.MetricsRegistry;
+
+
+/**
+ * This implementation of the HttpHandler returns the metrics of the backend in
+ * the text format of Prometheus. Unlike the other handlers the response is not
+ * a JSON object.<br>
+ * <br>
+ * If the request contains the parameter 'snapshot' with value 'true', a
+ * snapshot of the metrics is written to the file specified by the command
+ * line switch --metricsfile before the response is sent. The result of writing
+ * the snapshot is reported in a comment line at the start of the response.
+ *
+ * @author Thomas Rix
+ */
+public class MetricsHandler extends DefaultHandler {
+	private static Logger log = Logger.getLogger(MetricsHandler.class.getName());
+
+
+	@Override
+	public void handle(HttpExchange he) throws IOException {
+		if(log.isDebugEnabled()) {
+			log.debug(he.getRequestURI().toString());
+		}
+
+		QueryString queryParameters = new QueryString(he.getRequestURI());
+		StringBuilder sb = new StringBuilder();
+
+		if(queryParameters.containsKey("snapshot") && queryParameters.get("snapshot").get().equals("true")) {
+			Path metricsFile = TEBackend.getMetricsFile();
+
+			if(metricsFile != null) {
+				try {
+					TEBackend.METRICS.writeSnapshot(metricsFile);
+
+					sb.append("# Snapshot written to ");
+					sb.append(metricsFile.toString());
+					sb.append('\n');
+				}
+				catch(IOException ex) {
+					TEBackend.logException(ex, log);
+
+					sb.append("# Snapshot failed: ");
+					sb.append(ex.getClass().getSimpleName());
+					sb.append('\n');
+				}
+			}
+			else {
+				sb.append("# Snapshot failed: no metrics file specified\n");
+			}
+		}
+
+		sb.append(TEBackend.METRICS.toPrometheusText());
+
+		// Send the response
+		sendResponse(he, sb.toString(), MetricsRegistry.CONTENT_TYPE);
+	}
+}
@@ -64,10 +64,10 @@ public class ModifyVLANAssignmentHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -78,24 +78,24 @@ public class ModifyVLANAssignmentHandler extends DefaultHandler {
 				HashSet<VLAN> vlanSet = new HashSet<>();
 
 				// Get the interface which is being modified
-				Interface iface = TEBackend.TOPOLOGY_STORAGE.getInterface(queryParameters.get("ifID").get());
+				Interface iface = TEBackend.getTopologyStorage().getInterface(queryParameters.get("ifID").get());
 
 				if(queryParameters.containsKey("vlan")) {
 					// Get assigned VLAN IDs
 					List<String> vlanList = queryParameters.get("vlan").toList();
 
 					for(String vlanID : vlanList) {
-						vlanSet.add(TEBackend.TOPOLOGY_STORAGE.getVLAN(vlanID));
+						vlanSet.add(TEBackend.getTopologyStorage().getVLAN(vlanID));
 					}
 				}
 
 				// Set the VLAN assignment to the new VLAN list
 				iface.setVLAN(vlanSet);
 
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
-				rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+				putTopology(he, rv);
 
-				response = rv.toString();
+				response = rv;
 			}
 			catch(Throwable ex) {
 				TEBackend.logException(ex, log);
@@ -103,28 +103,28 @@ public class ModifyVLANAssignmentHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 
@@ -133,13 +133,13 @@ public class ModifyVLANAssignmentHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -62,7 +62,7 @@ public class QueuedModifyInterfaceIPHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
 		String response = null;
@@ -77,7 +77,7 @@ public class QueuedModifyInterfaceIPHandler extends DefaultHandler {
 				ModificationQueue mq = TEBackend.getModificationQueue(queryParameters.get("queueID").get());
 				mq.addModification(ModificationTarget.INTERFACE, queryParameters.get("ifID").get(), ModificationTargetAttribute.INTERFACE_NETWORK, queryParameters.get("net").get());
 
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 
 				response = rv.toString();
 			}
@@ -86,7 +86,7 @@ public class QueuedModifyInterfaceIPHandler extends DefaultHandler {
 
 				try {
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 					response = rv.toString();
@@ -101,7 +101,7 @@ public class QueuedModifyInterfaceIPHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
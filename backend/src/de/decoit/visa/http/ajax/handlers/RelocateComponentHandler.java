@@ -20,12 +20,16 @@
 package de.decoit.visa.http.ajax.handlers;
 
 import java.io.IOException;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.http.QueryString;
 import de.decoit.visa.http.ajax.AJAXServer;
@@ -40,6 +44,24 @@ import de.decoit.visa.topology.TopologyStorage.ComponentGroup;
  * On success, a JSON object will be returned containing the JSON object of the
  * relocated component (key: component) and the current topology (key: topology)<br>
  * <br>
+ * If the request contains the parameter 'compact' with value 'true', only a
+ * compact acknowledgement of the new position is returned: the object ID (key:
+ * oid) and the grid location (keys: glocX, glocY). This avoids serializing the
+ * whole topology for every relocation while a component is dragged.<br>
+ * <br>
+ * If the request contains the parameter 'validate' with value 'true', the
+ * relocation is refused if the dragbox of the object would cover other objects
+ * on the same grid. The response then contains the IDs of these objects (key:
+ * overlaps). The check uses the occupancy index of the topology storage.<br>
+ * <br>
+ * The new location of a component is written to the RDF model deferred, so a
+ * stream of relocations of the same component results in a single write with
+ * the last location (see
+ * {@link de.decoit.visa.rdf.RDFManager#updateLocationDeferred(NetworkComponent)
+ * RDFManager.updateLocationDeferred()}). Groups and group switches are
+ * relocated through the same deferred setters, their locations are not part
+ * of the RDF model and only the change is recorded.<br>
+ * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail. One attempt to recover the topology from the exception is
  * made. If that fails, the topology and RDF model will be cleared.<br>
@@ -47,6 +69,7 @@ import de.decoit.visa.topology.TopologyStorage.ComponentGroup;
  * Possible return messages of this handler are:<br>
  * - ajaxSuccess (success)<br>
  * - ajaxInvalid (invalid object type)<br>
+ * - ajaxOccupied (target area is occupied, only if validation was requested)<br>
  * - ajaxException (exception caught but recovered)<br>
  * - ajaxExceptionUnresolved (exception caught and recovery not possible)<br>
  * - ajaxMissing (missing arguments)
@@ -63,28 +86,42 @@ public class RelocateComponentHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create StringBuilder for the response
-		String response = null;
+		JSONObject response = null;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
+			boolean compact = queryParameters.containsKey("compact") && queryParameters.get("compact").get().equals("true");
+			boolean validate = queryParameters.containsKey("validate") && queryParameters.get("validate").get().equals("true");
+
 			// Any exception thrown during object relocation will cause
 			// failure of the AJAX request
 			try {
 				// Get the required object from topology storage
-				NetworkComponent nc = TEBackend.TOPOLOGY_STORAGE.getComponent(queryParameters.get("oid").get());
+				NetworkComponent nc = TEBackend.getTopologyStorage().getComponent(queryParameters.get("oid").get());
+				int glocX = Integer.parseInt(queryParameters.get("glocX").get());
+				int glocY = Integer.parseInt(queryParameters.get("glocY").get());
 
 				if(nc != null) {
-					nc.getConfig().setGridLocation(Integer.parseInt(queryParameters.get("glocX").get()), Integer.parseInt(queryParameters.get("glocY").get()));
+					response = checkOccupied(he, validate, nc.getConfig().getComponentGroup(), nc.getRDFLocalName(), glocX, glocY, nc.getConfig().getDragboxDimensions());
 
-					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_SUCCESS);
-					rv.put("component", nc.toJSON());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+					if(response == null) {
+						nc.getConfig().setGridLocationDeferred(glocX, glocY);
 
-					response = rv.toString();
+						JSONObject rv = new JSONObject();
+						putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+						if(compact) {
+							putLocation(rv, queryParameters.get("oid").get(), nc.getConfig().getGridLocation());
+						}
+						else {
+							rv.put("component", nc);
+							putTopology(he, rv);
+						}
+
+						response = rv;
+					}
 				}
 				else {
 					if(queryParameters.get("oid").get().startsWith("gSwitch_")) {
@@ -92,42 +129,59 @@ public class RelocateComponentHandler extends DefaultHandler {
 						Matcher m = p.matcher(queryParameters.get("oid").get());
 
 						if(m.matches()) {
-							ComponentGroup cg = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByID(m.group(1));
-							cg.getGroupSwitch(m.group(2)).setGridLocation(Integer.parseInt(queryParameters.get("glocX").get()), Integer.parseInt(queryParameters.get("glocY").get()));
+							ComponentGroup cg = TEBackend.getTopologyStorage().getComponentGroupByID(m.group(1));
+							response = checkOccupied(he, validate, cg.getName(), queryParameters.get("oid").get(), glocX, glocY, cg.getGroupSwitch(m.group(2)).getDragboxDimensions());
 
-							JSONObject rv = new JSONObject();
-							rv.put("status", AJAXServer.AJAX_SUCCESS);
-							rv.put("component", cg.getGroupSwitch(m.group(2)).toJSON());
-							rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+							if(response == null) {
+								cg.getGroupSwitch(m.group(2)).setGridLocationDeferred(glocX, glocY);
+
+								JSONObject rv = new JSONObject();
+								putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+								if(compact) {
+									putLocation(rv, queryParameters.get("oid").get(), cg.getGroupSwitch(m.group(2)).getGridLocation());
+								}
+								else {
+									rv.put("component", cg.getGroupSwitch(m.group(2)));
+									putTopology(he, rv);
+								}
 
-							response = rv.toString();
+								response = rv;
+							}
 						}
 						else {
 							log.debug("Regex did not match");
 							JSONObject rv = new JSONObject();
-							rv.put("status", AJAXServer.AJAX_ERROR_INVALID_OBJ);
-							response = rv.toString();
+							putStatus(he, rv, AJAXServer.AJAX_ERROR_INVALID_OBJ);
+							response = rv;
 						}
 					}
 					else {
 						String cgID = queryParameters.get("oid").get();
 
-						if(TEBackend.TOPOLOGY_STORAGE.hasComponentGroup(cgID)) {
-							ComponentGroup cg = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByID(cgID);
+						if(TEBackend.getTopologyStorage().hasComponentGroup(cgID)) {
+							ComponentGroup cg = TEBackend.getTopologyStorage().getComponentGroupByID(cgID);
+							response = checkOccupied(he, validate, "0.0.0.0", cgID, glocX, glocY, cg.getDragboxDimensions());
 
-							cg.setGridLocation(Integer.parseInt(queryParameters.get("glocX").get()), Integer.parseInt(queryParameters.get("glocY").get()));
+							if(response == null) {
+								cg.setGridLocationDeferred(glocX, glocY);
 
-							JSONObject rv = new JSONObject();
-							rv.put("status", AJAXServer.AJAX_SUCCESS);
-							rv.put("component", cg.toJSON());
-							rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+								JSONObject rv = new JSONObject();
+								putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+								if(compact) {
+									putLocation(rv, cgID, cg.getGridLocation());
+								}
+								else {
+									rv.put("component", cg);
+									putTopology(he, rv);
+								}
 
-							response = rv.toString();
+								response = rv;
+							}
 						}
 						else {
 							JSONObject rv = new JSONObject();
-							rv.put("status", AJAXServer.AJAX_ERROR_INVALID_OBJ);
-							response = rv.toString();
+							putStatus(he, rv, AJAXServer.AJAX_ERROR_INVALID_OBJ);
+							response = rv;
 						}
 					}
 				}
@@ -138,28 +192,28 @@ public class RelocateComponentHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 		}
@@ -167,13 +221,13 @@ public class RelocateComponentHandler extends DefaultHandler {
 			// Missing or malformed query string, set response to error code
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -181,6 +235,54 @@ public class RelocateComponentHandler extends DefaultHandler {
 	}
 
 
+	/**
+	 * Add the compact acknowledgement of a relocation to the response object
+	 *
+	 * @param pResponse JSON object of the response
+	 * @param pOID ID of the relocated object
+	 * @param pLocation New grid location of the object
+	 * @throws JSONException
+	 */
+	private void putLocation(JSONObject pResponse, String pOID, Position2D pLocation) throws JSONException {
+		pResponse.put("oid", pOID);
+		pResponse.put("glocX", pLocation.getX());
+		pResponse.put("glocY", pLocation.getY());
+	}
+
+
+	/**
+	 * Check if the target area of a relocation is occupied by other objects
+	 * on the same grid, if validation was requested
+	 *
+	 * @param pHE Object of the HTTP exchange
+	 * @param pValidate true if validation was requested
+	 * @param pGroupName Name of the group whose grid contains the object
+	 * @param pOID ID of the relocated object
+	 * @param pX New horizontal grid location
+	 * @param pY New vertical grid location
+	 * @param pDragbox Dimensions of the dragbox of the object
+	 * @return The response refusing the relocation, null if the relocation may
+	 *         be done
+	 * @throws JSONException
+	 */
+	private JSONObject checkOccupied(HttpExchange pHE, boolean pValidate, String pGroupName, String pOID, int pX, int pY, Dimension2D pDragbox) throws JSONException {
+		if(pValidate) {
+			TreeSet<String> overlaps = TEBackend.getTopologyStorage().getOverlappingObjects(pGroupName, new Position2D(pX, pY), pDragbox, pOID);
+
+			if(!overlaps.isEmpty()) {
+				JSONObject rv = new JSONObject();
+				putStatus(pHE, rv, AJAXServer.AJAX_ERROR_OCCUPIED);
+				rv.put("oid", pOID);
+				rv.put("overlaps", new JSONArray(overlaps));
+
+				return rv;
+			}
+		}
+
+		return null;
+	}
+
+
 	/**
 	 * Check if the provided QueryString object contains all keys required by
 	 * this handler and if their values are valid.
@@ -19,20 +19,32 @@
 
 package de.decoit.visa.http.ajax.handlers;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.http.ajax.MetricsFilter;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
- * This handler tells the {@link de.decoit.visa.topology.TopologyStorage} to generate a JSON object of
- * the current topology.<br>
+ * This handler tells the {@link de.decoit.visa.topology.TopologyStorage} to
+ * write a JSON object of the current topology.<br>
  * <br>
- * On success, the generated JSON object will be returned (key: topology).<br>
+ * On success, the generated JSON object will be returned (key: topology).
+ * The response carries an entity tag derived from the version of the
+ * topology, see
+ * {@link de.decoit.visa.rdf.RDFManager#getVersionTag() RDFManager.getVersionTag()}.
+ * Requests with a matching If-None-Match header are answered with status 304
+ * (Not Modified) without generating the topology. The serialized responses
+ * of the most recently requested topology versions are cached, so unchanged
+ * topologies are serialized only once.<br>
  * <br>
  * Any exception thrown during the processing of the request will cause the
  * request to fail. <br>
@@ -47,24 +59,90 @@ import de.decoit.visa.http.ajax.AJAXServer;
 public class RequestTopologyHandler extends DefaultHandler {
 	private static Logger log = Logger.getLogger(RequestTopologyHandler.class.getName());
 
+	// Number of cached responses, one per recently requested session is
+	// enough since older versions of a topology are never requested again
+	private static final int CACHE_SIZE = 8;
+
+	private LinkedHashMap<String, CachedResponse> cache;
+
+
+	/**
+	 * Construct a new handler with an empty response cache
+	 */
+	public RequestTopologyHandler() {
+		cache = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> pEldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+	}
+
 
 	@Override
 	public void handle(HttpExchange he) throws IOException {
 		log.info(he.getRequestURI().toString());
 
-		String response;
 		try {
-			JSONObject rv = new JSONObject();
-			rv.put("status", AJAXServer.AJAX_SUCCESS);
-			rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-			response = rv.toString();
+			StringBuilder sbETag = new StringBuilder("\"topology-");
+			sbETag.append(TEBackend.getRDFManager().getVersionTag());
+			sbETag.append('"');
+			String etag = sbETag.toString();
+
+			if(isNotModified(he, etag)) {
+				sendNotModified(he, etag);
+			}
+			else {
+				CachedResponse response;
+				synchronized(cache) {
+					response = cache.get(etag);
+				}
+
+				if(response == null) {
+					ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+					JSONStreamWriter writer = new JSONStreamWriter(buf);
+
+					writer.beginObject();
+					writer.key("status").value(AJAXServer.AJAX_SUCCESS);
+					writer.key("topology");
+					TEBackend.getTopologyStorage().writeJSON(writer);
+					writer.endObject();
+
+					writer.close();
+
+					response = new CachedResponse(etag, buf.toByteArray());
+					synchronized(cache) {
+						cache.put(etag, response);
+					}
+				}
+				else if(log.isDebugEnabled()) {
+					StringBuilder sb = new StringBuilder("Using cached topology: ");
+					sb.append(etag);
+					log.debug(sb.toString());
+				}
+
+				MetricsFilter.setStatus(he, AJAXServer.AJAX_SUCCESS);
+				sendCachedResponse(he, response);
+			}
 		}
 		catch(Throwable ex) {
 			TEBackend.logException(ex, log);
 
+			if(he.getResponseCode() != -1) {
+				// The response headers were already sent, the response
+				// cannot be replaced by an error message anymore
+				he.close();
+				return;
+			}
+
+			String response;
+
 			JSONObject rv = new JSONObject();
 			try {
-				rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 				rv.put("type", ex.getClass().getSimpleName());
 				rv.put("message", ex.getMessage());
 			}
@@ -73,9 +151,9 @@ public class RequestTopologyHandler extends DefaultHandler {
 			}
 
 			response = rv.toString();
-		}
 
-		// Send the response headers
-		sendResponse(he, response);
+			// Send the response headers
+			sendResponse(he, response);
+		}
 	}
 }
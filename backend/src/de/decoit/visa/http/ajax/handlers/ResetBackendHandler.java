@@ -61,9 +61,9 @@ public class ResetBackendHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
-		String response;
+		JSONObject response;
 
 		// Check if the query parameters are valid for this handler
 		if(this.checkQueryParameters(queryParameters)) {
@@ -74,43 +74,43 @@ public class ResetBackendHandler extends DefaultHandler {
 					case "clear":
 						TEBackend.clearBackend();
 
-						rv.put("status", AJAXServer.AJAX_SUCCESS);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-						response = rv.toString();
+						putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+						putTopology(he, rv);
+						response = rv;
 						break;
 					case "restore":
 						if(queryParameters.containsKey("state")) {
 							int state = Integer.parseInt(queryParameters.get("state").get());
 							TEBackend.restoreBackend(state);
 
-							rv.put("status", AJAXServer.AJAX_SUCCESS);
-							rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-							response = rv.toString();
+							putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+							putTopology(he, rv);
+							response = rv;
 						}
 						else {
 							try {
 								// Missing or malformed query string, set
 								// response to error code
-								rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+								putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 							}
 							catch(JSONException exc) {
 								/* Ignore */
 							}
 
-							response = rv.toString();
+							response = rv;
 						}
 						break;
 					default:
 						try {
 							// Missing or malformed query string, set response
 							// to error code
-							rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+							putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 						}
 						catch(JSONException exc) {
 							/* Ignore */
 						}
 
-						response = rv.toString();
+						response = rv;
 				}
 			}
 			catch(Throwable ex) {
@@ -119,28 +119,28 @@ public class ResetBackendHandler extends DefaultHandler {
 				try {
 					// Synchronize the topology with the RDF model to resolve
 					// any errors caused by the caught exception
-					TEBackend.RDF_MANAGER.syncTopologyToRDF();
+					TEBackend.getRDFManager().syncTopologyToRDF();
 
 					JSONObject rv = new JSONObject();
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
-					rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
-					response = rv.toString();
+					putTopology(he, rv);
+					response = rv;
 				}
 				catch(Throwable e) {
 					// Exception during synchronization, the model may have been
 					// corrupted so the whole backend was cleared
 					JSONObject rv = new JSONObject();
 					try {
-						rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
-						rv.put("topology", TEBackend.TOPOLOGY_STORAGE.genTopologyJSON());
+						putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION_UNRESOLVED);
+						putTopology(he, rv);
 					}
 					catch(JSONException exc) {
 						/* Ignore */
 					}
 
-					response = rv.toString();
+					response = rv;
 				}
 			}
 		}
@@ -149,13 +149,13 @@ public class ResetBackendHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
 			}
 
-			response = rv.toString();
+			response = rv;
 		}
 
 		// Send the response
@@ -49,7 +49,7 @@ public class ShutdownHandler extends DefaultHandler {
 		// Tell the frontend what is happening
 		JSONObject rv = new JSONObject();
 		try {
-			rv.put("status", AJAXServer.AJAX_SHUTDOWN);
+			putStatus(he, rv, AJAXServer.AJAX_SHUTDOWN);
 		}
 		catch(JSONException ex) {
 			/* Ignore */
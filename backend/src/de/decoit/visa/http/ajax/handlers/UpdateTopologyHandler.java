@@ -53,7 +53,7 @@ public class UpdateTopologyHandler extends DefaultHandler {
 		log.info(he.getRequestURI().toString());
 
 		// Get the URI of the request and extract the query string from it
-		QueryString queryParameters = new QueryString(he.getRequestURI());
+		QueryString queryParameters = new QueryString(he);
 
 		// Create String for the response
 		String response = null;
@@ -63,10 +63,10 @@ public class UpdateTopologyHandler extends DefaultHandler {
 			// Any exception thrown during object creation will
 			// cause failure of the AJAX request
 			try {
-				TEBackend.TOPOLOGY_STORAGE.setTopologyName(queryParameters.get("name").get());
+				TEBackend.getTopologyStorage().setTopologyName(queryParameters.get("name").get());
 
 				JSONObject rv = new JSONObject();
-				rv.put("status", AJAXServer.AJAX_SUCCESS);
+				putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
 				response = rv.toString();
 			}
 			catch(Throwable ex) {
@@ -74,7 +74,7 @@ public class UpdateTopologyHandler extends DefaultHandler {
 
 				JSONObject rv = new JSONObject();
 				try {
-					rv.put("status", AJAXServer.AJAX_ERROR_EXCEPTION);
+					putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
 					rv.put("type", ex.getClass().getSimpleName());
 					rv.put("message", ex.getMessage());
 				}
@@ -89,7 +89,7 @@ public class UpdateTopologyHandler extends DefaultHandler {
 			JSONObject rv = new JSONObject();
 			try {
 				// Missing or malformed query string, set response to error code
-				rv.put("status", AJAXServer.AJAX_ERROR_MISSING_ARGS);
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_MISSING_ARGS);
 			}
 			catch(JSONException exc) {
 				/* Ignore */
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.http.ajax.handlers;
+
+import java.io.IOException;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.http.ajax.AJAXServer;
+import de.decoit.visa.json.JSONStreamWriter;
+
+
+/**
+ * This HttpHandler implementation handles requests for the list of available
+ * VSA templates.<br>
+ * <br>
+ * On success, a JSON object will be returned containing the JSON object of
+ * the VSA templates (key: vsatemplates), which is also returned by
+ * /ajax/configure. The response carries an entity tag calculated from the
+ * template set. Requests with a matching If-None-Match header are answered
+ * with status 304 (Not Modified).<br>
+ * <br>
+ * Any exception thrown during the processing of the request will cause the
+ * request to fail.<br>
+ * <br>
+ * Possible return messages of this handler are:<br>
+ * - ajaxSuccess (success)<br>
+ * - ajaxException (exception caught and no recovery attempt made)<br>
+ *
+ * @author Thomas Rix
+ * @see AJAXServer
+ * @see DefaultHandler
+ */
+public class VSATemplatesHandler extends DefaultHandler {
+	private static Logger log = Logger.getLogger(VSATemplatesHandler.class.getName());
+
+
+	@Override
+	public void handle(HttpExchange he) throws IOException {
+		log.info(he.getRequestURI().toString());
+
+		// Create String for the response
+		String response = null;
+		boolean cacheable = false;
+
+		try {
+			JSONObject rv = new JSONObject();
+			putStatus(he, rv, AJAXServer.AJAX_SUCCESS);
+			rv.put("vsatemplates", TEBackend.getRDFManager().vsaTemplatesToJSON());
+			response = rv.toString();
+
+			cacheable = true;
+		}
+		catch(Throwable ex) {
+			TEBackend.logException(ex, log);
+
+			JSONObject rv = new JSONObject();
+			try {
+				putStatus(he, rv, AJAXServer.AJAX_ERROR_EXCEPTION);
+				rv.put("type", ex.getClass().getSimpleName());
+				rv.put("message", ex.getMessage());
+			}
+			catch(JSONException exc) {
+				/* Ignore */
+			}
+
+			response = rv.toString();
+		}
+
+		// Send the response
+		if(cacheable) {
+			sendCachedResponse(he, new CachedResponse(response.getBytes(JSONStreamWriter.UTF8)));
+		}
+		else {
+			sendResponse(he, response);
+		}
+	}
+}
@@ -19,24 +19,28 @@
 
 package de.decoit.visa.interfaces;
 
+import java.io.IOException;
 import org.json.JSONException;
-import org.json.JSONObject;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
  * This interface forces the implementing classes to provide a method which
- * returns a JSONObject representation of their stored information. Which
- * information is included in the JSON object and how it is structured is
- * defined by the classes implementing this interface.
+ * writes a JSON representation of their stored information to a
+ * {@link JSONStreamWriter}. Which information is included in the JSON object
+ * and how it is structured is defined by the classes implementing this
+ * interface.
  *
  * @author Thomas Rix
  */
 public interface IJSON {
 	/**
-	 * Return a JSONObject representation of the data stored in this object.
+	 * Write a JSON representation of the data stored in this object to the
+	 * provided stream writer. No intermediate JSONObject tree is created.
 	 *
-	 * @return JSONObject representation of the data stored in this object
-	 * @throws JSONException if appending information to the JSONObject failed
+	 * @param pWriter The writer to write the JSON data to
+	 * @throws IOException if writing to the underlying stream failed
+	 * @throws JSONException if generating the JSON data failed
 	 */
-	public JSONObject toJSON() throws JSONException;
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException;
 }
@@ -32,11 +32,13 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.enums.IOToolRequestStatus;
+import de.decoit.visa.http.ajax.EventBroadcaster;
 import de.decoit.visa.protocol.Commands;
 import de.decoit.visa.protocol.Request;
 import de.decoit.visa.protocol.Response;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
+import org.json.JSONObject;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.introspector.BeanAccess;
 
@@ -44,7 +46,12 @@ import org.yaml.snakeyaml.introspector.BeanAccess;
 /**
  * This class is used to connect to an instance of the IO-Tool at the given
  * location. It provides utility methods to issue commands to the IO-Tool and
- * read the received data, return codes and messages.
+ * read the received data, return codes and messages.<br>
+ * <br>
+ * The IO-Tool handlers run on different executors (IO-Tool, long running and
+ * the standard request pool), so all requests and result getters synchronize
+ * on the connector. A request issued while another one is still running or
+ * waiting for the IO-Tool returns IOTOOL_BUSY.
  *
  * @author Thomas Rix
  */
@@ -96,7 +103,7 @@ public class IOConnector {
 	 * @return The return value of the last Response, -1 or -2 in the described
 	 *         cases
 	 */
-	public int getLastReturnCode() {
+	public synchronized int getLastReturnCode() {
 		return lastReturnCode;
 	}
 
@@ -107,7 +114,7 @@ public class IOConnector {
 	 *
 	 * @return The message of the last Response
 	 */
-	public String getLastReturnMsg() {
+	public synchronized String getLastReturnMsg() {
 		return lastReturnMsg;
 	}
 
@@ -118,7 +125,7 @@ public class IOConnector {
 	 *
 	 * @return The data map of the last Response
 	 */
-	public Map<String, String> getLastReturnData() {
+	public synchronized Map<String, String> getLastReturnData() {
 		return lastReturnData;
 	}
 
@@ -133,7 +140,7 @@ public class IOConnector {
 	 * @return The return value of the last Response, -1 or -2 in the described
 	 *         cases
 	 */
-	public int getLastWaitReturnCode() {
+	public synchronized int getLastWaitReturnCode() {
 		return lastWaitReturnCode;
 	}
 
@@ -145,7 +152,7 @@ public class IOConnector {
 	 *
 	 * @return The message of the last Response
 	 */
-	public String getLastWaitReturnMsg() {
+	public synchronized String getLastWaitReturnMsg() {
 		return lastWaitReturnMsg;
 	}
 
@@ -157,7 +164,7 @@ public class IOConnector {
 	 *
 	 * @return The data map of the last Response
 	 */
-	public Map<String, String> getLastWaitReturnData() {
+	public synchronized Map<String, String> getLastWaitReturnData() {
 		return lastWaitReturnData;
 	}
 
@@ -175,7 +182,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus requestTopologyList() throws IOException {
+	public synchronized IOToolRequestStatus requestTopologyList() throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.GET_TOPOLOGY_LIST;
 
@@ -204,7 +211,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus requestTopology(String pTopoID) throws IOException {
+	public synchronized IOToolRequestStatus requestTopology(String pTopoID) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.GET_TOPOLOGY;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -243,7 +250,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus writeTopology(String pTopoID, String pXML, String pDesc) throws IOException {
+	public synchronized IOToolRequestStatus writeTopology(String pTopoID, String pXML, String pDesc) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.WRITE_TOPOLOGY;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -279,7 +286,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus dropTopology(String pTopoID) throws IOException {
+	public synchronized IOToolRequestStatus dropTopology(String pTopoID) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.DROP_TOPOLOGY;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -313,7 +320,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus collectTopology(String pTopoID) throws IOException {
+	public synchronized IOToolRequestStatus collectTopology(String pTopoID) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.COLLECT;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -347,7 +354,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus replicateTopology(String pTopoID) throws IOException {
+	public synchronized IOToolRequestStatus replicateTopology(String pTopoID) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.REPLICATE;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -379,7 +386,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus cleanUpIOTool() throws IOException {
+	public synchronized IOToolRequestStatus cleanUpIOTool() throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.CLEANUP;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -412,7 +419,7 @@ public class IOConnector {
 	 * @throws IOException if writing to or reading from the socket fails
 	 * @see de.decoit.visa.enums.IOToolRequestStatus
 	 */
-	public IOToolRequestStatus resetIOTool() throws IOException {
+	public synchronized IOToolRequestStatus resetIOTool() throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			Commands c = Commands.RESET;
 			Map<String, String> args = Commands.getEmptyArgumentMap(c);
@@ -439,7 +446,7 @@ public class IOConnector {
 	 * @throws IOToolException if the IO-Tool is busy and no force close is
 	 *             required
 	 */
-	public void disconnect(boolean pForce) throws IOException, IOToolException {
+	public synchronized void disconnect(boolean pForce) throws IOException, IOToolException {
 		if(connThread != null) {
 			connThread.close(pForce);
 			connThread = null;
@@ -454,7 +461,7 @@ public class IOConnector {
 	 * @param pReq The Request object which will be sent
 	 * @throws IOException if reading or writing to the socket fails
 	 */
-	private IOToolRequestStatus doDataExchange(Request pReq) throws IOException {
+	private synchronized IOToolRequestStatus doDataExchange(Request pReq) throws IOException {
 		if(connThread == null || !connThread.isAlive()) {
 			// Check a waiting thread finished before this call
 			if(connThread != null) {
@@ -526,6 +533,8 @@ public class IOConnector {
 				lastReturnMsg = "";
 				lastReturnData = null;
 
+				publishJobState(pReq.getCommand(), "waiting", null);
+
 				return IOToolRequestStatus.WAIT;
 			}
 		}
@@ -535,6 +544,35 @@ public class IOConnector {
 	}
 
 
+	/**
+	 * Send an event about the state of an IO-Tool job to all subscribers of
+	 * the server-sent events stream
+	 *
+	 * @param pCommand Command of the job
+	 * @param pState State of the job: waiting, finished or failed
+	 * @param pRes Final response of the IO-Tool, may be null
+	 */
+	private static void publishJobState(Commands pCommand, String pState, Response pRes) {
+		if(TEBackend.EVENT_BROADCASTER != null) {
+			try {
+				JSONObject data = new JSONObject();
+				data.put("command", pCommand.toString());
+				data.put("state", pState);
+
+				if(pRes != null) {
+					data.put("returncode", pRes.getReturnCode());
+					data.put("message", pRes.getMessage());
+				}
+
+				TEBackend.EVENT_BROADCASTER.publish(null, EventBroadcaster.EVENT_IOTOOL_JOB, data);
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+			}
+		}
+	}
+
+
 	/**
 	 * This class creates a SSL secured connection to the IO-Tool at the
 	 * specified location. It is implemented as a subclass of Thread. This
@@ -566,6 +604,8 @@ public class IOConnector {
 		private Response res;
 		private Response waitRes;
 		private Thread callbackThread;
+		private Commands command;
+		private boolean waiting;
 
 
 		/**
@@ -583,6 +623,8 @@ public class IOConnector {
 			yaml.setBeanAccess(BeanAccess.FIELD);
 			req = pReq;
 			callbackThread = pCallbackThread;
+			command = pReq.getCommand();
+			waiting = false;
 
 			res = null;
 			waitRes = null;
@@ -604,10 +646,12 @@ public class IOConnector {
 					req = null;
 
 					// Write the serialized object to the socket
+					long reqStart = System.nanoTime();
 					writeLine(reqYaml, true);
 
 					// Read the response from the socket
 					String resYaml = readLine();
+					TEBackend.METRICS.observeIOToolRoundTrip(command.toString(), System.nanoTime() - reqStart);
 
 					// Parse an object from the received YAML code
 					Object resObj = yaml.load(resYaml);
@@ -621,11 +665,13 @@ public class IOConnector {
 						if(res.getReturnCode() == 254) {
 							// Wake up the calling thread, this tells it that we
 							// have to wait for completion
+							waiting = true;
 							callbackThread.interrupt();
 
 							// Wait to receive the final message from the
 							// IO-Tool
 							resYaml = readLine();
+							TEBackend.METRICS.observeIOToolJob(command.toString(), System.nanoTime() - reqStart);
 
 							// Parse the final message
 							resObj = yaml.load(resYaml);
@@ -638,6 +684,9 @@ public class IOConnector {
 								// No valid response object received
 								waitRes = null;
 							}
+
+							// Notify the frontend that the job has finished
+							publishJobState(command, (waitRes != null) ? "finished" : "failed", waitRes);
 						}
 					}
 					else {
@@ -649,11 +698,19 @@ public class IOConnector {
 					// The socket was closed while writing to or reading from it
 					res = null;
 					TEBackend.logException(se, threadLog);
+
+					if(waiting) {
+						publishJobState(command, "failed", null);
+					}
 				}
 				catch(IOException ioe) {
 					// Writing or reading the socket failed
 					res = null;
 					TEBackend.logException(ioe, threadLog);
+
+					if(waiting) {
+						publishJobState(command, "failed", null);
+					}
 				}
 			}
 			else {
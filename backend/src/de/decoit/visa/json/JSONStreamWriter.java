@@ -0,0 +1,416 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import de.decoit.visa.interfaces.IJSON;
+
+
+/**
+ * This class writes JSON encoded data directly to an output stream without
+ * building a JSONObject tree first. Objects and arrays are opened and closed
+ * by calling the matching begin and end methods, object members are added by
+ * calling key() followed by one of the value() methods. All output is encoded
+ * as UTF-8.<br>
+ * <br>
+ * Objects implementing {@link IJSON} can be written by calling
+ * {@link #value(IJSON)}, which will call their writeJSON() method.
+ *
+ * @author Thomas Rix
+ */
+public class JSONStreamWriter implements Closeable, Flushable {
+	/**
+	 * Charset used for all output written by this class
+	 */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_OBJECT = 2;
+	private static final int NONEMPTY_OBJECT = 3;
+	private static final int DANGLING_KEY = 4;
+	private static final int EMPTY_ARRAY = 5;
+	private static final int NONEMPTY_ARRAY = 6;
+
+	private Writer out;
+	private int[] scopes;
+	private int depth;
+
+
+	/**
+	 * Construct a new writer which writes UTF-8 encoded output to the provided
+	 * stream. The stream will be buffered internally.
+	 *
+	 * @param pOut Target stream, cannot be null
+	 */
+	public JSONStreamWriter(OutputStream pOut) {
+		if(pOut != null) {
+			out = new BufferedWriter(new OutputStreamWriter(pOut, UTF8));
+			scopes = new int[16];
+			scopes[0] = EMPTY_DOCUMENT;
+			depth = 1;
+		}
+		else {
+			throw new NullPointerException("NULL pointer for output stream provided");
+		}
+	}
+
+
+	/**
+	 * Open a new JSON object
+	 *
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter beginObject() throws IOException {
+		beforeValue();
+		push(EMPTY_OBJECT);
+		out.write('{');
+
+		return this;
+	}
+
+
+	/**
+	 * Close the current JSON object
+	 *
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter endObject() throws IOException {
+		int scope = scopes[depth - 1];
+		if(scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+			depth--;
+			out.write('}');
+		}
+		else {
+			throw new IllegalStateException("No open object to close");
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Open a new JSON array
+	 *
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter beginArray() throws IOException {
+		beforeValue();
+		push(EMPTY_ARRAY);
+		out.write('[');
+
+		return this;
+	}
+
+
+	/**
+	 * Close the current JSON array
+	 *
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter endArray() throws IOException {
+		int scope = scopes[depth - 1];
+		if(scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY) {
+			depth--;
+			out.write(']');
+		}
+		else {
+			throw new IllegalStateException("No open array to close");
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Write the key of the next member of the current object. It must be
+	 * followed by exactly one value.
+	 *
+	 * @param pKey Member key, cannot be null
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter key(String pKey) throws IOException {
+		if(pKey != null) {
+			int scope = scopes[depth - 1];
+			if(scope == NONEMPTY_OBJECT) {
+				out.write(',');
+			}
+			else if(scope != EMPTY_OBJECT) {
+				throw new IllegalStateException("Key not allowed outside of an object");
+			}
+
+			JSONObject.quote(pKey, out);
+			out.write(':');
+			scopes[depth - 1] = DANGLING_KEY;
+
+			return this;
+		}
+		else {
+			throw new NullPointerException("NULL pointer for key provided");
+		}
+	}
+
+
+	/**
+	 * Write a string value. A null value will be written as JSON null.
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter value(String pValue) throws IOException {
+		if(pValue == null) {
+			return nullValue();
+		}
+
+		beforeValue();
+		JSONObject.quote(pValue, out);
+
+		return this;
+	}
+
+
+	/**
+	 * Write an integer value
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter value(long pValue) throws IOException {
+		beforeValue();
+		out.write(Long.toString(pValue));
+
+		return this;
+	}
+
+
+	/**
+	 * Write a boolean value
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter value(boolean pValue) throws IOException {
+		beforeValue();
+		out.write(pValue ? "true" : "false");
+
+		return this;
+	}
+
+
+	/**
+	 * Write an object implementing the IJSON interface by calling its
+	 * writeJSON() method. A null value will be written as JSON null.
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 * @throws JSONException if the object failed to generate its JSON data
+	 */
+	public JSONStreamWriter value(IJSON pValue) throws IOException, JSONException {
+		if(pValue == null) {
+			return nullValue();
+		}
+
+		pValue.writeJSON(this);
+
+		return this;
+	}
+
+
+	/**
+	 * Write an already existing JSONObject. This is meant for small objects
+	 * which are only available as a JSONObject tree.
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 * @throws JSONException if the JSONObject could not be serialized
+	 */
+	public JSONStreamWriter value(JSONObject pValue) throws IOException, JSONException {
+		if(pValue == null) {
+			return nullValue();
+		}
+
+		beforeValue();
+		pValue.write(out);
+
+		return this;
+	}
+
+
+	/**
+	 * Write an already existing JSONArray. This is meant for small arrays
+	 * which are only available as a JSONArray.
+	 *
+	 * @param pValue The value
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 * @throws JSONException if the JSONArray could not be serialized
+	 */
+	public JSONStreamWriter value(JSONArray pValue) throws IOException, JSONException {
+		if(pValue == null) {
+			return nullValue();
+		}
+
+		beforeValue();
+		pValue.write(out);
+
+		return this;
+	}
+
+
+	/**
+	 * Write a value stored in a JSONObject or JSONArray. Objects implementing
+	 * {@link IJSON} are written by calling their writeJSON() method, all other
+	 * values are written like the JSONObject would write them.
+	 *
+	 * @param pValue The value, null and JSONObject.NULL are written as null
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 * @throws JSONException if the value could not be serialized
+	 */
+	public JSONStreamWriter value(Object pValue) throws IOException, JSONException {
+		if(pValue == null || pValue == JSONObject.NULL) {
+			return nullValue();
+		}
+		else if(pValue instanceof IJSON) {
+			return value((IJSON) pValue);
+		}
+		else if(pValue instanceof JSONObject) {
+			return value((JSONObject) pValue);
+		}
+		else if(pValue instanceof JSONArray) {
+			return value((JSONArray) pValue);
+		}
+		else if(pValue instanceof String) {
+			return value((String) pValue);
+		}
+		else if(pValue instanceof Boolean) {
+			return value(((Boolean) pValue).booleanValue());
+		}
+		else if(pValue instanceof Number) {
+			beforeValue();
+			out.write(JSONObject.numberToString((Number) pValue));
+
+			return this;
+		}
+		else {
+			return value(pValue.toString());
+		}
+	}
+
+
+	/**
+	 * Write a JSON null value
+	 *
+	 * @return This writer
+	 * @throws IOException if writing to the stream failed
+	 */
+	public JSONStreamWriter nullValue() throws IOException {
+		beforeValue();
+		out.write("null");
+
+		return this;
+	}
+
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+
+	/**
+	 * Flush and close the writer and the underlying stream. All opened objects
+	 * and arrays must have been closed before.
+	 *
+	 * @throws IOException if closing the stream failed
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+
+		if(depth > 1 || scopes[0] != NONEMPTY_DOCUMENT) {
+			throw new IllegalStateException("Incomplete JSON document written");
+		}
+	}
+
+
+	/**
+	 * Update the state of the current scope before a value is written. Inside
+	 * arrays a separator is written if necessary.
+	 *
+	 * @throws IOException if writing to the stream failed
+	 */
+	private void beforeValue() throws IOException {
+		switch(scopes[depth - 1]) {
+			case EMPTY_DOCUMENT:
+				scopes[depth - 1] = NONEMPTY_DOCUMENT;
+				break;
+			case EMPTY_ARRAY:
+				scopes[depth - 1] = NONEMPTY_ARRAY;
+				break;
+			case NONEMPTY_ARRAY:
+				out.write(',');
+				break;
+			case DANGLING_KEY:
+				scopes[depth - 1] = NONEMPTY_OBJECT;
+				break;
+			case NONEMPTY_DOCUMENT:
+				throw new IllegalStateException("JSON document must have only one top-level value");
+			default:
+				throw new IllegalStateException("Value inside an object requires a key");
+		}
+	}
+
+
+	/**
+	 * Push a new scope onto the scope stack
+	 *
+	 * @param pScope The new scope
+	 */
+	private void push(int pScope) {
+		if(depth == scopes.length) {
+			scopes = Arrays.copyOf(scopes, depth * 2);
+		}
+
+		scopes[depth] = pScope;
+		depth++;
+	}
+}
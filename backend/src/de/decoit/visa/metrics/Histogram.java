@@ -0,0 +1,112 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * This class counts observed values in buckets with fixed upper bounds, like
+ * the histogram metric type of Prometheus. Values are stored as long values,
+ * they are converted into the base unit of the metric when they are
+ * written. All methods are thread safe and do not
+ * block.
+ *
+ * @author Thomas Rix
+ */
+class Histogram {
+	private long[] bounds;
+	private AtomicLongArray buckets;
+	private AtomicLong sum;
+
+
+	/**
+	 * Construct a new empty histogram with the provided bucket bounds
+	 *
+	 * @param pBounds Inclusive upper bounds of the buckets in ascending
+	 *            order, an additional bucket for larger values is created
+	 */
+	Histogram(long[] pBounds) {
+		bounds = pBounds;
+		buckets = new AtomicLongArray(pBounds.length + 1);
+		sum = new AtomicLong(0);
+	}
+
+
+	/**
+	 * Add an observed value to this histogram
+	 *
+	 * @param pValue The observed value
+	 */
+	void observe(long pValue) {
+		int i = 0;
+		while(i < bounds.length && pValue > bounds[i]) {
+			i++;
+		}
+
+		buckets.incrementAndGet(i);
+		sum.addAndGet(pValue);
+	}
+
+
+	/**
+	 * Append the lines of this histogram in Prometheus text format to the
+	 * provided StringBuilder. Bucket counts are cumulative, the count of the
+	 * last bucket is the total number of observations.
+	 *
+	 * @param pSB The StringBuilder
+	 * @param pName Name of the metric
+	 * @param pLabels Labels of this histogram without braces, may be empty
+	 * @param pDivisor Divisor converting the stored values into the base unit
+	 */
+	void write(StringBuilder pSB, String pName, String pLabels, double pDivisor) {
+		long cumulative = 0;
+
+		for(int i = 0; i <= bounds.length; i++) {
+			cumulative += buckets.get(i);
+
+			pSB.append(pName);
+			pSB.append("_bucket{");
+			if(!pLabels.isEmpty()) {
+				pSB.append(pLabels);
+				pSB.append(',');
+			}
+			pSB.append("le=\"");
+			if(i < bounds.length) {
+				pSB.append(bounds[i] / pDivisor);
+			}
+			else {
+				pSB.append("+Inf");
+			}
+			pSB.append("\"} ");
+			pSB.append(cumulative);
+			pSB.append('\n');
+		}
+
+		MetricsRegistry.appendSeries(pSB, pName + "_sum", pLabels);
+		pSB.append(sum.get() / pDivisor);
+		pSB.append('\n');
+
+		MetricsRegistry.appendSeries(pSB, pName + "_count", pLabels);
+		pSB.append(cumulative);
+		pSB.append('\n');
+	}
+}
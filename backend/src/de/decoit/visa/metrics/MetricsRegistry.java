@@ -0,0 +1,456 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import de.decoit.visa.json.JSONStreamWriter;
+
+
+/**
+ * This class collects the metrics of the backend. It records the latency,
+ * request and response sizes and errors of the AJAX requests per context, the
+ * duration of RDF transactions, layouts, cable routing, graphviz runs and
+ * IO-Tool requests. The metrics can be written in the text format of
+ * Prometheus, either as a string or as a snapshot file.<br>
+ * <br>
+ * All methods are thread safe. Recording a value does not block, so the
+ * methods may be called on every request.
+ *
+ * @author Thomas Rix
+ */
+public class MetricsRegistry {
+	/**
+	 * Content type of the Prometheus text format
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	// Bucket bounds for durations in nanoseconds, 1 ms to 60 s
+	private static final long[] DURATION_BUCKETS = { 1000000L, 5000000L, 10000000L, 25000000L, 50000000L, 100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L, 5000000000L, 10000000000L, 30000000000L, 60000000000L };
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+
+	// Bucket bounds for sizes in bytes, 256 B to 16 MiB
+	private static final long[] SIZE_BUCKETS = { 256L, 1024L, 4096L, 16384L, 65536L, 262144L, 1048576L, 4194304L, 16777216L };
+
+	private Family requestDuration;
+	private Family requestSize;
+	private Family responseSize;
+	private Family requests;
+	private Family requestErrors;
+	private Family transactionDuration;
+	private Family graphvizDuration;
+	private Family graphvizFailures;
+	private Family layoutDuration;
+	private Family layoutsSkipped;
+	private Family layoutFallbacks;
+	private Family cableRoutingDuration;
+	private Family cablesRouted;
+	private Family ioToolRoundTrip;
+	private Family ioToolJobDuration;
+	private LinkedHashMap<String, Family> families;
+	private long startTime;
+
+
+	/**
+	 * Construct a new registry without recorded values
+	 */
+	public MetricsRegistry() {
+		families = new LinkedHashMap<>();
+		startTime = System.currentTimeMillis();
+
+		requestDuration = addFamily("visa_http_request_duration_seconds", "Latency of AJAX requests from receipt until the response is complete", DURATION_BUCKETS, NANOS_PER_SECOND);
+		requestSize = addFamily("visa_http_request_size_bytes", "Size of the AJAX request bodies", SIZE_BUCKETS, 1.0);
+		responseSize = addFamily("visa_http_response_size_bytes", "Size of the AJAX response bodies as sent, after compression", SIZE_BUCKETS, 1.0);
+		requests = addFamily("visa_http_requests_total", "Number of AJAX requests by response status", null, 1.0);
+		requestErrors = addFamily("visa_http_request_errors_total", "Number of failed AJAX requests", null, 1.0);
+		transactionDuration = addFamily("visa_rdf_transaction_duration_seconds", "Duration of RDF transactions by outcome", DURATION_BUCKETS, NANOS_PER_SECOND);
+		graphvizDuration = addFamily("visa_graphviz_duration_seconds", "Run time of the graphviz executables", DURATION_BUCKETS, NANOS_PER_SECOND);
+		graphvizFailures = addFamily("visa_graphviz_failures_total", "Number of failed graphviz runs", null, 1.0);
+		layoutDuration = addFamily("visa_layout_duration_seconds", "Duration of topology layouts by layout engine", DURATION_BUCKETS, NANOS_PER_SECOND);
+		layoutsSkipped = addFamily("visa_layouts_skipped_total", "Number of layouts which did not call the layout engine by reason", null, 1.0);
+		layoutFallbacks = addFamily("visa_layout_fallbacks_total", "Number of layouts calculated by the fallback engine by requested engine and reason", null, 1.0);
+		cableRoutingDuration = addFamily("visa_cable_routing_duration_seconds", "Duration of the cable routing of a grid by grid type", DURATION_BUCKETS, NANOS_PER_SECOND);
+		cablesRouted = addFamily("visa_cables_routed_total", "Number of cables processed by the cable routing by result", null, 1.0);
+		ioToolRoundTrip = addFamily("visa_iotool_roundtrip_seconds", "Time between sending a request to the IO-Tool and receiving its response", DURATION_BUCKETS, NANOS_PER_SECOND);
+		ioToolJobDuration = addFamily("visa_iotool_job_duration_seconds", "Time until the IO-Tool finished a job which required waiting for completion", DURATION_BUCKETS, NANOS_PER_SECOND);
+	}
+
+
+	/**
+	 * Record a completed AJAX request
+	 *
+	 * @param pContext Path of the HTTP context which handled the request
+	 * @param pStatus Status of the response, either the AJAX status or the
+	 *            HTTP status code
+	 * @param pNanos Latency of the request in nanoseconds
+	 * @param pRequestBytes Number of bytes read from the request body
+	 * @param pResponseBytes Number of bytes written to the response body
+	 * @param pError true if the request failed
+	 */
+	public void observeRequest(String pContext, String pStatus, long pNanos, long pRequestBytes, long pResponseBytes, boolean pError) {
+		String context = label("context", pContext);
+
+		requestDuration.histogram(context).observe(pNanos);
+		requestSize.histogram(context).observe(pRequestBytes);
+		responseSize.histogram(context).observe(pResponseBytes);
+		requests.counter(context + "," + label("status", pStatus)).incrementAndGet();
+
+		if(pError) {
+			requestErrors.counter(context).incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Record a finished RDF transaction
+	 *
+	 * @param pOutcome Outcome of the transaction: "read", "commit" or "abort"
+	 * @param pNanos Duration of the transaction in nanoseconds
+	 */
+	public void observeTransaction(String pOutcome, long pNanos) {
+		transactionDuration.histogram(label("outcome", pOutcome)).observe(pNanos);
+	}
+
+
+	/**
+	 * Record a run of a graphviz executable
+	 *
+	 * @param pCommand Name of the executable
+	 * @param pNanos Run time in nanoseconds
+	 * @param pSuccess true if the run produced a layout, false otherwise
+	 */
+	public void observeGraphviz(String pCommand, long pNanos, boolean pSuccess) {
+		String command = label("command", pCommand);
+
+		graphvizDuration.histogram(command).observe(pNanos);
+
+		if(!pSuccess) {
+			graphvizFailures.counter(command).incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Record a layout calculation, including the preparation of the input and
+	 * the processing of the output of the layout engine
+	 *
+	 * @param pEngine Name of the layout engine
+	 * @param pNanos Duration in nanoseconds
+	 */
+	public void observeLayout(String pEngine, long pNanos) {
+		layoutDuration.histogram(label("engine", pEngine)).observe(pNanos);
+	}
+
+
+	/**
+	 * Record a layout which did not call the layout engine
+	 *
+	 * @param pReason "positioned" if all nodes already had a position, "cached"
+	 *            if a cached result was reused
+	 */
+	public void observeLayoutSkipped(String pReason) {
+		layoutsSkipped.counter(label("reason", pReason)).incrementAndGet();
+	}
+
+
+	/**
+	 * Record a layout which was calculated by the fallback engine because the
+	 * requested engine did not produce a result
+	 *
+	 * @param pEngine Name of the requested layout engine
+	 * @param pReason "timeout" if the time budget was exceeded, "failure" if
+	 *            the engine failed
+	 */
+	public void observeLayoutFallback(String pEngine, String pReason) {
+		layoutFallbacks.counter(label("engine", pEngine) + "," + label("reason", pReason)).incrementAndGet();
+	}
+
+
+	/**
+	 * Record the cable routing of one grid
+	 *
+	 * @param pGrid "global" for the base layer, "group" for the subgrid of a
+	 *            component group
+	 * @param pNanos Duration in nanoseconds
+	 * @param pKept Number of cables whose path was kept
+	 * @param pRouted Number of cables which received a new path
+	 * @param pFailed Number of cables for which no path was found
+	 */
+	public void observeCableRouting(String pGrid, long pNanos, int pKept, int pRouted, int pFailed) {
+		cableRoutingDuration.histogram(label("grid", pGrid)).observe(pNanos);
+		cablesRouted.counter(label("result", "kept")).addAndGet(pKept);
+		cablesRouted.counter(label("result", "routed")).addAndGet(pRouted);
+		cablesRouted.counter(label("result", "failed")).addAndGet(pFailed);
+	}
+
+
+	/**
+	 * Record the round trip of a request to the IO-Tool
+	 *
+	 * @param pCommand Name of the IO-Tool command
+	 * @param pNanos Time until the response was received in nanoseconds
+	 */
+	public void observeIOToolRoundTrip(String pCommand, long pNanos) {
+		ioToolRoundTrip.histogram(label("command", pCommand)).observe(pNanos);
+	}
+
+
+	/**
+	 * Record the duration of an IO-Tool job which required waiting for its
+	 * completion
+	 *
+	 * @param pCommand Name of the IO-Tool command
+	 * @param pNanos Time until the final response was received in nanoseconds
+	 */
+	public void observeIOToolJob(String pCommand, long pNanos) {
+		ioToolJobDuration.histogram(label("command", pCommand)).observe(pNanos);
+	}
+
+
+	/**
+	 * Return all recorded metrics in the text format of Prometheus
+	 *
+	 * @return The metrics as string
+	 */
+	public String toPrometheusText() {
+		StringBuilder sb = new StringBuilder(4096);
+
+		sb.append("# HELP visa_start_time_seconds Start time of the backend since the epoch\n");
+		sb.append("# TYPE visa_start_time_seconds gauge\n");
+		sb.append("visa_start_time_seconds ");
+		sb.append(startTime / 1000);
+		sb.append('\n');
+
+		for(Family f : families.values()) {
+			f.write(sb);
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Write a snapshot of all recorded metrics to the provided file. The
+	 * snapshot uses the text format of Prometheus. It is written to a
+	 * temporary file first which replaces the target file, so readers never
+	 * see a partially written snapshot.
+	 *
+	 * @param pFile Path of the snapshot file
+	 * @throws IOException if writing the file failed
+	 */
+	public void writeSnapshot(Path pFile) throws IOException {
+		StringBuilder sb = new StringBuilder("# Snapshot taken at ");
+		sb.append(new Date().toString());
+		sb.append('\n');
+		sb.append(toPrometheusText());
+
+		Path absFile = pFile.toAbsolutePath();
+		Path tmpFile = absFile.resolveSibling(absFile.getFileName().toString() + ".tmp");
+
+		Files.write(tmpFile, sb.toString().getBytes(JSONStreamWriter.UTF8));
+		Files.move(tmpFile, absFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * Append the name and labels of a series to the provided StringBuilder,
+	 * followed by the separating space
+	 *
+	 * @param pSB The StringBuilder
+	 * @param pName Name of the series
+	 * @param pLabels Labels of the series without braces, may be empty
+	 */
+	static void appendSeries(StringBuilder pSB, String pName, String pLabels) {
+		pSB.append(pName);
+		if(!pLabels.isEmpty()) {
+			pSB.append('{');
+			pSB.append(pLabels);
+			pSB.append('}');
+		}
+		pSB.append(' ');
+	}
+
+
+	/**
+	 * Create a label in name="value" form. Backslashes, double quotes and line
+	 * feeds in the value are escaped.
+	 *
+	 * @param pName Name of the label
+	 * @param pValue Value of the label
+	 * @return The label string
+	 */
+	private static String label(String pName, String pValue) {
+		StringBuilder sb = new StringBuilder(pName.length() + pValue.length() + 3);
+		sb.append(pName);
+		sb.append("=\"");
+
+		for(int i = 0; i < pValue.length(); i++) {
+			char c = pValue.charAt(i);
+
+			switch(c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+
+		sb.append('"');
+		return sb.toString();
+	}
+
+
+	/**
+	 * Create a new metric family and add it to the registry
+	 *
+	 * @param pName Name of the metric
+	 * @param pHelp Description of the metric
+	 * @param pBuckets Bucket bounds for histograms, null for counters
+	 * @param pDivisor Divisor converting recorded values into the base unit
+	 * @return The new family
+	 */
+	private Family addFamily(String pName, String pHelp, long[] pBuckets, double pDivisor) {
+		Family rv = new Family(pName, pHelp, pBuckets, pDivisor);
+		families.put(pName, rv);
+
+		return rv;
+	}
+
+
+	/**
+	 * This class stores all series of a metric. A series is identified by
+	 * its labels. Series are created on first use.
+	 *
+	 * @author Thomas Rix
+	 */
+	private static class Family {
+		private String name;
+		private String help;
+		private long[] buckets;
+		private double divisor;
+		private ConcurrentMap<String, Object> series;
+
+
+		/**
+		 * Construct a new family without series
+		 *
+		 * @param pName Name of the metric
+		 * @param pHelp Description of the metric
+		 * @param pBuckets Bucket bounds for histograms, null for counters
+		 * @param pDivisor Divisor converting recorded values into the base
+		 *            unit
+		 */
+		private Family(String pName, String pHelp, long[] pBuckets, double pDivisor) {
+			name = pName;
+			help = pHelp;
+			buckets = pBuckets;
+			divisor = pDivisor;
+			series = new ConcurrentHashMap<>();
+		}
+
+
+		/**
+		 * Return the histogram with the provided labels, it is created if it
+		 * does not exist
+		 *
+		 * @param pLabels Labels of the series
+		 * @return The histogram
+		 */
+		private Histogram histogram(String pLabels) {
+			Object rv = series.get(pLabels);
+
+			if(rv == null) {
+				Histogram h = new Histogram(buckets);
+				rv = series.putIfAbsent(pLabels, h);
+				if(rv == null) {
+					rv = h;
+				}
+			}
+
+			return (Histogram) rv;
+		}
+
+
+		/**
+		 * Return the counter with the provided labels, it is created if it
+		 * does not exist
+		 *
+		 * @param pLabels Labels of the series
+		 * @return The counter
+		 */
+		private AtomicLong counter(String pLabels) {
+			Object rv = series.get(pLabels);
+
+			if(rv == null) {
+				AtomicLong c = new AtomicLong(0);
+				rv = series.putIfAbsent(pLabels, c);
+				if(rv == null) {
+					rv = c;
+				}
+			}
+
+			return (AtomicLong) rv;
+		}
+
+
+		/**
+		 * Append all series of this family in Prometheus text format to the
+		 * provided StringBuilder. Series are sorted by their labels.
+		 *
+		 * @param pSB The StringBuilder
+		 */
+		private void write(StringBuilder pSB) {
+			pSB.append("# HELP ");
+			pSB.append(name);
+			pSB.append(' ');
+			pSB.append(help);
+			pSB.append("\n# TYPE ");
+			pSB.append(name);
+			pSB.append((buckets != null) ? " histogram\n" : " counter\n");
+
+			for(Map.Entry<String, Object> e : new TreeMap<>(series).entrySet()) {
+				if(buckets != null) {
+					((Histogram) e.getValue()).write(pSB, name, e.getKey(), divisor);
+				}
+				else {
+					appendSeries(pSB, name, e.getKey());
+					pSB.append(((AtomicLong) e.getValue()).get());
+					pSB.append('\n');
+				}
+			}
+		}
+	}
+}
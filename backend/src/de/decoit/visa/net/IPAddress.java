@@ -19,13 +19,13 @@
 
 package de.decoit.visa.net;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.enums.IPVersion;
 import de.decoit.visa.interfaces.IJSON;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
@@ -166,14 +166,12 @@ public class IPAddress implements IJSON {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("address", ipAddress);
-		rv.put("version", ipVersion.toString());
-		rv.put("isLinkLocal", isLinkLocal);
-
-		return rv;
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+		pWriter.beginObject();
+		pWriter.key("address").value(ipAddress);
+		pWriter.key("version").value(ipVersion.toString());
+		pWriter.key("isLinkLocal").value(isLinkLocal);
+		pWriter.endObject();
 	}
 
 
@@ -19,12 +19,13 @@
 
 package de.decoit.visa.net;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.HashMap;
 import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.enums.IPVersion;
 import de.decoit.visa.interfaces.IJSON;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 // TODO make this class an RDFObject and store it in the RDF model
@@ -209,14 +210,12 @@ public class IPNetwork implements IJSON {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("address", networkAddress.toJSON());
-		rv.put("subnetMask", subnetMask);
-		rv.put("version", version.toString());
-
-		return rv;
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+		pWriter.beginObject();
+		pWriter.key("address").value(networkAddress);
+		pWriter.key("subnetMask").value(subnetMask);
+		pWriter.key("version").value(version.toString());
+		pWriter.endObject();
 	}
 
 
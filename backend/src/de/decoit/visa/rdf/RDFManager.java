@@ -36,9 +36,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.parsers.DocumentBuilder;
@@ -63,6 +65,7 @@ import com.hp.hpl.jena.query.ReadWrite;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
@@ -77,6 +80,7 @@ import de.decoit.visa.enums.PortOrientation;
 import de.decoit.visa.interfaces.IRDFObject;
 import de.decoit.visa.net.IPNetwork;
 import de.decoit.visa.topology.NCSwitch;
+import de.decoit.visa.topology.NCSwitch.GroupSwitch;
 import de.decoit.visa.topology.NCVM;
 import de.decoit.visa.topology.NetworkComponent;
 import de.decoit.visa.topology.NetworkComponent.Interface;
@@ -100,12 +104,23 @@ import de.decoit.visa.topology.VLAN;
  */
 public class RDFManager {
 	private static Logger log = Logger.getLogger(RDFManager.class.getName());
+	private static final AtomicLong NEXT_INSTANCE_ID = new AtomicLong(1);
 
 	private Dataset ds;
 	private Resource rootNode;
 	private List<Path> source;
 	private List<Document> vsaTemplates;
 	private Model activeNamedModel;
+	private TopologyDelta changes;
+	private long revision;
+	private String instanceTag;
+	private LinkedHashSet<NetworkComponent> deferredLocations;
+	private boolean recordChanges;
+
+	// State of the running transaction for the metrics
+	private long transactionStart;
+	private ReadWrite transactionMode;
+	private String transactionOutcome;
 
 
 	/**
@@ -123,6 +138,17 @@ public class RDFManager {
 		source = new ArrayList<>();
 		vsaTemplates = new ArrayList<>();
 		activeNamedModel = null;
+		changes = new TopologyDelta();
+		revision = 0;
+		deferredLocations = new LinkedHashSet<>();
+		recordChanges = true;
+
+		// Unique for all instances, including instances of earlier runs of the
+		// backend, since revisions start at 0 for every instance
+		StringBuilder sbTag = new StringBuilder(Long.toString(System.currentTimeMillis(), 36));
+		sbTag.append('.');
+		sbTag.append(NEXT_INSTANCE_ID.getAndIncrement());
+		instanceTag = sbTag.toString();
 
 		// Load a list of available VSA templates
 		DirectoryStream<Path> dirStream = Files.newDirectoryStream(Paths.get("res/vsa"), "*.xml");
@@ -139,7 +165,7 @@ public class RDFManager {
 		// Create or load the TDB database at pLocation
 		ds = TDBFactory.createDataset(pLocation);
 
-		ds.begin(ReadWrite.WRITE);
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			// Do some cleanup if last run didn't clear the database
@@ -158,13 +184,13 @@ public class RDFManager {
 			// Clear the default model
 			ds.getDefaultModel().removeAll();
 
-			ds.commit();
+			this.commit();
 		}
 		catch(Throwable ex) {
-			ds.abort();
+			this.abort();
 		}
 		finally {
-			ds.end();
+			this.end();
 
 			// Sync changes to disk
 			TDB.sync(ds);
@@ -180,7 +206,7 @@ public class RDFManager {
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		ds.begin(ReadWrite.WRITE);
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			clearSourceFiles();
@@ -201,7 +227,7 @@ public class RDFManager {
 			// Clear the default model
 			ds.getDefaultModel().removeAll();
 
-			ds.commit();
+			this.commit();
 		}
 		catch(Throwable ex) {
 			StringBuilder sb = new StringBuilder("Caught: [");
@@ -216,18 +242,20 @@ public class RDFManager {
 				}
 			}
 
-			ds.abort();
+			this.abort();
 
 			throw ex;
 		}
 		finally {
-			ds.end();
+			this.end();
 
 			// Sync changes to disk
 			TDB.sync(ds);
 
-			// Close the TDB database connection
+			// Close the TDB database connection and release the cached
+			// store, otherwise it stays in memory until the JVM terminates
 			ds.close();
+			TDBFactory.release(ds);
 		}
 	}
 
@@ -241,7 +269,10 @@ public class RDFManager {
 	 * @throws IOException
 	 */
 	public void createEmptyModel(String pName) throws IOException {
-		ds.begin(ReadWrite.WRITE);
+		changes.setReload();
+		deferredLocations.clear();
+
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			Model mod = ds.getDefaultModel();
@@ -263,15 +294,15 @@ public class RDFManager {
 			// Update the root node
 			rootNode = newRootNode;
 
-			ds.commit();
+			this.commit();
 		}
 		catch(Throwable ex) {
-			ds.abort();
+			this.abort();
 
 			throw ex;
 		}
 		finally {
-			ds.end();
+			this.end();
 			TDB.sync(ds);
 		}
 	}
@@ -289,6 +320,24 @@ public class RDFManager {
 	 * @throws RDFSourceException
 	 */
 	public void loadRDF(Path pFile, boolean pReplace) throws IOException, RDFSourceException {
+		loadRDF(pFile, pReplace, TEBackend.getLayoutEngine());
+	}
+
+
+	/**
+	 * Load a RDF/XML file into a named model and layout the topology with the
+	 * provided layout engine, see {@link #loadRDF(Path, boolean)}.
+	 *
+	 * @param pFile Path and file name of the source file
+	 * @param pReplace Specify if the new data will replace the existing model
+	 *            or if it will be appended to the model
+	 * @param pLayoutEngine Layout engine to use, see
+	 *            {@link de.decoit.visa.topology.TopologyStorage#layoutTopology(String)
+	 *            TopologyStorage.layoutTopology()}
+	 * @throws IOException
+	 * @throws RDFSourceException
+	 */
+	public void loadRDF(Path pFile, boolean pReplace, String pLayoutEngine) throws IOException, RDFSourceException {
 		InputStream is = Files.newInputStream(pFile);
 
 		if(pReplace) {
@@ -299,7 +348,7 @@ public class RDFManager {
 			source.add(pFile);
 		}
 
-		loadRDF(is, pReplace, pFile.getFileName().toString());
+		loadRDF(is, pReplace, pFile.getFileName().toString(), pLayoutEngine);
 	}
 
 
@@ -317,7 +366,32 @@ public class RDFManager {
 	 * @throws RDFSourceException
 	 */
 	public void loadRDF(InputStream pIS, boolean pReplace, String pModelName) throws IOException, RDFSourceException {
-		ds.begin(ReadWrite.WRITE);
+		loadRDF(pIS, pReplace, pModelName, TEBackend.getLayoutEngine());
+	}
+
+
+	/**
+	 * Load RDF/XML data into a named model and layout the topology with the
+	 * provided layout engine, see {@link #loadRDF(InputStream, boolean, String)}.
+	 *
+	 * @param pIS Input stream to read the model from
+	 * @param pReplace Specify if the new data will replace the existing model
+	 *            or if it will be appended to the model
+	 * @param pModelName The local name of the model the RDF information will be
+	 *            stored into
+	 * @param pLayoutEngine Layout engine to use, see
+	 *            {@link de.decoit.visa.topology.TopologyStorage#layoutTopology(String)
+	 *            TopologyStorage.layoutTopology()}
+	 * @throws IOException
+	 * @throws RDFSourceException
+	 */
+	public void loadRDF(InputStream pIS, boolean pReplace, String pModelName, String pLayoutEngine) throws IOException, RDFSourceException {
+		changes.setReload();
+		if(pReplace) {
+			deferredLocations.clear();
+		}
+
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			activeNamedModel = ds.getNamedModel(VISA.createModelURI(pModelName));
@@ -335,7 +409,7 @@ public class RDFManager {
 
 			if(pReplace) {
 				// Clear the topology storage
-				TEBackend.TOPOLOGY_STORAGE.clear();
+				TEBackend.getTopologyStorage().clear();
 
 				// Clear the default model
 				ds.getDefaultModel().removeAll();
@@ -353,7 +427,18 @@ public class RDFManager {
 					throw new RDFSourceException("Multiple VSA (root) nodes found in RDF/XML file");
 				}
 				else {
-					throw new RDFSourceException("No VSA (root) node found in RDF/XML file");
+					// A topology without devices has no subject of device
+					// properties, its root node is the only named node which
+					// is not a VLAN
+					qexec = QueryExecutionFactory.create(getEmptyRootNodeSPARQL(VISA.createModelURI(pModelName)), ds);
+					rsList = resultSetToList(qexec.execSelect());
+
+					if(rsList.size() == 1) {
+						rootNode = rsList.get(0).getResource("root");
+					}
+					else {
+						throw new RDFSourceException("No VSA (root) node found in RDF/XML file");
+					}
 				}
 			}
 			else {
@@ -372,21 +457,24 @@ public class RDFManager {
 			ds.getDefaultModel().add(activeNamedModel);
 
 			// Layout the topology
-			TEBackend.TOPOLOGY_STORAGE.layoutTopology();
+			TEBackend.getTopologyStorage().layoutTopology(pLayoutEngine);
 
-			TEBackend.TOPOLOGY_STORAGE.updateInterfaceOrientations(addedLocNames);
+			TEBackend.getTopologyStorage().updateInterfaceOrientations(addedLocNames);
 
-			ds.commit();
+			// Route the cables between the laid out components
+			TEBackend.getTopologyStorage().routeCables();
+
+			this.commit();
 		}
 		catch(Throwable ex) {
-			ds.abort();
+			this.abort();
 
 			throw ex;
 		}
 		finally {
 			activeNamedModel = null;
 
-			ds.end();
+			this.end();
 			TDB.sync(ds);
 
 			pIS.close();
@@ -405,11 +493,14 @@ public class RDFManager {
 	 * @param pConnTargets Information about connections to the existing
 	 *            topology
 	 * @param pConnVLANs Information about VLAN assignment of new interfaces
+	 * @param pLayoutEngine Layout engine to use, see
+	 *            {@link de.decoit.visa.topology.TopologyStorage#layoutTopology(String)
+	 *            TopologyStorage.layoutTopology()}
 	 * @throws IOException if the template RDF/XML file cannot be accessed
 	 * @throws RDFSourceException if the RDF/XML file contains errors
 	 */
-	public void importRDFTemplate(int pTplID, String pGroupName, Map<String, String> pConnTargets, Map<String, String> pConnVLANs) throws IOException, RDFSourceException {
-		ComponentGroup vsaCG = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(pGroupName);
+	public void importRDFTemplate(int pTplID, String pGroupName, Map<String, String> pConnTargets, Map<String, String> pConnVLANs, String pLayoutEngine) throws IOException, RDFSourceException {
+		ComponentGroup vsaCG = TEBackend.getTopologyStorage().getComponentGroupByName(pGroupName);
 
 		Document tpl = vsaTemplates.get(pTplID);
 		Element vsaElement = (Element) (tpl.getElementsByTagName("VSA").item(0));
@@ -419,7 +510,11 @@ public class RDFManager {
 		InputStream is = Files.newInputStream(vsaRDF);
 		String modURI = VISA.createModelURI(vsaCG.getIdentifier());
 
-		ds.begin(ReadWrite.WRITE);
+		// The template may add any number of objects and triggers a new
+		// layout of the topology
+		changes.setReload();
+
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			activeNamedModel = ds.getNamedModel(modURI);
@@ -517,10 +612,10 @@ public class RDFManager {
 				}
 
 				// NetworkComponent inside the VSA
-				NetworkComponent ncSrc = TEBackend.TOPOLOGY_STORAGE.getComponent(sbSrc.toString());
+				NetworkComponent ncSrc = TEBackend.getTopologyStorage().getComponent(sbSrc.toString());
 
 				// NetworkComponent in the existing topology
-				NetworkComponent ncTarget = TEBackend.TOPOLOGY_STORAGE.getComponent(connEntry.getValue());
+				NetworkComponent ncTarget = TEBackend.getTopologyStorage().getComponent(connEntry.getValue());
 				addedLocNames.add(ncTarget.getRDFLocalName());
 
 				// Interface inside the VSA (source)
@@ -529,15 +624,15 @@ public class RDFManager {
 				// Interface in the existing topology (target)
 				Interface ifTarget = ncTarget.getConfig().createInterface(PortOrientation.TOP);
 
-				GroupInterface gIf = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(pGroupName).createOuterConnection(ifSrc, ifTarget);
-				TEBackend.TOPOLOGY_STORAGE.createCable(ifSrc, ifTarget, gIf);
+				GroupInterface gIf = TEBackend.getTopologyStorage().getComponentGroupByName(pGroupName).createOuterConnection(ifSrc, ifTarget);
+				TEBackend.getTopologyStorage().createCable(ifSrc, ifTarget, gIf);
 
 				// Check if the target component is a switch and the connection is part of a VLAN
 				if(ncTarget instanceof NCSwitch && pConnVLANs.containsKey(connEntry.getKey())) {
 					HashSet<VLAN> vlan = ifTarget.getAllVLAN();
 
 					// Add the VLAN to the target interface
-					vlan.add(TEBackend.TOPOLOGY_STORAGE.getVLAN(pConnVLANs.get(connEntry.getKey())));
+					vlan.add(TEBackend.getTopologyStorage().getVLAN(pConnVLANs.get(connEntry.getKey())));
 					ifTarget.setVLAN(vlan);
 				}
 
@@ -552,7 +647,7 @@ public class RDFManager {
 					StringBuilder sbRtName = new StringBuilder("VSA Router ");
 					sbRtName.append(routerID);
 
-					NCVM router = TEBackend.TOPOLOGY_STORAGE.createVM(ifOrientation, sbRtName.toString(), null, null);
+					NCVM router = TEBackend.getTopologyStorage().createVM(ifOrientation, sbRtName.toString(), null, null);
 					router.getConfig().setComponentGroup(vsaCG.getName());
 					HashMap<String, Interface> ifMap = router.getConfig().getPorts();
 					Set<String> ifMapKeySet = ifMap.keySet();
@@ -561,9 +656,9 @@ public class RDFManager {
 					// Configure the interface connected to the VSA
 					Interface ifInt = ncSrc.getConfig().createInterface(PortOrientation.TOP);
 					Interface rtIfInt = ifMap.get(it.next());
-					TEBackend.TOPOLOGY_STORAGE.createCable(ifInt, rtIfInt, null);
+					TEBackend.getTopologyStorage().createCable(ifInt, rtIfInt, null);
 
-					VLAN intVLAN = TEBackend.TOPOLOGY_STORAGE.getVLAN(sbVLAN.toString());
+					VLAN intVLAN = TEBackend.getTopologyStorage().getVLAN(sbVLAN.toString());
 					HashSet<VLAN> ifIntVLANs = new HashSet<>();
 					ifIntVLANs.add(intVLAN);
 					ifInt.setVLAN(ifIntVLANs);
@@ -571,10 +666,10 @@ public class RDFManager {
 					// Configure the interface connected to the topology
 					Interface ifExt = ncSrc.getConfig().createInterface(PortOrientation.TOP);
 					Interface rtIfExt = ifMap.get(it.next());
-					TEBackend.TOPOLOGY_STORAGE.createCable(ifExt, rtIfExt, null);
+					TEBackend.getTopologyStorage().createCable(ifExt, rtIfExt, null);
 
 					if(pConnVLANs.containsKey(connEntry.getKey())) {
-						VLAN extVLAN = TEBackend.TOPOLOGY_STORAGE.getVLAN(pConnVLANs.get(connEntry.getKey()));
+						VLAN extVLAN = TEBackend.getTopologyStorage().getVLAN(pConnVLANs.get(connEntry.getKey()));
 						HashSet<VLAN> ifExtVLANs = new HashSet<>();
 						ifExtVLANs.add(extVLAN);
 						ifExt.setVLAN(ifExtVLANs);
@@ -583,21 +678,24 @@ public class RDFManager {
 			}
 
 			// Layout the topology
-			TEBackend.TOPOLOGY_STORAGE.layoutTopology();
+			TEBackend.getTopologyStorage().layoutTopology(pLayoutEngine);
 
-			TEBackend.TOPOLOGY_STORAGE.updateInterfaceOrientations(addedLocNames);
+			TEBackend.getTopologyStorage().updateInterfaceOrientations(addedLocNames);
 
-			ds.commit();
+			// Route the cables between the laid out components
+			TEBackend.getTopologyStorage().routeCables();
+
+			this.commit();
 		}
 		catch(Throwable ex) {
-			ds.abort();
+			this.abort();
 
 			throw ex;
 		}
 		finally {
 			activeNamedModel = null;
 
-			ds.end();
+			this.end();
 			TDB.sync(ds);
 
 			is.close();
@@ -616,7 +714,7 @@ public class RDFManager {
 	 */
 	public void restore(int pState) throws RDFSourceException, IOException {
 		if(pState >= 0 && pState < source.size()) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 
 			try {
 				// Check if the provided state ID points to a valid list index
@@ -642,15 +740,15 @@ public class RDFManager {
 					ds.removeNamedModel(VISA.createModelURI(oldSource.get(i).getFileName().toString()));
 				}
 
-				ds.commit();
+				this.commit();
 			}
 			catch(Throwable ex) {
-				ds.abort();
+				this.abort();
 
 				throw ex;
 			}
 			finally {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -660,6 +758,139 @@ public class RDFManager {
 	}
 
 
+	/**
+	 * Start a write transaction on the dataset. All methods of this class which
+	 * manage their own transactions will join this transaction until it is
+	 * finished by calling {@link #commitTransaction()} or
+	 * {@link #abortTransaction()}. This allows to apply multiple modifications
+	 * to the topology as a single unit of work.
+	 *
+	 * @throws IllegalStateException if a transaction is already active
+	 */
+	public void beginTransaction() {
+		if(!ds.isInTransaction()) {
+			// Deferred updates belong to earlier requests, do not include
+			// them into this transaction
+			flushDeferredUpdates();
+
+			this.begin(ReadWrite.WRITE);
+		}
+		else {
+			throw new IllegalStateException("A transaction is already active");
+		}
+	}
+
+
+	/**
+	 * Commit the transaction started by {@link #beginTransaction()} and sync
+	 * the dataset to disk
+	 *
+	 * @throws IllegalStateException if no transaction is active
+	 */
+	public void commitTransaction() {
+		if(ds.isInTransaction()) {
+			try {
+				flushDeferredUpdates();
+
+				this.commit();
+			}
+			finally {
+				this.end();
+				TDB.sync(ds);
+			}
+		}
+		else {
+			throw new IllegalStateException("No active transaction to commit");
+		}
+	}
+
+
+	/**
+	 * Abort the transaction started by {@link #beginTransaction()}. All
+	 * modifications done to the RDF model since the start of the transaction
+	 * are discarded. The topology storage is <strong>not</strong> restored,
+	 * callers must synchronize it by using {@link #syncTopologyToRDF()}.
+	 */
+	public void abortTransaction() {
+		if(ds.isInTransaction()) {
+			// The topology storage will be rebuilt from the model
+			changes.setReload();
+			deferredLocations.clear();
+
+			try {
+				this.abort();
+			}
+			finally {
+				this.end();
+				TDB.sync(ds);
+			}
+		}
+	}
+
+
+	/**
+	 * Return whether a transaction started by {@link #beginTransaction()} is
+	 * active
+	 *
+	 * @return true if a transaction is active, false otherwise
+	 */
+	public boolean isTransactionActive() {
+		return ds.isInTransaction();
+	}
+
+
+	/**
+	 * Begin a transaction on the dataset and start measuring its duration
+	 *
+	 * @param pMode Mode of the transaction
+	 */
+	private void begin(ReadWrite pMode) {
+		ds.begin(pMode);
+
+		transactionStart = System.nanoTime();
+		transactionMode = pMode;
+		transactionOutcome = null;
+	}
+
+
+	/**
+	 * Commit the transaction on the dataset
+	 */
+	private void commit() {
+		ds.commit();
+		transactionOutcome = "commit";
+	}
+
+
+	/**
+	 * Abort the transaction on the dataset
+	 */
+	private void abort() {
+		transactionOutcome = "abort";
+		ds.abort();
+	}
+
+
+	/**
+	 * End the transaction on the dataset and record its duration in the
+	 * global metrics registry. Write transactions which were not committed
+	 * are recorded as aborted.
+	 */
+	private void end() {
+		ds.end();
+
+		if(transactionStart != 0) {
+			String outcome = transactionOutcome;
+			if(outcome == null) {
+				outcome = (transactionMode == ReadWrite.READ) ? "read" : "abort";
+			}
+
+			TEBackend.METRICS.observeTransaction(outcome, System.nanoTime() - transactionStart);
+			transactionStart = 0;
+		}
+	}
+
+
 	/**
 	 * Write the RDF model to a RDF/XML file. The output file will be created at
 	 * the specified location.
@@ -684,12 +915,70 @@ public class RDFManager {
 	 * @throws IOException
 	 */
 	public void writeRDF(OutputStream pOS) throws IOException {
-		ds.begin(ReadWrite.READ);
+		this.begin(ReadWrite.READ);
 
 		ds.getDefaultModel().write(pOS);
 		pOS.close();
 
-		ds.end();
+		this.end();
+	}
+
+
+	/**
+	 * Write the backup model to a RDF/XML file. It contains the information
+	 * which is not part of the VISA vocabulary, for example grid locations,
+	 * port orientations and names and colors of VLANs. Together with
+	 * {@link #writeRDF(Path)} the complete topology is written.
+	 *
+	 * @param pFile Path and file name of the output file
+	 * @throws IOException
+	 */
+	public void writeBackupRDF(Path pFile) throws IOException {
+		this.begin(ReadWrite.READ);
+
+		try(OutputStream os = Files.newOutputStream(pFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ds.getNamedModel(VISABackup.createModelURI()).write(os);
+		}
+		finally {
+			this.end();
+		}
+	}
+
+
+	/**
+	 * Read a backup model written by {@link #writeBackupRDF(Path)} and update
+	 * the objects of the current topology with its information. The RDF/XML
+	 * file written by {@link #writeRDF(Path)} at the same time must have been
+	 * loaded before. The backup model of this RDF manager is updated
+	 * accordingly.
+	 *
+	 * @param pFile Path and file name of the input file
+	 * @throws IOException
+	 */
+	public void loadBackupRDF(Path pFile) throws IOException {
+		Model backupMod = ModelFactory.createDefaultModel();
+
+		try(InputStream is = Files.newInputStream(pFile)) {
+			backupMod.read(is, null);
+		}
+
+		this.begin(ReadWrite.WRITE);
+
+		try {
+			processBackupModel(backupMod);
+
+			this.commit();
+		}
+		catch(Throwable ex) {
+			this.abort();
+
+			throw ex;
+		}
+		finally {
+			this.end();
+			TDB.sync(ds);
+			backupMod.close();
+		}
 	}
 
 
@@ -711,12 +1000,14 @@ public class RDFManager {
 		// Only do transaction management if no file is being parsed at the
 		// moment
 		if(startTransaction) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 		}
 
 		try {
 			Model mod = ds.getDefaultModel();
 
+			changes.recordAdded(pObj.getRDFLocalName());
+
 			StringBuilder sbRes = new StringBuilder(VISA.getURI());
 			sbRes.append(pObj.getRDFLocalName());
 			Resource res = mod.createResource(sbRes.toString());
@@ -742,7 +1033,7 @@ public class RDFManager {
 				mod.add(res, VISA.NAME, mod.createLiteral(nc.getName()));
 
 				for(Map.Entry<String, NetworkComponent.Interface> ifEntry : nc.getConfig().getPorts().entrySet()) {
-					TEBackend.RDF_MANAGER.addObject(ifEntry.getValue());
+					TEBackend.getRDFManager().addObject(ifEntry.getValue());
 				}
 			}
 			else if(pObj instanceof NetworkComponent.Interface) {
@@ -791,14 +1082,14 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.commit();
+				this.commit();
 			}
 		}
 		catch(Throwable ex) {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.abort();
+				this.abort();
 			}
 
 			throw ex;
@@ -807,7 +1098,7 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -827,7 +1118,7 @@ public class RDFManager {
 		// Only do transaction management if no file is being parsed at the
 		// moment
 		if(startTransaction) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 		}
 
 		try {
@@ -839,6 +1130,10 @@ public class RDFManager {
 				mod = activeNamedModel;
 			}
 
+			if(recordChanges) {
+				changes.recordModified(pObj.getRDFLocalName());
+			}
+
 			Model backupMod = ds.getNamedModel(VISABackup.createModelURI());
 
 			StringBuilder sbObj = new StringBuilder(VISA.getURI());
@@ -1118,10 +1413,10 @@ public class RDFManager {
 					}
 
 					StringBuilder sb = new StringBuilder(VISABackup.getURI());
-					sb.append(TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(nc.getConfig().getComponentGroup()).getIdentifier());
+					sb.append(TEBackend.getTopologyStorage().getComponentGroupByName(nc.getConfig().getComponentGroup()).getIdentifier());
 					Resource groupRes = mod.createResource(sb.toString());
 
-					Literal groupLit = mod.createLiteral(TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(nc.getConfig().getComponentGroup()).getName());
+					Literal groupLit = mod.createLiteral(TEBackend.getTopologyStorage().getComponentGroupByName(nc.getConfig().getComponentGroup()).getName());
 					mod.add(obj, pProp, groupRes);
 					mod.add(groupRes, VISABackup.NAME, groupLit);
 				}
@@ -1133,12 +1428,12 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.commit();
+				this.commit();
 			}
 		}
 		catch(Throwable ex) {
 			if(startTransaction) {
-				ds.abort();
+				this.abort();
 			}
 
 			throw ex;
@@ -1147,7 +1442,7 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -1167,13 +1462,15 @@ public class RDFManager {
 		// Only do transaction management if no file is being parsed at the
 		// moment
 		if(startTransaction) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 		}
 
 		try {
 			Model mod = ds.getDefaultModel();
 			Model backupMod = ds.getNamedModel(VISABackup.createModelURI());
 
+			changes.recordRemoved(pObj.getRDFLocalName());
+
 			StringBuilder sb = new StringBuilder(VISA.getURI());
 			sb.append(pObj.getRDFLocalName());
 
@@ -1199,14 +1496,14 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.commit();
+				this.commit();
 			}
 		}
 		catch(Throwable ex) {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.abort();
+				this.abort();
 			}
 
 			throw ex;
@@ -1215,7 +1512,7 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -1234,12 +1531,14 @@ public class RDFManager {
 		// Only do transaction management if no file is being parsed at the
 		// moment
 		if(startTransaction) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 		}
 
 		try {
 			Model mod = ds.getDefaultModel();
 
+			changes.recordRemoved(pVLAN.getRDFLocalName());
+
 			StringBuilder sb = new StringBuilder(VISA.getURI());
 			sb.append(pVLAN.getRDFLocalName());
 
@@ -1256,14 +1555,14 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.commit();
+				this.commit();
 			}
 		}
 		catch(Throwable ex) {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.abort();
+				this.abort();
 			}
 
 			throw ex;
@@ -1272,7 +1571,7 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -1291,12 +1590,14 @@ public class RDFManager {
 		// Only do transaction management if no file is being parsed at the
 		// moment
 		if(startTransaction) {
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 		}
 
 		try {
 			Model mod = ds.getDefaultModel();
 
+			changes.recordModified(pIf.getRDFLocalName());
+
 			StringBuilder sb = new StringBuilder(VISA.getURI());
 			sb.append(pIf.getRDFLocalName());
 
@@ -1313,14 +1614,14 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.commit();
+				this.commit();
 			}
 		}
 		catch(Throwable ex) {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.abort();
+				this.abort();
 			}
 
 			throw ex;
@@ -1329,7 +1630,7 @@ public class RDFManager {
 			// Only do transaction management if no file is being parsed at the
 			// moment
 			if(startTransaction) {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 			}
 		}
@@ -1343,14 +1644,16 @@ public class RDFManager {
 	 */
 	public void setRootNodeName(String pName) {
 		if(!pName.isEmpty()) {
-			ds.begin(ReadWrite.WRITE);
+			changes.recordModified(rootNode.getLocalName());
+
+			this.begin(ReadWrite.WRITE);
 
 			Literal nameLit = ds.getDefaultModel().createLiteral(pName);
 
 			ds.getDefaultModel().removeAll(rootNode, VISA.NAME, (RDFNode) null).add(rootNode, VISA.NAME, nameLit);
 
-			ds.commit();
-			ds.end();
+			this.commit();
+			this.end();
 		}
 		else {
 			throw new IllegalArgumentException("Empty string for topology name provided");
@@ -1365,11 +1668,11 @@ public class RDFManager {
 	 * @return The literal object value
 	 */
 	public String getRootNodeName() {
-		ds.begin(ReadWrite.READ);
+		this.begin(ReadWrite.READ);
 
 		String rv = ds.getDefaultModel().listStatements(rootNode, VISA.NAME, (RDFNode) null).toList().get(0).getObject().asLiteral().toString();
 
-		ds.end();
+		this.end();
 
 		return rv;
 	}
@@ -1393,19 +1696,36 @@ public class RDFManager {
 	 * definition) to update the objects to their last known state. If the
 	 * synchronization fails it will be assumed that the model is corrupted and
 	 * the whole backend will be cleared (same as calling "clear topology" from
-	 * the frontend).
+	 * the frontend). A transaction started by {@link #beginTransaction()} is
+	 * aborted before the synchronization.
 	 *
 	 * @throws RDFSourceException if the model contains structural errors
 	 */
 	public void syncTopologyToRDF() throws RDFSourceException {
+		changes.setReload();
+
+		// A transaction started by beginTransaction() cannot be completed
+		// after an error, discard its modifications before rebuilding
+		abortTransaction();
+
+		// Relocations of earlier requests are kept
+		try {
+			flushDeferredUpdates();
+		}
+		catch(Throwable ex) {
+			TEBackend.logException(ex, log);
+
+			deferredLocations.clear();
+		}
+
 		// Clear the topology
-		TEBackend.TOPOLOGY_STORAGE.clear();
+		TEBackend.getTopologyStorage().clear();
 
 		Model saveMod = null;
 		StringBuilder sb = null;
 		boolean syncFailed = false;
 
-		ds.begin(ReadWrite.WRITE);
+		this.begin(ReadWrite.WRITE);
 
 		try {
 			// Save the backup model from being overwritten
@@ -1415,10 +1735,10 @@ public class RDFManager {
 			saveMod = ds.getNamedModel(sb.toString());
 			saveMod.add(ds.getNamedModel(VISABackup.createModelURI()));
 
-			ds.commit();
+			this.commit();
 		}
 		catch(Throwable ex) {
-			ds.abort();
+			this.abort();
 
 			log.error("SYNC PREPARATION: Rebuilding the topology from RDF model failed, model is propably corrupted!");
 
@@ -1427,7 +1747,7 @@ public class RDFManager {
 			throw ex;
 		}
 		finally {
-			ds.end();
+			this.end();
 
 			if(syncFailed) {
 				// Synchronization failed, clear the backend
@@ -1444,7 +1764,7 @@ public class RDFManager {
 
 		if(!syncFailed) {
 			// Reprocess the current model to build a new topology
-			ds.begin(ReadWrite.WRITE);
+			this.begin(ReadWrite.WRITE);
 
 			try {
 				// Process the default model
@@ -1457,10 +1777,10 @@ public class RDFManager {
 				// can delete the copy of the old model
 				ds.removeNamedModel(sb.toString());
 
-				ds.commit();
+				this.commit();
 			}
 			catch(Throwable ex) {
-				ds.abort();
+				this.abort();
 
 				log.error("SYNC: Rebuilding the topology from RDF model failed, model is propably corrupted!");
 
@@ -1469,7 +1789,7 @@ public class RDFManager {
 				throw ex;
 			}
 			finally {
-				ds.end();
+				this.end();
 				TDB.sync(ds);
 
 				if(syncFailed) {
@@ -1488,6 +1808,175 @@ public class RDFManager {
 	}
 
 
+	/**
+	 * Return all changes recorded since the last call of this method and start
+	 * a new delta. The revision of the model is incremented if the returned
+	 * delta is not empty.
+	 *
+	 * @return The recorded changes, null if nothing was changed
+	 */
+	public TopologyDelta takeChanges() {
+		if(changes.isEmpty()) {
+			return null;
+		}
+
+		revision++;
+
+		TopologyDelta rv = changes;
+		rv.setRevision(revision);
+		changes = new TopologyDelta();
+
+		return rv;
+	}
+
+
+	/**
+	 * Return the revision of the model. It is incremented every time
+	 * {@link #takeChanges()} returns a non-empty delta. Changes which were not
+	 * taken yet are included, so the returned value is the revision the next
+	 * delta will have.
+	 *
+	 * @return The revision number
+	 */
+	public long getRevision() {
+		return changes.isEmpty() ? revision : revision + 1;
+	}
+
+
+	/**
+	 * Return a tag which identifies the current state of the topology. It
+	 * consists of a tag unique for this RDFManager instance and the revision
+	 * of the model, so it changes whenever the topology is modified.
+	 *
+	 * @return The version tag
+	 */
+	public String getVersionTag() {
+		StringBuilder sb = new StringBuilder(instanceTag);
+		sb.append('-');
+		sb.append(getRevision());
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Record that the grid location of a component was changed without
+	 * updating the RDF model yet. The location is written by the next call of
+	 * {@link #flushDeferredUpdates()}, so a component which is relocated many
+	 * times in a short time is written only once with its last location. The
+	 * change is recorded immediately.
+	 *
+	 * @param pNC The relocated component
+	 */
+	public void updateLocationDeferred(NetworkComponent pNC) {
+		changes.recordModified(pNC.getRDFLocalName());
+
+		deferredLocations.add(pNC);
+	}
+
+
+	/**
+	 * Record that the grid location of a group switch was changed. Group
+	 * switches have no location properties in the RDF model, so there is
+	 * nothing to write by {@link #flushDeferredUpdates()}. The change is
+	 * recorded immediately.
+	 *
+	 * @param pGS The relocated group switch
+	 */
+	public void updateLocationDeferred(GroupSwitch pGS) {
+		changes.recordModified(pGS.getRDFLocalName());
+	}
+
+
+	/**
+	 * Record that the grid location of a component group was changed. Groups
+	 * have no location properties in the RDF model, so there is nothing to
+	 * write by {@link #flushDeferredUpdates()}. The change is recorded
+	 * immediately.
+	 *
+	 * @param pCG The relocated group
+	 */
+	public void updateLocationDeferred(ComponentGroup pCG) {
+		changes.recordModified(pCG.getIdentifier());
+	}
+
+
+	/**
+	 * Return whether there are deferred updates which were not written to the
+	 * RDF model yet
+	 *
+	 * @return true if there are deferred updates, false otherwise
+	 */
+	public boolean hasDeferredUpdates() {
+		return !deferredLocations.isEmpty();
+	}
+
+
+	/**
+	 * Write all deferred grid locations to the RDF model. The updates are
+	 * written in a single transaction, or as part of the transaction started
+	 * by {@link #beginTransaction()} if one is active. They were already
+	 * recorded as changes when they were deferred, so they are not recorded
+	 * again.
+	 */
+	public void flushDeferredUpdates() {
+		if(!deferredLocations.isEmpty()) {
+			boolean startTransaction = !ds.isInTransaction();
+
+			if(startTransaction) {
+				this.begin(ReadWrite.WRITE);
+			}
+
+			recordChanges = false;
+
+			try {
+				for(NetworkComponent nc : deferredLocations) {
+					updateProperty(nc, VISABackup.COMP_LOC_X);
+					updateProperty(nc, VISABackup.COMP_LOC_Y);
+				}
+
+				if(startTransaction) {
+					this.commit();
+				}
+
+				if(log.isDebugEnabled()) {
+					StringBuilder sb = new StringBuilder("Deferred locations written: ");
+					sb.append(deferredLocations.size());
+					log.debug(sb.toString());
+				}
+			}
+			catch(Throwable ex) {
+				if(startTransaction) {
+					this.abort();
+				}
+
+				throw ex;
+			}
+			finally {
+				recordChanges = true;
+				deferredLocations.clear();
+
+				if(startTransaction) {
+					this.end();
+
+					// Sync changes to disk
+					TDB.sync(ds);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Record that the topology was changed without modifying the RDF model,
+	 * for example by a new grid configuration. Receivers of the next delta
+	 * must request the complete topology.
+	 */
+	public void markReload() {
+		changes.setReload();
+	}
+
+
 	/**
 	 * Create a JSON object which contains a list of all imported RDF/XML source
 	 * files
@@ -1812,7 +2301,7 @@ public class RDFManager {
 				netmask = 24;
 			}
 
-			TEBackend.TOPOLOGY_STORAGE.createNetwork(addr, netmask, version);
+			TEBackend.getTopologyStorage().createNetwork(addr, netmask, version);
 		}
 
 		// Get all VLANs in the topology
@@ -1827,7 +2316,7 @@ public class RDFManager {
 				Literal idLit = qs.getLiteral("id");
 				int id = idLit.getInt();
 
-				VLAN newVLAN = TEBackend.TOPOLOGY_STORAGE.createVLAN(vlan, id);
+				VLAN newVLAN = TEBackend.getTopologyStorage().createVLAN(vlan, id);
 
 				if(newVLAN.getID() != id) {
 					Model nMod = ds.getNamedModel(pMod);
@@ -2010,8 +2499,8 @@ public class RDFManager {
 							StringBuilder sbNetwork = new StringBuilder(ipMatcher.group(1));
 							sbNetwork.append("0");
 
-							if(TEBackend.TOPOLOGY_STORAGE.getNetwork(sbNetwork.toString()) == null) {
-								IPNetwork ipNet = TEBackend.TOPOLOGY_STORAGE.createNetwork(sbNetwork.toString(), 24, IPVersion.getVersion(addrQs.getLiteral("addrtype").getString()));
+							if(TEBackend.getTopologyStorage().getNetwork(sbNetwork.toString()) == null) {
+								IPNetwork ipNet = TEBackend.getTopologyStorage().createNetwork(sbNetwork.toString(), 24, IPVersion.getVersion(addrQs.getLiteral("addrtype").getString()));
 
 								port.put("IPNetwork", ipNet.getNetworkAddressString());
 							}
@@ -2041,13 +2530,13 @@ public class RDFManager {
 
 				switch(devType) {
 					case "vm":
-						newNC = TEBackend.TOPOLOGY_STORAGE.createVM(ports, devName, null, null, devLocalName);
+						newNC = TEBackend.getTopologyStorage().createVM(ports, devName, null, null, devLocalName);
 						break;
 					case "host":
-						newNC = TEBackend.TOPOLOGY_STORAGE.createHost(ports, devName, null, null, devLocalName);
+						newNC = TEBackend.getTopologyStorage().createHost(ports, devName, null, null, devLocalName);
 						break;
 					case "switch":
-						newNC = TEBackend.TOPOLOGY_STORAGE.createSwitch(ports, devName, new Dimension2D(ports.size(), 3), null, devLocalName);
+						newNC = TEBackend.getTopologyStorage().createSwitch(ports, devName, Dimension2D.valueOf(ports.size(), 3), null, devLocalName);
 						switchSet.add((NCSwitch) newNC);
 						break;
 					default:
@@ -2070,8 +2559,8 @@ public class RDFManager {
 		// Create cables for the connections
 		for(Map.Entry<String, String> conn : connections.entrySet()) {
 			// Get source and target interfaces
-			NetworkComponent.Interface src = TEBackend.TOPOLOGY_STORAGE.getInterface(conn.getKey());
-			NetworkComponent.Interface target = TEBackend.TOPOLOGY_STORAGE.getInterface(conn.getValue());
+			NetworkComponent.Interface src = TEBackend.getTopologyStorage().getInterface(conn.getKey());
+			NetworkComponent.Interface target = TEBackend.getTopologyStorage().getInterface(conn.getValue());
 
 			GroupInterface gIf = null;
 
@@ -2099,7 +2588,7 @@ public class RDFManager {
 						log.debug(sb.toString());
 					}
 
-					gIf = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(target.getComponentGroup()).createOuterConnection(target, src);
+					gIf = TEBackend.getTopologyStorage().getComponentGroupByName(target.getComponentGroup()).createOuterConnection(target, src);
 				}
 				else if(target.getComponentGroup().equals("0.0.0.0") && !(target.getComponent() instanceof NCSwitch)) {
 					if(log.isDebugEnabled()) {
@@ -2120,7 +2609,7 @@ public class RDFManager {
 						log.debug(sb.toString());
 					}
 
-					gIf = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(src.getComponentGroup()).createOuterConnection(src, target);
+					gIf = TEBackend.getTopologyStorage().getComponentGroupByName(src.getComponentGroup()).createOuterConnection(src, target);
 				}
 				else {
 					log.error("Connection between two non-global groups detected");
@@ -2144,7 +2633,7 @@ public class RDFManager {
 			}
 
 			// Create the NetworkCable
-			TEBackend.TOPOLOGY_STORAGE.createCable(src, target, gIf);
+			TEBackend.getTopologyStorage().createCable(src, target, gIf);
 		}
 
 		// Create group switches where necessary
@@ -2167,7 +2656,13 @@ public class RDFManager {
 
 		for(Resource res : resList) {
 			// Get the reference to the object with that local name
-			IRDFObject irdfo = TEBackend.TOPOLOGY_STORAGE.getRDFObject(res.getLocalName());
+			IRDFObject irdfo = TEBackend.getTopologyStorage().getRDFObject(res.getLocalName());
+
+			// VLANs are not stored with the other objects, they were created
+			// while processing the model
+			if(irdfo == null && pMod.contains(res, VISABackup.VLAN_COLOR)) {
+				irdfo = TEBackend.getTopologyStorage().getVLAN(res.getLocalName());
+			}
 
 			if(irdfo instanceof NetworkComponent) {
 				// Object is a NetworkComponent
@@ -2349,6 +2844,23 @@ public class RDFManager {
 	}
 
 
+	/**
+	 * Get a Query object to determine the root node of a model which does
+	 * not contain any device. The QuerySolutions produced by this Query will
+	 * contain the fields 'root' (RDFNode of the root node) and 'name' (value
+	 * of the 'visa:name' property).
+	 *
+	 * @param pMod Optional URI of the model on which the query will be
+	 *            executed. If set to null, the query will execute on the
+	 *            default model of the dataset.
+	 * @return A Query object containing the read SPARQL query, null if the
+	 *         input file cannot be read
+	 */
+	private Query getEmptyRootNodeSPARQL(String pMod) {
+		return readSPARQL("emptyrootnode.sparql", null, pMod);
+	}
+
+
 	/**
 	 * Get a Query object to list all devices with their literal properties in a
 	 * model. The QuerySolutions produced by this Query will contain the fields
@@ -2663,7 +3175,7 @@ public class RDFManager {
 					sbGroupName.append(groupQS.getLiteral("netmask").getString());
 
 					StringBuilder sbLocName = new StringBuilder(VISA.getURI());
-					sbLocName.append(TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(sbGroupName.toString()).getIdentifier());
+					sbLocName.append(TEBackend.getTopologyStorage().getComponentGroupByName(sbGroupName.toString()).getIdentifier());
 
 					Resource groupRes = ds.getDefaultModel().getResource(sbLocName.toString());
 
@@ -2673,13 +3185,13 @@ public class RDFManager {
 				}
 				else {
 					StringBuilder sbLocName = new StringBuilder(VISA.getURI());
-					sbLocName.append(TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName("0.0.0.0").getIdentifier());
+					sbLocName.append(TEBackend.getTopologyStorage().getComponentGroupByName("0.0.0.0").getIdentifier());
 
 					Resource groupRes = ds.getDefaultModel().getResource(sbLocName.toString());
 
 					// Add the group information to the backup model
 					mod.add(dev, VISABackup.GROUP, groupRes);
-					mod.add(groupRes, VISABackup.NAME, ds.getDefaultModel().createLiteral(TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName("0.0.0.0").getName()));
+					mod.add(groupRes, VISABackup.NAME, ds.getDefaultModel().createLiteral(TEBackend.getTopologyStorage().getComponentGroupByName("0.0.0.0").getName()));
 				}
 			}
 		}
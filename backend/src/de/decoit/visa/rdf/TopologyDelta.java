@@ -0,0 +1,182 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.rdf;
+
+import java.util.LinkedHashSet;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * This class collects the local names of all RDF objects which were added,
+ * modified or removed by the {@link RDFManager} since the last delta was
+ * taken. If the whole model was replaced, for example by loading a RDF/XML
+ * file, only the reload flag is set and no local names are collected.
+ * Receivers of such a delta must request the complete topology.<br>
+ * <br>
+ * Some objects, for example VLANs, are created by setting their properties
+ * and are therefore reported as modified. Receivers should treat modified
+ * objects they do not know as added.
+ *
+ * @author Thomas Rix
+ * @see RDFManager#takeChanges()
+ */
+public class TopologyDelta {
+	private long revision;
+	private boolean reload;
+	private LinkedHashSet<String> added;
+	private LinkedHashSet<String> modified;
+	private LinkedHashSet<String> removed;
+
+
+	/**
+	 * Construct a new, empty delta
+	 */
+	TopologyDelta() {
+		revision = 0;
+		reload = false;
+		added = new LinkedHashSet<>();
+		modified = new LinkedHashSet<>();
+		removed = new LinkedHashSet<>();
+	}
+
+
+	/**
+	 * Return the revision of the RDF model after the changes of this delta
+	 * were applied
+	 *
+	 * @return The revision number
+	 */
+	public long getRevision() {
+		return revision;
+	}
+
+
+	/**
+	 * Return whether the whole model was replaced
+	 *
+	 * @return true if the complete topology must be requested, false otherwise
+	 */
+	public boolean isReload() {
+		return reload;
+	}
+
+
+	/**
+	 * Return whether this delta contains any change
+	 *
+	 * @return true if nothing was changed, false otherwise
+	 */
+	public boolean isEmpty() {
+		return (!reload && added.isEmpty() && modified.isEmpty() && removed.isEmpty());
+	}
+
+
+	/**
+	 * Return a JSON object representation of this delta. It contains the
+	 * revision and reload flag (keys: revision, reload) and, if reload is
+	 * false, arrays with the local names of added, modified and removed
+	 * objects (keys: added, modified, removed).
+	 *
+	 * @return JSON object representation of this delta
+	 * @throws JSONException
+	 */
+	public JSONObject toJSON() throws JSONException {
+		JSONObject rv = new JSONObject();
+
+		rv.put("revision", revision);
+		rv.put("reload", reload);
+
+		if(!reload) {
+			rv.put("added", new JSONArray(added));
+			rv.put("modified", new JSONArray(modified));
+			rv.put("removed", new JSONArray(removed));
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Set the revision of this delta
+	 *
+	 * @param pRevision The revision number
+	 */
+	void setRevision(long pRevision) {
+		revision = pRevision;
+	}
+
+
+	/**
+	 * Mark the whole model as replaced. All collected local names are
+	 * discarded.
+	 */
+	void setReload() {
+		reload = true;
+
+		added.clear();
+		modified.clear();
+		removed.clear();
+	}
+
+
+	/**
+	 * Record an added object
+	 *
+	 * @param pLocName Local name of the object
+	 */
+	void recordAdded(String pLocName) {
+		if(!reload) {
+			removed.remove(pLocName);
+			added.add(pLocName);
+		}
+	}
+
+
+	/**
+	 * Record a modified object. Objects added in the same delta are only
+	 * reported as added.
+	 *
+	 * @param pLocName Local name of the object
+	 */
+	void recordModified(String pLocName) {
+		if(!reload && !added.contains(pLocName)) {
+			modified.add(pLocName);
+		}
+	}
+
+
+	/**
+	 * Record a removed object. Objects added in the same delta are not
+	 * reported at all.
+	 *
+	 * @param pLocName Local name of the object
+	 */
+	void recordRemoved(String pLocName) {
+		if(!reload) {
+			modified.remove(pLocName);
+
+			if(!added.remove(pLocName)) {
+				removed.add(pLocName);
+			}
+		}
+	}
+}
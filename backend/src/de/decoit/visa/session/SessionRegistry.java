@@ -0,0 +1,570 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.session;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+import de.decoit.visa.TEBackend;
+import de.decoit.visa.rdf.RDFManager;
+import de.decoit.visa.rdf.RDFSourceException;
+import de.decoit.visa.topology.TopologyStorage;
+
+
+/**
+ * This class maps session IDs to independent topology sessions. Each session
+ * has its own {@link TopologyStorage} and {@link RDFManager}, backed by a
+ * separate TDB database.<br>
+ * <br>
+ * Since the topology code accesses the topology storage and RDF manager by
+ * {@link TEBackend#getTopologyStorage()} and {@link TEBackend#getRDFManager()},
+ * a session must be bound to the calling thread by {@link #bind(String)}
+ * before it is used. Binding locks the session until {@link #unbind()} is
+ * called, so requests of the same session are serialized while requests of
+ * different sessions run concurrently. Threads which have not bound a session
+ * use the default session.<br>
+ * <br>
+ * Sessions are kept in least recently used order. If more than the configured
+ * number of sessions are loaded or a session was not accessed for longer than
+ * the idle timeout, it is evicted to a RDF/XML snapshot file and restored on
+ * its next use. Sessions which are bound by another thread are not evicted,
+ * so the number of loaded sessions may exceed the limit while many sessions
+ * are busy. The default session is never evicted. Snapshots are kept when the
+ * registry is closed, so sessions survive a restart of the backend.<br>
+ * <br>
+ * The total number of sessions, including evicted sessions and sessions
+ * found on disk at startup, is limited as well. If a new session would
+ * exceed the limit, the least recently used evicted sessions are dropped and
+ * their snapshot files and TDB databases are deleted. Sessions are written
+ * and deleted while holding only their own lock, so other sessions can be
+ * bound meanwhile.
+ *
+ * @author Thomas Rix
+ */
+public class SessionRegistry {
+	private static Logger log = Logger.getLogger(SessionRegistry.class.getName());
+	private static final Pattern SESSION_ID_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]{1,64}$");
+
+	/**
+	 * ID of the default session which is used if a request does not specify a
+	 * session
+	 */
+	public static final String DEFAULT_SESSION = "default";
+
+	private ReentrantLock lock;
+	private LinkedHashMap<String, TopologySession> sessions;
+	private TopologySession defaultSession;
+	private ThreadLocal<TopologySession> boundSession;
+	private String tdbLocation;
+	private Path snapshotPath;
+	private int maxLoadedSessions;
+	private int maxSessions;
+	private long idleTimeout;
+
+
+	/**
+	 * Construct a new registry. The provided topology storage and RDF manager
+	 * are used for the default session.
+	 *
+	 * @param pDefaultStorage Topology storage of the default session
+	 * @param pDefaultRDFManager RDF manager of the default session
+	 * @param pTDBLocation Location of the TDB database of the default session,
+	 *            the databases of other sessions are created in the directory
+	 *            &lt;pTDBLocation&gt;_sessions
+	 * @param pSnapshotPath Directory for the snapshot files of evicted
+	 *            sessions, will be created if it does not exist
+	 * @param pMaxLoadedSessions Maximum number of sessions kept in memory,
+	 *            must be 1 or greater
+	 * @param pMaxSessions Maximum number of sessions including evicted
+	 *            sessions and the default session, must be greater than
+	 *            pMaxLoadedSessions
+	 * @param pIdleTimeout Time in milliseconds after which an idle session is
+	 *            evicted, 0 disables eviction of idle sessions
+	 * @throws IOException if the snapshot directory cannot be created or read
+	 */
+	public SessionRegistry(TopologyStorage pDefaultStorage, RDFManager pDefaultRDFManager, String pTDBLocation, Path pSnapshotPath, int pMaxLoadedSessions, int pMaxSessions, long pIdleTimeout) throws IOException {
+		if(pMaxLoadedSessions < 1) {
+			throw new IllegalArgumentException("At least one session must be allowed in memory");
+		}
+
+		if(pMaxSessions <= pMaxLoadedSessions) {
+			throw new IllegalArgumentException("Session limit must be greater than the number of sessions in memory");
+		}
+
+		if(pIdleTimeout < 0) {
+			throw new IllegalArgumentException("Negative idle timeout provided");
+		}
+
+		lock = new ReentrantLock();
+		sessions = new LinkedHashMap<>(16, 0.75f, true);
+		tdbLocation = pTDBLocation;
+		snapshotPath = pSnapshotPath;
+		maxLoadedSessions = pMaxLoadedSessions;
+		maxSessions = pMaxSessions;
+		idleTimeout = pIdleTimeout;
+
+		Files.createDirectories(snapshotPath);
+
+		defaultSession = new TopologySession(DEFAULT_SESSION, pDefaultStorage, pDefaultRDFManager);
+		sessions.put(DEFAULT_SESSION, defaultSession);
+		boundSession = new ThreadLocal<>();
+
+		registerStoredSessions();
+	}
+
+
+	/**
+	 * Check whether the provided string is a valid session ID. Session IDs
+	 * consist of 1 to 64 letters, digits, underscores and hyphens.
+	 *
+	 * @param pSessionID The string to check
+	 * @return true if the ID is valid, false otherwise
+	 */
+	public static boolean isValidSessionID(String pSessionID) {
+		return (pSessionID != null && SESSION_ID_PATTERN.matcher(pSessionID).matches());
+	}
+
+
+	/**
+	 * Bind the session with the provided ID to the calling thread. The
+	 * session will be created if it does not exist and loaded if it was
+	 * evicted. Idle sessions are evicted before. The calling thread holds the
+	 * lock of the session until {@link #unbind()} is called, this method must
+	 * not be called again before that. If another thread has bound the
+	 * session, this method blocks until it is released.
+	 *
+	 * @param pSessionID ID of the session, null selects the default session
+	 * @return The bound session
+	 * @throws IllegalArgumentException if the session ID is malformed
+	 * @throws IOException if the TDB database or the snapshot of the session
+	 *             cannot be accessed
+	 * @throws RDFSourceException if the snapshot of the session contains
+	 *             invalid RDF information
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public TopologySession bind(String pSessionID) throws IOException, RDFSourceException, ParserConfigurationException, SAXException {
+		String sessionID = (pSessionID != null) ? pSessionID : DEFAULT_SESSION;
+
+		if(!isValidSessionID(sessionID)) {
+			throw new IllegalArgumentException("Malformed session ID: " + sessionID);
+		}
+
+		if(boundSession.get() != null) {
+			throw new IllegalStateException("A session is already bound by this thread");
+		}
+
+		TopologySession session;
+
+		while(true) {
+			ArrayList<TopologySession> victims;
+			ArrayList<TopologySession> dropped = new ArrayList<>();
+
+			// The registry lock only protects the session map, it is not held
+			// while sessions are used, evicted or dropped
+			lock.lock();
+
+			try {
+				session = sessions.get(sessionID);
+				if(session == null) {
+					selectDroppedSessions(sessions.size() + 1 - maxSessions, dropped);
+
+					if(sessions.size() - dropped.size() >= maxSessions) {
+						for(TopologySession d : dropped) {
+							d.unlock();
+						}
+
+						throw new IllegalStateException("Session limit reached, no session can be dropped");
+					}
+
+					session = new TopologySession(sessionID, getTDBLocation(sessionID), getSnapshotFile(sessionID));
+					sessions.put(sessionID, session);
+
+					if(log.isInfoEnabled()) {
+						StringBuilder sb = new StringBuilder("Session created: ");
+						sb.append(sessionID);
+						log.info(sb.toString());
+					}
+				}
+
+				session.touch();
+
+				victims = selectEvictedSessions(session);
+			}
+			finally {
+				lock.unlock();
+			}
+
+			dropSessions(dropped);
+			evictSessions(victims);
+
+			session.lock();
+
+			// The session was dropped while waiting for its lock, it has been
+			// removed from the map and is created again
+			if(!session.isDropped()) {
+				break;
+			}
+
+			session.unlock();
+		}
+
+		boundSession.set(session);
+
+		try {
+			// The session may have been evicted while waiting for its lock
+			session.load();
+			session.touch();
+
+			return session;
+		}
+		catch(Throwable ex) {
+			boundSession.remove();
+			session.unlock();
+
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Release the session bound to the calling thread by {@link #bind(String)}.
+	 * The thread uses the default session afterwards and the lock of the
+	 * session is released.
+	 *
+	 * @throws IllegalStateException if the calling thread has not bound a
+	 *             session
+	 */
+	public void unbind() {
+		TopologySession session = boundSession.get();
+
+		if(session != null) {
+			session.touch();
+
+			boundSession.remove();
+			session.unlock();
+		}
+		else {
+			throw new IllegalStateException("No session bound by this thread");
+		}
+	}
+
+
+	/**
+	 * Return the session bound to the calling thread. If the thread has not
+	 * bound a session, the default session is returned.
+	 *
+	 * @return The bound session
+	 */
+	public TopologySession getActiveSession() {
+		TopologySession rv = boundSession.get();
+
+		return (rv != null) ? rv : defaultSession;
+	}
+
+
+	/**
+	 * Close all sessions. Loaded sessions are written to their snapshot files
+	 * first, existing snapshots are kept, so all sessions are restored when
+	 * they are used after a restart. The default session is closed as well,
+	 * the registry cannot be used afterwards.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		ArrayList<TopologySession> closed;
+
+		lock.lock();
+
+		try {
+			closed = new ArrayList<>(sessions.values());
+			sessions.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+
+		// The registry lock is not held while waiting for the sessions, a
+		// session which is dropped right now needs it to finish
+		for(TopologySession session : closed) {
+			// Wait for requests which are still running on the session
+			session.lock();
+			boundSession.set(session);
+
+			try {
+				session.close();
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+			}
+			finally {
+				boundSession.remove();
+				session.unlock();
+			}
+		}
+	}
+
+
+	/**
+	 * Select sessions which were idle for longer than the idle timeout and the
+	 * least recently used sessions if more sessions than allowed would be
+	 * loaded. The default session and the provided session are never
+	 * selected. Must be called while holding the registry lock, the selected
+	 * sessions are evicted by {@link #evictSessions(ArrayList)} after the lock
+	 * was released.
+	 *
+	 * @param pKeep Session which is about to be bound
+	 * @return The sessions to evict
+	 */
+	private ArrayList<TopologySession> selectEvictedSessions(TopologySession pKeep) {
+		long now = System.currentTimeMillis();
+		ArrayList<TopologySession> rv = new ArrayList<>();
+
+		// Count the loaded sessions including the session which will be bound
+		int loaded = pKeep.isLoaded() ? 0 : 1;
+		for(TopologySession session : sessions.values()) {
+			if(session.isLoaded()) {
+				loaded++;
+			}
+		}
+
+		// Iteration order is least recently used first
+		for(TopologySession session : sessions.values()) {
+			if(session != pKeep && session != defaultSession && session.isLoaded()) {
+				boolean idle = (idleTimeout > 0 && now - session.getLastAccess() > idleTimeout);
+
+				if(idle || loaded > maxLoadedSessions) {
+					rv.add(session);
+					loaded--;
+				}
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Evict the provided sessions to their snapshot files. Each session is
+	 * locked and bound to the calling thread while it is written, sessions
+	 * which are bound by another thread or were accessed since they were
+	 * selected are skipped. Must not be called while holding the registry
+	 * lock.
+	 *
+	 * @param pVictims Sessions selected by
+	 *            {@link #selectEvictedSessions(TopologySession)}
+	 */
+	private void evictSessions(ArrayList<TopologySession> pVictims) {
+		long selected = System.currentTimeMillis();
+
+		for(TopologySession session : pVictims) {
+			if(session.tryLock()) {
+				boundSession.set(session);
+
+				try {
+					if(!session.isDropped() && session.getLastAccess() < selected) {
+						session.evict();
+					}
+				}
+				catch(Throwable ex) {
+					TEBackend.logException(ex, log);
+				}
+				finally {
+					boundSession.remove();
+					session.unlock();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Select up to pCount of the least recently used evicted sessions to be
+	 * dropped. The selected sessions are locked, they stay in the map until
+	 * their files were deleted by {@link #dropSessions(ArrayList)}. Sessions
+	 * which are loaded or bound by a thread are skipped. Must be called while
+	 * holding the registry lock.
+	 *
+	 * @param pCount Number of sessions to drop
+	 * @param pDropped List to which the selected sessions are added
+	 */
+	private void selectDroppedSessions(int pCount, ArrayList<TopologySession> pDropped) {
+		// Iteration order is least recently used first
+		Iterator<TopologySession> itSessions = sessions.values().iterator();
+		while(itSessions.hasNext() && pDropped.size() < pCount) {
+			TopologySession session = itSessions.next();
+
+			if(session != defaultSession && !session.isLoaded() && session.tryLock()) {
+				pDropped.add(session);
+			}
+		}
+	}
+
+
+	/**
+	 * Delete the files of the provided sessions, remove them from the map and
+	 * release their locks. Must not be called while holding the registry
+	 * lock.
+	 *
+	 * @param pDropped Sessions selected by
+	 *            {@link #selectDroppedSessions(int, ArrayList)}
+	 */
+	private void dropSessions(ArrayList<TopologySession> pDropped) {
+		for(TopologySession session : pDropped) {
+			try {
+				session.drop();
+			}
+			catch(Throwable ex) {
+				TEBackend.logException(ex, log);
+			}
+			finally {
+				lock.lock();
+
+				try {
+					if(sessions.get(session.getSessionID()) == session) {
+						sessions.remove(session.getSessionID());
+					}
+				}
+				finally {
+					lock.unlock();
+				}
+
+				session.unlock();
+			}
+		}
+	}
+
+
+	/**
+	 * Add the sessions which have a snapshot file or a TDB database on disk to
+	 * the map, least recently modified first. This way the session limit
+	 * includes the sessions of earlier runs of the backend. Sessions exceeding
+	 * the limit are dropped.
+	 *
+	 * @throws IOException if the directories cannot be read
+	 */
+	private void registerStoredSessions() throws IOException {
+		final HashMap<String, Long> stored = new HashMap<>();
+
+		try(DirectoryStream<Path> snapshots = Files.newDirectoryStream(snapshotPath, "*.rdf")) {
+			for(Path file : snapshots) {
+				String name = file.getFileName().toString();
+				addStoredSession(stored, name.substring(0, name.length() - 4), file);
+			}
+		}
+
+		Path tdbPath = Paths.get(tdbLocation + "_sessions");
+		if(Files.isDirectory(tdbPath)) {
+			try(DirectoryStream<Path> databases = Files.newDirectoryStream(tdbPath)) {
+				for(Path dir : databases) {
+					addStoredSession(stored, dir.getFileName().toString(), dir);
+				}
+			}
+		}
+
+		ArrayList<String> ids = new ArrayList<>(stored.keySet());
+		Collections.sort(ids, new Comparator<String>() {
+			@Override
+			public int compare(String pID1, String pID2) {
+				return stored.get(pID1).compareTo(stored.get(pID2));
+			}
+		});
+
+		for(String id : ids) {
+			sessions.put(id, new TopologySession(id, getTDBLocation(id), getSnapshotFile(id)));
+		}
+
+		if(log.isInfoEnabled() && !ids.isEmpty()) {
+			StringBuilder sb = new StringBuilder("Stored sessions found: ");
+			sb.append(ids.size());
+			log.info(sb.toString());
+		}
+
+		ArrayList<TopologySession> dropped = new ArrayList<>();
+
+		lock.lock();
+
+		try {
+			selectDroppedSessions(sessions.size() - maxSessions, dropped);
+		}
+		finally {
+			lock.unlock();
+		}
+
+		dropSessions(dropped);
+	}
+
+
+	/**
+	 * Add a session found on disk to the provided map, the most recent
+	 * modification time of its files is stored
+	 *
+	 * @param pStored Map of session IDs and modification times
+	 * @param pSessionID ID of the session
+	 * @param pFile Snapshot file or TDB directory of the session
+	 * @throws IOException if the modification time cannot be read
+	 */
+	private void addStoredSession(Map<String, Long> pStored, String pSessionID, Path pFile) throws IOException {
+		if(isValidSessionID(pSessionID) && !DEFAULT_SESSION.equals(pSessionID)) {
+			long modified = Files.getLastModifiedTime(pFile).toMillis();
+			Long known = pStored.get(pSessionID);
+
+			if(known == null || known < modified) {
+				pStored.put(pSessionID, modified);
+			}
+		}
+	}
+
+
+	/**
+	 * Return the location of the TDB database of a session
+	 *
+	 * @param pSessionID ID of the session
+	 * @return Location of the TDB database
+	 */
+	private String getTDBLocation(String pSessionID) {
+		return tdbLocation + "_sessions/" + pSessionID;
+	}
+
+
+	/**
+	 * Return the path of the snapshot file of a session
+	 *
+	 * @param pSessionID ID of the session
+	 * @return Path of the snapshot file
+	 */
+	private Path getSnapshotFile(String pSessionID) {
+		return snapshotPath.resolve(pSessionID + ".rdf");
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.session;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+import de.decoit.visa.http.ajax.ModificationQueue;
+import de.decoit.visa.rdf.RDFManager;
+import de.decoit.visa.rdf.RDFSourceException;
+import de.decoit.visa.topology.TopologyStorage;
+
+
+/**
+ * This class stores the state of a single topology session: its topology
+ * storage, its RDF manager and its modification queues. A session can be
+ * evicted from memory, in that case its RDF model is written to a RDF/XML
+ * snapshot file and the storage and RDF manager are released. The session is
+ * restored from the snapshot the next time it is loaded. An evicted session
+ * can be dropped, which deletes its snapshot and TDB database.<br>
+ * <br>
+ * Sessions are managed by the {@link SessionRegistry}, all methods which
+ * change the loaded state must only be called while holding the lock of the
+ * session and with the session bound to the calling thread.
+ *
+ * @author Thomas Rix
+ */
+public class TopologySession {
+	private static Logger log = Logger.getLogger(TopologySession.class.getName());
+
+	private String sessionID;
+	private String tdbLocation;
+	private Path snapshotFile;
+	private Path backupFile;
+	private ReentrantLock lock;
+	private volatile TopologyStorage storage;
+	private volatile RDFManager rdfManager;
+	private HashMap<String, ModificationQueue> modQueues;
+	private String topologyID;
+	private String topologyName;
+	private volatile long lastAccess;
+	private volatile boolean dropped;
+
+
+	/**
+	 * Construct a new session which is not loaded yet. It will be initialized
+	 * with an empty topology on the first call to {@link #load()}.
+	 *
+	 * @param pSessionID ID of the session
+	 * @param pTDBLocation Location of the TDB database used by this session
+	 * @param pSnapshotFile Path of the RDF/XML file used for snapshots of this
+	 *            session, the backup model is written next to it
+	 */
+	TopologySession(String pSessionID, String pTDBLocation, Path pSnapshotFile) {
+		sessionID = pSessionID;
+		tdbLocation = pTDBLocation;
+		snapshotFile = pSnapshotFile;
+		backupFile = (pSnapshotFile != null) ? pSnapshotFile.resolveSibling(pSnapshotFile.getFileName().toString() + ".backup") : null;
+		lock = new ReentrantLock();
+		storage = null;
+		rdfManager = null;
+		modQueues = new HashMap<>();
+		topologyID = null;
+		topologyName = null;
+		lastAccess = System.currentTimeMillis();
+		dropped = false;
+	}
+
+
+	/**
+	 * Construct a new session which uses an already existing topology storage
+	 * and RDF manager. This is used for the default session.
+	 *
+	 * @param pSessionID ID of the session
+	 * @param pStorage Topology storage of the session
+	 * @param pRDFManager RDF manager of the session
+	 */
+	TopologySession(String pSessionID, TopologyStorage pStorage, RDFManager pRDFManager) {
+		this(pSessionID, (String) null, (Path) null);
+
+		storage = pStorage;
+		rdfManager = pRDFManager;
+	}
+
+
+	/**
+	 * Return the ID of this session
+	 *
+	 * @return The ID of this session
+	 */
+	public String getSessionID() {
+		return sessionID;
+	}
+
+
+	/**
+	 * Return the topology storage of this session
+	 *
+	 * @return The topology storage, null if the session is not loaded
+	 */
+	public TopologyStorage getStorage() {
+		return storage;
+	}
+
+
+	/**
+	 * Return the RDF manager of this session
+	 *
+	 * @return The RDF manager, null if the session is not loaded
+	 */
+	public RDFManager getRDFManager() {
+		return rdfManager;
+	}
+
+
+	/**
+	 * Return the modification queue stored under the provided ID. If no such
+	 * queue exists, a new one will be created and returned.
+	 *
+	 * @param pQueueID ID for this queue
+	 * @return A modification queue using the provided ID
+	 */
+	public ModificationQueue getModificationQueue(String pQueueID) {
+		ModificationQueue rv = modQueues.get(pQueueID);
+
+		// Create new queue if no queue with the specified ID was found
+		if(rv == null) {
+			rv = new ModificationQueue(pQueueID);
+			modQueues.put(pQueueID, rv);
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Return whether the topology storage and RDF manager of this session are
+	 * present in memory
+	 *
+	 * @return true if the session is loaded, false if it was evicted
+	 */
+	public boolean isLoaded() {
+		return (storage != null && rdfManager != null);
+	}
+
+
+	/**
+	 * Return whether this session was dropped by {@link #drop()}. A dropped
+	 * session must not be used anymore.
+	 *
+	 * @return true if the session was dropped, false otherwise
+	 */
+	boolean isDropped() {
+		return dropped;
+	}
+
+
+	/**
+	 * Return the time of the last access to this session
+	 *
+	 * @return UNIX timestamp of the last access in milliseconds
+	 */
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+
+	/**
+	 * Update the time of the last access to the current time
+	 */
+	void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Acquire the lock of this session, blocks until it is available
+	 */
+	void lock() {
+		lock.lock();
+	}
+
+
+	/**
+	 * Acquire the lock of this session if it is not held by another thread
+	 *
+	 * @return true if the lock was acquired, false otherwise
+	 */
+	boolean tryLock() {
+		return lock.tryLock();
+	}
+
+
+	/**
+	 * Release the lock of this session
+	 */
+	void unlock() {
+		lock.unlock();
+	}
+
+
+	/**
+	 * Create the topology storage and RDF manager of this session. If a
+	 * snapshot was written by {@link #evict()} the topology is restored from
+	 * it, otherwise an empty topology is created. The session must be bound
+	 * to the calling thread.
+	 *
+	 * @throws IOException if the TDB database or the snapshot cannot be
+	 *             accessed
+	 * @throws RDFSourceException if the snapshot contains invalid RDF
+	 *             information
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	void load() throws IOException, RDFSourceException, ParserConfigurationException, SAXException {
+		if(!isLoaded()) {
+			Files.createDirectories(Paths.get(tdbLocation));
+
+			// Loading the snapshot fills the topology storage of the bound
+			// session, so both must be set before
+			rdfManager = new RDFManager(tdbLocation);
+			storage = TopologyStorage.createInstance();
+
+			try {
+				if(Files.exists(snapshotFile)) {
+					// Load a copy of the snapshot since the loaded file becomes
+					// a source file of the RDF manager and will be deleted
+					// when the model is cleared
+					Path workFile = snapshotFile.resolveSibling(snapshotFile.getFileName().toString() + ".loaded");
+					Files.copy(snapshotFile, workFile, StandardCopyOption.REPLACE_EXISTING);
+
+					rdfManager.loadRDF(workFile, true);
+
+					// Restore grid locations, port orientations and VLAN
+					// names and colors
+					if(Files.exists(backupFile)) {
+						rdfManager.loadBackupRDF(backupFile);
+					}
+				}
+				else {
+					rdfManager.createEmptyModel(topologyName != null ? topologyName : "VISA Default Model");
+				}
+
+				if(topologyID != null) {
+					storage.setTopologyID(topologyID);
+				}
+			}
+			catch(Throwable ex) {
+				rdfManager.close();
+				storage = null;
+				rdfManager = null;
+
+				throw ex;
+			}
+
+			if(log.isInfoEnabled()) {
+				StringBuilder sb = new StringBuilder("Session loaded: ");
+				sb.append(sessionID);
+				log.info(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Write the RDF model and the backup model of this session to its
+	 * snapshot files and release the topology storage and RDF manager. The
+	 * snapshot is written for every
+	 * loaded topology, including topologies which only contain VLANs and
+	 * networks or no objects at all, so their name is kept as well. Uploaded
+	 * source files of the session are deleted, so the restore history of the
+	 * session starts at the snapshot when it is loaded again.
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	void evict() throws IOException {
+		if(isLoaded()) {
+			rdfManager.flushDeferredUpdates();
+
+			// Write to a temporary file first, the loaded copy of the old
+			// snapshot is a source file of the RDF manager and will be deleted
+			// on close
+			Path tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName().toString() + ".tmp");
+			Path tmpBackupFile = backupFile.resolveSibling(backupFile.getFileName().toString() + ".tmp");
+			rdfManager.writeRDF(tmpFile);
+			rdfManager.writeBackupRDF(tmpBackupFile);
+
+			topologyID = storage.getTopologyID();
+			topologyName = rdfManager.getRootNodeName();
+
+			rdfManager.close();
+			storage = null;
+			rdfManager = null;
+
+			Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmpBackupFile, backupFile, StandardCopyOption.REPLACE_EXISTING);
+
+			if(log.isInfoEnabled()) {
+				StringBuilder sb = new StringBuilder("Session evicted: ");
+				sb.append(sessionID);
+				log.info(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Mark this session as dropped and delete its snapshot files and its TDB
+	 * database. Only evicted sessions can be dropped, the session must be
+	 * locked by the calling thread.
+	 *
+	 * @throws IOException if the files of the session cannot be deleted
+	 */
+	void drop() throws IOException {
+		if(isLoaded()) {
+			throw new IllegalStateException("Loaded sessions cannot be dropped");
+		}
+
+		dropped = true;
+
+		String name = snapshotFile.getFileName().toString();
+		Files.deleteIfExists(snapshotFile);
+		Files.deleteIfExists(snapshotFile.resolveSibling(name + ".loaded"));
+		Files.deleteIfExists(snapshotFile.resolveSibling(name + ".tmp"));
+		Files.deleteIfExists(backupFile);
+		Files.deleteIfExists(backupFile.resolveSibling(backupFile.getFileName().toString() + ".tmp"));
+
+		Path tdbPath = Paths.get(tdbLocation);
+		if(Files.exists(tdbPath)) {
+			Files.walkFileTree(tdbPath, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path pFile, BasicFileAttributes pAttrs) throws IOException {
+					Files.delete(pFile);
+					return FileVisitResult.CONTINUE;
+				}
+
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path pDir, IOException pEx) throws IOException {
+					if(pEx != null) {
+						throw pEx;
+					}
+
+					Files.delete(pDir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		if(log.isInfoEnabled()) {
+			StringBuilder sb = new StringBuilder("Session dropped: ");
+			sb.append(sessionID);
+			log.info(sb.toString());
+		}
+	}
+
+
+	/**
+	 * Release all resources of this session. A loaded session is written to
+	 * its snapshot file before, see {@link #evict()}, an existing snapshot is
+	 * kept. The default session has no snapshot and is only closed.
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	void close() throws IOException {
+		if(snapshotFile != null) {
+			evict();
+		}
+		else if(isLoaded()) {
+			rdfManager.close();
+			storage = null;
+			rdfManager = null;
+		}
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.topology;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import de.decoit.visa.Dimension2D;
+import de.decoit.visa.Position2D;
+
+
+/**
+ * This class stores which cells of an editor grid are occupied by the
+ * dragboxes of the objects placed on it. Every cell holds the number of
+ * dragboxes covering it, so overlapping objects are allowed and removing one
+ * of them does not free the cells of the others.<br>
+ * <br>
+ * The counts are kept in a two-dimensional binary indexed tree supporting
+ * range updates and range queries. Placing, moving or removing an object and
+ * checking if an area is free take O(log(width) * log(height)) time,
+ * independent of the number of objects and the size of their dragboxes.
+ * Dragboxes reaching beyond the grid border are clipped to the grid.
+ *
+ * @author Thomas Rix
+ */
+class GridOccupancy {
+	private int width;
+	private int height;
+	private int[][] tree;
+	private int[][] treeX;
+	private int[][] treeY;
+	private int[][] treeXY;
+	private HashMap<String, int[]> objects;
+
+
+	/**
+	 * Construct a new, empty index for a grid with the provided dimensions
+	 *
+	 * @param pGridDimensions Dimensions of the grid, cannot be null
+	 */
+	GridOccupancy(Dimension2D pGridDimensions) {
+		if(pGridDimensions == null) {
+			throw new NullPointerException("NULL pointer for grid dimensions");
+		}
+
+		width = pGridDimensions.getX();
+		height = pGridDimensions.getY();
+
+		tree = new int[width + 1][height + 1];
+		treeX = new int[width + 1][height + 1];
+		treeY = new int[width + 1][height + 1];
+		treeXY = new int[width + 1][height + 1];
+
+		objects = new HashMap<>();
+	}
+
+
+	/**
+	 * Place an object with the provided dragbox on the grid. If the object was
+	 * placed before, its old dragbox is removed first.
+	 *
+	 * @param pID Identifier of the object
+	 * @param pLocation Location of the upper left corner of the dragbox
+	 * @param pDimensions Dimensions of the dragbox
+	 */
+	void place(String pID, Position2D pLocation, Dimension2D pDimensions) {
+		remove(pID);
+
+		int[] rect = clip(pLocation, pDimensions);
+		if(rect != null) {
+			addRange(rect, 1);
+			objects.put(pID, rect);
+		}
+	}
+
+
+	/**
+	 * Remove an object from the grid. Unknown identifiers are ignored.
+	 *
+	 * @param pID Identifier of the object
+	 */
+	void remove(String pID) {
+		int[] rect = objects.remove(pID);
+		if(rect != null) {
+			addRange(rect, -1);
+		}
+	}
+
+
+	/**
+	 * Check if the provided area is not covered by any object except the
+	 * ignored one
+	 *
+	 * @param pLocation Location of the upper left corner of the area
+	 * @param pDimensions Dimensions of the area
+	 * @param pIgnoreID Identifier of an object which is not taken into
+	 *            account, usually the object which is about to be moved, may
+	 *            be null
+	 * @return true if the area is free, false otherwise
+	 */
+	boolean isFree(Position2D pLocation, Dimension2D pDimensions, String pIgnoreID) {
+		int[] rect = clip(pLocation, pDimensions);
+
+		if(rect == null) {
+			return true;
+		}
+
+		long covered = rangeSum(rect);
+
+		if(pIgnoreID != null) {
+			int[] ignored = objects.get(pIgnoreID);
+			if(ignored != null) {
+				covered -= intersection(rect, ignored);
+			}
+		}
+
+		return (covered == 0);
+	}
+
+
+	/**
+	 * Return the identifiers of all objects covering at least one cell of the
+	 * provided area. A free area is detected in logarithmic time, otherwise
+	 * all placed objects are checked.
+	 *
+	 * @param pLocation Location of the upper left corner of the area
+	 * @param pDimensions Dimensions of the area
+	 * @param pIgnoreID Identifier of an object which is not taken into
+	 *            account, may be null
+	 * @return Sorted set of the identifiers, empty if the area is free
+	 */
+	TreeSet<String> getOverlapping(Position2D pLocation, Dimension2D pDimensions, String pIgnoreID) {
+		TreeSet<String> rv = new TreeSet<>();
+
+		if(!isFree(pLocation, pDimensions, pIgnoreID)) {
+			int[] rect = clip(pLocation, pDimensions);
+
+			for(Map.Entry<String, int[]> objEntry : objects.entrySet()) {
+				if(!objEntry.getKey().equals(pIgnoreID) && intersection(rect, objEntry.getValue()) > 0) {
+					rv.add(objEntry.getKey());
+				}
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Find a location where a dragbox with the provided dimensions fits
+	 * completely into the grid without covering any placed object. The
+	 * candidate locations are checked in rings of growing distance around the
+	 * preferred location, so the nearest free location is returned.
+	 *
+	 * @param pDimensions Dimensions of the dragbox
+	 * @param pNear Preferred location of the upper left corner, null for the
+	 *            upper left corner of the grid
+	 * @return The free location, null if the grid has no free area of that size
+	 */
+	Position2D findFreeLocation(Dimension2D pDimensions, Position2D pNear) {
+		int maxX = width - pDimensions.getX();
+		int maxY = height - pDimensions.getY();
+
+		if(maxX < 0 || maxY < 0) {
+			return null;
+		}
+
+		int startX = 0;
+		int startY = 0;
+		if(pNear != null) {
+			startX = Math.max(0, Math.min(pNear.getX(), maxX));
+			startY = Math.max(0, Math.min(pNear.getY(), maxY));
+		}
+
+		int maxDistance = Math.max(Math.max(startX, maxX - startX), Math.max(startY, maxY - startY));
+
+		for(int d = 0; d <= maxDistance; d++) {
+			for(int y = Math.max(0, startY - d); y <= Math.min(maxY, startY + d); y++) {
+				// Inner rows of the ring only contain the left and right cell
+				boolean edgeRow = (y == startY - d || y == startY + d);
+				int stepX = edgeRow ? 1 : Math.max(1, 2 * d);
+
+				for(int x = startX - d; x <= startX + d; x += stepX) {
+					if(x >= 0 && x <= maxX && rangeSum(new int[] { x, y, x + pDimensions.getX() - 1, y + pDimensions.getY() - 1 }) == 0) {
+						return new Position2D(x, y);
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Clip the provided dragbox to the grid
+	 *
+	 * @param pLocation Location of the upper left corner
+	 * @param pDimensions Dimensions of the dragbox
+	 * @return Inclusive cell coordinates {x1, y1, x2, y2}, null if no cell of
+	 *         the grid is covered
+	 */
+	private int[] clip(Position2D pLocation, Dimension2D pDimensions) {
+		int x1 = Math.max(0, pLocation.getX());
+		int y1 = Math.max(0, pLocation.getY());
+		int x2 = Math.min(width - 1, pLocation.getX() + pDimensions.getX() - 1);
+		int y2 = Math.min(height - 1, pLocation.getY() + pDimensions.getY() - 1);
+
+		if(x1 > x2 || y1 > y2) {
+			return null;
+		}
+
+		return new int[] { x1, y1, x2, y2 };
+	}
+
+
+	/**
+	 * Return the number of cells two clipped rectangles have in common
+	 *
+	 * @param pA First rectangle
+	 * @param pB Second rectangle
+	 * @return Number of common cells
+	 */
+	private long intersection(int[] pA, int[] pB) {
+		long w = Math.min(pA[2], pB[2]) - Math.max(pA[0], pB[0]) + 1;
+		long h = Math.min(pA[3], pB[3]) - Math.max(pA[1], pB[1]) + 1;
+
+		return (w > 0 && h > 0) ? w * h : 0;
+	}
+
+
+	/**
+	 * Add a value to the count of all cells inside a clipped rectangle
+	 *
+	 * @param pRect The rectangle
+	 * @param pValue Value to add
+	 */
+	private void addRange(int[] pRect, int pValue) {
+		// The trees are indexed from 1
+		update(pRect[0] + 1, pRect[1] + 1, pValue);
+		update(pRect[0] + 1, pRect[3] + 2, -pValue);
+		update(pRect[2] + 2, pRect[1] + 1, -pValue);
+		update(pRect[2] + 2, pRect[3] + 2, pValue);
+	}
+
+
+	/**
+	 * Return the sum of the counts of all cells inside a clipped rectangle
+	 *
+	 * @param pRect The rectangle
+	 * @return Sum of the counts
+	 */
+	private long rangeSum(int[] pRect) {
+		return prefixSum(pRect[2] + 1, pRect[3] + 1) - prefixSum(pRect[0], pRect[3] + 1) - prefixSum(pRect[2] + 1, pRect[1]) + prefixSum(pRect[0], pRect[1]);
+	}
+
+
+	/**
+	 * Add a value to the difference array at the provided index
+	 *
+	 * @param pX Horizontal index, starting at 1
+	 * @param pY Vertical index, starting at 1
+	 * @param pValue Value to add
+	 */
+	private void update(int pX, int pY, int pValue) {
+		for(int i = pX; i <= width; i += i & -i) {
+			for(int j = pY; j <= height; j += j & -j) {
+				tree[i][j] += pValue;
+				treeX[i][j] += pValue * pX;
+				treeY[i][j] += pValue * pY;
+				treeXY[i][j] += pValue * pX * pY;
+			}
+		}
+	}
+
+
+	/**
+	 * Return the sum of the counts of all cells from index (1, 1) to the
+	 * provided index
+	 *
+	 * @param pX Horizontal index, starting at 1
+	 * @param pY Vertical index, starting at 1
+	 * @return Sum of the counts
+	 */
+	private long prefixSum(int pX, int pY) {
+		long s = 0;
+		long sX = 0;
+		long sY = 0;
+		long sXY = 0;
+
+		for(int i = pX; i > 0; i -= i & -i) {
+			for(int j = pY; j > 0; j -= j & -j) {
+				s += tree[i][j];
+				sX += treeX[i][j];
+				sY += treeY[i][j];
+				sXY += treeXY[i][j];
+			}
+		}
+
+		return (pX + 1L) * (pY + 1L) * s - (pY + 1L) * sX - (pX + 1L) * sY + sXY;
+	}
+}
@@ -19,12 +19,14 @@
 
 package de.decoit.visa.topology;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.Dimension2D;
 import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
@@ -32,6 +34,7 @@ import de.decoit.visa.enums.PortOrientation;
 import de.decoit.visa.interfaces.IJSON;
 import de.decoit.visa.interfaces.INetworkInterface;
 import de.decoit.visa.interfaces.IRDFObject;
+import de.decoit.visa.json.JSONStreamWriter;
 import de.decoit.visa.topology.TopologyStorage.ComponentGroup;
 import de.decoit.visa.topology.TopologyStorage.ComponentGroup.GroupInterface;
 
@@ -49,7 +52,7 @@ public class NCSwitch extends NetworkComponent {
 	 * Type string used to build the local name for new components
 	 */
 	public static final String TYPE = "switch";
-	private static int nextVIfID = 1;
+	private static final AtomicInteger nextVIfID = new AtomicInteger(1);
 
 	private HashMap<String, GroupSwitch> groupSwitches;
 	private HashMap<String, VirtualInterface> virtualInterfaces;
@@ -171,6 +174,18 @@ public class NCSwitch extends NetworkComponent {
 	}
 
 
+	/**
+	 * Return the real interfaces of this switch. Interfaces which were moved
+	 * to a group switch are displayed on the group switch.
+	 *
+	 * @return The real interfaces of this switch
+	 */
+	@Override
+	protected Collection<Interface> getDisplayedInterfaces() {
+		return realInterfaces.values();
+	}
+
+
 	/**
 	 * Get the group switch for the specified group
 	 *
@@ -200,32 +215,33 @@ public class NCSwitch extends NetworkComponent {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		// Get the JSONObject of the NetworkComponent
-		JSONObject rv = super.toJSON();
+	protected void writeJSONMembers(JSONStreamWriter pWriter) throws IOException, JSONException {
+		// Write the members of the NetworkComponent
+		super.writeJSONMembers(pWriter);
 
-		// Add the virtual interfaces to the JSONObject
-		JSONObject vIfJSON = new JSONObject();
+		// Add the virtual interfaces
+		pWriter.key("virtIf").beginObject();
 		for(Map.Entry<String, VirtualInterface> vIfEntry : virtualInterfaces.entrySet()) {
-			vIfJSON.put(vIfEntry.getKey(), vIfEntry.getValue().toJSON());
+			pWriter.key(vIfEntry.getKey());
+			vIfEntry.getValue().writeJSON(pWriter);
 		}
-		rv.put("virtIf", vIfJSON);
+		pWriter.endObject();
 
-		// Add the real interfaces to the JSONObject
-		JSONObject rIfJSON = new JSONObject();
+		// Add the real interfaces
+		pWriter.key("realIf").beginObject();
 		for(Map.Entry<String, Interface> rIfEntry : realInterfaces.entrySet()) {
-			rIfJSON.put(rIfEntry.getKey(), rIfEntry.getValue().toJSON());
+			pWriter.key(rIfEntry.getKey());
+			rIfEntry.getValue().writeJSON(pWriter);
 		}
-		rv.put("realIf", rIfJSON);
+		pWriter.endObject();
 
-		// Add the group switches to the JSONObject
-		JSONObject gsJSON = new JSONObject();
+		// Add the group switches
+		pWriter.key("groupSwitches").beginObject();
 		for(Map.Entry<String, GroupSwitch> gsEntry : groupSwitches.entrySet()) {
-			gsJSON.put(gsEntry.getKey(), gsEntry.getValue().toJSON());
+			pWriter.key(gsEntry.getKey());
+			gsEntry.getValue().writeJSON(pWriter);
 		}
-		rv.put("groupSwitches", gsJSON);
-
-		return rv;
+		pWriter.endObject();
 	}
 
 
@@ -251,7 +267,7 @@ public class NCSwitch extends NetworkComponent {
 		 */
 		private VirtualInterface(String pGroup) {
 			StringBuilder sbLocName = new StringBuilder("vIf_");
-			sbLocName.append(nextVIfID);
+			sbLocName.append(nextVIfID.getAndIncrement());
 			sbLocName.append("_");
 			sbLocName.append(getOuterType().localName);
 			localName = sbLocName.toString();
@@ -263,8 +279,6 @@ public class NCSwitch extends NetworkComponent {
 				throw new IllegalArgumentException("Empty group name provided");
 			}
 
-			nextVIfID++;
-
 			connectedTo = null;
 
 			orientation = PortOrientation.TOP;
@@ -367,18 +381,17 @@ public class NCSwitch extends NetworkComponent {
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
-
-			rv.put("identifier", localName);
-			rv.put("orientation", orientation.toString());
-			rv.put("isVirtual", true);
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+			pWriter.beginObject();
+			pWriter.key("identifier").value(localName);
+			pWriter.key("orientation").value(orientation.toString());
+			pWriter.key("isVirtual").value(true);
 
 			if(connectedTo != null) {
-				rv.put("connectedTo", connectedTo.getRDFLocalName());
+				pWriter.key("connectedTo").value(connectedTo.getRDFLocalName());
 			}
 
-			return rv;
+			pWriter.endObject();
 		}
 
 
@@ -465,7 +478,7 @@ public class NCSwitch extends NetworkComponent {
 			componentInterfaceOffset = null;
 			gridLocation = null;
 
-			ComponentGroup cg = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(pGroup);
+			ComponentGroup cg = TEBackend.getTopologyStorage().getComponentGroupByName(pGroup);
 
 			if(getOuterType().equals(pSwitchVI.getOuterType())) {
 				GroupInterface gi = cg.createOuterConnection(virtInterface, pSwitchVI);
@@ -488,7 +501,7 @@ public class NCSwitch extends NetworkComponent {
 
 			calcDragboxDimensions();
 
-			TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(pGroup).addGroupSwitch(this);
+			TEBackend.getTopologyStorage().getComponentGroupByName(pGroup).addGroupSwitch(this);
 		}
 
 
@@ -509,7 +522,9 @@ public class NCSwitch extends NetworkComponent {
 		 * @param pY vertical position
 		 */
 		public void setGridLocation(int pX, int pY) {
-			gridLocation = new Position2D(pX, pY, TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(groupName).getSubgridDimensions());
+			gridLocation = new Position2D(pX, pY, TEBackend.getTopologyStorage().getComponentGroupByName(groupName).getSubgridDimensions());
+
+			TEBackend.getTopologyStorage().updateOccupancy(groupName, localName, gridLocation, dragboxDimensions);
 
 			if(log.isDebugEnabled()) {
 				StringBuilder sb = new StringBuilder("Component relocated to x=");
@@ -521,6 +536,22 @@ public class NCSwitch extends NetworkComponent {
 		}
 
 
+		/**
+		 * Set a new grid location for this group switch and record the
+		 * relocation, see
+		 * {@link de.decoit.visa.rdf.RDFManager#updateLocationDeferred(GroupSwitch)
+		 * RDFManager.updateLocationDeferred()}.
+		 *
+		 * @param pX Horizontal position
+		 * @param pY vertical position
+		 */
+		public void setGridLocationDeferred(int pX, int pY) {
+			setGridLocation(pX, pY);
+
+			TEBackend.getRDFManager().updateLocationDeferred(this);
+		}
+
+
 		/**
 		 * Return the current grid location
 		 *
@@ -541,6 +572,51 @@ public class NCSwitch extends NetworkComponent {
 		}
 
 
+		/**
+		 * Return the dimensions of the group switch itself
+		 *
+		 * @return The dimensions of the group switch
+		 */
+		public Dimension2D getComponentDimensions() {
+			return componentDimensions;
+		}
+
+
+		/**
+		 * Return the location of the group switch itself, that is the grid
+		 * location of the dragbox plus the offset of the group switch inside
+		 * the dragbox
+		 *
+		 * @return The location of the group switch, null if no grid location
+		 *         is set
+		 */
+		public Position2D getComponentLocation() {
+			if(gridLocation == null) {
+				return null;
+			}
+
+			return new Position2D(gridLocation.getX() + componentInterfaceOffset.getX(), gridLocation.getY() + componentInterfaceOffset.getY());
+		}
+
+
+		/**
+		 * Return the location of the port connector of an interface on the
+		 * grid of the group, see
+		 * {@link NetworkComponent#getPortLocation(Interface)}
+		 *
+		 * @param pIf Interface moved to this group switch
+		 * @return The location of the port connector, null if the group switch
+		 *         has no grid location or the interface is not displayed on it
+		 */
+		public Position2D getPortLocation(Interface pIf) {
+			if(gridLocation == null) {
+				return null;
+			}
+
+			return NetworkComponent.locatePort(getComponentLocation(), componentDimensions, interfaces, pIf);
+		}
+
+
 		/**
 		 * Return the local name of the NCSwitch object that contains this
 		 * group switch.
@@ -572,48 +648,52 @@ public class NCSwitch extends NetworkComponent {
 				getOuterType().realInterfaces.put(iface.getRDFLocalName(), iface);
 			}
 
-			TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(groupName).removeGroupSwitch(this);
+			TEBackend.getTopologyStorage().getComponentGroupByName(groupName).removeGroupSwitch(this);
 
 			getOuterType().virtualInterfaces.remove(virtInterface.connectedTo.getOuterConnection());
 		}
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
-
-			rv.put("identifier", localName);
-			rv.put("isSwitch", true);
-			rv.put("isGroupSwitch", true);
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+			pWriter.beginObject();
+			pWriter.key("identifier").value(localName);
+			pWriter.key("isSwitch").value(true);
+			pWriter.key("isGroupSwitch").value(true);
 
 			StringBuilder sb = new StringBuilder("Group switch for '");
 			sb.append(groupName);
 			sb.append("' of '");
 			sb.append(getOuterType().name);
 			sb.append("'");
-			rv.put("name", sb.toString());
-
-			JSONObject confJSON = new JSONObject();
-			confJSON.put("compOffset", componentInterfaceOffset.toJSON());
-			confJSON.put("compDim", componentDimensions.toJSON());
-			confJSON.put("dragDim", dragboxDimensions.toJSON());
-			confJSON.put("gloc", gridLocation.toJSON());
-
-			// Add the virtual interface to the JSONObject
-			JSONObject vIfJSON = new JSONObject();
-			vIfJSON.put(virtInterface.getRDFLocalName(), virtInterface.toJSON());
-			rv.put("virtIf", vIfJSON);
-
-			// Add the real interfaces to the JSONObject
-			JSONObject rIfJSON = new JSONObject();
+			pWriter.key("name").value(sb.toString());
+
+			pWriter.key("config").beginObject();
+			pWriter.key("compOffset");
+			componentInterfaceOffset.writeJSON(pWriter);
+			pWriter.key("compDim");
+			componentDimensions.writeJSON(pWriter);
+			pWriter.key("dragDim");
+			dragboxDimensions.writeJSON(pWriter);
+			pWriter.key("gloc");
+			gridLocation.writeJSON(pWriter);
+			pWriter.endObject();
+
+			// Add the virtual interface
+			pWriter.key("virtIf").beginObject();
+			pWriter.key(virtInterface.getRDFLocalName());
+			virtInterface.writeJSON(pWriter);
+			pWriter.endObject();
+
+			// Add the real interfaces
+			pWriter.key("realIf").beginObject();
 			for(Interface rIfEntry : interfaces) {
-				rIfJSON.put(rIfEntry.getIdentifier(), rIfEntry.toJSON());
+				pWriter.key(rIfEntry.getIdentifier());
+				rIfEntry.writeJSON(pWriter);
 			}
-			rv.put("realIf", rIfJSON);
-
-			rv.put("config", confJSON);
+			pWriter.endObject();
 
-			return rv;
+			pWriter.endObject();
 		}
 
 
@@ -688,7 +768,7 @@ public class NCSwitch extends NetworkComponent {
 
 			ori = PortOrientation.TOP;
 			virtInterface.setOrientation(PortOrientation.BOTTOM);
-			componentDimensions = new Dimension2D(interfaces.size(), 3);
+			componentDimensions = Dimension2D.valueOf(interfaces.size(), 3);
 
 			// Calculate dragbox dimensions, add 2 at the end to make sure
 			// components cannot form an impassable wall
@@ -724,9 +804,11 @@ public class NCSwitch extends NetworkComponent {
 				}
 			}
 
-			dragboxDimensions = new Dimension2D(x, y);
+			dragboxDimensions = Dimension2D.valueOf(x, y);
 			componentInterfaceOffset = new Position2D(ifOffsetX, ifOffsetY);
 
+			TEBackend.getTopologyStorage().invalidateOccupancy(groupName);
+
 			if(log.isDebugEnabled()) {
 				StringBuilder sb = new StringBuilder("Dragbox resized to x=");
 				sb.append(dragboxDimensions.getX());
@@ -19,12 +19,13 @@
 
 package de.decoit.visa.topology;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.Dimension2D;
 import de.decoit.visa.Position2D;
+import de.decoit.visa.json.JSONStreamWriter;
 
 
 /**
@@ -85,12 +86,10 @@ public class NCVM extends NetworkComponent {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		// Get the JSONObject of the NetworkComponent
-		JSONObject rv = super.toJSON();
+	protected void writeJSONMembers(JSONStreamWriter pWriter) throws IOException, JSONException {
+		// Write the members of the NetworkComponent
+		super.writeJSONMembers(pWriter);
 
-		rv.put("isVirtual", true);
-
-		return rv;
+		pWriter.key("isVirtual").value(true);
 	}
 }
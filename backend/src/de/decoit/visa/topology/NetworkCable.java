@@ -19,15 +19,15 @@
 
 package de.decoit.visa.topology;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import org.apache.log4j.Logger;
-import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.enums.CableEnd;
 import de.decoit.visa.interfaces.IRemovableComponent;
 import de.decoit.visa.interfaces.ITopologyElement;
+import de.decoit.visa.json.JSONStreamWriter;
 import de.decoit.visa.topology.TopologyStorage.ComponentGroup.GroupInterface;
 
 
@@ -186,11 +186,11 @@ public class NetworkCable implements ITopologyElement, IRemovableComponent {
 	 */
 	public void setGroupName(String pGroup) {
 		if(!pGroup.isEmpty()) {
-			TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(groupName).removeCable(this);
+			TEBackend.getTopologyStorage().getComponentGroupByName(groupName).removeCable(this);
 
 			groupName = pGroup;
 
-			TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(groupName).addCable(this);
+			TEBackend.getTopologyStorage().getComponentGroupByName(groupName).addCable(this);
 		}
 		else {
 			throw new IllegalArgumentException("Empty group name provided");
@@ -211,7 +211,7 @@ public class NetworkCable implements ITopologyElement, IRemovableComponent {
 	// Inherited from IRemovableComponent
 	@Override
 	public void removeFromTopology() {
-		TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(groupName).removeCable(this);
+		TEBackend.getTopologyStorage().getComponentGroupByName(groupName).removeCable(this);
 
 		if(groupGateway != null) {
 			groupGateway.removeFromGroup();
@@ -219,7 +219,7 @@ public class NetworkCable implements ITopologyElement, IRemovableComponent {
 		}
 
 		if(left != null) {
-			TEBackend.RDF_MANAGER.removeConnectedProperty(left);
+			TEBackend.getRDFManager().removeConnectedProperty(left);
 
 			left.disconnect();
 			left = null;
@@ -232,25 +232,25 @@ public class NetworkCable implements ITopologyElement, IRemovableComponent {
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("identifier", getIdentifier());
-		rv.put("left", left.getIdentifier());
-		rv.put("right", right.getIdentifier());
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+		pWriter.beginObject();
+		pWriter.key("identifier").value(getIdentifier());
+		pWriter.key("left").value(left.getIdentifier());
+		pWriter.key("right").value(right.getIdentifier());
 		if(groupGateway != null) {
-			rv.put("via", groupGateway.getRDFLocalName());
+			pWriter.key("via").value(groupGateway.getRDFLocalName());
 		}
 
-		JSONObject pathJSON = new JSONObject();
+		pWriter.key("path").beginObject();
 		int i = 0;
 		for(Position2D pos : pathCorners) {
-			pathJSON.put(String.valueOf(i), pos.toJSON());
+			pWriter.key(String.valueOf(i));
+			pos.writeJSON(pWriter);
+			i++;
 		}
+		pWriter.endObject();
 
-		rv.put("path", pathJSON);
-
-		return rv;
+		pWriter.endObject();
 	}
 
 
@@ -19,10 +19,13 @@
 
 package de.decoit.visa.topology;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -30,7 +33,6 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.Dimension2D;
 import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
@@ -42,6 +44,7 @@ import de.decoit.visa.interfaces.INetworkInterface;
 import de.decoit.visa.interfaces.IRDFObject;
 import de.decoit.visa.interfaces.IRemovableComponent;
 import de.decoit.visa.interfaces.ITopologyElement;
+import de.decoit.visa.json.JSONStreamWriter;
 import de.decoit.visa.net.IPAddress;
 import de.decoit.visa.net.IPNetwork;
 import de.decoit.visa.rdf.VISA;
@@ -95,10 +98,10 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 		config = new NetworkComponent.ComponentConfig(pPortInfo.size(), pPortInfo, pCompDimensions, pGridLoc);
 
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_LOC_X);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_LOC_Y);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_DIM_X);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_DIM_Y);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_LOC_X);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_LOC_Y);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_DIM_X);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_DIM_Y);
 	}
 
 
@@ -129,10 +132,10 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 		config = new NetworkComponent.ComponentConfig(pPortInfo, pCompDimensions, pGridLoc);
 
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_LOC_X);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_LOC_Y);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_DIM_X);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.COMP_DIM_Y);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_LOC_X);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_LOC_Y);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_DIM_X);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.COMP_DIM_Y);
 	}
 
 
@@ -145,7 +148,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		if(pName != null) {
 			if(!pName.isEmpty()) {
 				name = pName.replaceAll("\\$ID\\$", Integer.toString(id));
-				TEBackend.RDF_MANAGER.updateProperty(this, VISA.NAME);
+				TEBackend.getRDFManager().updateProperty(this, VISA.NAME);
 			}
 			else {
 				throw new IllegalArgumentException("Empty name provided");
@@ -177,6 +180,93 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 	}
 
 
+	/**
+	 * Return the location of the port connector of an interface on the editor
+	 * grid. The location is calculated in the same way as the frontend places
+	 * the port connectors: The interfaces are distributed along the side of
+	 * the component given by their orientation, in the order they are sent to
+	 * the frontend.
+	 *
+	 * @param pIf Interface of this component
+	 * @return The location of the port connector, null if the component has no
+	 *         grid location or the interface is not displayed on it
+	 */
+	public Position2D getPortLocation(Interface pIf) {
+		if(config.getGridLocation() == null) {
+			return null;
+		}
+
+		return locatePort(config.getComponentLocation(), config.getComponentDimensions(), getDisplayedInterfaces(), pIf);
+	}
+
+
+	/**
+	 * Return the interfaces displayed on this component in the order they are
+	 * sent to the frontend
+	 *
+	 * @return The displayed interfaces
+	 */
+	protected Collection<Interface> getDisplayedInterfaces() {
+		return config.ports.values();
+	}
+
+
+	/**
+	 * Calculate the location of the port connector of an interface, see
+	 * {@link #getPortLocation(Interface)}
+	 *
+	 * @param pCompLoc Location of the upper left corner of the component
+	 * @param pCompDim Dimensions of the component
+	 * @param pInterfaces Interfaces displayed on the component, in the order
+	 *            they are sent to the frontend
+	 * @param pIf Interface to locate
+	 * @return The location of the port connector, null if the interface is not
+	 *         displayed on the component
+	 */
+	static Position2D locatePort(Position2D pCompLoc, Dimension2D pCompDim, Collection<Interface> pInterfaces, Interface pIf) {
+		int top = 0;
+		int left = 0;
+		int right = 0;
+		int bottom = 0;
+
+		for(Interface iface : pInterfaces) {
+			PortOrientation ori = iface.getOrientation();
+
+			if(iface.equals(pIf)) {
+				switch(ori) {
+					case TOP:
+						return new Position2D(pCompLoc.getX() + top, pCompLoc.getY() - 1);
+					case LEFT:
+						return new Position2D(pCompLoc.getX() - 1, pCompLoc.getY() + pCompDim.getY() - 1 - left);
+					case RIGHT:
+						return new Position2D(pCompLoc.getX() + pCompDim.getX(), pCompLoc.getY() + right);
+					case BOTTOM:
+						return new Position2D(pCompLoc.getX() + pCompDim.getX() - 1 - bottom, pCompLoc.getY() + pCompDim.getY());
+					default:
+						throw new IllegalStateException("Unknown interface orientation");
+				}
+			}
+
+			switch(ori) {
+				case TOP:
+					top++;
+					break;
+				case LEFT:
+					left++;
+					break;
+				case RIGHT:
+					right++;
+					break;
+				case BOTTOM:
+					bottom++;
+					break;
+			}
+		}
+
+		return null;
+	}
+
+
 	@Override
 	public String getRDFLocalName() {
 		return localName;
@@ -193,37 +283,43 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 	public void removeFromTopology() {
 		objectBeingRemoved = true;
 
-		// TEBackend.TOPOLOGY_STORAGE.getComponentGroup(config.getComponentGroup()).removeComponent(this);
+		// TEBackend.getTopologyStorage().getComponentGroup(config.getComponentGroup()).removeComponent(this);
 
 		// Disconnect every NetworkPort and remove it from the topology storage
 		for(Map.Entry<String, NetworkComponent.Interface> entry : config.ports.entrySet()) {
-			TEBackend.TOPOLOGY_STORAGE.removeInterface(entry.getValue().getIdentifier());
+			TEBackend.getTopologyStorage().removeInterface(entry.getValue().getIdentifier());
 		}
 
 		// Remove this component from the RDF model
-		TEBackend.RDF_MANAGER.removeObject(this);
+		TEBackend.getRDFManager().removeObject(this);
 	}
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("id", id);
-		rv.put("identifier", localName);
-		rv.put("name", StringEscapeUtils.escapeHtml4(name));
-		rv.put("config", config.toJSON());
-
-		if(this instanceof NCSwitch) {
-			rv.put("isSwitch", true);
-		}
-		else {
-			rv.put("isSwitch", false);
-		}
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+		pWriter.beginObject();
+		writeJSONMembers(pWriter);
+		pWriter.endObject();
+	}
 
-		rv.put("isGroup", false);
 
-		return rv;
+	/**
+	 * Write the members of this component's JSON object to the provided
+	 * writer. Subclasses which add information to the JSON object must
+	 * override this method and call the super implementation first.
+	 *
+	 * @param pWriter The writer to write the JSON data to
+	 * @throws IOException if writing to the underlying stream failed
+	 * @throws JSONException if generating the JSON data failed
+	 */
+	protected void writeJSONMembers(JSONStreamWriter pWriter) throws IOException, JSONException {
+		pWriter.key("id").value(id);
+		pWriter.key("identifier").value(localName);
+		pWriter.key("name").value(StringEscapeUtils.escapeHtml4(name));
+		pWriter.key("config");
+		config.writeJSON(pWriter);
+		pWriter.key("isSwitch").value(this instanceof NCSwitch);
+		pWriter.key("isGroup").value(false);
 	}
 
 
@@ -283,11 +379,13 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 			componentDimensions = pCompDimensions;
 			dragboxDimensions = null;
 			gridLocation = pGridLoc;
-			ports = new HashMap<>();
+			// Keep the interfaces in the order of pPortInfo, the map is sized
+			// to hold all interfaces without rehashing
+			ports = new LinkedHashMap<>(pPortInfo.size() * 4 / 3 + 1);
 			componentGroup = null;
 
 			for(String orientation : pPortInfo) {
-				NetworkComponent.Interface newPort = TEBackend.TOPOLOGY_STORAGE.createInterface(PortOrientation.valueOf(orientation), getOuterType());
+				NetworkComponent.Interface newPort = TEBackend.getTopologyStorage().createInterface(PortOrientation.valueOf(orientation), getOuterType());
 
 				// Add the interface to this NetworkComponent
 				ports.put(newPort.getIdentifier(), newPort);
@@ -312,7 +410,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 			componentDimensions = pCompDimensions;
 			dragboxDimensions = null;
 			gridLocation = pGridLoc;
-			ports = new HashMap<>();
+			ports = new HashMap<>(pPortInfo.size() * 4 / 3 + 1);
 			componentGroup = null;
 
 			Iterator<HashMap<String, String>> portInfoIt = pPortInfo.iterator();
@@ -323,11 +421,11 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 				HashMap<String, String> portInfoMap = portInfoIt.next();
 
 				// Create a new interface with the provided information
-				newPort = TEBackend.TOPOLOGY_STORAGE.createInterface(PortOrientation.valueOf(portInfoMap.get("orientation")), getOuterType(), portInfoMap.get("localName"));
+				newPort = TEBackend.getTopologyStorage().createInterface(PortOrientation.valueOf(portInfoMap.get("orientation")), getOuterType(), portInfoMap.get("localName"));
 
 				// If IP configuration information is present, set it
 				if(portInfoMap.containsKey("IPAddress") && portInfoMap.containsKey("IPNetwork")) {
-					IPNetwork newNet = TEBackend.TOPOLOGY_STORAGE.getNetwork(portInfoMap.get("IPNetwork"));
+					IPNetwork newNet = TEBackend.getTopologyStorage().getNetwork(portInfoMap.get("IPNetwork"));
 
 					try {
 						newPort.configureIP(portInfoMap.get("IPAddress"), newNet);
@@ -344,7 +442,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 					// Split the vlan information from RDF model
 					String[] vlans = portInfoMap.get("vlan").split(";");
 					for(String vlanLocName : vlans) {
-						vlanSet.add(TEBackend.TOPOLOGY_STORAGE.getVLAN(vlanLocName));
+						vlanSet.add(TEBackend.getTopologyStorage().getVLAN(vlanLocName));
 					}
 
 					newPort.setVLAN(vlanSet);
@@ -370,9 +468,39 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		public void setGridLocation(int pX, int pY) {
 			gridLocation = new Position2D(pX, pY, TEBackend.getGridDimensions());
 
-			TEBackend.RDF_MANAGER.updateProperty(getOuterType(), VISABackup.COMP_LOC_X);
-			TEBackend.RDF_MANAGER.updateProperty(getOuterType(), VISABackup.COMP_LOC_Y);
+			TEBackend.getTopologyStorage().updateOccupancy(componentGroup, localName, gridLocation, dragboxDimensions);
 
+			TEBackend.getRDFManager().updateProperty(getOuterType(), VISABackup.COMP_LOC_X);
+			TEBackend.getRDFManager().updateProperty(getOuterType(), VISABackup.COMP_LOC_Y);
+
+			logGridLocation();
+		}
+
+
+		/**
+		 * Set a new grid location for the component. The RDF model is not
+		 * updated immediately, see
+		 * {@link de.decoit.visa.rdf.RDFManager#updateLocationDeferred(NetworkComponent)
+		 * RDFManager.updateLocationDeferred()}.
+		 *
+		 * @param pX Horizontal position
+		 * @param pY Vertical position
+		 */
+		public void setGridLocationDeferred(int pX, int pY) {
+			gridLocation = new Position2D(pX, pY, TEBackend.getGridDimensions());
+
+			TEBackend.getTopologyStorage().updateOccupancy(componentGroup, localName, gridLocation, dragboxDimensions);
+
+			TEBackend.getRDFManager().updateLocationDeferred(getOuterType());
+
+			logGridLocation();
+		}
+
+
+		/**
+		 * Write the current grid location to the log file
+		 */
+		private void logGridLocation() {
 			if(log.isDebugEnabled()) {
 				StringBuilder sb = new StringBuilder("Component ");
 				sb.append(localName);
@@ -402,15 +530,10 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		 * @param pY Vertical dimension
 		 */
 		public void setComponentDimensions(int pX, int pY) {
-			if(componentDimensions == null) {
-				componentDimensions = new Dimension2D(pX, pY);
-			}
-			else {
-				componentDimensions.set(pX, pY);
-			}
+			componentDimensions = Dimension2D.valueOf(pX, pY);
 
-			TEBackend.RDF_MANAGER.updateProperty(getOuterType(), VISABackup.COMP_DIM_X);
-			TEBackend.RDF_MANAGER.updateProperty(getOuterType(), VISABackup.COMP_DIM_Y);
+			TEBackend.getRDFManager().updateProperty(getOuterType(), VISABackup.COMP_DIM_X);
+			TEBackend.getRDFManager().updateProperty(getOuterType(), VISABackup.COMP_DIM_Y);
 
 			calcDragboxDimensions();
 		}
@@ -436,6 +559,23 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		}
 
 
+		/**
+		 * Return the location of the component itself, that is the grid
+		 * location of the dragbox plus the offset of the component inside the
+		 * dragbox
+		 *
+		 * @return The location of the component, null if no grid location is
+		 *         set
+		 */
+		public Position2D getComponentLocation() {
+			if(gridLocation == null) {
+				return null;
+			}
+
+			return new Position2D(gridLocation.getX() + componentInterfaceOffset.getX(), gridLocation.getY() + componentInterfaceOffset.getY());
+		}
+
+
 		/**
 		 * Return a map containing all interfaces of the component.
 		 *
@@ -453,7 +593,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		 * @return The created interface object
 		 */
 		public Interface createInterface(PortOrientation pOri) {
-			Interface rv = TEBackend.TOPOLOGY_STORAGE.createInterface(pOri, getOuterType());
+			Interface rv = TEBackend.getTopologyStorage().createInterface(pOri, getOuterType());
 
 			ports.put(rv.localName, rv);
 
@@ -513,16 +653,16 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 			if(!pName.isEmpty()) {
 				// Only change group if new group is different from the former
 				if(!pName.equals(componentGroup)) {
-					ComponentGroup oldCG = TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(componentGroup);
+					ComponentGroup oldCG = TEBackend.getTopologyStorage().getComponentGroupByName(componentGroup);
 					if(oldCG != null) {
 						oldCG.removeComponent(getOuterType());
 					}
 
 					componentGroup = pName;
 
-					TEBackend.TOPOLOGY_STORAGE.getComponentGroupByName(componentGroup).addComponent(getOuterType());
+					TEBackend.getTopologyStorage().getComponentGroupByName(componentGroup).addComponent(getOuterType());
 
-					TEBackend.RDF_MANAGER.updateProperty(getOuterType(), VISABackup.GROUP);
+					TEBackend.getRDFManager().updateProperty(getOuterType(), VISABackup.GROUP);
 
 					if(log.isDebugEnabled()) {
 						StringBuilder sb = new StringBuilder("Group assigned: ");
@@ -551,26 +691,30 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
-
-			rv.put("ifcount", portcount);
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+			pWriter.beginObject();
+			pWriter.key("ifcount").value(portcount);
 
 			if(gridLocation != null) {
-				rv.put("gloc", gridLocation.toJSON());
+				pWriter.key("gloc");
+				gridLocation.writeJSON(pWriter);
 			}
 
-			rv.put("compOffset", componentInterfaceOffset.toJSON());
-			rv.put("compDim", componentDimensions.toJSON());
-			rv.put("dragDim", dragboxDimensions.toJSON());
+			pWriter.key("compOffset");
+			componentInterfaceOffset.writeJSON(pWriter);
+			pWriter.key("compDim");
+			componentDimensions.writeJSON(pWriter);
+			pWriter.key("dragDim");
+			dragboxDimensions.writeJSON(pWriter);
 
-			JSONObject ifJSON = new JSONObject();
+			pWriter.key("interfaces").beginObject();
 			for(Map.Entry<String, NetworkComponent.Interface> entry : ports.entrySet()) {
-				ifJSON.put(entry.getValue().getIdentifier(), entry.getValue().toJSON());
+				pWriter.key(entry.getValue().getIdentifier());
+				entry.getValue().writeJSON(pWriter);
 			}
-			rv.put("interfaces", ifJSON);
+			pWriter.endObject();
 
-			return rv;
+			pWriter.endObject();
 		}
 
 
@@ -614,9 +758,11 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 					}
 				}
 
-				dragboxDimensions = new Dimension2D(x, y);
+				dragboxDimensions = Dimension2D.valueOf(x, y);
 				componentInterfaceOffset = new Position2D(ifOffsetX, ifOffsetY);
 
+				TEBackend.getTopologyStorage().invalidateOccupancy(componentGroup);
+
 				if(log.isDebugEnabled()) {
 					StringBuilder sb = new StringBuilder("Dragbox resized to x=");
 					sb.append(dragboxDimensions.getX());
@@ -677,8 +823,9 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 				if(pOrientation != null) {
 					component = pComp;
 					orientation = pOrientation;
-					ipConf = new ArrayList<>();
-					virtLAN = new HashSet<>();
+					// IP configuration and VLAN set are created on first use
+					ipConf = null;
+					virtLAN = null;
 
 					StringBuilder sb = new StringBuilder(Interface.TYPE);
 					sb.append("_");
@@ -686,7 +833,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 					localName = sb.toString();
 
-					TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
+					TEBackend.getRDFManager().updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
 
 					if(log.isTraceEnabled()) {
 						log.trace("Interface created: " + localName);
@@ -717,8 +864,9 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 				if(pOrientation != null) {
 					component = pComp;
 					orientation = pOrientation;
-					ipConf = new ArrayList<>();
-					virtLAN = new HashSet<>();
+					// IP configuration and VLAN set are created on first use
+					ipConf = null;
+					virtLAN = null;
 
 					// Check if the given local name is valid
 					if(pLocName != null && !pLocName.isEmpty()) {
@@ -728,7 +876,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 						throw new IllegalArgumentException("Local name cannot be empty");
 					}
 
-					TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
+					TEBackend.getRDFManager().updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
 
 					if(log.isTraceEnabled()) {
 						log.trace("Interface created from RDF information: " + localName);
@@ -767,7 +915,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 					cable = pCable;
 					cableEnd = pEnd;
 
-					TEBackend.RDF_MANAGER.updateProperty(this, VISA.CONNECTED);
+					TEBackend.getRDFManager().updateProperty(this, VISA.CONNECTED);
 				}
 				else {
 					throw new NullPointerException("NULL pointer for cable end provided");
@@ -786,7 +934,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 			cable = null;
 			cableEnd = null;
 
-			TEBackend.RDF_MANAGER.updateProperty(this, VISA.CONNECTED);
+			TEBackend.getRDFManager().updateProperty(this, VISA.CONNECTED);
 		}
 
 
@@ -849,18 +997,28 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		 * @param pNetwork IP network object
 		 */
 		public void configureIP(IPAddress pAddress, IPNetwork pNetwork) {
+			if(ipConf == null) {
+				ipConf = new ArrayList<>(1);
+			}
+
 			ipConf.add(new NetworkComponent.Interface.IPConfig(pAddress, pNetwork));
-			TEBackend.RDF_MANAGER.updateProperty(this, VISA.ADDRESS);
+			TEBackend.getRDFManager().updateProperty(this, VISA.ADDRESS);
 		}
 
 
 		/**
-		 * Return a list of all IPConfig objects present on this interface
+		 * Return a list of all IPConfig objects present on this interface. If
+		 * no IP configuration exists, a new empty list is returned.
 		 *
 		 * @return List of IPConfig objects
 		 */
 		public ArrayList<NetworkComponent.Interface.IPConfig> getAllIPConfig() {
-			return ipConf;
+			if(ipConf != null) {
+				return ipConf;
+			}
+			else {
+				return new ArrayList<>(0);
+			}
 		}
 
 
@@ -873,7 +1031,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		public ArrayList<NetworkComponent.Interface.IPConfig> getNonLinkLocalIPConfig() {
 			ArrayList<NetworkComponent.Interface.IPConfig> rv = new ArrayList<>();
 
-			for(NetworkComponent.Interface.IPConfig conf : ipConf) {
+			for(NetworkComponent.Interface.IPConfig conf : getAllIPConfig()) {
 				if(!conf.isLinkLocal) {
 					rv.add(conf);
 				}
@@ -890,10 +1048,12 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		 * @param pIPConf IPConfig object to be removed
 		 */
 		public void removeIPConfiguration(IPConfig pIPConf) {
-			ipConf.remove(pIPConf);
+			if(ipConf != null) {
+				ipConf.remove(pIPConf);
+			}
 			pIPConf.getNetwork().removeIPAddress(pIPConf.ipAddress);
 
-			TEBackend.RDF_MANAGER.updateProperty(this, VISA.ADDRESS);
+			TEBackend.getRDFManager().updateProperty(this, VISA.ADDRESS);
 		}
 
 
@@ -904,7 +1064,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 		 * @return true if IP is configured, false otherwise
 		 */
 		public boolean isIPConfigured() {
-			return (!ipConf.isEmpty());
+			return (ipConf != null && !ipConf.isEmpty());
 		}
 
 
@@ -920,7 +1080,7 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 					component.config.calcDragboxDimensions();
 
-					TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
+					TEBackend.getRDFManager().updateProperty(this, VISABackup.INTERFACE_ORIENTATION);
 
 					if(log.isDebugEnabled()) {
 						StringBuilder sb = new StringBuilder("Interface orientation of '");
@@ -967,7 +1127,8 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 			if(pVLANs != null) {
 				virtLAN = pVLANs;
 
-				TEBackend.RDF_MANAGER.updateProperty(this, VISA.VLAN);
+				TEBackend.getTopologyStorage().updateVLANIndex(this, virtLAN);
+				TEBackend.getRDFManager().updateProperty(this, VISA.VLAN);
 			}
 			else {
 				throw new NullPointerException("NULL pointer for VLAN provided");
@@ -976,12 +1137,18 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 
 		/**
-		 * Return the VLAN to which this port is assigned
+		 * Return the VLAN to which this port is assigned. If the port was never
+		 * assigned to a VLAN, a new empty set is returned.
 		 *
 		 * @return The VLAN to which this port is assigned
 		 */
 		public HashSet<VLAN> getAllVLAN() {
-			return virtLAN;
+			if(virtLAN != null) {
+				return virtLAN;
+			}
+			else {
+				return new HashSet<>(0);
+			}
 		}
 
 
@@ -1010,42 +1177,44 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
-
-			rv.put("identifier", getIdentifier());
-			rv.put("component", component.getIdentifier());
-			rv.put("isVirtual", false);
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+			pWriter.beginObject();
+			pWriter.key("identifier").value(getIdentifier());
+			pWriter.key("component").value(component.getIdentifier());
+			pWriter.key("isVirtual").value(false);
 
 			if(cable != null) {
-				rv.put("cable", cable.getIdentifier());
+				pWriter.key("cable").value(cable.getIdentifier());
 			}
 
-			rv.put("orientation", orientation.toString());
+			pWriter.key("orientation").value(orientation.toString());
 
-			JSONObject vlanJSON = new JSONObject();
+			pWriter.key("vlan").beginObject();
 			int i = 0;
-			for(VLAN vlan : virtLAN) {
-				vlanJSON.put(String.valueOf(i), vlan.toJSON());
+			for(VLAN vlan : getAllVLAN()) {
+				pWriter.key(String.valueOf(i));
+				vlan.writeJSON(pWriter);
 				i++;
 			}
-			rv.put("vlan", vlanJSON);
+			pWriter.endObject();
 
-			JSONObject ipJSON = new JSONObject();
-			for(int j = 0; i < ipConf.size(); i++) {
-				ipJSON.put(String.valueOf(j), ipConf.get(j).toJSON());
+			pWriter.key("ipconf").beginObject();
+			ArrayList<NetworkComponent.Interface.IPConfig> ipList = getAllIPConfig();
+			for(int j = 0; j < ipList.size(); j++) {
+				pWriter.key(String.valueOf(j));
+				ipList.get(j).writeJSON(pWriter);
 			}
-			rv.put("ipconf", ipJSON);
+			pWriter.endObject();
 
-			return rv;
+			pWriter.endObject();
 		}
 
 
 		@Override
 		public void removeFromTopology() {
 			if(cable != null) {
-				TEBackend.RDF_MANAGER.removeObject(this);
-				TEBackend.TOPOLOGY_STORAGE.removeCable(cable.getIdentifier());
+				TEBackend.getRDFManager().removeObject(this);
+				TEBackend.getTopologyStorage().removeCable(cable.getIdentifier());
 
 				component.getConfig().removeInterface(localName);
 			}
@@ -1252,16 +1421,15 @@ abstract public class NetworkComponent implements ITopologyElement, IRemovableCo
 
 
 			@Override
-			public JSONObject toJSON() throws JSONException {
-				JSONObject rv = new JSONObject();
-
-				rv.put("address", ipAddress.getAddressString());
-				rv.put("subnet", ipNetwork.getSubnetMaskLength());
-				rv.put("version", ipNetwork.getVersion().toString());
-				rv.put("network", ipNetwork.toJSON());
-				rv.put("isLinkLocal", isLinkLocal);
-
-				return rv;
+			public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+				pWriter.beginObject();
+				pWriter.key("address").value(ipAddress.getAddressString());
+				pWriter.key("subnet").value(ipNetwork.getSubnetMaskLength());
+				pWriter.key("version").value(ipNetwork.getVersion().toString());
+				pWriter.key("network");
+				ipNetwork.writeJSON(pWriter);
+				pWriter.key("isLinkLocal").value(isLinkLocal);
+				pWriter.endObject();
 			}
 
 
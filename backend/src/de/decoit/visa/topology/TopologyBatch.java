@@ -0,0 +1,299 @@
+/*
+ *  Copyright (C) 2013, DECOIT GmbH
+ *
+ *	This file is part of VISA Topology-Editor.
+ *
+ *	VISA Topology-Editor is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by the
+ *	Free Software Foundation, either version 3 of the License, or (at your option)
+ *	any later version.
+ *
+ *	VISA Topology-Editor is distributed in the hope that it will be useful, but
+ *	WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *	or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ *	more details.
+ *
+ *	You should have received a copy of the GNU General Public License along with
+ *	VISA Topology-Editor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.decoit.visa.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import de.decoit.visa.Dimension2D;
+
+
+/**
+ * This class collects a set of topology modifications which will be validated
+ * together and applied in a single RDF transaction by
+ * {@link TopologyStorage#applyBatch(TopologyBatch)}. A batch can remove
+ * components and cables, create VLANs, components and cables and assign VLANs
+ * to interfaces. The operations are always applied in exactly that order,
+ * regardless of the order they were added to the batch.<br>
+ * <br>
+ * New components and VLANs are identified by a reference string which is
+ * unique inside the batch. Interfaces of new components are referenced by
+ * &lt;component reference&gt;#&lt;interface index&gt;, the index is the
+ * position of the interface in the orientation list of the component. All
+ * other references are treated as RDF local names of existing objects.
+ *
+ * @author Thomas Rix
+ */
+public class TopologyBatch {
+	/**
+	 * Separator between component reference and interface index
+	 */
+	public static final char IF_REF_SEPARATOR = '#';
+
+	private ArrayList<String> removedComponents;
+	private ArrayList<String> removedCables;
+	private ArrayList<VLANSpec> vlans;
+	private ArrayList<ComponentSpec> components;
+	private ArrayList<CableSpec> cables;
+	private ArrayList<VLANAssignmentSpec> vlanAssignments;
+
+
+	/**
+	 * Construct a new, empty batch
+	 */
+	public TopologyBatch() {
+		removedComponents = new ArrayList<>();
+		removedCables = new ArrayList<>();
+		vlans = new ArrayList<>();
+		components = new ArrayList<>();
+		cables = new ArrayList<>();
+		vlanAssignments = new ArrayList<>();
+	}
+
+
+	/**
+	 * Add the removal of an existing component to the batch
+	 *
+	 * @param pLocName RDF local name of the component, cannot be null or empty
+	 */
+	public void removeComponent(String pLocName) {
+		if(pLocName != null && !pLocName.isEmpty()) {
+			removedComponents.add(pLocName);
+		}
+		else {
+			throw new IllegalArgumentException("Empty local name provided");
+		}
+	}
+
+
+	/**
+	 * Add the removal of an existing cable to the batch
+	 *
+	 * @param pIdent Identifier of the cable, cannot be null or empty
+	 */
+	public void removeCable(String pIdent) {
+		if(pIdent != null && !pIdent.isEmpty()) {
+			removedCables.add(pIdent);
+		}
+		else {
+			throw new IllegalArgumentException("Empty cable identifier provided");
+		}
+	}
+
+
+	/**
+	 * Add the creation of a new VLAN to the batch
+	 *
+	 * @param pRef Reference string of the new VLAN, cannot be null or empty
+	 * @param pName Human readable name of the VLAN
+	 * @param pColor Color string of the VLAN (#RRGGBB)
+	 */
+	public void addVLAN(String pRef, String pName, String pColor) {
+		vlans.add(new VLANSpec(pRef, pName, pColor));
+	}
+
+
+	/**
+	 * Add the creation of a new component to the batch. Supported types are
+	 * {@link NCSwitch#TYPE} and {@link NCVM#TYPE}.
+	 *
+	 * @param pRef Reference string of the new component, cannot be null or
+	 *            empty
+	 * @param pType Component type
+	 * @param pName Human readable name of the component
+	 * @param pGroupName Name of the component group, the group will be created
+	 *            if it does not exist
+	 * @param pCompDimensions Size of the component, can be set to null for
+	 *            default size
+	 * @param pIfOrientations Orientations of the interfaces of the component
+	 */
+	public void addComponent(String pRef, String pType, String pName, String pGroupName, Dimension2D pCompDimensions, List<String> pIfOrientations) {
+		components.add(new ComponentSpec(pRef, pType, pName, pGroupName, pCompDimensions, pIfOrientations));
+	}
+
+
+	/**
+	 * Add the creation of a new cable to the batch
+	 *
+	 * @param pLeft Reference of the interface at the left end of the cable
+	 * @param pRight Reference of the interface at the right end of the cable
+	 */
+	public void addCable(String pLeft, String pRight) {
+		cables.add(new CableSpec(pLeft, pRight));
+	}
+
+
+	/**
+	 * Add a VLAN assignment to the batch. All existing VLAN assignments of the
+	 * interface will be replaced.
+	 *
+	 * @param pIface Reference of the interface
+	 * @param pVLANs References of the VLANs, may be empty to remove all
+	 *            assignments
+	 */
+	public void addVLANAssignment(String pIface, List<String> pVLANs) {
+		vlanAssignments.add(new VLANAssignmentSpec(pIface, pVLANs));
+	}
+
+
+	/**
+	 * Return whether this batch contains no operations at all
+	 *
+	 * @return true if the batch is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return removedComponents.isEmpty() && removedCables.isEmpty() && vlans.isEmpty() && components.isEmpty() && cables.isEmpty() && vlanAssignments.isEmpty();
+	}
+
+
+	ArrayList<String> getRemovedComponents() {
+		return removedComponents;
+	}
+
+
+	ArrayList<String> getRemovedCables() {
+		return removedCables;
+	}
+
+
+	ArrayList<VLANSpec> getVLANs() {
+		return vlans;
+	}
+
+
+	ArrayList<ComponentSpec> getComponents() {
+		return components;
+	}
+
+
+	ArrayList<CableSpec> getCables() {
+		return cables;
+	}
+
+
+	ArrayList<VLANAssignmentSpec> getVLANAssignments() {
+		return vlanAssignments;
+	}
+
+
+	/**
+	 * Check if the provided reference string is not null or empty
+	 *
+	 * @param pRef Reference string
+	 * @return The reference string
+	 */
+	private static String checkRef(String pRef) {
+		if(pRef != null && !pRef.isEmpty()) {
+			return pRef;
+		}
+		else {
+			throw new IllegalArgumentException("Empty reference string provided");
+		}
+	}
+
+
+	/**
+	 * Specification of a new VLAN
+	 *
+	 * @author Thomas Rix
+	 */
+	static class VLANSpec {
+		final String ref;
+		final String name;
+		final String color;
+
+
+		private VLANSpec(String pRef, String pName, String pColor) {
+			ref = checkRef(pRef);
+			name = pName;
+			color = pColor;
+		}
+	}
+
+
+	/**
+	 * Specification of a new component
+	 *
+	 * @author Thomas Rix
+	 */
+	static class ComponentSpec {
+		final String ref;
+		final String type;
+		final String name;
+		final String groupName;
+		final Dimension2D dimensions;
+		final ArrayList<String> ifOrientations;
+
+
+		private ComponentSpec(String pRef, String pType, String pName, String pGroupName, Dimension2D pCompDimensions, List<String> pIfOrientations) {
+			ref = checkRef(pRef);
+			type = pType;
+			name = pName;
+			groupName = (pGroupName != null && !pGroupName.isEmpty()) ? pGroupName : "0.0.0.0";
+			dimensions = pCompDimensions;
+
+			if(pIfOrientations != null) {
+				ifOrientations = new ArrayList<>(pIfOrientations);
+			}
+			else {
+				throw new NullPointerException("NULL pointer for interface orientations provided");
+			}
+		}
+	}
+
+
+	/**
+	 * Specification of a new cable
+	 *
+	 * @author Thomas Rix
+	 */
+	static class CableSpec {
+		final String left;
+		final String right;
+
+
+		private CableSpec(String pLeft, String pRight) {
+			left = checkRef(pLeft);
+			right = checkRef(pRight);
+		}
+	}
+
+
+	/**
+	 * Specification of a VLAN assignment
+	 *
+	 * @author Thomas Rix
+	 */
+	static class VLANAssignmentSpec {
+		final String iface;
+		final ArrayList<String> vlans;
+
+
+		private VLANAssignmentSpec(String pIface, List<String> pVLANs) {
+			iface = checkRef(pIface);
+
+			if(pVLANs != null) {
+				vlans = new ArrayList<>(pVLANs);
+			}
+			else {
+				throw new NullPointerException("NULL pointer for VLAN list provided");
+			}
+		}
+	}
+}
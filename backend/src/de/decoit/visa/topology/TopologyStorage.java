@@ -21,24 +21,35 @@ package de.decoit.visa.topology;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.Dimension2D;
 import de.decoit.visa.Position2D;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.enums.IPVersion;
 import de.decoit.visa.enums.PortOrientation;
+import de.decoit.visa.gridlayout.CableRouter;
 import de.decoit.visa.gridlayout.GridLayout;
 import de.decoit.visa.interfaces.IJSON;
 import de.decoit.visa.interfaces.INetworkInterface;
 import de.decoit.visa.interfaces.IRDFObject;
+import de.decoit.visa.json.JSONStreamWriter;
 import de.decoit.visa.net.IPNetwork;
 import de.decoit.visa.rdf.VISA;
 import de.decoit.visa.topology.NCSwitch.GroupSwitch;
@@ -55,14 +66,33 @@ import de.decoit.visa.topology.TopologyStorage.ComponentGroup.GroupInterface;
  * <br>
  * The class is designed as a singleton to make sure only one topology storage
  * is available in the backend. This is necessary to prevent multiple identical
- * ID numbers or local names.
+ * ID numbers or local names. Additional topology sessions use their own,
+ * independent instances created by {@link #createInstance()}, the ID numbers
+ * and local names are unique inside each instance.
  *
  * @author Thomas Rix
  */
-public class TopologyStorage {
+public class TopologyStorage implements IJSON {
 	private static TopologyStorage instance = null;
 	private static Logger log = Logger.getLogger(TopologyStorage.class.getName());
-	private static int nextGroupID = 0;
+
+	// Number of cached layout results, enough for the groups of a large
+	// topology
+	private static final int LAYOUT_CACHE_SIZE = 256;
+
+	// Bounded pool calculating the layouts of component groups concurrently
+	private static final ExecutorService layoutExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+		private AtomicInteger nextID = new AtomicInteger(1);
+
+
+		@Override
+		public Thread newThread(Runnable pRunnable) {
+			Thread rv = new Thread(pRunnable, "layout-" + nextID.getAndIncrement());
+			rv.setDaemon(true);
+
+			return rv;
+		}
+	});
 
 	private HashMap<String, String> groupNameIDMap;
 	private HashMap<String, ComponentGroup> storage;
@@ -70,9 +100,15 @@ public class TopologyStorage {
 	private HashMap<String, VLAN> vlans;
 	private HashMap<String, NetworkCable> cables;
 	private HashMap<String, IPNetwork> networks;
+	private HashMap<String, HashSet<NetworkComponent.Interface>> vlanIndex;
+	private HashMap<String, HashSet<String>> interfaceVLANIndex;
+	private HashMap<String, HashSet<NetworkCable>> componentCableIndex;
+	private LinkedHashMap<String, HashMap<String, Position2D>> layoutCache;
+	private HashMap<String, GridOccupancy> occupancy;
 	private TreeSet<Integer> usedIDs;
 	private String topologyID;
 	private int lastVLANID;
+	private int nextGroupID;
 
 
 	/**
@@ -90,6 +126,18 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Create a new topology storage which is independent of the singleton
+	 * instance. This is used for additional topology sessions, see
+	 * {@link de.decoit.visa.session.SessionRegistry SessionRegistry}.
+	 *
+	 * @return A new, empty topology storage
+	 */
+	public static TopologyStorage createInstance() {
+		return new TopologyStorage();
+	}
+
+
 	/**
 	 * Generate a unique ID for a new topology. It is built by appending the
 	 * current UNIX timestamp to the string "custom_topology_".
@@ -110,6 +158,11 @@ public class TopologyStorage {
 	 * Construct a new TopologyStorage
 	 */
 	private TopologyStorage() {
+		nextGroupID = 0;
+
+		// Must exist before the first group is created
+		occupancy = new HashMap<>();
+
 		groupNameIDMap = new HashMap<>();
 		storage = new HashMap<>();
 
@@ -122,6 +175,20 @@ public class TopologyStorage {
 		cables = new HashMap<>();
 		networks = new HashMap<>();
 
+		vlanIndex = new HashMap<>();
+		interfaceVLANIndex = new HashMap<>();
+		componentCableIndex = new HashMap<>();
+
+		layoutCache = new LinkedHashMap<String, HashMap<String, Position2D>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, HashMap<String, Position2D>> pEldest) {
+				return size() > LAYOUT_CACHE_SIZE;
+			}
+		};
+
 		usedIDs = new TreeSet<>();
 
 		topologyID = genNewTopologyID();
@@ -148,13 +215,23 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Return the ID of the current topology
+	 *
+	 * @return The ID of the current topology
+	 */
+	public String getTopologyID() {
+		return topologyID;
+	}
+
+
 	/**
 	 * Set a new human readable name for the current topology
 	 *
 	 * @param pName The new topology name
 	 */
 	public void setTopologyName(String pName) {
-		TEBackend.RDF_MANAGER.setRootNodeName(pName);
+		TEBackend.getRDFManager().setRootNodeName(pName);
 	}
 
 
@@ -183,7 +260,7 @@ public class TopologyStorage {
 			int newID = getNextComponentID(NCHost.TYPE);
 
 			if(pCompDimensions == null) {
-				pCompDimensions = new Dimension2D(5, 5);
+				pCompDimensions = Dimension2D.valueOf(5, 5);
 			}
 
 			NCHost rv = new NCHost(newID, pPortInfo, pName, pCompDimensions, pGridLoc, pLocName);
@@ -220,7 +297,7 @@ public class TopologyStorage {
 		int newID = getNextComponentID(NCSwitch.TYPE);
 
 		if(pCompDimensions == null) {
-			pCompDimensions = new Dimension2D(5, 5);
+			pCompDimensions = Dimension2D.valueOf(5, 5);
 		}
 
 		NCSwitch rv = new NCSwitch(newID, pPortInfo, pName, pCompDimensions, pGridLoc);
@@ -256,7 +333,7 @@ public class TopologyStorage {
 			int newID = getNextComponentID(NCSwitch.TYPE);
 
 			if(pCompDimensions == null) {
-				pCompDimensions = new Dimension2D(5, 5);
+				pCompDimensions = Dimension2D.valueOf(5, 5);
 			}
 
 			NCSwitch rv = new NCSwitch(newID, pPortInfo, pName, pCompDimensions, pGridLoc, pLocName);
@@ -294,7 +371,7 @@ public class TopologyStorage {
 		int newID = getNextComponentID(NCVM.TYPE);
 
 		if(pCompDimensions == null) {
-			pCompDimensions = new Dimension2D(5, 5);
+			pCompDimensions = Dimension2D.valueOf(5, 5);
 		}
 
 		NCVM rv = new NCVM(newID, pPortInfo, pName, pCompDimensions, pGridLoc);
@@ -330,7 +407,7 @@ public class TopologyStorage {
 			int newID = getNextComponentID(NCVM.TYPE);
 
 			if(pCompDimensions == null) {
-				pCompDimensions = new Dimension2D(5, 5);
+				pCompDimensions = Dimension2D.valueOf(5, 5);
 			}
 
 			NCVM rv = new NCVM(newID, pPortInfo, pName, pCompDimensions, pGridLoc, pLocName);
@@ -421,7 +498,7 @@ public class TopologyStorage {
 
 		NetworkComponent.Interface rv = new NetworkComponent.Interface(newID, pOrientation, pComp);
 
-		TEBackend.RDF_MANAGER.addObject(rv);
+		TEBackend.getRDFManager().addObject(rv);
 		localNames.put(rv.getIdentifier(), rv);
 
 		return rv;
@@ -487,6 +564,9 @@ public class TopologyStorage {
 			NetworkComponent.Interface i = (NetworkComponent.Interface) rdfo;
 			localNames.remove(pLocName);
 			i.removeFromTopology();
+
+			// Remove the interface from the VLAN index
+			updateVLANIndex(i, new HashSet<VLAN>());
 		}
 		else if(rdfo == null) {
 			throw new IllegalArgumentException("No object with this local name found");
@@ -520,6 +600,10 @@ public class TopologyStorage {
 		// Add the cable to its component group
 		getComponentGroupByName(rv.getGroupName()).addCable(rv);
 
+		// Add the cable to the index of both connected components
+		addToCableIndex(pLeft.getComponent(), rv);
+		addToCableIndex(pRight.getComponent(), rv);
+
 		return rv;
 	}
 
@@ -536,9 +620,16 @@ public class TopologyStorage {
 		NetworkCable nc = cables.get(pIdent);
 
 		if(nc != null) {
+			// Get the connected interfaces before the cable is disconnected
+			NetworkComponent.Interface left = nc.getLeft();
+			NetworkComponent.Interface right = nc.getRight();
+
 			nc.removeFromTopology();
 
 			cables.remove(pIdent);
+
+			removeFromCableIndex(left.getComponent(), nc);
+			removeFromCableIndex(right.getComponent(), nc);
 		}
 		else {
 			throw new IllegalArgumentException("No object with this local name found");
@@ -546,6 +637,138 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Validate and apply a batch of topology modifications. All operations of
+	 * the batch are checked before any modification is done, so an invalid
+	 * batch is rejected as a whole. The modifications are applied inside a
+	 * single RDF transaction and the topology is layouted once after all
+	 * operations were applied. If applying the batch fails, the transaction
+	 * is aborted and the caller must synchronize the topology with the RDF
+	 * model.
+	 *
+	 * @param pBatch The batch to apply, cannot be null
+	 * @return Map of the reference strings of new components and VLANs (key)
+	 *         to the RDF local names of the created objects (value)
+	 */
+	public HashMap<String, String> applyBatch(TopologyBatch pBatch) {
+		return applyBatch(pBatch, TEBackend.getLayoutEngine());
+	}
+
+
+	/**
+	 * Validate and apply a batch of topology modifications and layout the
+	 * topology with the provided layout engine, see
+	 * {@link #applyBatch(TopologyBatch)}.
+	 *
+	 * @param pBatch The batch to apply, cannot be null
+	 * @param pLayoutEngine Layout engine to use, see
+	 *            {@link #layoutTopology(String)}
+	 * @return Map of the reference strings of new components and VLANs (key)
+	 *         to the RDF local names of the created objects (value)
+	 */
+	public HashMap<String, String> applyBatch(TopologyBatch pBatch, String pLayoutEngine) {
+		validateBatch(pBatch);
+
+		HashMap<String, String> rv = new HashMap<>();
+		HashMap<String, NetworkComponent> newComponents = new HashMap<>();
+		HashMap<String, VLAN> newVLANs = new HashMap<>();
+		HashSet<String> touchedComponents = new HashSet<>();
+
+		TEBackend.getRDFManager().beginTransaction();
+
+		try {
+			for(String cableID : pBatch.getRemovedCables()) {
+				removeCable(cableID);
+			}
+
+			for(String locName : pBatch.getRemovedComponents()) {
+				removeComponent(locName);
+			}
+
+			for(TopologyBatch.VLANSpec spec : pBatch.getVLANs()) {
+				VLAN vlan = createVLAN(spec.name, spec.color);
+
+				newVLANs.put(spec.ref, vlan);
+				rv.put(spec.ref, vlan.getRDFLocalName());
+			}
+
+			for(TopologyBatch.ComponentSpec spec : pBatch.getComponents()) {
+				NetworkComponent nc;
+				if(spec.type.equals(NCSwitch.TYPE)) {
+					nc = createSwitch(spec.ifOrientations, spec.name, spec.dimensions, null);
+				}
+				else {
+					nc = createVM(spec.ifOrientations, spec.name, spec.dimensions, null);
+				}
+				nc.getConfig().setComponentGroup(spec.groupName);
+
+				newComponents.put(spec.ref, nc);
+				touchedComponents.add(nc.getRDFLocalName());
+				rv.put(spec.ref, nc.getRDFLocalName());
+			}
+
+			for(TopologyBatch.CableSpec spec : pBatch.getCables()) {
+				NetworkComponent.Interface left = resolveBatchInterface(spec.left, newComponents);
+				NetworkComponent.Interface right = resolveBatchInterface(spec.right, newComponents);
+
+				createCable(left, right, null);
+
+				touchedComponents.add(left.getComponent().getRDFLocalName());
+				touchedComponents.add(right.getComponent().getRDFLocalName());
+			}
+
+			for(TopologyBatch.VLANAssignmentSpec spec : pBatch.getVLANAssignments()) {
+				NetworkComponent.Interface iface = resolveBatchInterface(spec.iface, newComponents);
+
+				HashSet<VLAN> vlanSet = new HashSet<>();
+				for(String vlanRef : spec.vlans) {
+					if(newVLANs.containsKey(vlanRef)) {
+						vlanSet.add(newVLANs.get(vlanRef));
+					}
+					else {
+						vlanSet.add(vlans.get(vlanRef));
+					}
+				}
+
+				iface.setVLAN(vlanSet);
+			}
+
+			// Group switches depend on the cables of a switch, update them
+			// after all cables were created
+			for(String locName : touchedComponents) {
+				IRDFObject rdfo = localNames.get(locName);
+
+				if(rdfo instanceof NCSwitch) {
+					((NCSwitch) rdfo).createGroupSwitches();
+				}
+			}
+
+			layoutTopology(pLayoutEngine);
+
+			updateInterfaceOrientations(touchedComponents);
+
+			routeCables();
+
+			TEBackend.getRDFManager().commitTransaction();
+		}
+		catch(Throwable ex) {
+			TEBackend.getRDFManager().abortTransaction();
+
+			throw ex;
+		}
+
+		if(log.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder("Batch applied, objects created: ");
+			sb.append(rv.size());
+			sb.append(", components touched: ");
+			sb.append(touchedComponents.size());
+			log.debug(sb.toString());
+		}
+
+		return rv;
+	}
+
+
 	/**
 	 * Create a new VLAN object using the name and color received from the
 	 * frontend.
@@ -600,7 +823,7 @@ public class TopologyStorage {
 		vlans.put(pLocName, rv);
 
 		if(updateRDF) {
-			TEBackend.RDF_MANAGER.updateProperty(rv, VISA.ID);
+			TEBackend.getRDFManager().updateProperty(rv, VISA.ID);
 		}
 
 		return rv;
@@ -635,9 +858,10 @@ public class TopologyStorage {
 
 	/**
 	 * Remove the VLAN with the specified RDF local name from the topology. It
-	 * will be removed from the storage and the RDF model. This action can only
-	 * be executed if the VLAN is <strong>not</strong> assigned to any
-	 * interfaces.
+	 * will be removed from the storage and the RDF model. Interfaces the VLAN
+	 * is assigned to are looked up in the VLAN index and the VLAN is removed
+	 * from their VLAN sets. The RDF statements of these assignments are
+	 * removed together with the VLAN.
 	 *
 	 * @param pLocName RDF local name of the VLAN
 	 */
@@ -647,6 +871,18 @@ public class TopologyStorage {
 		if(vlan != null) {
 			vlan.removeFromTopology();
 
+			HashSet<NetworkComponent.Interface> assigned = vlanIndex.remove(pLocName);
+			if(assigned != null) {
+				for(NetworkComponent.Interface iface : assigned) {
+					iface.getAllVLAN().remove(vlan);
+
+					HashSet<String> ifVLANs = interfaceVLANIndex.get(iface.getRDFLocalName());
+					if(ifVLANs != null) {
+						ifVLANs.remove(pLocName);
+					}
+				}
+			}
+
 			vlans.remove(pLocName);
 		}
 		else {
@@ -777,9 +1013,28 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Return the number of components stored in the topology storage
+	 *
+	 * @return The number of components
+	 */
+	public int getComponentCount() {
+		int rv = 0;
+
+		for(IRDFObject rdfo : localNames.values()) {
+			if(rdfo instanceof NetworkComponent) {
+				rv++;
+			}
+		}
+
+		return rv;
+	}
+
+
 	/**
 	 * Remove all objects stored in the topology storage. The storage, vlans,
-	 * cables local names maps and set of used IDs will be cleared.
+	 * cables local names maps and set of used IDs will be cleared. The cache
+	 * of layout results is kept, it does not depend on object identities.
 	 */
 	public void clear() {
 		groupNameIDMap.clear();
@@ -789,6 +1044,10 @@ public class TopologyStorage {
 		usedIDs.clear();
 		localNames.clear();
 		networks.clear();
+		vlanIndex.clear();
+		interfaceVLANIndex.clear();
+		componentCableIndex.clear();
+		occupancy.clear();
 
 		nextGroupID = 0;
 		lastVLANID = 0;
@@ -801,89 +1060,301 @@ public class TopologyStorage {
 
 
 	/**
-	 * Generate a JSON encoded JavaScript object with information about all
-	 * objects that are currently present in the topology.
+	 * Return all cables which are connected to an interface of the component
+	 * with the specified RDF local name. The result is taken from the cable
+	 * index and cannot be modified.
+	 *
+	 * @param pLocName RDF local name of the component
+	 * @return Set of cables connected to that component, empty if no cable is
+	 *         connected
+	 */
+	public Set<NetworkCable> getCablesByComponent(String pLocName) {
+		HashSet<NetworkCable> rv = componentCableIndex.get(pLocName);
+
+		if(rv != null) {
+			return Collections.unmodifiableSet(rv);
+		}
+		else {
+			return Collections.emptySet();
+		}
+	}
+
+
+	/**
+	 * Update the VLAN index for the provided interface. The interface will be
+	 * removed from the index entries of all VLANs it was assigned to before
+	 * and added to the entries of the provided VLANs. The previous assignment
+	 * is tracked by the storage, so the provided set may be the same object
+	 * that was modified in place.
+	 *
+	 * @param pIface The interface, cannot be null
+	 * @param pVLANs The VLANs now assigned to the interface, cannot be null
+	 */
+	void updateVLANIndex(NetworkComponent.Interface pIface, Set<VLAN> pVLANs) {
+		HashSet<String> oldVLANs = interfaceVLANIndex.remove(pIface.getRDFLocalName());
+		if(oldVLANs != null) {
+			for(String vlanName : oldVLANs) {
+				HashSet<NetworkComponent.Interface> ifSet = vlanIndex.get(vlanName);
+
+				if(ifSet != null) {
+					ifSet.remove(pIface);
+
+					if(ifSet.isEmpty()) {
+						vlanIndex.remove(vlanName);
+					}
+				}
+			}
+		}
+
+		if(!pVLANs.isEmpty()) {
+			HashSet<String> newVLANs = new HashSet<>();
+			for(VLAN vlan : pVLANs) {
+				HashSet<NetworkComponent.Interface> ifSet = vlanIndex.get(vlan.getRDFLocalName());
+
+				if(ifSet == null) {
+					ifSet = new HashSet<>();
+					vlanIndex.put(vlan.getRDFLocalName(), ifSet);
+				}
+
+				ifSet.add(pIface);
+				newVLANs.add(vlan.getRDFLocalName());
+			}
+
+			interfaceVLANIndex.put(pIface.getRDFLocalName(), newVLANs);
+		}
+	}
+
+
+	/**
+	 * Add the provided cable to the index entry of the provided component
+	 *
+	 * @param pComp The component, cannot be null
+	 * @param pCable The cable connected to the component, cannot be null
+	 */
+	private void addToCableIndex(NetworkComponent pComp, NetworkCable pCable) {
+		HashSet<NetworkCable> cableSet = componentCableIndex.get(pComp.getRDFLocalName());
+
+		if(cableSet == null) {
+			cableSet = new HashSet<>();
+			componentCableIndex.put(pComp.getRDFLocalName(), cableSet);
+		}
+
+		cableSet.add(pCable);
+	}
+
+
+	/**
+	 * Remove the provided cable from the index entry of the provided component
+	 *
+	 * @param pComp The component, cannot be null
+	 * @param pCable The cable which was disconnected, cannot be null
+	 */
+	private void removeFromCableIndex(NetworkComponent pComp, NetworkCable pCable) {
+		HashSet<NetworkCable> cableSet = componentCableIndex.get(pComp.getRDFLocalName());
+
+		if(cableSet != null) {
+			cableSet.remove(pCable);
+
+			if(cableSet.isEmpty()) {
+				componentCableIndex.remove(pComp.getRDFLocalName());
+			}
+		}
+	}
+
+
+	/**
+	 * Write a JSON encoded JavaScript object with information about all
+	 * objects that are currently present in the topology to the provided
+	 * writer. No intermediate JSONObject tree is created.
 	 *
-	 * @return JSONObject containing a structure with information about all
-	 *         stored objects
-	 * @throws JSONException if adding values to the JSONObject fails
+	 * @param pWriter The writer to write the JSON data to
+	 * @throws IOException if writing to the underlying stream failed
+	 * @throws JSONException if generating the JSON data failed
 	 */
-	public JSONObject genTopologyJSON() throws JSONException {
-		JSONObject json = new JSONObject();
+	@Override
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+		pWriter.beginObject();
 
-		json.put("identifier", topologyID);
-		json.put("name", StringEscapeUtils.escapeHtml4(TEBackend.RDF_MANAGER.getRootNodeName()));
+		pWriter.key("identifier").value(topologyID);
+		pWriter.key("name").value(StringEscapeUtils.escapeHtml4(TEBackend.getRDFManager().getRootNodeName()));
 
-		JSONObject groupJSON = new JSONObject();
-		JSONObject ifJSON = new JSONObject();
-		// Iterate through all stored types
+		pWriter.key("groups").beginObject();
 		for(Map.Entry<String, ComponentGroup> groupEntry : storage.entrySet()) {
-			groupJSON.put(groupEntry.getValue().identifier, groupEntry.getValue().toJSON());
+			pWriter.key(groupEntry.getValue().identifier);
+			groupEntry.getValue().writeJSON(pWriter);
+		}
+		pWriter.endObject();
 
-			// Iterate through all stored objects and add their interfaces to
-			// the interface list
+		// The interface list requires a second pass over the groups since
+		// the group objects must be finished before
+		pWriter.key("interfaces").beginObject();
+		for(Map.Entry<String, ComponentGroup> groupEntry : storage.entrySet()) {
 			for(NetworkComponent nc : groupEntry.getValue().componentList) {
 				for(Map.Entry<String, NetworkComponent.Interface> ifEntry : nc.getConfig().getPorts().entrySet()) {
-					ifJSON.put(ifEntry.getKey(), ifEntry.getValue().toJSON());
+					pWriter.key(ifEntry.getKey());
+					ifEntry.getValue().writeJSON(pWriter);
 				}
 			}
 		}
-		json.put("groups", groupJSON);
-		json.put("interfaces", ifJSON);
+		pWriter.endObject();
 
-		JSONObject cableJSON = new JSONObject();
+		pWriter.key("cables").beginObject();
 		for(Map.Entry<String, NetworkCable> cableEntry : cables.entrySet()) {
-			cableJSON.put(cableEntry.getKey(), cableEntry.getValue().toJSON());
+			pWriter.key(cableEntry.getKey());
+			cableEntry.getValue().writeJSON(pWriter);
 		}
-		json.put("cables", cableJSON);
+		pWriter.endObject();
 
-		JSONObject vlanJSON = new JSONObject();
+		pWriter.key("vlans").beginObject();
 		for(Map.Entry<String, VLAN> vlanEntry : vlans.entrySet()) {
-			vlanJSON.put(vlanEntry.getKey(), vlanEntry.getValue().toJSON());
+			pWriter.key(vlanEntry.getKey());
+			vlanEntry.getValue().writeJSON(pWriter);
 		}
-		json.put("vlans", vlanJSON);
+		pWriter.endObject();
 
-		JSONObject networkJSON = new JSONObject();
+		pWriter.key("networks").beginObject();
 		for(Map.Entry<String, IPNetwork> networkEntry : networks.entrySet()) {
-			networkJSON.put(networkEntry.getKey(), networkEntry.getValue().toJSON());
+			pWriter.key(networkEntry.getKey());
+			networkEntry.getValue().writeJSON(pWriter);
 		}
-		json.put("networks", networkJSON);
+		pWriter.endObject();
 
-		json.put("importHistory", TEBackend.RDF_MANAGER.historyToJSON());
+		pWriter.key("importHistory").value(TEBackend.getRDFManager().historyToJSON());
 
-		return json;
+		pWriter.endObject();
 	}
 
 
 	/**
-	 * Layout the topology by using the de.decoit.visa.gridlayout.GridLayout
-	 * class. By default, the 'neato' executable will be used for layouting. If
-	 * any nodes with fixed positions are detected, the 'fdp' executable will be
-	 * used to get better results. All existing switches and VMs will be used as
-	 * nodes, all cables as edges. Already positioned nodes will not be moved.
+	 * Wait until all provided layouts are calculated and apply the calculated
+	 * locations. All layouts are waited for, even if one of them failed. The
+	 * locations of the successful layouts are applied, then the first failure
+	 * is thrown.
+	 *
+	 * @param pLayouts Layouts to apply
+	 * @param pFutures Futures of the layout calculations, in the same order as
+	 *            the layouts
+	 * @throws IOException if one of the layouts failed or waiting for them was
+	 *             interrupted
+	 */
+	private void joinLayouts(ArrayList<GridLayout> pLayouts, ArrayList<Future<Void>> pFutures) throws IOException {
+		Throwable failure = null;
+
+		for(int i = 0; i < pFutures.size(); i++) {
+			try {
+				awaitTask(pFutures.get(i));
+				pLayouts.get(i).apply();
+			}
+			catch(ExecutionException ex) {
+				if(failure == null) {
+					failure = ex.getCause();
+				}
+			}
+		}
+
+		if(failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		else if(failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		else if(failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
+
+	/**
+	 * Wait until a task submitted to the layout thread pool is done. An
+	 * interruption does not stop the waiting because the task may be using
+	 * topology objects, the interrupt status is restored afterwards.
+	 *
+	 * @param pFuture Future of the task
+	 * @return The result of the task
+	 * @throws ExecutionException if the task failed
+	 */
+	private <T> T awaitTask(Future<T> pFuture) throws ExecutionException {
+		boolean interrupted = false;
+
+		try {
+			while(true) {
+				try {
+					return pFuture.get();
+				}
+				catch(InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	/**
+	 * Layout the topology by using the layout engine configured at the
+	 * backend, see {@link #layoutTopology(String)}.
 	 */
 	public void layoutTopology() {
+		layoutTopology(TEBackend.getLayoutEngine());
+	}
+
+
+	/**
+	 * Layout the topology by using the de.decoit.visa.gridlayout.GridLayout
+	 * class. For the graphviz engine, the 'neato' executable will be used for
+	 * layouting by default. If any nodes with fixed positions are detected, the
+	 * 'fdp' executable will be used to get better results. The java engine
+	 * calculates the layout inside the backend without calling graphviz. All
+	 * existing switches and VMs will be used as nodes, all cables as edges.
+	 * Already positioned nodes will not be moved.<br>
+	 * <br>
+	 * The layouts of the component groups are independent of each other, they
+	 * are calculated concurrently by a bounded thread pool. The calculated
+	 * locations are applied on the calling thread, then the base layer group
+	 * 0.0.0.0 is laid out.<br>
+	 * <br>
+	 * Only changed groups are laid out: A group whose nodes all have a
+	 * position is skipped. The results of the layout engine are cached by the
+	 * engine and the fingerprint of the laid out graph (nodes, edges and fixed
+	 * positions). If a group with the same fingerprint was laid out before,
+	 * the cached positions are applied without calling the layout engine.<br>
+	 * <br>
+	 * If graphviz fails or exceeds its time budget, the nodes of the affected
+	 * layout are placed by the fallback engine {@link GridLayout#ENGINE_GRID}.
+	 * Such results are not cached.
+	 *
+	 * @param pEngine Layout engine to use, either
+	 *            {@link GridLayout#ENGINE_GRAPHVIZ} or
+	 *            {@link GridLayout#ENGINE_JAVA}
+	 */
+	public void layoutTopology(String pEngine) {
+		if(!GridLayout.ENGINE_GRAPHVIZ.equals(pEngine) && !GridLayout.ENGINE_JAVA.equals(pEngine)) {
+			throw new IllegalArgumentException("Unknown layout engine: " + pEngine);
+		}
+
+		boolean useJava = GridLayout.ENGINE_JAVA.equals(pEngine);
+
 		try {
 			// Layout the subgrids of all component groups
 
 			HashSet<ComponentGroup> processedGroups = new HashSet<>();
+			ArrayList<GridLayout> groupLayouts = new ArrayList<>();
+			ArrayList<String> groupCacheKeys = new ArrayList<>();
+			ArrayList<Future<Void>> groupFutures = new ArrayList<>();
 
 			for(Map.Entry<String, ComponentGroup> groupEntry : storage.entrySet()) {
 				// Process all groups except the global group 0.0.0.0
 				if(!groupEntry.getValue().isGlobalGroup()) {
-					// neato is the default layouter
-					String command = "neato";
-
-					// Create a new layouter
-					GridLayout layout = new GridLayout(groupEntry.getValue().subGridDimensions);
+					// Create a new layouter named after the group
+					final GridLayout layout = new GridLayout(groupEntry.getValue().subGridDimensions, groupEntry.getValue().getIdentifier());
 
 					// Add all components of this group to the layouter
 					for(NetworkComponent nc : groupEntry.getValue().componentList) {
-						// Use fdp layouter if there are nodes with fixed
-						// positions
-						if(!layout.addComponent(nc)) {
-							command = "fdp";
-						}
+						layout.addComponent(nc);
 					}
 
 					for(NetworkCable nc : groupEntry.getValue().cables) {
@@ -891,35 +1362,46 @@ public class TopologyStorage {
 					}
 
 					for(Map.Entry<String, GroupSwitch> gsEntry : groupEntry.getValue().groupSwitches.entrySet()) {
-						// Use fdp layouter if there are nodes with fixed
-						// positions
-						if(!layout.addGroupSwitch(gsEntry.getValue())) {
-							command = "fdp";
-						}
+						layout.addGroupSwitch(gsEntry.getValue());
 					}
 
-					// Run the layouter
-					layout.run(command);
-
 					// Add the current group to the processed groups set
 					processedGroups.add(groupEntry.getValue());
+
+					// Start the layouter if the group changed since its last
+					// layout
+					final String engine = selectEngine(useJava, layout);
+					String cacheKey = prepareLayout(layout, engine);
+					if(cacheKey != null) {
+						groupFutures.add(layoutExecutor.submit(new Callable<Void>() {
+							@Override
+							public Void call() throws IOException {
+								layout.calculate(engine);
+
+								return null;
+							}
+						}));
+						groupLayouts.add(layout);
+						groupCacheKeys.add(cacheKey);
+					}
 				}
 			}
 
-			// Layout the base layer group 0.0.0.0
+			// Wait for all group layouts and apply the calculated locations
+			joinLayouts(groupLayouts, groupFutures);
 
-			// neato is the default layouter
-			String command = "neato";
+			for(int i = 0; i < groupLayouts.size(); i++) {
+				cacheLayout(groupCacheKeys.get(i), groupLayouts.get(i));
+			}
+
+			// Layout the base layer group 0.0.0.0
 
 			// Create a new layouter
 			GridLayout layout = new GridLayout(TEBackend.getGridDimensions());
 
 			// Add all components to the layouter
 			for(NetworkComponent nc : getComponentGroupByName("0.0.0.0").componentList) {
-				// Use fdp layouter if there are nodes with fixed positions
-				if(!layout.addComponent(nc)) {
-					command = "fdp";
-				}
+				layout.addComponent(nc);
 			}
 
 			for(NetworkCable nc : getComponentGroupByName("0.0.0.0").cables) {
@@ -930,14 +1412,16 @@ public class TopologyStorage {
 
 			// Add all group objects to the layouter
 			for(ComponentGroup cg : processedGroups) {
-				// Use fdp layouter if there are nodes with fixed positions
-				if(!layout.addComponentGroup(cg)) {
-					command = "fdp";
-				}
+				layout.addComponentGroup(cg);
 			}
 
 			// Run the layouter
-			layout.run(command);
+			String engine = selectEngine(useJava, layout);
+			String cacheKey = prepareLayout(layout, engine);
+			if(cacheKey != null) {
+				layout.run(engine);
+				cacheLayout(cacheKey, layout);
+			}
 		}
 		catch(IOException ex) {
 			StringBuilder sb = new StringBuilder("Caught: [");
@@ -955,6 +1439,392 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Calculate the paths of all cables and store them as path corners of the
+	 * cables, so the frontend does not have to search them. The grids of the
+	 * groups are independent of each other, their cables are routed
+	 * concurrently by the layout thread pool. The routers are filled and the
+	 * paths are stored on the calling thread.<br>
+	 * <br>
+	 * The stored path of a cable is kept as long as it still connects the
+	 * ports of the cable without crossing any component, so only cables whose
+	 * ends were moved or whose path got blocked are routed again. Cables
+	 * connected to a group object on the base layer are not routed, the
+	 * frontend draws them itself. If the routing of a group fails, the paths
+	 * of its cables are left unchanged.<br>
+	 * <br>
+	 * The locations of the ports depend on the interface orientations, so this
+	 * method must be called after
+	 * {@link #updateInterfaceOrientations(HashSet)}.
+	 */
+	public void routeCables() {
+		ArrayList<ComponentGroup> groups = new ArrayList<>();
+		ArrayList<CableRouter> routers = new ArrayList<>();
+		ArrayList<Future<Long>> futures = new ArrayList<>();
+
+		for(ComponentGroup cg : storage.values()) {
+			final CableRouter router = createCableRouter(cg);
+
+			if(router != null) {
+				futures.add(layoutExecutor.submit(new Callable<Long>() {
+					@Override
+					public Long call() {
+						long start = System.nanoTime();
+						router.route();
+
+						return System.nanoTime() - start;
+					}
+				}));
+				groups.add(cg);
+				routers.add(router);
+			}
+		}
+
+		for(int i = 0; i < futures.size(); i++) {
+			ComponentGroup cg = groups.get(i);
+			CableRouter router = routers.get(i);
+
+			try {
+				long duration = awaitTask(futures.get(i));
+
+				for(String cableID : router.getRoutedCables()) {
+					cables.get(cableID).setPathCorners(router.getPath(cableID));
+				}
+
+				TEBackend.METRICS.observeCableRouting(cg.isGlobalGroup() ? "global" : "group", duration, router.getKeptCount(), router.getRoutedCount(), router.getFailedCount());
+
+				if(log.isDebugEnabled()) {
+					StringBuilder sb = new StringBuilder("Cables of group '");
+					sb.append(cg.getName());
+					sb.append("' routed: kept=");
+					sb.append(router.getKeptCount());
+					sb.append(", routed=");
+					sb.append(router.getRoutedCount());
+					sb.append(", failed=");
+					sb.append(router.getFailedCount());
+					log.debug(sb.toString());
+				}
+			}
+			catch(ExecutionException ex) {
+				StringBuilder sb = new StringBuilder("Cable routing of group '");
+				sb.append(cg.getName());
+				sb.append("' failed: [");
+				sb.append(ex.getCause().getClass().getSimpleName());
+				sb.append("] ");
+				sb.append(ex.getCause().getMessage());
+				log.error(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Create a router for the cables of a group. All components, group
+	 * switches and, on the base layer, group objects of the grid are added as
+	 * obstacles.
+	 *
+	 * @param pGroup The group
+	 * @return The router, null if the group contains no cables
+	 */
+	private CableRouter createCableRouter(ComponentGroup pGroup) {
+		if(pGroup.cables.isEmpty()) {
+			return null;
+		}
+
+		int margin = TEBackend.getComponentMargin();
+		CableRouter rv = new CableRouter(pGroup.isGlobalGroup() ? TEBackend.getGridDimensions() : pGroup.subGridDimensions);
+
+		for(NetworkComponent nc : pGroup.componentList) {
+			if(nc.getConfig().getGridLocation() != null) {
+				rv.addObstacle(nc.getConfig().getComponentLocation(), nc.getConfig().getComponentDimensions(), margin);
+			}
+		}
+
+		for(GroupSwitch gs : pGroup.groupSwitches.values()) {
+			if(gs.getGridLocation() != null) {
+				rv.addObstacle(gs.getComponentLocation(), gs.getComponentDimensions(), margin);
+			}
+		}
+
+		if(pGroup.isGlobalGroup()) {
+			for(ComponentGroup cg : storage.values()) {
+				if(!cg.isGlobalGroup() && cg.gridLocation != null) {
+					Position2D groupLoc = new Position2D(cg.gridLocation.getX() + cg.componentInterfaceOffset.getX(), cg.gridLocation.getY() + cg.componentInterfaceOffset.getY());
+					rv.addObstacle(groupLoc, cg.groupDimensions, margin);
+				}
+			}
+		}
+
+		for(NetworkCable cable : pGroup.cables) {
+			if(cable.getGroupGateway() == null) {
+				Position2D start = locateCablePort(cable.getLeft(), pGroup.groupName);
+				Position2D end = locateCablePort(cable.getRight(), pGroup.groupName);
+
+				if(start != null && end != null) {
+					try {
+						rv.addCable(cable.getIdentifier(), start, cable.getLeft().getOrientation(), end, cable.getRight().getOrientation(), cable.getPathCorners());
+					}
+					catch(IllegalArgumentException ex) {
+						if(log.isDebugEnabled()) {
+							StringBuilder sb = new StringBuilder("Cable ");
+							sb.append(cable.getIdentifier());
+							sb.append(" not routed: ");
+							sb.append(ex.getMessage());
+							log.debug(sb.toString());
+						}
+					}
+				}
+			}
+		}
+
+		return rv;
+	}
+
+
+	/**
+	 * Return the location of the port connector of an interface on the grid
+	 * of a group. Interfaces of a switch located in another group are
+	 * displayed on the group switch of that switch.
+	 *
+	 * @param pIf The interface
+	 * @param pGroup Name of the group
+	 * @return The location of the port connector, null if the interface is
+	 *         not displayed on the grid of the group or not located yet
+	 */
+	private Position2D locateCablePort(NetworkComponent.Interface pIf, String pGroup) {
+		NetworkComponent nc = pIf.getComponent();
+
+		if(nc.getConfig().getComponentGroup().equals(pGroup)) {
+			return nc.getPortLocation(pIf);
+		}
+		else if(nc instanceof NCSwitch) {
+			GroupSwitch gs = ((NCSwitch) nc).getGroupSwitch(pGroup);
+
+			if(gs != null) {
+				return gs.getPortLocation(pIf);
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Store the result of a calculated layout in the layout cache. Results of
+	 * the fallback engine are not cached, so the requested engine is called
+	 * again on the next layout of the same graph.
+	 *
+	 * @param pCacheKey Key returned by
+	 *            {@link #prepareLayout(GridLayout, String)}
+	 * @param pLayout The calculated layout
+	 */
+	private void cacheLayout(String pCacheKey, GridLayout pLayout) {
+		if(pCacheKey.startsWith(pLayout.getResultEngine() + ":")) {
+			layoutCache.put(pCacheKey, pLayout.getCalculatedPositions());
+		}
+	}
+
+
+	/**
+	 * Select the layout engine for the provided layout. The graphviz
+	 * executable is selected by the size of the graph, see
+	 * {@link GridLayout#selectGraphvizEngine()}.
+	 *
+	 * @param pUseJava true if the java engine was requested
+	 * @param pLayout Layout containing all nodes and edges
+	 * @return Name of the layout engine
+	 */
+	private String selectEngine(boolean pUseJava, GridLayout pLayout) {
+		if(pUseJava) {
+			return GridLayout.ENGINE_JAVA;
+		}
+		else {
+			return pLayout.selectGraphvizEngine();
+		}
+	}
+
+
+	/**
+	 * Check if the provided layout has to be calculated by the layout engine.
+	 * If all nodes already have a position, nothing has to be done. If a
+	 * result for the same engine and graph is cached, it is applied to the
+	 * topology immediately.
+	 *
+	 * @param pLayout Layout containing all nodes and edges, not yet calculated
+	 * @param pEngine Name of the layout engine
+	 * @return Key to cache the result of the layout with, null if the layout
+	 *         engine must not be called
+	 */
+	private String prepareLayout(GridLayout pLayout, String pEngine) {
+		if(!pLayout.hasFreeNodes()) {
+			TEBackend.METRICS.observeLayoutSkipped("positioned");
+
+			return null;
+		}
+
+		StringBuilder sbKey = new StringBuilder(pEngine);
+		sbKey.append(':');
+		sbKey.append(pLayout.getFingerprint());
+		String cacheKey = sbKey.toString();
+
+		HashMap<String, Position2D> cached = layoutCache.get(cacheKey);
+		if(cached != null) {
+			pLayout.setCalculatedPositions(cached);
+			pLayout.apply();
+
+			TEBackend.METRICS.observeLayoutSkipped("cached");
+
+			if(log.isDebugEnabled()) {
+				StringBuilder sb = new StringBuilder("Cached layout applied: ");
+				sb.append(cacheKey);
+				log.debug(sb.toString());
+			}
+
+			return null;
+		}
+
+		return cacheKey;
+	}
+
+
+	/**
+	 * Check if an area on the grid of a component group is not covered by the
+	 * dragbox of any object. The grid of the global group 0.0.0.0 is the
+	 * editor grid containing its components and all other groups, the grid of
+	 * every other group is its subgrid containing its components and group
+	 * switches.
+	 *
+	 * @param pGroupName Name of the component group
+	 * @param pLocation Location of the upper left corner of the area
+	 * @param pDimensions Dimensions of the area
+	 * @param pIgnoreID Identifier of an object which is not taken into
+	 *            account, usually the object which is about to be moved, may
+	 *            be null
+	 * @return true if the area is free, false otherwise
+	 */
+	public boolean isAreaFree(String pGroupName, Position2D pLocation, Dimension2D pDimensions, String pIgnoreID) {
+		return getOccupancy(pGroupName).isFree(pLocation, pDimensions, pIgnoreID);
+	}
+
+
+	/**
+	 * Return the identifiers of all objects whose dragboxes cover the provided
+	 * area on the grid of a component group, see
+	 * {@link #isAreaFree(String, Position2D, Dimension2D, String)}.
+	 * Components are identified by their RDF local names, group switches by
+	 * their gSwitch_ identifiers and groups by their group IDs.
+	 *
+	 * @param pGroupName Name of the component group
+	 * @param pLocation Location of the upper left corner of the area
+	 * @param pDimensions Dimensions of the area
+	 * @param pIgnoreID Identifier of an object which is not taken into
+	 *            account, may be null
+	 * @return Sorted set of the identifiers, empty if the area is free
+	 */
+	public TreeSet<String> getOverlappingObjects(String pGroupName, Position2D pLocation, Dimension2D pDimensions, String pIgnoreID) {
+		return getOccupancy(pGroupName).getOverlapping(pLocation, pDimensions, pIgnoreID);
+	}
+
+
+	/**
+	 * Find the free location nearest to the preferred location where a
+	 * dragbox with the provided dimensions fits on the grid of a component
+	 * group, see {@link #isAreaFree(String, Position2D, Dimension2D, String)}.
+	 *
+	 * @param pGroupName Name of the component group
+	 * @param pDimensions Dimensions of the dragbox
+	 * @param pNear Preferred location, null for the upper left corner of the
+	 *            grid
+	 * @return The free location, null if there is no free area of that size
+	 */
+	public Position2D findFreeLocation(String pGroupName, Dimension2D pDimensions, Position2D pNear) {
+		return getOccupancy(pGroupName).findFreeLocation(pDimensions, pNear);
+	}
+
+
+	/**
+	 * Update the location of an object in the occupancy index of a component
+	 * group. Nothing is done if the index of that group was not built yet, it
+	 * will contain the new location when it is built.
+	 *
+	 * @param pGroupName Name of the component group, may be null for objects
+	 *            which are not assigned to a group yet
+	 * @param pID Identifier of the object
+	 * @param pLocation New location of the dragbox
+	 * @param pDimensions Dimensions of the dragbox
+	 */
+	void updateOccupancy(String pGroupName, String pID, Position2D pLocation, Dimension2D pDimensions) {
+		if(pGroupName != null) {
+			GridOccupancy index = occupancy.get(pGroupName);
+
+			if(index != null) {
+				index.place(pID, pLocation, pDimensions);
+			}
+		}
+	}
+
+
+	/**
+	 * Drop the occupancy index of a component group after objects were added
+	 * to or removed from the group or their dragboxes were resized. The index
+	 * is rebuilt on the next query.
+	 *
+	 * @param pGroupName Name of the component group, may be null for objects
+	 *            which are not assigned to a group yet
+	 */
+	void invalidateOccupancy(String pGroupName) {
+		if(pGroupName != null) {
+			occupancy.remove(pGroupName);
+		}
+	}
+
+
+	/**
+	 * Return the occupancy index of a component group, build it from the
+	 * current locations of all objects on the grid of the group if necessary
+	 *
+	 * @param pGroupName Name of the component group
+	 * @return The occupancy index
+	 */
+	private GridOccupancy getOccupancy(String pGroupName) {
+		GridOccupancy rv = occupancy.get(pGroupName);
+
+		if(rv == null) {
+			ComponentGroup cg = storage.get(groupNameIDMap.get(pGroupName));
+
+			if(cg == null) {
+				throw new IllegalArgumentException("Unknown component group: " + pGroupName);
+			}
+
+			rv = new GridOccupancy(cg.isGlobalGroup() ? TEBackend.getGridDimensions() : cg.subGridDimensions);
+
+			for(NetworkComponent nc : cg.componentList) {
+				if(nc.getConfig().getGridLocation() != null) {
+					rv.place(nc.getRDFLocalName(), nc.getConfig().getGridLocation(), nc.getConfig().getDragboxDimensions());
+				}
+			}
+
+			for(GroupSwitch gs : cg.groupSwitches.values()) {
+				if(gs.getGridLocation() != null) {
+					rv.place(gs.getRDFLocalName(), gs.getGridLocation(), gs.getDragboxDimensions());
+				}
+			}
+
+			if(cg.isGlobalGroup()) {
+				for(ComponentGroup subGroup : storage.values()) {
+					if(!subGroup.isGlobalGroup() && subGroup.gridLocation != null) {
+						rv.place(subGroup.identifier, subGroup.gridLocation, subGroup.dragboxDimensions);
+					}
+				}
+			}
+
+			occupancy.put(pGroupName, rv);
+		}
+
+		return rv;
+	}
+
+
 	/**
 	 * Update the orientation on all connected interfaces of the specified
 	 * components. The method will try to make the interfaces connected by a
@@ -1294,6 +2164,185 @@ public class TopologyStorage {
 	}
 
 
+	/**
+	 * Check all operations of the provided batch against each other and
+	 * against the topology as it will be after the removals of the batch:
+	 * cables removed by the batch or connected to a removed component do not
+	 * occupy the interfaces of the remaining components. Nothing is modified
+	 * by this method.
+	 *
+	 * @param pBatch The batch to validate
+	 * @throws IllegalArgumentException if any operation of the batch is
+	 *             invalid
+	 */
+	public void validateBatch(TopologyBatch pBatch) {
+		HashSet<String> removedComponents = new HashSet<>();
+		HashSet<String> removedCables = new HashSet<>();
+		HashSet<String> refs = new HashSet<>();
+		HashSet<String> vlanRefs = new HashSet<>();
+		HashMap<String, Integer> componentRefs = new HashMap<>();
+		HashSet<String> usedInterfaces = new HashSet<>();
+
+		for(String cableID : pBatch.getRemovedCables()) {
+			if(!cables.containsKey(cableID)) {
+				throw new IllegalArgumentException("Unknown cable: " + cableID);
+			}
+			removedCables.add(cableID);
+		}
+
+		for(String locName : pBatch.getRemovedComponents()) {
+			IRDFObject rdfo = localNames.get(locName);
+
+			if(!(rdfo instanceof NetworkComponent)) {
+				throw new IllegalArgumentException("Unknown component: " + locName);
+			}
+			removedComponents.add(locName);
+
+			// Removing a component removes the cables of its interfaces, its
+			// peers' interfaces are free afterwards
+			for(NetworkCable cable : getCablesByComponent(locName)) {
+				removedCables.add(cable.getIdentifier());
+			}
+		}
+
+		for(TopologyBatch.VLANSpec spec : pBatch.getVLANs()) {
+			if(!refs.add(spec.ref)) {
+				throw new IllegalArgumentException("Duplicate reference: " + spec.ref);
+			}
+
+			if(spec.name == null || spec.name.isEmpty()) {
+				throw new IllegalArgumentException("Empty name for VLAN " + spec.ref);
+			}
+
+			if(spec.color == null || !spec.color.matches("#[a-fA-F0-9]{6}")) {
+				throw new IllegalArgumentException("Malformed color string for VLAN " + spec.ref);
+			}
+
+			vlanRefs.add(spec.ref);
+		}
+
+		for(TopologyBatch.ComponentSpec spec : pBatch.getComponents()) {
+			if(!refs.add(spec.ref)) {
+				throw new IllegalArgumentException("Duplicate reference: " + spec.ref);
+			}
+
+			if(spec.ref.indexOf(TopologyBatch.IF_REF_SEPARATOR) >= 0) {
+				throw new IllegalArgumentException("Illegal character in component reference: " + spec.ref);
+			}
+
+			if(!spec.type.equals(NCSwitch.TYPE) && !spec.type.equals(NCVM.TYPE)) {
+				throw new IllegalArgumentException("Unsupported component type: " + spec.type);
+			}
+
+			if(spec.name == null || spec.name.isEmpty()) {
+				throw new IllegalArgumentException("Empty name for component " + spec.ref);
+			}
+
+			for(String ori : spec.ifOrientations) {
+				// Throws IllegalArgumentException for unknown orientations
+				PortOrientation.valueOf(ori);
+			}
+
+			componentRefs.put(spec.ref, spec.ifOrientations.size());
+		}
+
+		ArrayList<String> ifRefs = new ArrayList<>();
+		for(TopologyBatch.CableSpec spec : pBatch.getCables()) {
+			ifRefs.add(spec.left);
+			ifRefs.add(spec.right);
+		}
+
+		for(String ifRef : ifRefs) {
+			validateBatchInterface(ifRef, componentRefs, removedComponents);
+
+			if(!usedInterfaces.add(ifRef)) {
+				throw new IllegalArgumentException("Interface is connected twice: " + ifRef);
+			}
+
+			NetworkComponent.Interface iface = getInterface(ifRef);
+			if(iface != null && iface.isConnected() && !removedCables.contains(iface.getCable().getIdentifier())) {
+				throw new IllegalArgumentException("Interface is already connected: " + ifRef);
+			}
+		}
+
+		for(TopologyBatch.VLANAssignmentSpec spec : pBatch.getVLANAssignments()) {
+			validateBatchInterface(spec.iface, componentRefs, removedComponents);
+
+			for(String vlanRef : spec.vlans) {
+				if(!vlanRefs.contains(vlanRef) && !vlans.containsKey(vlanRef)) {
+					throw new IllegalArgumentException("Unknown VLAN: " + vlanRef);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Check if the provided interface reference of a batch identifies an
+	 * interface of a new component or an existing interface which is not
+	 * removed by the batch.
+	 *
+	 * @param pRef Interface reference
+	 * @param pComponentRefs Map of new component references to their interface
+	 *            count
+	 * @param pRemovedComponents Local names of removed components
+	 * @throws IllegalArgumentException if the reference is invalid
+	 */
+	private void validateBatchInterface(String pRef, HashMap<String, Integer> pComponentRefs, HashSet<String> pRemovedComponents) {
+		int sepIndex = pRef.lastIndexOf(TopologyBatch.IF_REF_SEPARATOR);
+
+		if(sepIndex > 0 && pComponentRefs.containsKey(pRef.substring(0, sepIndex))) {
+			int ifIndex;
+			try {
+				ifIndex = Integer.parseInt(pRef.substring(sepIndex + 1));
+			}
+			catch(NumberFormatException ex) {
+				throw new IllegalArgumentException("Malformed interface reference: " + pRef);
+			}
+
+			if(ifIndex < 0 || ifIndex >= pComponentRefs.get(pRef.substring(0, sepIndex))) {
+				throw new IllegalArgumentException("Interface index out of range: " + pRef);
+			}
+		}
+		else {
+			IRDFObject rdfo = localNames.get(pRef);
+
+			if(!(rdfo instanceof NetworkComponent.Interface)) {
+				throw new IllegalArgumentException("Unknown interface: " + pRef);
+			}
+
+			if(pRemovedComponents.contains(((NetworkComponent.Interface) rdfo).getComponent().getRDFLocalName())) {
+				throw new IllegalArgumentException("Interface belongs to a removed component: " + pRef);
+			}
+		}
+	}
+
+
+	/**
+	 * Resolve an interface reference of a batch to the interface object. The
+	 * reference must have been validated before.
+	 *
+	 * @param pRef Interface reference
+	 * @param pNewComponents Map of new component references to the created
+	 *            components
+	 * @return The referenced interface
+	 */
+	private NetworkComponent.Interface resolveBatchInterface(String pRef, HashMap<String, NetworkComponent> pNewComponents) {
+		int sepIndex = pRef.lastIndexOf(TopologyBatch.IF_REF_SEPARATOR);
+
+		if(sepIndex > 0 && pNewComponents.containsKey(pRef.substring(0, sepIndex))) {
+			int ifIndex = Integer.parseInt(pRef.substring(sepIndex + 1));
+			NetworkComponent nc = pNewComponents.get(pRef.substring(0, sepIndex));
+
+			// The port map keeps the order in which the interfaces were created
+			return new ArrayList<>(nc.getConfig().getPorts().values()).get(ifIndex);
+		}
+		else {
+			return getInterface(pRef);
+		}
+	}
+
+
 	/**
 	 * Add the specified component to the storage structure and the RDF model if
 	 * requested.
@@ -1320,7 +2369,7 @@ public class TopologyStorage {
 				}
 
 				// Add the object to the RDF model
-				TEBackend.RDF_MANAGER.addObject(pComponent);
+				TEBackend.getRDFManager().addObject(pComponent);
 			}
 
 			localNames.put(pComponent.getRDFLocalName(), pComponent);
@@ -1380,8 +2429,8 @@ public class TopologyStorage {
 			identifier = sbID.toString();
 
 			gridLocation = null;
-			groupDimensions = new Dimension2D(10, 10);
-			subGridDimensions = new Dimension2D(175, 75);
+			groupDimensions = Dimension2D.valueOf(10, 10);
+			subGridDimensions = Dimension2D.valueOf(175, 75);
 
 			componentList = new HashSet<>();
 			groupInterfaces = new HashSet<>();
@@ -1421,6 +2470,9 @@ public class TopologyStorage {
 		boolean addComponent(NetworkComponent pNC) {
 			if(pNC != null) {
 				boolean rv = componentList.add(pNC);
+
+				invalidateOccupancy(groupName);
+
 				return rv;
 			}
 			else {
@@ -1440,6 +2492,8 @@ public class TopologyStorage {
 			if(pNC != null) {
 				boolean rv = componentList.remove(pNC);
 
+				invalidateOccupancy(groupName);
+
 				if(componentList.isEmpty()) {
 					for(Map.Entry<String, GroupSwitch> gsEntry : groupSwitches.entrySet()) {
 						gsEntry.getValue().removeFromGroup();
@@ -1450,6 +2504,8 @@ public class TopologyStorage {
 					}
 
 					storage.remove(groupName);
+
+					invalidateOccupancy("0.0.0.0");
 				}
 
 				return rv;
@@ -1469,6 +2525,8 @@ public class TopologyStorage {
 		public void setGridLocation(int pX, int pY) {
 			gridLocation = new Position2D(pX, pY, TEBackend.getGridDimensions());
 
+			updateOccupancy("0.0.0.0", identifier, gridLocation, dragboxDimensions);
+
 			if(log.isDebugEnabled()) {
 				StringBuilder sb = new StringBuilder("ComponentGroup relocated to x=");
 				sb.append(gridLocation.getX());
@@ -1479,6 +2537,22 @@ public class TopologyStorage {
 		}
 
 
+		/**
+		 * Set the grid location of this group to the specified coordinates
+		 * and record the relocation, see
+		 * {@link de.decoit.visa.rdf.RDFManager#updateLocationDeferred(ComponentGroup)
+		 * RDFManager.updateLocationDeferred()}.
+		 *
+		 * @param pX Horizontal coordinate
+		 * @param pY Vertical coordinate
+		 */
+		public void setGridLocationDeferred(int pX, int pY) {
+			setGridLocation(pX, pY);
+
+			TEBackend.getRDFManager().updateLocationDeferred(this);
+		}
+
+
 		/**
 		 * Return the grid location of this group
 		 *
@@ -1496,12 +2570,9 @@ public class TopologyStorage {
 		 * @param pY Vertical size in grid cells
 		 */
 		public void setSubgridDimensions(int pX, int pY) {
-			if(subGridDimensions == null) {
-				subGridDimensions = new Dimension2D(pX, pY);
-			}
-			else {
-				subGridDimensions.set(pX, pY);
-			}
+			subGridDimensions = Dimension2D.valueOf(pX, pY);
+
+			invalidateOccupancy(groupName);
 		}
 
 
@@ -1533,6 +2604,8 @@ public class TopologyStorage {
 		void addGroupSwitch(GroupSwitch pGS) {
 			if(pGS != null) {
 				groupSwitches.put(pGS.getSwitchRDFLocalName(), pGS);
+
+				invalidateOccupancy(groupName);
 			}
 			else {
 				throw new NullPointerException("NULL pointer for group switch");
@@ -1549,6 +2622,8 @@ public class TopologyStorage {
 			if(pGS != null) {
 				groupInterfaces.remove(pGS.getVirtualInterface().getConnectedTo());
 				groupSwitches.remove(pGS.getSwitchRDFLocalName());
+
+				invalidateOccupancy(groupName);
 			}
 			else {
 				throw new NullPointerException("NULL pointer for group switch");
@@ -1645,64 +2720,61 @@ public class TopologyStorage {
 
 
 		@Override
-		public JSONObject toJSON() throws JSONException {
-			JSONObject rv = new JSONObject();
+		public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+			pWriter.beginObject();
+			pWriter.key("name").value(StringEscapeUtils.escapeHtml4(groupName));
+			pWriter.key("identifier").value(identifier);
+			pWriter.key("isGroup").value(true);
 
-			rv.put("name", StringEscapeUtils.escapeHtml4(groupName));
-			rv.put("identifier", identifier);
-			rv.put("isGroup", true);
-
-			JSONObject compsJSON = new JSONObject();
+			pWriter.key("components").beginObject();
 			for(NetworkComponent nc : componentList) {
-				JSONObject ncJSON = null;
-				if(nc instanceof NCSwitch) {
-					ncJSON = ((NCSwitch) nc).toJSON();
-				}
-				else if(nc instanceof NCHost) {
-					ncJSON = ((NCHost) nc).toJSON();
-				}
-				else if(nc instanceof NCVM) {
-					ncJSON = ((NCVM) nc).toJSON();
-				}
-
-				if(ncJSON != null) {
-					compsJSON.put(nc.getIdentifier(), ncJSON);
+				if(nc instanceof NCSwitch || nc instanceof NCHost || nc instanceof NCVM) {
+					pWriter.key(nc.getIdentifier());
+					nc.writeJSON(pWriter);
 				}
 			}
-			rv.put("components", compsJSON);
+			pWriter.endObject();
 
-			JSONObject cableJSON = new JSONObject();
+			pWriter.key("cables").beginObject();
 			for(NetworkCable nc : cables) {
-				cableJSON.put(nc.getIdentifier(), nc.toJSON());
+				pWriter.key(nc.getIdentifier());
+				nc.writeJSON(pWriter);
 			}
-			rv.put("cables", cableJSON);
+			pWriter.endObject();
 
-			JSONObject gsJSON = new JSONObject();
+			pWriter.key("groupSwitches").beginObject();
 			for(Map.Entry<String, GroupSwitch> gsEntry : groupSwitches.entrySet()) {
-				gsJSON.put(gsEntry.getValue().getRDFLocalName(), gsEntry.getValue().toJSON());
+				pWriter.key(gsEntry.getValue().getRDFLocalName());
+				gsEntry.getValue().writeJSON(pWriter);
 			}
-			rv.put("groupSwitches", gsJSON);
+			pWriter.endObject();
 
-			JSONObject confJSON = new JSONObject();
+			pWriter.key("config").beginObject();
 
 			if(gridLocation != null) {
-				confJSON.put("gloc", gridLocation.toJSON());
+				pWriter.key("gloc");
+				gridLocation.writeJSON(pWriter);
 			}
 
-			confJSON.put("compOffset", componentInterfaceOffset.toJSON());
-			confJSON.put("compDim", groupDimensions.toJSON());
-			confJSON.put("dragDim", dragboxDimensions.toJSON());
-			confJSON.put("gridDim", subGridDimensions.toJSON());
+			pWriter.key("compOffset");
+			componentInterfaceOffset.writeJSON(pWriter);
+			pWriter.key("compDim");
+			groupDimensions.writeJSON(pWriter);
+			pWriter.key("dragDim");
+			dragboxDimensions.writeJSON(pWriter);
+			pWriter.key("gridDim");
+			subGridDimensions.writeJSON(pWriter);
 
-			JSONObject ifJSON = new JSONObject();
+			pWriter.key("interfaces").beginObject();
 			for(GroupInterface gIf : groupInterfaces) {
-				ifJSON.put(gIf.localName, gIf.toJSON());
+				pWriter.key(gIf.localName);
+				gIf.writeJSON(pWriter);
 			}
-			confJSON.put("interfaces", ifJSON);
+			pWriter.endObject();
 
-			rv.put("config", confJSON);
+			pWriter.endObject();
 
-			return rv;
+			pWriter.endObject();
 		}
 
 
@@ -1741,9 +2813,11 @@ public class TopologyStorage {
 				int ifOffsetX = TEBackend.getComponentMargin();
 				int ifOffsetY = TEBackend.getComponentMargin();
 
-				dragboxDimensions = new Dimension2D(x, y);
+				dragboxDimensions = Dimension2D.valueOf(x, y);
 				componentInterfaceOffset = new Position2D(ifOffsetX, ifOffsetY);
 
+				invalidateOccupancy("0.0.0.0");
+
 				if(log.isDebugEnabled()) {
 					StringBuilder sb = new StringBuilder("Dragbox resized to x=");
 					sb.append(dragboxDimensions.getX());
@@ -1915,15 +2989,15 @@ public class TopologyStorage {
 
 
 			@Override
-			public JSONObject toJSON() throws JSONException {
-				JSONObject rv = new JSONObject();
-
-				rv.put("identifier", localName);
-				rv.put("orientation", orientation.toString());
-				rv.put("innerConn", innerConnection.toJSON());
-				rv.put("outerConn", outerConnection.toJSON());
-
-				return rv;
+			public void writeJSON(JSONStreamWriter pWriter) throws IOException, JSONException {
+				pWriter.beginObject();
+				pWriter.key("identifier").value(localName);
+				pWriter.key("orientation").value(orientation.toString());
+				pWriter.key("innerConn");
+				innerConnection.writeJSON(pWriter);
+				pWriter.key("outerConn");
+				outerConnection.writeJSON(pWriter);
+				pWriter.endObject();
 			}
 
 
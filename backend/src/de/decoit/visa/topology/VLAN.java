@@ -19,16 +19,16 @@
 
 package de.decoit.visa.topology;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.log4j.Logger;
-import org.json.JSONException;
-import org.json.JSONObject;
 import de.decoit.visa.TEBackend;
 import de.decoit.visa.interfaces.IJSON;
 import de.decoit.visa.interfaces.IRDFObject;
 import de.decoit.visa.interfaces.IRemovableComponent;
 import de.decoit.visa.interfaces.ITopologyElement;
+import de.decoit.visa.json.JSONStreamWriter;
 import de.decoit.visa.rdf.VISA;
 import de.decoit.visa.rdf.VISABackup;
 import de.decoit.visa.topology.NetworkComponent.Interface;
@@ -92,9 +92,9 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 			localName = sbLocalName.toString();
 		}
 
-		TEBackend.RDF_MANAGER.updateProperty(this, VISA.ID);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.NAME);
-		TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.VLAN_COLOR);
+		TEBackend.getRDFManager().updateProperty(this, VISA.ID);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.NAME);
+		TEBackend.getRDFManager().updateProperty(this, VISABackup.VLAN_COLOR);
 
 		if(log.isTraceEnabled()) {
 			StringBuilder sb = new StringBuilder("VLAN created: ");
@@ -138,7 +138,7 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 		if(!pName.isEmpty()) {
 			name = pName;
 
-			TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.NAME);
+			TEBackend.getRDFManager().updateProperty(this, VISABackup.NAME);
 		}
 		else {
 			throw new IllegalArgumentException("Empty name provided");
@@ -167,7 +167,7 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 		if(pColor.matches("#[a-fA-F0-9]{6}")) {
 			color = pColor.toUpperCase();
 
-			TEBackend.RDF_MANAGER.updateProperty(this, VISABackup.VLAN_COLOR);
+			TEBackend.getRDFManager().updateProperty(this, VISABackup.VLAN_COLOR);
 		}
 		else {
 			throw new IllegalArgumentException("Malformed color string");
@@ -188,7 +188,7 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 	@Override
 	public void removeFromTopology() {
 		if(interfaces.size() == 0) {
-			TEBackend.RDF_MANAGER.removeVLAN(this);
+			TEBackend.getRDFManager().removeVLAN(this);
 		}
 		else {
 			throw new IllegalStateException("VLAN is still assigned to interfaces");
@@ -197,14 +197,12 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 
 
 	@Override
-	public JSONObject toJSON() throws JSONException {
-		JSONObject rv = new JSONObject();
-
-		rv.put("identifier", getIdentifier());
-		rv.put("name", StringEscapeUtils.escapeHtml4(name));
-		rv.put("color", color);
-
-		return rv;
+	public void writeJSON(JSONStreamWriter pWriter) throws IOException {
+		pWriter.beginObject();
+		pWriter.key("identifier").value(getIdentifier());
+		pWriter.key("name").value(StringEscapeUtils.escapeHtml4(name));
+		pWriter.key("color").value(color);
+		pWriter.endObject();
 	}
 
 
@@ -271,7 +269,7 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 		 *
 		 * @return The next color string
 		 */
-		public String getNextColor() {
+		public synchronized String getNextColor() {
 			String rv = colors[nextColor++];
 			if(nextColor == colorCount) {
 				nextColor = 0;
@@ -284,7 +282,7 @@ public class VLAN implements ITopologyElement, IRDFObject, IJSON, IRemovableComp
 		/**
 		 * Reset the next color counter to 0
 		 */
-		public void reset() {
+		public synchronized void reset() {
 			nextColor = 0;
 		}
 	}
@@ -863,7 +863,7 @@ var VISA = (function() {
 					obj.data("origin", objOffset);
 
 					$.ajax({
-						url: 'ajax/relocateComponent?oid=' + encodeURIComponent(obj.data("component").attr("id")) + '&glocX=' + encodeURIComponent(objOffset.x) + '&glocY=' + encodeURIComponent(objOffset.y),
+						url: 'ajax/relocateComponent?oid=' + encodeURIComponent(obj.data("component").attr("id")) + '&glocX=' + encodeURIComponent(objOffset.x) + '&glocY=' + encodeURIComponent(objOffset.y) + '&compact=true',
 						type: "GET",
 						cache: false,
 						async: false,
@@ -898,7 +898,7 @@ var VISA = (function() {
 								rv = false;
 							}
 							else {
-								topologyStorage = response.topology;
+								storeGridLocation(response);
 
 								// Recalculate obstacles
 								calcObstacles();
@@ -1401,7 +1401,9 @@ var VISA = (function() {
 			// Draw all cabled that exist in the initial topology
 			$.each(globalGrpInfo.cables, function(objID, objInfo) {
 				if(objInfo.via === undefined) {
-					var success;
+					var success,
+						startCell,		// Grid cell of the cable start portconnector
+						endCell;		// Grid cell of the cable end portconnector
 
 					// Get the objects of the cable start and end portconnectors
 					cableStart = $("#" + topologyStorage.interfaces[objInfo.left].identifier);
@@ -1417,8 +1419,11 @@ var VISA = (function() {
 
 					removePortConnectorObstacles();
 
-					// Calculate the path from cable start to end
-					success = findPath(calcGridLocation(cableStart).obj[0], calcGridLocation(cableEnd).obj[0]);
+					// Use the path routed by the backend, calculate the path
+					// from cable start to end if it does not fit the portconnectors
+					startCell = calcGridLocation(cableStart).obj[0];
+					endCell = calcGridLocation(cableEnd).obj[0];
+					success = useStoredPath(objInfo.path, startCell, endCell) || findPath(startCell, endCell);
 
 					// Draw the cable if at least two cable corners were found (start and end cell)
 					if(success) {
@@ -1532,6 +1537,47 @@ var VISA = (function() {
 	}	//updateTopoStorage()
 
 
+	/**
+	 * Store the grid location of a relocated object in the topologyStorage.
+	 * Used with the compact acknowledgement of the relocateComponent request,
+	 * which only returns the new location instead of the whole topology.
+	 *
+	 * @param {Object} response Compact acknowledgement containing oid, glocX and glocY
+	 * @memberOf VISA
+	 */
+	function storeGridLocation(response) {
+		var objInfo = null;
+
+		$.each(topologyStorage.groups, function(groupName, grpInfo) {
+			if(grpInfo.identifier === response.oid) {
+				objInfo = grpInfo;
+			}
+			else if(grpInfo.components !== undefined && grpInfo.components[response.oid] !== undefined) {
+				objInfo = grpInfo.components[response.oid];
+			}
+			else if(grpInfo.groupSwitches !== undefined) {
+				$.each(grpInfo.groupSwitches, function(gswLocName, gswInfo) {
+					if(gswInfo.identifier === response.oid) {
+						objInfo = gswInfo;
+					}
+				});
+			}
+
+			// Stop iterating if the object was found
+			return objInfo === null;
+		});
+
+		if(objInfo !== null) {
+			if(objInfo.config.gloc === undefined) {
+				objInfo.config.gloc = {};
+			}
+
+			objInfo.config.gloc.x = response.glocX;
+			objInfo.config.gloc.y = response.glocY;
+		}
+	}	//storeGridLocation()
+
+
 	/**
 	 * Remove any objects and cables from the editor
 	 *
@@ -3062,7 +3108,7 @@ var VISA = (function() {
 
 			// Request object relocation from the backend
 			$.ajax({
-				url: 'ajax/relocateComponent?oid=' + encodeURIComponent(ui.draggable.data("component").attr("id")) + '&glocX=' + encodeURIComponent(origin.x) + '&glocY=' + encodeURIComponent(origin.y),
+				url: 'ajax/relocateComponent?oid=' + encodeURIComponent(ui.draggable.data("component").attr("id")) + '&glocX=' + encodeURIComponent(origin.x) + '&glocY=' + encodeURIComponent(origin.y) + '&compact=true',
 				type: "GET",
 				cache: false,
 				async: false,
@@ -3099,7 +3145,7 @@ var VISA = (function() {
 						ui.draggable.offset(ui.draggable.data("origin"));
 					}
 					else {
-						updateTopoStorage(response.topology);
+						storeGridLocation(response);
 
 						// Update the stored object location
 						ui.draggable.data("origin", origin);
@@ -6224,6 +6270,54 @@ var VISA = (function() {
 	}	//findPath()
 
 
+	/**
+	 * Use the path stored in the topology for a cable instead of searching
+	 * it. The backend routes the cables with the same algorithm, the path is
+	 * only used if it starts and ends at the provided grid cells.
+	 *
+	 * @param {Object} path Path corners of the cable from the topology information
+	 * @param {Object} start DOM object of the starting grid cell
+	 * @param {Object} end DOM object of the ending grid cell
+	 * @returns {Boolean} true, if the stored path was used, false otherwise
+	 * @memberOf VISA
+	 */
+	function useStoredPath(path, start, end) {
+		var subgridStr,
+			corners = [],	// Grid cells of the path corners
+			cell,
+			i;
+
+		if(path === undefined || path[0] === undefined || path[1] === undefined) {
+			return false;
+		}
+
+		if(activeSubgrid !== null) {
+			subgridStr = activeSubgrid + "_";
+		}
+		else {
+			subgridStr = "";
+		}
+
+		for(i = 0; path[i] !== undefined; i++) {
+			cell = document.getElementById(subgridStr + "c_" + path[i].y + "_" + path[i].x);
+
+			if(cell === null) {
+				return false;
+			}
+
+			corners.push(cell);
+		}
+
+		if(corners[0] !== start || corners[corners.length - 1] !== end) {
+			return false;
+		}
+
+		cableCorners = corners;
+
+		return true;
+	}	//useStoredPath()
+
+
 	/**
 	 * Encode special characters to their HTML representation
 	 *